@@ -0,0 +1,52 @@
+package com.stocksim.bench;
+
+import com.stocksim.data.MessageAck;
+import com.stocksim.data.StateDelta;
+import com.stocksim.data.SystemState;
+import com.stocksim.data.TradeMessage;
+import com.stocksim.data.TradeQuery;
+import com.stocksim.data.TradeQueryResult;
+import com.stocksim.net.MarketNodeRemote;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Remote end that acknowledges without doing any market work,
+ * so transport benchmarks measure only the wire path.
+ */
+public class AckOnlyMarket implements MarketNodeRemote {
+
+    @Override
+    public MessageAck submitMessage(TradeMessage message) {
+        return MessageAck.accepted(message.getLamportTimestamp());
+    }
+
+    @Override
+    public List<MessageAck> submitBatch(List<TradeMessage> messages) {
+        List<MessageAck> acks = new ArrayList<>(messages.size());
+        for (TradeMessage message : messages) acks.add(MessageAck.accepted(message.getLamportTimestamp()));
+        return acks;
+    }
+
+    @Override
+    public List<MessageAck> executeBatch(List<TradeMessage> messages) {
+        return submitBatch(messages);
+    }
+
+    @Override
+    public SystemState getState() {
+        return new SystemState(Collections.emptyList(), Collections.emptyMap(), "UP");
+    }
+
+    @Override
+    public StateDelta getStateDelta(long fromTradeSequence, long fromStatusVersion) {
+        return new StateDelta(Collections.emptyList(), 0, false, Collections.emptyMap(), 0, false, "UP");
+    }
+
+    @Override
+    public TradeQueryResult queryTrades(TradeQuery query) {
+        return new TradeQueryResult(Collections.emptyList(), 0, 0, 0, 0, 0);
+    }
+}
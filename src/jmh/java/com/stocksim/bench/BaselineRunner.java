@@ -0,0 +1,174 @@
+package com.stocksim.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the market hot-path benchmarks with the GC profiler and checks them against stored
+ * baseline results, so a regression shows up as a number (and a non-zero exit code).
+ * Scores and allocated bytes per op (gc.alloc.rate.norm) are compared; a result regressed
+ * when it is worse by more than REGRESSION_THRESHOLD and by more than both runs' error bars,
+ * so run-to-run noise on a busy machine does not count.
+ *
+ *   java -cp target/benchmarks.jar com.stocksim.bench.BaselineRunner [compare|record] [baseline.csv]
+ *
+ * Baselines are machine specific: re-record them when moving to other hardware.
+ */
+public class BaselineRunner {
+
+    public static final String DEFAULT_BASELINE = "src/jmh/baselines/hot-paths.csv";
+    private static final String CURRENT_RESULTS = "target/jmh-hot-paths.csv";
+    private static final double REGRESSION_THRESHOLD = 0.10;
+    private static final String ALLOCATION_METRIC = ":gc.alloc.rate.norm";
+    private static final double MIN_ALLOCATION_CHANGE = 1.0; // bytes per op; below this is profiler noise
+
+    // the hot paths: in-process submit and snapshot, clocks, status scan and message encoding
+    private static final String[] HOT_PATHS = {
+            MarketNodeBenchmark.class.getSimpleName(),
+            ClockBenchmark.class.getSimpleName(),
+            FailureDetectorBenchmark.class.getSimpleName() + ".fullScan",
+            SerializationBenchmark.class.getSimpleName(),
+    };
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        String mode = (args.length > 0) ? args[0] : "compare";
+        Path baseline = Paths.get((args.length > 1) ? args[1] : DEFAULT_BASELINE);
+        if (!"compare".equals(mode) && !"record".equals(mode)) {
+            System.err.println("Usage: BaselineRunner [compare|record] [baseline.csv]");
+            System.exit(1);
+        }
+
+        Path results = "record".equals(mode) ? baseline : Paths.get(CURRENT_RESULTS);
+        if (results.getParent() != null) Files.createDirectories(results.getParent());
+        new Runner(options(results)).run();
+        if ("record".equals(mode)) {
+            System.out.println("Baseline recorded in " + baseline);
+            return;
+        }
+
+        int regressions = compare(read(baseline), read(results));
+        if (regressions > 0) {
+            System.out.printf("%d hot-path result(s) regressed by more than %.0f%%%n", regressions, REGRESSION_THRESHOLD * 100);
+            System.exit(2);
+        }
+        System.out.println("No hot-path regressions against " + baseline);
+    }
+
+    // short runs of every hot path, with the GC profiler for allocations per op
+    private static Options options(Path results) {
+        OptionsBuilder builder = new OptionsBuilder();
+        for (String benchmark : HOT_PATHS) builder.include(benchmark);
+        return builder
+                .addProfiler(GCProfiler.class)
+                .warmupIterations(2)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(3)
+                .measurementTime(TimeValue.seconds(1))
+                .forks(1)
+                .resultFormat(ResultFormatType.CSV)
+                .result(results.toString())
+                .build();
+    }
+
+    // prints every compared result and returns how many got worse than the threshold
+    private static int compare(Map<String, Row> baseline, Map<String, Row> current) {
+        int regressions = 0;
+        System.out.printf("%n%-90s %14s %14s %9s%n", "Benchmark", "baseline", "current", "change");
+        for (Map.Entry<String, Row> entry : current.entrySet()) {
+            Row now = entry.getValue();
+            Row before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-90s %14s %14.3f %9s%n", entry.getKey(), "-", now.score, "new");
+                continue;
+            }
+            double change = (before.score == 0) ? 0 : (now.score - before.score) / before.score;
+            // throughput regresses downwards, times and allocations upwards
+            double worse = now.higherIsBetter() ? -change : change;
+            double difference = Math.abs(now.score - before.score);
+            boolean regressed = worse > REGRESSION_THRESHOLD
+                    && difference > before.error + now.error
+                    && (!now.allocation || difference >= MIN_ALLOCATION_CHANGE);
+            if (regressed) regressions++;
+            System.out.printf("%-90s %14.3f %14.3f %+8.1f%%%s%n", entry.getKey(), before.score, now.score,
+                    change * 100, regressed ? "  REGRESSED" : "");
+        }
+        return regressions;
+    }
+
+    // primary scores and allocation rows of a jmh csv result file, keyed by benchmark and params
+    private static Map<String, Row> read(Path csv) throws IOException {
+        List<String> lines = Files.readAllLines(csv, StandardCharsets.UTF_8);
+        Map<String, Row> rows = new LinkedHashMap<>();
+        if (lines.isEmpty()) return rows;
+
+        List<String> header = splitCsv(lines.get(0));
+        int benchmarkColumn = header.indexOf("Benchmark");
+        int modeColumn = header.indexOf("Mode");
+        int scoreColumn = header.indexOf("Score");
+        int errorColumn = header.indexOf("Score Error (99.9%)");
+        for (String line : lines.subList(1, lines.size())) {
+            List<String> fields = splitCsv(line);
+            String benchmark = fields.get(benchmarkColumn);
+            if (benchmark.contains(":") && !benchmark.endsWith(ALLOCATION_METRIC)) continue; // other gc counters
+            StringBuilder key = new StringBuilder(benchmark.replace("com.stocksim.bench.", ""));
+            for (int i = 0; i < header.size(); i++) {
+                if (header.get(i).startsWith("Param: ") && i < fields.size() && !fields.get(i).isEmpty()) {
+                    key.append(' ').append(header.get(i).substring("Param: ".length())).append('=').append(fields.get(i));
+                }
+            }
+            double error = Double.parseDouble(fields.get(errorColumn)); // NaN for single-sample counters
+            rows.put(key.toString(), new Row(fields.get(modeColumn), benchmark.endsWith(ALLOCATION_METRIC),
+                    Double.parseDouble(fields.get(scoreColumn)), Double.isNaN(error) ? 0 : error));
+        }
+        return rows;
+    }
+
+    // jmh quotes text fields and writes numbers bare
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (char c : line.toCharArray()) {
+            if (c == '"') quoted = !quoted;
+            else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else field.append(c);
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static final class Row {
+        private final String mode;
+        private final boolean allocation;
+        private final double score;
+        private final double error;
+
+        private Row(String mode, boolean allocation, double score, double error) {
+            this.mode = mode;
+            this.allocation = allocation;
+            this.score = score;
+            this.error = error;
+        }
+
+        private boolean higherIsBetter() {
+            return "thrpt".equals(mode) && !allocation;
+        }
+    }
+}
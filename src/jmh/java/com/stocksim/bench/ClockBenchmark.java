@@ -0,0 +1,74 @@
+package com.stocksim.bench;
+
+import com.stocksim.core.LogicalClock;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-event cost of each logical clock: one send stamp and one receive merge, the two
+ * operations on every message. {@code synchronized} is the previous lock-based lamport
+ * clock. The clock is shared by all benchmark threads; sendContended runs four of them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClockBenchmark {
+
+    @Param({"synchronized", "lamport", "hlc"})
+    public String clockKind;
+
+    private LogicalClock clock;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        clock = "synchronized".equals(clockKind) ? new SynchronizedLamportClock() : LogicalClock.create(clockKind);
+    }
+
+    @Benchmark
+    public long send() {
+        return clock.updateOnSend();
+    }
+
+    // four threads stamping sends on the one clock, as the shard and rmi threads do
+    @Benchmark
+    @Threads(4)
+    public long sendContended() {
+        return clock.updateOnSend();
+    }
+
+    // merges a stamp just behind the clock, as from a peer that is slightly behind
+    @Benchmark
+    public long receive() {
+        clock.updateOnReceive(clock.getTime() - 1);
+        return clock.getTime();
+    }
+
+    // the lamport clock before it became lock free
+    private static final class SynchronizedLamportClock implements LogicalClock {
+        private long time;
+
+        @Override
+        public synchronized long tick() {
+            return ++time;
+        }
+
+        @Override
+        public synchronized long updateOnSend() {
+            return ++time;
+        }
+
+        @Override
+        public synchronized void updateOnReceive(long receivedTime) {
+            time = Math.max(time, receivedTime) + 1;
+        }
+
+        @Override
+        public synchronized long getTime() {
+            return time;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.stocksim.bench;
+
+import com.stocksim.core.IdRegistry;
+import com.stocksim.net.HeartbeatMonitor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Failure detector cost as the agent count grows. {@code heartbeatAndTick} is the steady
+ * state of the timer wheel (one heartbeat plus a wheel tick); {@code fullScan} is one pass
+ * of the old detector, which visited and mapped every agent every 2 seconds.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FailureDetectorBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int agentCount;
+
+    @Param({"0", "8"})
+    public double phiThreshold;
+
+    private HeartbeatMonitor monitor;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        IdRegistry agents = new IdRegistry();
+        monitor = new HeartbeatMonitor(agents, 10_000, phiThreshold, null);
+        for (int i = 0; i < agentCount; i++) monitor.updateHeartbeat(agents.intern("agent-" + i));
+    }
+
+    @Benchmark
+    public void heartbeatAndTick() {
+        monitor.updateHeartbeat(next++ % agentCount);
+        monitor.expire(System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public Map<String, String> fullScan() {
+        return monitor.getStatuses();
+    }
+}
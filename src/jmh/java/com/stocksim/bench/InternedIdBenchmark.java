@@ -0,0 +1,111 @@
+package com.stocksim.bench;
+
+import com.stocksim.core.IdRegistry;
+import com.stocksim.core.OrderBook;
+import com.stocksim.data.OrderType;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-message bookkeeping on the market node with String keys (the old path: book map,
+ * heartbeat map, labels() per metric) versus interned int ids (one registry lookup at the
+ * edge, then array indexing and cached metric children). Run with -prof gc to see the
+ * allocation per message.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class InternedIdBenchmark {
+
+    private static final String[] SYMBOLS = {"AAPL", "GOOG", "TSLA", "MSFT", "AMZN", "NVDA", "META", "NFLX"};
+
+    @Param({"1000", "100000"})
+    public int agentCount;
+
+    private String[] agentNames;
+    private int next;
+
+    // string-keyed state
+    private Map<String, OrderBook> booksBySymbol;
+    private Map<String, Long> lastSeenByAgent;
+
+    // interned state
+    private IdRegistry symbols;
+    private IdRegistry agents;
+    private OrderBook[] booksById;
+    private AtomicLongArray lastSeenById;
+    private Counter.Child[] tradesBySide;
+    private Gauge.Child[] statusById;
+
+    private Counter trades;
+    private Gauge status;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        trades = Counter.build().name("bench_trades").help("trades").labelNames("order_type").create();
+        status = Gauge.build().name("bench_status").help("status").labelNames("node_id").create();
+
+        agentNames = new String[agentCount];
+        booksBySymbol = new ConcurrentHashMap<>();
+        lastSeenByAgent = new ConcurrentHashMap<>();
+        symbols = new IdRegistry();
+        agents = new IdRegistry();
+        booksById = new OrderBook[SYMBOLS.length];
+        lastSeenById = new AtomicLongArray(agentCount);
+        statusById = new Gauge.Child[agentCount];
+        tradesBySide = new Counter.Child[OrderType.values().length];
+
+        for (String symbol : SYMBOLS) {
+            booksBySymbol.put(symbol, new OrderBook(symbol));
+            booksById[symbols.intern(symbol)] = new OrderBook(symbol);
+        }
+        for (int i = 0; i < agentCount; i++) {
+            // built at runtime like names decoded off the wire, so hash codes are not precomputed constants
+            agentNames[i] = new StringBuilder("agent-").append(i).toString();
+            int id = agents.intern(agentNames[i]);
+            statusById[id] = status.labels(agentNames[i]);
+            lastSeenByAgent.put(agentNames[i], 0L);
+        }
+        for (OrderType side : OrderType.values()) tradesBySide[side.ordinal()] = trades.labels(side.toString());
+    }
+
+    // book lookup, heartbeat timestamp, trade counter and status gauge keyed by strings
+    @Benchmark
+    public Object stringKeys() {
+        int i = next++;
+        String agent = agentNames[i % agentCount];
+        String symbol = SYMBOLS[i % SYMBOLS.length];
+        OrderType side = (i & 1) == 0 ? OrderType.BUY : OrderType.SELL;
+
+        OrderBook book = booksBySymbol.get(symbol);
+        lastSeenByAgent.put(agent, (long) i);
+        trades.labels(side.toString()).inc();
+        status.labels(agent).set(1);
+        return book;
+    }
+
+    // the same work after resolving the two strings to ids once
+    @Benchmark
+    public Object internedIds() {
+        int i = next++;
+        String agent = agentNames[i % agentCount];
+        String symbol = SYMBOLS[i % SYMBOLS.length];
+        OrderType side = (i & 1) == 0 ? OrderType.BUY : OrderType.SELL;
+
+        int agentId = agents.intern(agent);
+        OrderBook book = booksById[symbols.intern(symbol)];
+        lastSeenById.set(agentId, i);
+        tradesBySide[side.ordinal()].inc();
+        statusById[agentId].set(1);
+        return book;
+    }
+}
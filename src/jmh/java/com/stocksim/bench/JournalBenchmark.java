@@ -0,0 +1,126 @@
+package com.stocksim.bench;
+
+import com.stocksim.data.OrderType;
+import com.stocksim.data.Trade;
+import com.stocksim.journal.Journal;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Sustained journal appends per second under each fsync policy, and the time to
+ * recover (replay) a journal of 10M records.
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JournalBenchmark {
+
+    private static final int BATCH = 64;
+
+    @State(Scope.Thread)
+    public static class Appender {
+        @Param({"NONE", "INTERVAL", "BATCH"})
+        public String fsync;
+
+        Path directory;
+        Journal journal;
+        Trade trade;
+        long count;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("journal-bench");
+            journal = new Journal(directory, Journal.DEFAULT_SEGMENT_BYTES, Journal.FsyncPolicy.valueOf(fsync), 100);
+            journal.replay(NO_OP);
+            trade = new Trade("5f0c3b7e-9a1d-4d43-8f7e-2c1e9b0a6d55", "agent-7", "agent-7", "agent-12",
+                    "AAPL", 25, 187.25, 1_000_000, System.currentTimeMillis());
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            journal.close();
+            deleteRecursively(directory);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Recovery {
+        @Param({"10000000"})
+        public int records;
+
+        Path directory;
+
+        // writes the journal once; every measured shot replays it from scratch
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("journal-recovery");
+            Journal journal = new Journal(directory, Journal.DEFAULT_SEGMENT_BYTES, Journal.FsyncPolicy.NONE, 0);
+            journal.replay(NO_OP);
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < records; i++) {
+                if ((i & 1) == 0) {
+                    journal.appendOrder(i, now, i % 1000, 0, OrderType.BUY, 10, 18_725);
+                } else {
+                    journal.appendTrade(new Trade("t-" + i, "agent-1", "agent-1", "agent-2", "AAPL", 10, 187.25, i, now));
+                }
+            }
+            journal.close();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void append(Appender state) {
+        state.journal.appendTrade(state.trade);
+        if (++state.count % BATCH == 0) state.journal.endBatch();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public long recover(Recovery state) throws IOException {
+        Journal journal = new Journal(state.directory, Journal.DEFAULT_SEGMENT_BYTES, Journal.FsyncPolicy.NONE, 0);
+        long replayed = journal.replay(NO_OP);
+        journal.close();
+        return replayed;
+    }
+
+    private static final Journal.Listener NO_OP = new Journal.Listener() {
+        @Override
+        public void onName(Journal.NameKind kind, int id, String name) { }
+
+        @Override
+        public void onOrder(long lamportTimestamp, long systemTimeMillis, int agentId, int symbolId,
+                            OrderType side, int quantity, long priceTicks, long orderId) { }
+
+        @Override
+        public void onCancel(long lamportTimestamp, long systemTimeMillis, int agentId, int symbolId,
+                             long originalOrderId, long requestId) { }
+
+        @Override
+        public void onTrade(Trade trade) { }
+
+        @Override
+        public void onMark(long snapshotId, int shard) { }
+    };
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
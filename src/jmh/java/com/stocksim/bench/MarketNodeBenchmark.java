@@ -0,0 +1,85 @@
+package com.stocksim.bench;
+
+import com.stocksim.core.MarketNode;
+import com.stocksim.data.MessageType;
+import com.stocksim.data.Order;
+import com.stocksim.data.OrderType;
+import com.stocksim.data.SystemState;
+import com.stocksim.data.TradeMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The market node's entry points called in-process, without RMI in front. submitMessage is
+ * one order into a standalone node (sequencing, matching and trade recording on the
+ * pipeline threads; the ring blocks when full, so this is the sustained rate). getState is
+ * the snapshot the UI polls: the latest trades plus every known agent's status.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {
+        // measure the node's own cost: no busy answers or risk rejects from a few agents sending millions of orders
+        "-Dstocksim.admission.policy=block", "-Dstocksim.admission.agentRate=0",
+        "-Dstocksim.risk.maxOrdersPerSecond=1000000000", "-Dstocksim.risk.maxPosition=1000000000000",
+        "-Dstocksim.risk.maxExposure=1e18"})
+@State(Scope.Benchmark)
+public class MarketNodeBenchmark {
+
+    private static final int SYMBOLS = 8;
+    private static final int ORDERS = 4096;
+
+    @Param({"1000", "10000", "100000"})
+    public int agentCount;
+
+    private MarketNode node;
+    private TradeMessage[] orders;
+    private PrintStream console;
+    private int next;
+    private long lamport;
+
+    @Setup(Level.Trial)
+    public void setUp() throws RemoteException {
+        // the node prints every order; keep console i/o out of the measurement
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        node = new MarketNode("bench-node", 1, null, 0, -1);
+        for (int i = 0; i < agentCount; i++) {
+            node.submitMessage(new TradeMessage("agent-" + i, "MarketNode", MessageType.HEARTBEAT, null, 1));
+        }
+
+        // buys and sells around one price, so orders both trade and rest
+        orders = new TradeMessage[ORDERS];
+        for (int i = 0; i < ORDERS; i++) {
+            OrderType side = (i & 1) == 0 ? OrderType.BUY : OrderType.SELL;
+            Order order = new Order("agent-" + (i % agentCount), "SYM" + (i % SYMBOLS), 10, 100.0 + (i % 5) * 0.01, side);
+            orders[i] = new TradeMessage(order.getAgentId(), "MarketNode", MessageType.ORDER, order, 1);
+        }
+        for (TradeMessage order : orders) node.submitMessage(order); // fills the trade history
+        lamport = 2;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(console);
+    }
+
+    @Benchmark
+    public void submitMessage() throws RemoteException {
+        TradeMessage order = orders[next++ & (ORDERS - 1)];
+        node.submitMessage(new TradeMessage(order.getSenderId(), order.getReceiverId(), MessageType.ORDER,
+                order.getOrder(), lamport++));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public SystemState getState() throws RemoteException {
+        return node.getState();
+    }
+}
@@ -0,0 +1,72 @@
+package com.stocksim.bench;
+
+import com.stocksim.core.OrderBook;
+import com.stocksim.data.OrderType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching throughput and latency with a deep resting book.
+ * Throughput mode gives matches/sec, SampleTime mode gives the p99 match latency.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class OrderBookBenchmark {
+
+    private static final int LEVELS_PER_SIDE = 1000;
+    private static final long MID_TICKS = 10_000;
+    private static final int LOT = 10;
+    private static final int MAKER_BUYER = 0;
+    private static final int MAKER_SELLER = 1;
+    private static final int TAKER = 2;
+
+    @Param({"10000", "100000", "1000000"})
+    public int restingOrders;
+
+    private OrderBook book;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void fillBook() {
+        book = new OrderBook("AAPL");
+        OrderBook.FillHandler none = (maker, taker, side, qty, price) -> { };
+        for (int i = 0; i < restingOrders; i++) {
+            long offset = 1 + (i / 2) % LEVELS_PER_SIDE;
+            if ((i & 1) == 0) {
+                book.submit(MAKER_BUYER, OrderType.BUY, MID_TICKS - offset, LOT, none);
+            } else {
+                book.submit(MAKER_SELLER, OrderType.SELL, MID_TICKS + offset, LOT, none);
+            }
+        }
+    }
+
+    // takes the oldest order at the top of one side, then replenishes it so depth stays constant
+    @Benchmark
+    public void matchAndReplenish(Blackhole bh) {
+        boolean buy = (sequence++ & 1) == 0;
+        OrderBook.FillHandler sink = (maker, taker, side, qty, price) -> bh.consume(qty);
+        if (buy) {
+            long ask = book.bestAsk();
+            bh.consume(book.submit(TAKER, OrderType.BUY, ask, LOT, sink));
+            book.submit(MAKER_SELLER, OrderType.SELL, ask, LOT, sink);
+        } else {
+            long bid = book.bestBid();
+            bh.consume(book.submit(TAKER, OrderType.SELL, bid, LOT, sink));
+            book.submit(MAKER_BUYER, OrderType.BUY, bid, LOT, sink);
+        }
+    }
+
+    // rests an order and immediately pulls it
+    @Benchmark
+    public boolean insertAndCancel() {
+        long id = book.submit(MAKER_BUYER, OrderType.BUY, MID_TICKS - 1 - (sequence++ % LEVELS_PER_SIDE), LOT,
+                (maker, taker, side, qty, price) -> { });
+        return book.cancel(id);
+    }
+}
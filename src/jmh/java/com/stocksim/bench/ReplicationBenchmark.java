@@ -0,0 +1,110 @@
+package com.stocksim.bench;
+
+import com.stocksim.core.MarketNode;
+import com.stocksim.data.MessageType;
+import com.stocksim.data.Order;
+import com.stocksim.data.OrderType;
+import com.stocksim.data.TradeMessage;
+import com.stocksim.replication.NotLeaderException;
+import com.stocksim.replication.RaftNode;
+import com.stocksim.replication.ReplicaRemote;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Orders per second through a market node with and without replication. replicas=0 is a
+ * standalone node; 1 and 3 run that many replicas in this JVM over loopback RMI, with
+ * batches submitted straight to the leader. The ring blocks producers when full, so the
+ * score is the sustained rate including commit and apply; compare 3 against 0 for the
+ * replication overhead.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {
+        // measure the node's own cost: no busy answers or risk rejects from a few agents sending millions of orders
+        "-Dstocksim.admission.policy=block", "-Dstocksim.admission.agentRate=0",
+        "-Dstocksim.risk.maxOrdersPerSecond=1000000000", "-Dstocksim.risk.maxPosition=1000000000000",
+        "-Dstocksim.risk.maxExposure=1e18"})
+@State(Scope.Benchmark)
+@OperationsPerInvocation(ReplicationBenchmark.BATCH_SIZE)
+public class ReplicationBenchmark {
+
+    static final int BATCH_SIZE = 256;
+    private static final int REGISTRY_BASE_PORT = 1200;
+
+    @Param({"0", "1", "3"})
+    public int replicas;
+
+    private final List<RaftNode> rafts = new ArrayList<>();
+    private MarketNode[] nodes;
+    private MarketNode leader;
+    private List<TradeMessage> batch;
+    private PrintStream console;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // the node prints every order; keep console i/o out of the measurement
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        if (replicas == 0) {
+            leader = new MarketNode("bench-node", 1, null, 0, -1);
+        } else {
+            List<String> urls = new ArrayList<>();
+            for (int i = 0; i < replicas; i++) urls.add("//localhost:" + (REGISTRY_BASE_PORT + i) + "/" + ReplicaRemote.RMI_NAME);
+            nodes = new MarketNode[replicas];
+            for (int i = 0; i < replicas; i++) {
+                Registry registry = LocateRegistry.createRegistry(REGISTRY_BASE_PORT + i);
+                nodes[i] = new MarketNode("bench-node-" + i, 1, null, 0, -1);
+                RaftNode raft = nodes[i].replicate(i, urls);
+                registry.rebind(ReplicaRemote.RMI_NAME, raft);
+                rafts.add(raft);
+            }
+            for (RaftNode raft : rafts) raft.start();
+            leader = nodes[awaitLeader()];
+        }
+
+        // buys and sells around one price, so orders both trade and rest
+        batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            OrderType side = (i & 1) == 0 ? OrderType.BUY : OrderType.SELL;
+            Order order = new Order("agent-" + (i % 16), "SYM" + (i % 8), 10, 100.0 + (i % 5) * 0.01, side);
+            batch.add(new TradeMessage(order.getAgentId(), "MarketNode", MessageType.ORDER, order, i + 1));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (RaftNode raft : rafts) raft.shutdown();
+        System.setOut(console);
+    }
+
+    @Benchmark
+    public Object submitBatch() throws Exception {
+        try {
+            return leader.submitBatch(batch);
+        } catch (NotLeaderException e) {
+            // an election happened under load; follow the new leader like an agent would
+            leader = nodes[awaitLeader()];
+            return null;
+        }
+    }
+
+    private int awaitLeader() throws InterruptedException {
+        while (true) {
+            for (int i = 0; i < rafts.size(); i++) {
+                if (rafts.get(i).isLeader() && rafts.get(i).getLastApplied() > 0) return i;
+            }
+            Thread.sleep(10);
+        }
+    }
+}
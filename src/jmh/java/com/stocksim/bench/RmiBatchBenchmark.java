@@ -0,0 +1,67 @@
+package com.stocksim.bench;
+
+import com.stocksim.data.MessageType;
+import com.stocksim.data.Order;
+import com.stocksim.data.OrderType;
+import com.stocksim.data.TradeMessage;
+import com.stocksim.net.MarketNodeRemote;
+import org.openjdk.jmh.annotations.*;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Orders per second for one agent over loopback RMI, single submitMessage vs submitBatch.
+ * The remote end only acknowledges, so the score isolates the per-call round trip cost.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RmiBatchBenchmark {
+
+    @Param({"1", "16", "64", "256"})
+    public int batchSize;
+
+    private AckOnlyMarket server;
+    private MarketNodeRemote stub;
+    private List<TradeMessage> batch;
+
+    // counts orders rather than calls
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Orders {
+        public long orders;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws RemoteException {
+        server = new AckOnlyMarket();
+        stub = (MarketNodeRemote) UnicastRemoteObject.exportObject(server, 0);
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            Order order = new Order("agent-1", "AAPL", 10, 100.0 + i, OrderType.BUY);
+            batch.add(new TradeMessage("agent-1", "MarketNode", MessageType.ORDER, order, i + 1));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws RemoteException {
+        UnicastRemoteObject.unexportObject(server, true);
+    }
+
+    @Benchmark
+    public void send(Orders counter) throws RemoteException {
+        if (batchSize == 1) {
+            stub.submitMessage(batch.get(0));
+        } else {
+            stub.submitBatch(batch);
+        }
+        counter.orders += batchSize;
+    }
+}
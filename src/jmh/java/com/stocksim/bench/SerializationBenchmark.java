@@ -0,0 +1,96 @@
+package com.stocksim.bench;
+
+import com.stocksim.data.MessageType;
+import com.stocksim.data.Order;
+import com.stocksim.data.OrderType;
+import com.stocksim.data.TradeMessage;
+import com.stocksim.net.BinaryCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write and read cost of an Order and a TradeMessage: java serialization, which RMI does
+ * for every call, vs the NIO transport's binary codec. Run with -prof gc for bytes
+ * allocated per object; setup prints the encoded sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+    @Param({"java", "binary"})
+    public String codec;
+
+    private Order order;
+    private TradeMessage message;
+    private byte[] encodedOrder;
+    private byte[] encodedMessage;
+    private ByteBuffer buffer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        order = new Order("agent-17", "AAPL", 25, 187.25, OrderType.BUY);
+        message = new TradeMessage("agent-17", "MarketNode", MessageType.ORDER, order, 4242);
+        buffer = ByteBuffer.allocate(4096);
+        encodedOrder = write(order);
+        encodedMessage = write(message);
+        System.out.printf("%n[%s] bytes per Order: %d, per TradeMessage: %d%n", codec, encodedOrder.length, encodedMessage.length);
+    }
+
+    @Benchmark
+    public byte[] writeOrder() throws IOException {
+        return write(order);
+    }
+
+    @Benchmark
+    public Object readOrder() throws Exception {
+        return read(encodedOrder, false);
+    }
+
+    @Benchmark
+    public byte[] writeMessage() throws IOException {
+        return write(message);
+    }
+
+    @Benchmark
+    public Object readMessage() throws Exception {
+        return read(encodedMessage, true);
+    }
+
+    private byte[] write(Object value) throws IOException {
+        if ("java".equals(codec)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(value);
+            }
+            return bytes.toByteArray();
+        }
+        buffer.clear();
+        if (value instanceof TradeMessage) BinaryCodec.putMessage(buffer, (TradeMessage) value);
+        else BinaryCodec.putOrder(buffer, (Order) value);
+        byte[] bytes = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private Object read(byte[] bytes, boolean isMessage) throws Exception {
+        if ("java".equals(codec)) {
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                return in.readObject();
+            }
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        return isMessage ? BinaryCodec.getMessage(in) : BinaryCodec.getOrder(in);
+    }
+}
@@ -0,0 +1,73 @@
+package com.stocksim.bench;
+
+import com.stocksim.sharding.ShardMap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routing cost of a sharded market as nodes are added. {@code ownerOf} is the per-order
+ * lookup a client and a node both do, {@code routeBatch} groups a 256-order batch into
+ * per-node sub-batches, and {@code addNode} rebuilds the ring for one more node. The share
+ * of symbols that change owner on that add is printed once per trial (ideally 1/(N+1)).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ShardMapBenchmark {
+
+    private static final int SYMBOLS = 10_000;
+    private static final int BATCH_SIZE = 256;
+
+    @Param({"1", "2", "4", "8"})
+    public int nodes;
+
+    private ShardMap map;
+    private String[] symbols;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = new ShardMap();
+        for (int i = 0; i < nodes; i++) map = map.withNode("market-shard-" + i, "//localhost:" + (1300 + i) + "/MarketNode");
+        symbols = new String[SYMBOLS];
+        for (int i = 0; i < SYMBOLS; i++) symbols[i] = "SYM" + i;
+
+        ShardMap grown = map.withNode("market-shard-" + nodes, "//localhost:" + (1300 + nodes) + "/MarketNode");
+        int moved = 0;
+        for (String symbol : symbols) {
+            if (!map.ownerOf(symbol).equals(grown.ownerOf(symbol))) moved++;
+        }
+        System.out.printf("%n%d -> %d nodes moves %.1f%% of %d symbols (ideal %.1f%%)%n",
+                nodes, nodes + 1, 100.0 * moved / SYMBOLS, SYMBOLS, 100.0 / (nodes + 1));
+    }
+
+    @Benchmark
+    public String ownerOf() {
+        return map.ownerOf(symbols[next++ % SYMBOLS]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Map<String, List<String>> routeBatch() {
+        Map<String, List<String>> byNode = new HashMap<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            String symbol = symbols[next++ % SYMBOLS];
+            byNode.computeIfAbsent(map.ownerOf(symbol), n -> new ArrayList<>()).add(symbol);
+        }
+        return byNode;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public ShardMap addNode() {
+        return map.withNode("market-shard-" + nodes, "//localhost:" + (1300 + nodes) + "/MarketNode");
+    }
+}
@@ -0,0 +1,76 @@
+package com.stocksim.bench;
+
+import com.stocksim.core.OrderBook;
+import com.stocksim.core.OrderPipeline;
+import com.stocksim.core.ShardedSequencer;
+import com.stocksim.data.Order;
+import com.stocksim.data.MessageType;
+import com.stocksim.data.OrderType;
+import com.stocksim.data.TradeMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Order throughput through the sharded ring pipelines as shards are added.
+ * Eight producer threads play the RMI workers; shards=1 is equivalent to the old global lock.
+ * Producers block when a ring is full, so the score is the pipelines' sustained rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class ShardedSequencerBenchmark {
+
+    private static final int SYMBOLS = 64;
+
+    @Param({"1", "2", "4", "8"})
+    public int shards;
+
+    private ShardedSequencer sequencer;
+    private TradeMessage[] messages;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Map<String, OrderBook> books = new HashMap<>();
+        String[] symbols = new String[SYMBOLS];
+        for (int i = 0; i < SYMBOLS; i++) {
+            symbols[i] = "SYM" + i;
+            books.put(symbols[i], new OrderBook(symbols[i]));
+        }
+
+        OrderPipeline.Handler none = (event, sequence, endOfBatch) -> { };
+        OrderBook.FillHandler noFills = (maker, taker, side, qty, price) -> { };
+        OrderPipeline.Handler match = (event, sequence, endOfBatch) -> {
+            Order order = event.getMessage().getOrder();
+            books.get(order.getStockSymbol()).submit(0, order.getType(),
+                    OrderBook.toTicks(order.getPrice()), order.getQuantity(), noFills);
+        };
+        sequencer = new ShardedSequencer(shards, 16384, shard -> new OrderPipeline.Handler[]{none, match, none, none});
+
+        // pre-built messages so producers measure publishing, not object creation
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        messages = new TradeMessage[4096];
+        for (int i = 0; i < messages.length; i++) {
+            OrderType side = random.nextBoolean() ? OrderType.BUY : OrderType.SELL;
+            Order order = new Order("agent", symbols[random.nextInt(SYMBOLS)], 10, 99.5 + random.nextInt(100) / 100.0, side);
+            messages[i] = new TradeMessage("agent", "MarketNode", MessageType.ORDER, order, i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sequencer.shutdown();
+    }
+
+    @Benchmark
+    public void publishOrder() {
+        sequencer.publishOrder(messages[ThreadLocalRandom.current().nextInt(messages.length)]);
+    }
+}
@@ -0,0 +1,52 @@
+package com.stocksim.bench;
+
+import com.stocksim.core.OrderDraft;
+import com.stocksim.core.PriceBoard;
+import com.stocksim.core.TradingStrategy;
+import com.stocksim.data.Bar;
+import com.stocksim.data.MarketDataUpdate;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one agent decision per strategy, reading a price board that holds a live-looking
+ * book. Run with {@code -prof gc}: gc.alloc.rate.norm should be 0 bytes per decision.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class StrategyBenchmark {
+
+    private static final String[] SYMBOLS = {"AAPL", "GOOG", "TSLA"};
+
+    @Param({"noise", "maker", "momentum"})
+    public String strategyKind;
+
+    private TradingStrategy strategy;
+    private PriceBoard prices;
+    private final Random random = new Random(42);
+    private final OrderDraft draft = new OrderDraft();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        strategy = TradingStrategy.create(strategyKind);
+        prices = new PriceBoard(SYMBOLS, PriceBoard.DEFAULT_REFERENCE_PRICE);
+        List<Bar> noBars = List.of();
+        for (int i = 0; i < SYMBOLS.length; i++) {
+            double mid = 100 + i;
+            prices.apply(new MarketDataUpdate(SYMBOLS[i], 1, mid, 10, mid, 1000, 100,
+                    mid - 0.01, 300, mid + 0.01, 200, noBars, noBars));
+        }
+    }
+
+    @Benchmark
+    public long decide() {
+        return strategy.decide(prices, random, draft) ? draft.getPriceTicks() : 0;
+    }
+}
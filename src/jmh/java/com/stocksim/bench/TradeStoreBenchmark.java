@@ -0,0 +1,99 @@
+package com.stocksim.bench;
+
+import com.stocksim.data.Trade;
+import com.stocksim.data.TradeQuery;
+import com.stocksim.data.TradeQueryResult;
+import com.stocksim.history.TradeStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Trade history queries over 1M trades of 100 symbols and 1k agents, one trade per ms:
+ * one symbol's VWAP over the whole history and over a 1-minute window, one agent's trades
+ * in a window, and the same VWAP computed by filtering the trades as rows.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TradeStoreBenchmark {
+
+    private static final int SYMBOLS = 100;
+    private static final int AGENTS = 1000;
+    private static final long START_MILLIS = 1_700_000_000_000L;
+
+    @Param({"1000000"})
+    public int trades;
+
+    Path directory;
+    TradeStore store;
+    List<Trade> rows;
+    TradeQuery vwapAll;
+    TradeQuery vwapMinute;
+    TradeQuery agentMinute;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("trade-history-bench");
+        store = new TradeStore("bench", directory, 8192, 0, 16384);
+        rows = new ArrayList<>(trades);
+        for (int i = 0; i < trades; i++) {
+            String buyer = "agent-" + (i * 7 % AGENTS);
+            Trade trade = new Trade("t-" + i, buyer, buyer, "agent-" + (i * 13 % AGENTS), "SYM" + (i % SYMBOLS),
+                    1 + i % 100, 100 + (i % 500) * 0.01, i, START_MILLIS + i);
+            store.append(trade);
+            rows.add(trade);
+        }
+        store.flush();
+        long middle = START_MILLIS + trades / 2;
+        vwapAll = TradeQuery.aggregate("SYM42", START_MILLIS, START_MILLIS + trades);
+        vwapMinute = TradeQuery.aggregate("SYM42", middle, middle + 60_000);
+        agentMinute = new TradeQuery(null, "agent-42", middle, middle + 60_000, 100);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public double vwapAll() {
+        return store.query(vwapAll).getVwap();
+    }
+
+    @Benchmark
+    public double vwapMinute() {
+        return store.query(vwapMinute).getVwap();
+    }
+
+    @Benchmark
+    public TradeQueryResult agentMinute() {
+        return store.query(agentMinute);
+    }
+
+    // the row-at-a-time baseline: every trade is tested against the filter
+    @Benchmark
+    public double vwapAllRows() {
+        long volume = 0;
+        double notional = 0;
+        for (Trade trade : rows) {
+            if (vwapAll.matches(trade)) {
+                volume += trade.getQuantity();
+                notional += trade.getPrice() * trade.getQuantity();
+            }
+        }
+        return volume == 0 ? 0 : notional / volume;
+    }
+}
@@ -0,0 +1,100 @@
+package com.stocksim.bench;
+
+import com.stocksim.data.MessageType;
+import com.stocksim.data.Order;
+import com.stocksim.data.OrderType;
+import com.stocksim.data.TradeMessage;
+import com.stocksim.net.BinaryCodec;
+import com.stocksim.net.MarketNodeRemote;
+import com.stocksim.net.NioMarketClient;
+import com.stocksim.net.NioMarketServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RMI vs the binary NIO transport for one order message.
+ * roundTrip gives RTT (SampleTime percentiles); run with -prof gc for allocations per message.
+ * encode compares the per-message encoding cost, and setup prints bytes per message.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransportBenchmark {
+
+    private static final int NIO_BENCH_PORT = NioMarketServer.DEFAULT_PORT + 100;
+
+    @Param({"rmi", "nio"})
+    public String transport;
+
+    private AckOnlyMarket server;
+    private NioMarketServer nioServer;
+    private MarketNodeRemote client;
+    private TradeMessage message;
+    private ByteBuffer buffer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Order order = new Order("agent-17", "AAPL", 25, 187.25, OrderType.BUY);
+        message = new TradeMessage("agent-17", "MarketNode", MessageType.ORDER, order, 4242);
+        buffer = ByteBuffer.allocate(4096);
+        server = new AckOnlyMarket();
+
+        if ("rmi".equals(transport)) {
+            client = (MarketNodeRemote) UnicastRemoteObject.exportObject(server, 0);
+        } else {
+            nioServer = new NioMarketServer(server, NIO_BENCH_PORT);
+            nioServer.start();
+            client = new NioMarketClient("localhost", NIO_BENCH_PORT);
+        }
+
+        System.out.printf("%n[%s] bytes per ORDER message: %d%n", transport, encodedSize());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (nioServer != null) {
+            ((NioMarketClient) client).close();
+            nioServer.stop();
+        } else {
+            UnicastRemoteObject.unexportObject(server, true);
+        }
+    }
+
+    @Benchmark
+    public void roundTrip() throws RemoteException {
+        client.submitMessage(message);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int encode() throws IOException {
+        if ("rmi".equals(transport)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(message);
+            }
+            return bytes.size();
+        }
+        buffer.clear();
+        int start = BinaryCodec.beginFrame(buffer, BinaryCodec.SUBMIT, 1);
+        BinaryCodec.putMessage(buffer, message);
+        BinaryCodec.endFrame(buffer, start);
+        return buffer.position();
+    }
+
+    // payload size as it goes on the wire (java serialization for rmi, one frame for nio)
+    private int encodedSize() throws IOException {
+        return encode();
+    }
+}
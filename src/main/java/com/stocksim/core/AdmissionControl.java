@@ -0,0 +1,116 @@
+package com.stocksim.core;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Admission control at the market node's ingress, so overload turns into "busy" answers the
+ * agents back off on instead of unbounded queueing. Orders pass a per-agent token bucket,
+ * then must fit under the queue limit of their shard's ring. What happens at the limit is the
+ * {@link Policy}. Heartbeats are never refused: dropping them would fail healthy agents.
+ * Cancels skip the bucket, as they only take risk off the book.
+ * The bucket is the node's throttle: it owns per-agent rate limiting of what is taken in.
+ * {@link PreTradeRisk}'s order rate is a separate risk limit, on orders that would trade.
+ *
+ * Configured with system properties (defaults in brackets): stocksim.admission.policy
+ * (reject), queueLimit (8192 orders per shard), maxQueueMillis (50, for SHED), agentRate
+ * (10000 orders/s, 0 turns buckets off) and agentBurst (2000 orders).
+ */
+public final class AdmissionControl {
+
+    public static final String PREFIX = "stocksim.admission.";
+
+    // busy reasons, also the reason label of the shed counter
+    public static final String QUEUE_FULL = "queue-full";
+    public static final String AGENT_RATE = "agent-rate";
+    public static final String STALE = "stale";
+
+    public enum Policy {
+        BLOCK,      // wait for room in the ring (no admission control, latency grows without bound)
+        REJECT,     // answer busy to orders that would take a shard past its queue limit
+        SHED        // as REJECT, and drop executeBatch orders that waited in the ring longer than maxQueueMillis
+    }
+
+    private static final int AGENTS_PER_CHUNK = 1024;
+    private static final int AGENT_STRIDE = 8;  // one long per agent, padded to a cache line
+
+    private final Policy policy;
+    private final int queueLimit;
+    private final long maxQueueNanos;
+    private final long nanosPerOrder;           // bucket refill interval, 0 if buckets are off
+    private final long burstNanos;              // how far ahead of now an agent may run
+
+    // per agent: the time its bucket is next full again (generic cell rate form of a token bucket)
+    private volatile AtomicLongArray[] agentChunks = new AtomicLongArray[1];
+
+    public AdmissionControl(Policy policy, int queueLimit, long maxQueueMillis, int agentRate, int agentBurst) {
+        this.policy = policy;
+        this.queueLimit = queueLimit;
+        this.maxQueueNanos = TimeUnit.MILLISECONDS.toNanos(maxQueueMillis);
+        this.nanosPerOrder = agentRate > 0 ? TimeUnit.SECONDS.toNanos(1) / agentRate : 0;
+        this.burstNanos = nanosPerOrder * Math.max(1, agentBurst);
+    }
+
+    // the stocksim.admission.* system properties, defaults for the ones not set
+    public static AdmissionControl fromSystemProperties() {
+        return new AdmissionControl(
+                Policy.valueOf(System.getProperty(PREFIX + "policy", "reject").toUpperCase()),
+                Integer.getInteger(PREFIX + "queueLimit", 8192),
+                Long.getLong(PREFIX + "maxQueueMillis", 50),
+                Integer.getInteger(PREFIX + "agentRate", 10_000),
+                Integer.getInteger(PREFIX + "agentBurst", 2_000));
+    }
+
+    public Policy getPolicy() { return policy; }
+    public int getQueueLimit() { return queueLimit; }
+
+    /**
+     * Takes one token from the agent's bucket, false if it is empty. agentId is the interned id,
+     * or -1 for an agent not interned yet: its first orders are let through.
+     */
+    public boolean tryAcquire(int agentId, long nowNanos) {
+        if (nanosPerOrder == 0 || agentId < 0) return true;
+        AtomicLongArray agents = agentChunk(agentId);
+        int index = (agentId % AGENTS_PER_CHUNK) * AGENT_STRIDE;
+        while (true) {
+            long full = agents.get(index);
+            long next = Math.max(full, nowNanos) + nanosPerOrder;
+            if (next - nowNanos > burstNanos) return false;
+            if (agents.compareAndSet(index, full, next)) return true;
+        }
+    }
+
+    // gives back the token tryAcquire took for an order that was then refused, so it is not charged for it
+    public void release(int agentId) {
+        if (nanosPerOrder == 0 || agentId < 0) return;
+        agentChunk(agentId).getAndAdd((agentId % AGENTS_PER_CHUNK) * AGENT_STRIDE, -nanosPerOrder);
+    }
+
+    // under SHED, an order published at publishNanos has waited too long to be worth matching; only asked
+    // for orders whose caller still waits for an ack, as a SEQUENCED order has been promised a match
+    public boolean isStale(long publishNanos) {
+        return policy == Policy.SHED && System.nanoTime() - publishNanos > maxQueueNanos;
+    }
+
+    private AtomicLongArray agentChunk(int agentId) {
+        int chunk = agentId / AGENTS_PER_CHUNK;
+        AtomicLongArray[] current = agentChunks;
+        if (chunk < current.length && current[chunk] != null) return current[chunk];
+        return createAgentChunk(chunk);
+    }
+
+    private synchronized AtomicLongArray createAgentChunk(int chunk) {
+        AtomicLongArray[] copy = Arrays.copyOf(agentChunks, Math.max(agentChunks.length, chunk + 1));
+        if (copy[chunk] == null) copy[chunk] = new AtomicLongArray(AGENTS_PER_CHUNK * AGENT_STRIDE);
+        agentChunks = copy;
+        return copy[chunk];
+    }
+
+    @Override
+    public String toString() {
+        return "AdmissionControl{" + "policy=" + policy + ", queueLimit=" + queueLimit
+                + ", maxQueueMillis=" + TimeUnit.NANOSECONDS.toMillis(maxQueueNanos)
+                + ", agentRate=" + (nanosPerOrder == 0 ? "off" : TimeUnit.SECONDS.toNanos(1) / nanosPerOrder) + '}';
+    }
+}
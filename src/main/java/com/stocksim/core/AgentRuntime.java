@@ -0,0 +1,77 @@
+package com.stocksim.core;
+
+import com.stocksim.logging.Log;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many TradingAgents on a small shared scheduler instead of one thread per agent.
+ * Each agent is a timer entry: when it fires the agent takes one action, then is
+ * rescheduled after a delay drawn from the {@link OrderRateModel}. Heartbeats are a second
+ * timer entry per agent on a fixed period, so a slow order rate never starves the market's
+ * failure detector. The two entries can fire on different threads at once; the agent's lock keeps
+ * its steps apart. Nothing sleeps, so the agent count is bounded by memory rather than by threads.
+ */
+public class AgentRuntime {
+
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final OrderRateModel rateModel;
+    private final AtomicInteger activeAgents = new AtomicInteger();
+
+    // threads is the event-loop size, usually the core count
+    public AgentRuntime(int threads, OrderRateModel rateModel) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.scheduler = new ScheduledThreadPoolExecutor(threads,
+                r -> new Thread(r, "agent-loop-" + threadNumber.incrementAndGet()));
+        this.scheduler.setRemoveOnCancelPolicy(true);
+        this.rateModel = rateModel;
+    }
+
+    // starts an agent; the first action is one model delay away and the first heartbeat a random
+    // part of the heartbeat period away, which staggers start-up
+    public void add(TradingAgent agent) {
+        activeAgents.incrementAndGet();
+        scheduler.schedule(() -> fire(agent), rateModel.nextDelayNanos(ThreadLocalRandom.current()), TimeUnit.NANOSECONDS);
+        scheduler.schedule(() -> beat(agent),
+                ThreadLocalRandom.current().nextLong(TradingAgent.HEARTBEAT_INTERVAL_MS), TimeUnit.MILLISECONDS);
+    }
+
+    public int getActiveAgents() {
+        return activeAgents.get();
+    }
+
+    // stops every agent
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    // one step for one agent, then reschedule unless it stopped
+    private void fire(TradingAgent agent) {
+        try {
+            if (agent.act()) {
+                scheduler.schedule(() -> fire(agent),
+                        rateModel.nextDelayNanos(ThreadLocalRandom.current()), TimeUnit.NANOSECONDS);
+                return;
+            }
+        } catch (RuntimeException e) {
+            Log.error("Agent {} crashed: {}").arg(agent.getAgentId()).arg(e).log();
+            agent.stop();
+        }
+        activeAgents.decrementAndGet();
+    }
+
+    // one heartbeat for one agent, then the next one a period later unless it stopped
+    private void beat(TradingAgent agent) {
+        try {
+            if (agent.heartbeat()) {
+                scheduler.schedule(() -> beat(agent), TradingAgent.HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            }
+        } catch (RuntimeException e) {
+            Log.error("Agent {} crashed: {}").arg(agent.getAgentId()).arg(e).log();
+            agent.stop();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.stocksim.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Current agent statuses plus a bounded, versioned log of recent changes, so a
+ * subscriber can fetch only what changed since its last version. A subscriber that
+ * falls further behind than the log holds gets the full map instead.
+ */
+public class AgentStatusLog {
+
+    private final Map<String, String> statuses = new HashMap<>();
+    private final String[] changedAgents;
+    private final String[] changedStatuses;
+    private long version; // number of changes recorded so far
+
+    // capacity is how many changes are kept for incremental catch-up
+    public AgentStatusLog(int capacity) {
+        this.changedAgents = new String[capacity];
+        this.changedStatuses = new String[capacity];
+    }
+
+    // sets an agent's status, returns the previous one (null if unknown); only real changes are logged
+    public synchronized String update(String agentId, String status) {
+        String previous = statuses.put(agentId, status);
+        if (!status.equals(previous)) {
+            int slot = (int) (version % changedAgents.length);
+            changedAgents[slot] = agentId;
+            changedStatuses[slot] = status;
+            version++;
+        }
+        return previous;
+    }
+
+    /**
+     * Changes after sinceVersion, latest status per agent. If those changes are no longer
+     * held, or sinceVersion is negative, the result is the full map with reset set.
+     */
+    public synchronized Changes changesSince(long sinceVersion) {
+        Map<String, String> changed = new HashMap<>();
+        if (sinceVersion < 0 || sinceVersion < version - changedAgents.length || sinceVersion > version) {
+            changed.putAll(statuses);
+            return new Changes(changed, version, true);
+        }
+        for (long v = sinceVersion; v < version; v++) {
+            int slot = (int) (v % changedAgents.length);
+            changed.put(changedAgents[slot], changedStatuses[slot]);
+        }
+        return new Changes(changed, version, false);
+    }
+
+    // copy of every current status
+    public synchronized Map<String, String> snapshot() {
+        return new HashMap<>(statuses);
+    }
+
+    // result of changesSince
+    public static final class Changes {
+        public final Map<String, String> statuses;
+        public final long version;  // pass as sinceVersion next time
+        public final boolean reset; // statuses is the full map
+
+        private Changes(Map<String, String> statuses, long version, boolean reset) {
+            this.statuses = statuses;
+            this.version = version;
+            this.reset = reset;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.stocksim.core;
+
+import com.stocksim.data.MessageAck;
+import com.stocksim.data.TradeMessage;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Orders of one {@link MarketNode#executeBatch} call, waiting for their execution acks.
+ * The rmi thread publishes the orders with the batch attached, the stage that finishes each
+ * order completes its ack, and the rmi thread collects them once all are in or time is up.
+ * Acks are published through an atomic array: after a timed-out wait the latch gives no
+ * happens-before edge, so a plain array could show an ack before its fields.
+ */
+final class ExecutionBatch {
+
+    private final Map<TradeMessage, Integer> slots; // message -> index in acks, written before publishing
+    private final AtomicReferenceArray<MessageAck> acks;
+    private final CountDownLatch remaining;
+
+    ExecutionBatch(List<TradeMessage> orders) {
+        this.slots = new IdentityHashMap<>(orders.size() * 2);
+        for (int i = 0; i < orders.size(); i++) slots.put(orders.get(i), i);
+        this.acks = new AtomicReferenceArray<>(orders.size());
+        this.remaining = new CountDownLatch(orders.size());
+    }
+
+    // called once per order, on whichever thread finished it
+    void complete(TradeMessage message, MessageAck ack) {
+        Integer slot = slots.get(message);
+        if (slot == null) return;
+        acks.set(slot, ack);
+        remaining.countDown();
+    }
+
+    /**
+     * Waits up to timeoutMillis for every order, then replaces each executed order's entry in
+     * acks (aligned with messages) by its execution ack. Orders still in flight keep their
+     * sequencing ack.
+     */
+    void awaitInto(List<TradeMessage> messages, List<MessageAck> acks, long timeoutMillis) {
+        try {
+            remaining.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (int i = 0; i < messages.size(); i++) {
+            Integer slot = slots.get(messages.get(i));
+            if (slot == null) continue;
+            MessageAck executed = this.acks.get(slot);
+            if (executed != null) acks.set(i, executed);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.stocksim.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Hybrid logical clock (Kulkarni et al.): a lamport clock that stays within clock skew of
+ * wall time. A stamp packs the physical part (epoch millis) in the high 48 bits and a logical
+ * counter in the low 16, so stamps compare as plain longs and fit the existing lamport fields.
+ * With that packing every HLC rule is "max of the candidates, plus one on a tie".
+ */
+public class HybridLogicalClock implements LogicalClock {
+
+    public static final int LOGICAL_BITS = 16;
+
+    private final AtomicLong time = new AtomicLong();
+    private final LongSupplier wallClock;
+
+    public HybridLogicalClock() {
+        this(System::currentTimeMillis);
+    }
+
+    // wall clock injectable for tests and benchmarks
+    public HybridLogicalClock(LongSupplier wallClock) {
+        this.wallClock = wallClock;
+    }
+
+    // physical part of a stamp, in epoch millis
+    public static long millisOf(long stamp) {
+        return stamp >>> LOGICAL_BITS;
+    }
+
+    // logical part of a stamp (events within the same millisecond)
+    public static int counterOf(long stamp) {
+        return (int) (stamp & ((1 << LOGICAL_BITS) - 1));
+    }
+
+    @Override
+    public long tick() {
+        return advance(0);
+    }
+
+    @Override
+    public long updateOnSend() {
+        return advance(0);
+    }
+
+    @Override
+    public void updateOnReceive(long receivedTime) {
+        advance(receivedTime);
+    }
+
+    @Override
+    public long getTime() {
+        return time.get();
+    }
+
+    // new stamp = max(last + 1, received + 1, now with counter 0)
+    private long advance(long receivedTime) {
+        long physical = wallClock.getAsLong() << LOGICAL_BITS;
+        long current;
+        long next;
+        do {
+            current = time.get();
+            next = Math.max(Math.max(current, receivedTime) + 1, physical);
+        } while (!time.compareAndSet(current, next));
+        return next;
+    }
+
+    @Override
+    public String toString() {
+        long stamp = time.get();
+        return "HybridLogicalClock{" + "millis=" + millisOf(stamp) + ", counter=" + counterOf(stamp) + '}';
+    }
+}
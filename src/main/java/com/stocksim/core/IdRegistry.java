@@ -0,0 +1,109 @@
+package com.stocksim.core;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Interns names (symbols, agent ids) to dense int ids 0, 1, 2, ... in registration order.
+ * Strings are resolved to ids once at the edge; after that hot paths index arrays by id
+ * instead of hashing strings. Lookups are lock-free, registration takes a lock.
+ */
+public final class IdRegistry {
+
+    // called (under the registry lock) for each new name, in id order
+    public interface Listener {
+        void onRegister(int id, String name);
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private volatile Table table = new Table(INITIAL_CAPACITY * 2);
+    private volatile String[] names = new String[INITIAL_CAPACITY];
+    private volatile int size;
+    private Listener listener;
+
+    // returns the id for name, registering it if new
+    public int intern(String name) {
+        int id = table.find(name);
+        return id >= 0 ? id : register(name);
+    }
+
+    // id for name, or -1 if it was never registered
+    public int idOf(String name) {
+        return table.find(name);
+    }
+
+    public String nameOf(int id) {
+        return names[id];
+    }
+
+    // number of registered names (ids are 0 until size - 1)
+    public int size() {
+        return size;
+    }
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    private synchronized int register(String name) {
+        int existing = table.find(name);
+        if (existing >= 0) return existing;
+
+        int id = size;
+        if (id == names.length) names = Arrays.copyOf(names, id * 2);
+        names[id] = name;
+        // keep the hash table at most half full
+        if ((id + 1) * 2 > table.capacity()) table = table.grow();
+        table.insert(name, id);
+        size = id + 1;
+
+        if (listener != null) listener.onRegister(id, name);
+        return id;
+    }
+
+    // open-addressing name -> id table; keys are published after their id so readers never see a half entry
+    private static final class Table {
+        private final AtomicReferenceArray<String> keys;
+        private final int[] ids;
+        private final int mask;
+
+        private Table(int capacity) {
+            this.keys = new AtomicReferenceArray<>(capacity);
+            this.ids = new int[capacity];
+            this.mask = capacity - 1;
+        }
+
+        private int capacity() {
+            return ids.length;
+        }
+
+        private int find(String name) {
+            for (int i = spread(name.hashCode()) & mask; ; i = (i + 1) & mask) {
+                String key = keys.get(i);
+                if (key == null) return -1;
+                if (key.equals(name)) return ids[i];
+            }
+        }
+
+        private void insert(String name, int id) {
+            int i = spread(name.hashCode()) & mask;
+            while (keys.get(i) != null) i = (i + 1) & mask;
+            ids[i] = id;
+            keys.set(i, name);
+        }
+
+        private Table grow() {
+            Table bigger = new Table(ids.length * 2);
+            for (int i = 0; i < ids.length; i++) {
+                String key = keys.get(i);
+                if (key != null) bigger.insert(key, ids[i]);
+            }
+            return bigger;
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
@@ -1,42 +1,45 @@
 package com.stocksim.core;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
 
-// lamport clock for ordering events in distributed system
-public class LamportClock implements Serializable {
-    private static final long serialVersionUID = 1L;
+// lamport clock for ordering events in distributed system, lock free
+public class LamportClock implements LogicalClock, Serializable {
+    private static final long serialVersionUID = 2L;
 
     // local logical time
-    private long time;
+    private final AtomicLong time = new AtomicLong();
 
     // start clock at 0
     public LamportClock() {
-        this.time = 0;
     }
 
     // internal event tick
-    public synchronized void tick() {
-        this.time++;
+    @Override
+    public long tick() {
+        return time.incrementAndGet();
     }
 
     // outgoing message tick
-    public synchronized long updateOnSend() {
-        this.time++;
-        return this.time;
+    @Override
+    public long updateOnSend() {
+        return time.incrementAndGet();
     }
 
     // update clock on receiving timestamp
-    public synchronized void updateOnReceive(long receivedTime) {
-        this.time = Math.max(this.time, receivedTime) + 1;
+    @Override
+    public void updateOnReceive(long receivedTime) {
+        time.accumulateAndGet(receivedTime, (current, received) -> Math.max(current, received) + 1);
     }
 
     // get current logical time
-    public synchronized long getTime() {
-        return this.time;
+    @Override
+    public long getTime() {
+        return time.get();
     }
 
     @Override
     public String toString() {
-        return "LamportClock{" + "time=" + time + '}';
+        return "LamportClock{" + "time=" + time.get() + '}';
     }
 }
@@ -0,0 +1,38 @@
+package com.stocksim.core;
+
+/**
+ * Logical clock stamping events with a long, so that if event a happened before event b
+ * then stamp(a) < stamp(b). Implementations are thread safe.
+ *
+ * The clock used by agents and market nodes is picked with -Dstocksim.clock=lamport|hlc
+ * (default lamport), see {@link #fromSystemProperty()}. Stamps travel as a single long, so
+ * there is no vector clock: one squeezed into a long cannot tell concurrent events apart.
+ */
+public interface LogicalClock {
+
+    String PROPERTY = "stocksim.clock";
+
+    // local event, returns its timestamp
+    long tick();
+
+    // outgoing message, returns the timestamp to send
+    long updateOnSend();
+
+    // merges a received timestamp
+    void updateOnReceive(long receivedTime);
+
+    // current time, without advancing the clock
+    long getTime();
+
+    // the clock named by the stocksim.clock system property
+    static LogicalClock fromSystemProperty() {
+        return create(System.getProperty(PROPERTY, "lamport"));
+    }
+
+    // lamport or hlc
+    static LogicalClock create(String kind) {
+        if ("lamport".equals(kind)) return new LamportClock();
+        if ("hlc".equals(kind)) return new HybridLogicalClock();
+        throw new IllegalArgumentException("Unknown clock '" + kind + "', expected lamport or hlc");
+    }
+}
@@ -0,0 +1,357 @@
+package com.stocksim.core;
+
+import com.stocksim.data.Bar;
+import com.stocksim.data.MarketDataUpdate;
+import com.stocksim.data.Trade;
+import com.stocksim.logging.Log;
+import com.stocksim.metrics.Metrics;
+import com.stocksim.net.MarketDataListener;
+import io.prometheus.client.Counter;
+
+import java.lang.invoke.VarHandle;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-symbol market data: last trade, VWAP, top of book and OHLCV bars (1s, 1m, 5m).
+ *
+ * The thread that owns a symbol (its shard's pipeline, or the replica's apply thread) folds
+ * each accepted order into that symbol's aggregates: a handful of field writes under a
+ * per-symbol seqlock, nothing allocated and nothing shared with other symbols. Everything
+ * else happens off the order path: every PUBLISH_INTERVAL_MS a "market-data" thread copies
+ * the symbols that changed into immutable updates, so any number of orders in between
+ * collapse into one update per symbol, and hands them to the subscribers.
+ *
+ * Each subscriber keeps at most one pending update per symbol. While a delivery to it is in
+ * flight, newer updates replace older ones, so a slow subscriber skips to the latest values
+ * instead of building a backlog, and never holds up the others.
+ */
+public final class MarketDataFeed {
+
+    public static final int[] BAR_SECONDS = {1, 60, 300};
+    private static final long PUBLISH_INTERVAL_MS = 50;
+    private static final int FANOUT_THREADS = 4;
+    private static final int SNAPSHOT_ATTEMPTS = 16; // seqlock retries before leaving a symbol for the next tick
+
+    private final String nodeId;
+    private volatile SymbolStats[] stats = new SymbolStats[16];   // by symbol id
+    private final Map<String, MarketDataUpdate> latest = new ConcurrentHashMap<>();
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService publisher;
+    private final ExecutorService fanOut;
+    private long version;                                          // publisher thread only
+
+    private final Counter.Child updatesPublished;
+    private final Counter.Child updatesConflated;
+
+    public MarketDataFeed(String nodeId) {
+        this.nodeId = nodeId;
+        this.updatesPublished = Metrics.MARKET_DATA_UPDATES_TOTAL.labels(nodeId);
+        this.updatesConflated = Metrics.MARKET_DATA_CONFLATED_TOTAL.labels(nodeId);
+        Metrics.MARKET_DATA_SUBSCRIBERS.labels(nodeId).set(0);
+
+        this.publisher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "market-data");
+            t.setDaemon(true);
+            return t;
+        });
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.fanOut = Executors.newFixedThreadPool(FANOUT_THREADS, r -> {
+            Thread t = new Thread(r, "market-data-fanout-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        publisher.scheduleWithFixedDelay(this::publish, PUBLISH_INTERVAL_MS, PUBLISH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Folds one accepted order into its symbol: its trades (possibly none) and the top of book
+     * it left behind. Only the thread that owns the symbol may call this.
+     */
+    public void onOrder(int symbolId, String symbol, List<Trade> trades,
+                        long bidTicks, long bidQuantity, long askTicks, long askQuantity) {
+        SymbolStats s = statsFor(symbolId, symbol);
+        s.beginWrite();
+        for (int i = 0; i < trades.size(); i++) {
+            Trade trade = trades.get(i);
+            s.addTrade(OrderBook.toTicks(trade.getPrice()), trade.getQuantity(), trade.getSystemTimeMillis());
+        }
+        s.bidTicks = bidTicks;
+        s.bidQuantity = bidQuantity;
+        s.askTicks = askTicks;
+        s.askQuantity = askQuantity;
+        s.endWrite();
+    }
+
+    // stops publishing a symbol this node no longer owns
+    public synchronized void forget(int symbolId, String symbol) {
+        if (symbolId < stats.length) {
+            SymbolStats[] copy = stats.clone();
+            copy[symbolId] = null;
+            stats = copy;
+        }
+        latest.remove(symbol);
+    }
+
+    public void subscribe(MarketDataListener listener, List<String> symbols) {
+        Subscription subscription = new Subscription(listener,
+                symbols == null || symbols.isEmpty() ? null : new HashSet<>(symbols));
+        subscriptions.add(subscription);
+        Metrics.MARKET_DATA_SUBSCRIBERS.labels(nodeId).set(subscriptions.size());
+        // start from the current values instead of waiting for each symbol to change
+        subscription.offer(new ArrayList<>(latest.values()));
+    }
+
+    public void unsubscribe(MarketDataListener listener) {
+        subscriptions.removeIf(subscription -> subscription.listener.equals(listener));
+        Metrics.MARKET_DATA_SUBSCRIBERS.labels(nodeId).set(subscriptions.size());
+    }
+
+    // latest update per symbol published after fromVersion
+    public List<MarketDataUpdate> updatesSince(long fromVersion) {
+        List<MarketDataUpdate> updates = new ArrayList<>();
+        for (MarketDataUpdate update : latest.values()) {
+            if (update.getVersion() > fromVersion) updates.add(update);
+        }
+        return updates;
+    }
+
+    public void shutdown() {
+        publisher.shutdownNow();
+        fanOut.shutdownNow();
+    }
+
+    private SymbolStats statsFor(int symbolId, String symbol) {
+        SymbolStats[] current = stats;
+        if (symbolId < current.length && current[symbolId] != null) return current[symbolId];
+        return createStats(symbolId, symbol);
+    }
+
+    private synchronized SymbolStats createStats(int symbolId, String symbol) {
+        SymbolStats[] copy = Arrays.copyOf(stats, Math.max(stats.length, symbolId + 1));
+        if (copy[symbolId] == null) copy[symbolId] = new SymbolStats(symbol);
+        stats = copy;
+        return copy[symbolId];
+    }
+
+    // on the publisher thread: one conflated update per changed symbol, then fan out
+    private void publish() {
+        try {
+            List<MarketDataUpdate> changed = new ArrayList<>();
+            for (SymbolStats s : stats) {
+                if (s == null) continue;
+                MarketDataUpdate update = s.snapshotIfChanged(version + 1);
+                if (update != null) changed.add(update);
+            }
+            if (changed.isEmpty()) return;
+
+            version++;
+            for (MarketDataUpdate update : changed) latest.put(update.getSymbol(), update);
+            updatesPublished.inc(changed.size());
+            for (Subscription subscription : subscriptions) subscription.offer(changed);
+        } catch (RuntimeException e) {
+            Log.error("MarketDataFeed: publish failed: {}").arg(e).log();
+        }
+    }
+
+    /**
+     * Aggregates of one symbol. Written by the symbol's owning thread only; the publisher
+     * reads a consistent copy through the sequence number, odd while a write is under way.
+     */
+    private static final class SymbolStats {
+        private final String symbol;
+        private final AtomicLong sequence = new AtomicLong();
+        private long publishedSequence;            // publisher thread only
+
+        private long lastTicks;
+        private int lastQuantity;
+        private long volume;
+        private long notionalTicks;                // sum of price ticks * quantity, for vwap
+        private long tradeCount;
+        private long bidTicks = Long.MIN_VALUE;
+        private long bidQuantity;
+        private long askTicks = Long.MAX_VALUE;
+        private long askQuantity;
+
+        // one forming and one previous bar per interval, as parallel columns
+        private final long[] barStart = new long[BAR_SECONDS.length];
+        private final long[] barOpen = new long[BAR_SECONDS.length];
+        private final long[] barHigh = new long[BAR_SECONDS.length];
+        private final long[] barLow = new long[BAR_SECONDS.length];
+        private final long[] barClose = new long[BAR_SECONDS.length];
+        private final long[] barVolume = new long[BAR_SECONDS.length];
+        private final long[] prevStart = new long[BAR_SECONDS.length];
+        private final long[] prevOpen = new long[BAR_SECONDS.length];
+        private final long[] prevHigh = new long[BAR_SECONDS.length];
+        private final long[] prevLow = new long[BAR_SECONDS.length];
+        private final long[] prevClose = new long[BAR_SECONDS.length];
+        private final long[] prevVolume = new long[BAR_SECONDS.length];
+
+        private SymbolStats(String symbol) {
+            this.symbol = symbol;
+        }
+
+        private void beginWrite() {
+            sequence.set(sequence.get() + 1); // odd: readers retry
+            VarHandle.storeStoreFence();      // ... before they can see any of the field writes
+        }
+
+        private void endWrite() {
+            sequence.lazySet(sequence.get() + 1);
+        }
+
+        private void addTrade(long priceTicks, int quantity, long timeMillis) {
+            lastTicks = priceTicks;
+            lastQuantity = quantity;
+            volume += quantity;
+            notionalTicks += priceTicks * quantity;
+            tradeCount++;
+
+            for (int i = 0; i < BAR_SECONDS.length; i++) {
+                long intervalMillis = BAR_SECONDS[i] * 1000L;
+                long start = timeMillis - Math.floorMod(timeMillis, intervalMillis);
+                if (barVolume[i] == 0 || start > barStart[i]) {
+                    if (barVolume[i] > 0) {
+                        prevStart[i] = barStart[i];
+                        prevOpen[i] = barOpen[i];
+                        prevHigh[i] = barHigh[i];
+                        prevLow[i] = barLow[i];
+                        prevClose[i] = barClose[i];
+                        prevVolume[i] = barVolume[i];
+                    }
+                    barStart[i] = start;
+                    barOpen[i] = barHigh[i] = barLow[i] = priceTicks;
+                    barVolume[i] = 0;
+                }
+                // a trade stamped slightly earlier (another clock) still counts in the forming bar
+                barHigh[i] = Math.max(barHigh[i], priceTicks);
+                barLow[i] = Math.min(barLow[i], priceTicks);
+                barClose[i] = priceTicks;
+                barVolume[i] += quantity;
+            }
+        }
+
+        // publisher thread: a copy of the aggregates if they changed since the last publish
+        private MarketDataUpdate snapshotIfChanged(long version) {
+            long[] bars = new long[BAR_SECONDS.length * 12];
+            for (int attempt = 0; attempt < SNAPSHOT_ATTEMPTS; attempt++) {
+                long before = sequence.get();
+                if (before == publishedSequence) return null;
+                if ((before & 1) != 0) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+
+                long last = lastTicks, vol = volume, notional = notionalTicks, trades = tradeCount;
+                int lastQty = lastQuantity;
+                long bid = bidTicks, bidQty = bidQuantity, ask = askTicks, askQty = askQuantity;
+                for (int i = 0; i < BAR_SECONDS.length; i++) {
+                    int at = i * 12;
+                    bars[at] = barStart[i];
+                    bars[at + 1] = barOpen[i];
+                    bars[at + 2] = barHigh[i];
+                    bars[at + 3] = barLow[i];
+                    bars[at + 4] = barClose[i];
+                    bars[at + 5] = barVolume[i];
+                    bars[at + 6] = prevStart[i];
+                    bars[at + 7] = prevOpen[i];
+                    bars[at + 8] = prevHigh[i];
+                    bars[at + 9] = prevLow[i];
+                    bars[at + 10] = prevClose[i];
+                    bars[at + 11] = prevVolume[i];
+                }
+
+                // field reads must complete before the re-check
+                VarHandle.acquireFence();
+                if (sequence.get() != before) continue;
+                publishedSequence = before;
+
+                List<Bar> current = new ArrayList<>(BAR_SECONDS.length);
+                List<Bar> previous = new ArrayList<>(BAR_SECONDS.length);
+                for (int i = 0; i < BAR_SECONDS.length; i++) {
+                    int at = i * 12;
+                    current.add(bars[at + 5] == 0 ? null : bar(i, bars, at));
+                    previous.add(bars[at + 11] == 0 ? null : bar(i, bars, at + 6));
+                }
+                return new MarketDataUpdate(symbol, version,
+                        trades == 0 ? Double.NaN : OrderBook.toPrice(last), lastQty,
+                        vol == 0 ? Double.NaN : notional * OrderBook.TICK_SIZE / vol, vol, trades,
+                        bid == Long.MIN_VALUE ? Double.NaN : OrderBook.toPrice(bid), bidQty,
+                        ask == Long.MAX_VALUE ? Double.NaN : OrderBook.toPrice(ask), askQty,
+                        current, previous);
+            }
+            return null; // kept changing under us, try again next tick
+        }
+
+        private static Bar bar(int interval, long[] bars, int at) {
+            return new Bar(BAR_SECONDS[interval], bars[at], OrderBook.toPrice(bars[at + 1]), OrderBook.toPrice(bars[at + 2]),
+                    OrderBook.toPrice(bars[at + 3]), OrderBook.toPrice(bars[at + 4]), bars[at + 5]);
+        }
+    }
+
+    // one subscriber: its symbol filter and at most one pending update per symbol
+    private final class Subscription {
+        private final MarketDataListener listener;
+        private final Set<String> symbols;                                  // null for all
+        private final Map<String, MarketDataUpdate> pending = new LinkedHashMap<>(); // guarded by this
+        private boolean delivering;                                          // guarded by this
+
+        private Subscription(MarketDataListener listener, Set<String> symbols) {
+            this.listener = listener;
+            this.symbols = symbols;
+        }
+
+        private void offer(List<MarketDataUpdate> updates) {
+            boolean start;
+            synchronized (this) {
+                for (MarketDataUpdate update : updates) {
+                    if (symbols != null && !symbols.contains(update.getSymbol())) continue;
+                    if (pending.put(update.getSymbol(), update) != null) updatesConflated.inc();
+                }
+                start = !delivering && !pending.isEmpty();
+                if (start) delivering = true;
+            }
+            if (start) fanOut.execute(this::deliver);
+        }
+
+        // on a fan-out thread: sends what is pending, then queues itself again if more arrived
+        private void deliver() {
+            List<MarketDataUpdate> batch;
+            synchronized (this) {
+                batch = new ArrayList<>(pending.values());
+                pending.clear();
+            }
+            try {
+                listener.onMarketData(batch);
+            } catch (RemoteException | RuntimeException e) {
+                Log.warn("MarketDataFeed: dropping subscriber after failed delivery: {}").arg(e).log();
+                unsubscribe(listener);
+                synchronized (this) {
+                    pending.clear();
+                    delivering = false;
+                }
+                return;
+            }
+            boolean again;
+            synchronized (this) {
+                again = !pending.isEmpty();
+                if (!again) delivering = false;
+            }
+            if (again) fanOut.execute(this::deliver);
+        }
+    }
+}
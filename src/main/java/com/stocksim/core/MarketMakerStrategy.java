@@ -0,0 +1,40 @@
+package com.stocksim.core;
+
+import com.stocksim.data.OrderType;
+
+import java.util.Random;
+
+/**
+ * Provides liquidity: quotes a symbol on both sides a few ticks either side of the mid,
+ * alternating bid and offer on successive decisions, in larger size than other agents.
+ * It never crosses on purpose, so it sets the spread the other strategies trade against.
+ * Each quote replaces the maker's previous one on that side, so stale quotes do not pile up.
+ */
+public final class MarketMakerStrategy implements TradingStrategy {
+
+    private static final int MIN_HALF_SPREAD_TICKS = 1;
+    private static final int MAX_HALF_SPREAD_TICKS = 5;
+    private static final int MIN_QUANTITY = 100;
+    private static final int MAX_QUANTITY = 500;
+
+    private int symbol;
+    private boolean bidNext = true;
+
+    @Override
+    public boolean decide(PriceBoard prices, Random random, OrderDraft draft) {
+        // both quotes of a pair go on the same symbol
+        if (bidNext) symbol = random.nextInt(prices.symbolCount());
+        long halfSpread = MIN_HALF_SPREAD_TICKS + random.nextInt(MAX_HALF_SPREAD_TICKS - MIN_HALF_SPREAD_TICKS + 1);
+        long mid = prices.midTicks(symbol);
+        int quantity = MIN_QUANTITY + random.nextInt(MAX_QUANTITY - MIN_QUANTITY + 1);
+
+        if (bidNext) {
+            draft.set(symbol, OrderType.BUY, quantity, mid - halfSpread);
+        } else {
+            draft.set(symbol, OrderType.SELL, quantity, mid + halfSpread);
+        }
+        draft.refreshQuote();
+        bidNext = !bidNext;
+        return true;
+    }
+}
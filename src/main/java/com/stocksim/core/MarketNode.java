@@ -1,170 +1,1147 @@
 package com.stocksim.core;
 
 import com.stocksim.data.*;
+import com.stocksim.history.TradeStore;
+import com.stocksim.journal.Journal;
+import com.stocksim.logging.Log;
+import com.stocksim.logging.LogLevel;
+import com.stocksim.metrics.LatencyRecorder;
 import com.stocksim.metrics.Metrics;
 import com.stocksim.net.HeartbeatMonitor;
+import com.stocksim.net.MarketDataListener;
+import com.stocksim.net.MarketDataRemote;
 import com.stocksim.net.MarketNodeRemote;
+import com.stocksim.replication.LogEntry;
+import com.stocksim.replication.NotLeaderException;
+import com.stocksim.replication.RaftNode;
+import com.stocksim.sharding.ShardMap;
+import com.stocksim.sharding.WrongShardException;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.rmi.Naming;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Main market server. Handles orders, heartbeats, trades, metrics.
  */
-public class MarketNode extends UnicastRemoteObject implements MarketNodeRemote {
+public class MarketNode extends UnicastRemoteObject implements MarketNodeRemote, MarketDataRemote {
 
     public static final String RMI_NAME = "MarketNode";
     private static final int METRICS_PORT = 8080;
     private static final int MAX_TRADES_IN_STATE = 50;
     private static final long AGENT_TIMEOUT_MS = 10000; // timeout for failure
+    private static final int RING_SIZE = 16384;         // slots per shard pipeline (power of two)
+    private static final int TRADE_HISTORY_CAPACITY = 8192; // recent trades kept in memory (power of two)
+    private static final int MAX_TRADES_PER_DELTA = 1000;
+    private static final int STATUS_CHANGE_CAPACITY = 4096; // status changes kept for delta catch-up
+    private static final long REPLICATION_TIMEOUT_MS = 1000;  // longest a shard waits for the replicas to catch up
+    private static final long MAX_UNAPPLIED_ENTRIES = 16384;  // proposed but not yet applied, before shards wait
+    private static final int MIGRATION_ATTEMPTS = 10;
+    private static final long MIGRATION_RETRY_MS = 500;       // the new owner may not have the new shard map yet
+    private static final long EXECUTION_TIMEOUT_MS = 500;     // longest executeBatch waits to match, under the 1s rmi timeout
+    private static final String DUPLICATE = "duplicate";      // reject reason for an order id already executed
+    private static final int MAX_NAME_CHARS = 128;            // agent ids and symbols; journaled with a 2-byte length
 
     private final String nodeId;
-    private final LamportClock clock;               // lamport clock
-    private final List<Trade> tradeLog;             // log of executed trades
+    private final LogicalClock clock;               // lamport or hybrid clock (stocksim.clock)
+    private final TradeHistory tradeHistory;        // bounded ring of recent trades
+    private final MarketDataFeed marketData;        // per-symbol aggregates, conflated to subscribers
     private final HeartbeatMonitor monitor;         // tracks agent heartbeats
-    private final Map<String, String> agentStatuses;// ACTIVE or FAILED
+    private final AgentStatusLog statusLog;         // ACTIVE or FAILED, with versioned changes
+    private final IdRegistry symbols;               // symbol <-> dense int id
+    private final IdRegistry agents;                // agent id <-> dense int id
+    private volatile OrderBook[] books;             // one limit order book per symbol id
+    private final ShardedSequencer sequencer;       // single writer per symbol shard
+    private final SequenceWindow[] executedIds;     // per shard: client order ids already executed, by agent
+    private final AdmissionControl admission;       // ingress limits and overload policy (stocksim.admission.*)
+    private final int queueLimit;                   // admission limit per shard ring, at most RING_SIZE
+    private final PreTradeRisk risk;                // positions, exposure and order rate, checked before matching (stocksim.risk.*)
+    private final Map<Long, PendingApply> awaitingApply = new ConcurrentHashMap<>(); // replicated executeBatch orders by log index
+    private final Journal journal;                  // durable order/trade journal, null if disabled
+    private final StateSnapshots snapshots;         // periodic state snapshots next to the journal, null without one
+    private final TradeStore history;               // every trade in columnar segments on disk, null if off (stocksim.history.*)
+    private volatile RaftNode replica;              // replicated log, null when running standalone
+    private volatile ShardMap shardMap;             // symbol -> owning node when sharded, null if this node owns all
+    private ExecutorService migrationLane;          // sends resting orders of moved symbols to their new owner
 
-    // constructor (starts metrics and failure detector)
+    // metric children resolved once instead of a labels() lookup per message
+    private final Counter.Child messagesReceived;
+    private final Gauge.Child lamportGauge;
+    private final LatencyRecorder.Child[] processingByType;  // indexed by MessageType ordinal
+    private final LatencyRecorder.Child batchProcessing;
+    private final LatencyRecorder.Child executeProcessing;
+    private final LatencyRecorder.Child stateBuild;
+    private final LatencyRecorder.Child deltaBuild;
+    private final Counter.Child[] tradesBySide;
+    private final Map<String, Counter.Child> rejectsByReason = new ConcurrentHashMap<>();
+    private final Map<String, Counter.Child> shedByReason = new ConcurrentHashMap<>();
+    private final Gauge.Child[] occupancyByShard;
+    private Gauge.Child[] agentStatusGauges = new Gauge.Child[1024]; // by agent id, heartbeat lane only
+
+    // constructor with one shard per core
     public MarketNode() throws RemoteException {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    // constructor without a journal (state is lost on restart)
+    public MarketNode(int shardCount) throws RemoteException {
+        this(shardCount, null);
+    }
+
+    // constructor with a fixed heartbeat timeout
+    public MarketNode(int shardCount, Journal journal) throws RemoteException {
+        this(shardCount, journal, 0);
+    }
+
+    // constructor for the single market node
+    public MarketNode(int shardCount, Journal journal, double phiThreshold) throws RemoteException {
+        this("market-node-01", shardCount, journal, phiThreshold, METRICS_PORT);
+    }
+
+    // constructor (replays the journal if given, starts metrics and failure detector);
+    // phiThreshold > 0 enables phi-accrual failure detection, metricsPort <= 0 skips the /metrics endpoint
+    public MarketNode(String nodeId, int shardCount, Journal journal, double phiThreshold, int metricsPort)
+            throws RemoteException {
         super();
-        this.nodeId = "market-node-01";
-        this.clock = new LamportClock();
-        this.tradeLog = new CopyOnWriteArrayList<>();
-        this.monitor = new HeartbeatMonitor();
-        this.agentStatuses = new ConcurrentHashMap<>();
-
-        // start prometheus metrics on port 8080
-        Metrics.startMetricsServer(METRICS_PORT);
+        this.nodeId = nodeId;
+        this.clock = LogicalClock.fromSystemProperty();
+        this.tradeHistory = new TradeHistory(TRADE_HISTORY_CAPACITY);
+        this.marketData = new MarketDataFeed(nodeId);
+        this.symbols = new IdRegistry();
+        this.agents = new IdRegistry();
+        this.monitor = new HeartbeatMonitor(agents, AGENT_TIMEOUT_MS, phiThreshold, new StatusTransitions());
+        this.statusLog = new AgentStatusLog(STATUS_CHANGE_CAPACITY);
+        this.books = new OrderBook[16];
+        this.journal = journal;
+
+        this.messagesReceived = Metrics.MESSAGES_RECEIVED_TOTAL.labels(nodeId);
+        this.lamportGauge = Metrics.LAMPORT_CLOCK.labels(nodeId);
+        this.processingByType = new LatencyRecorder.Child[MessageType.values().length];
+        for (MessageType type : MessageType.values()) {
+            processingByType[type.ordinal()] = Metrics.MESSAGE_PROCESSING_LATENCY.labels(type.name());
+        }
+        this.batchProcessing = Metrics.MESSAGE_PROCESSING_LATENCY.labels("BATCH");
+        this.executeProcessing = Metrics.MESSAGE_PROCESSING_LATENCY.labels("EXECUTE_BATCH");
+        this.stateBuild = Metrics.SNAPSHOT_BUILD_LATENCY.labels("state");
+        this.deltaBuild = Metrics.SNAPSHOT_BUILD_LATENCY.labels("delta");
+        this.tradesBySide = new Counter.Child[OrderType.values().length];
+        for (OrderType side : OrderType.values()) tradesBySide[side.ordinal()] = Metrics.TRADES_TOTAL.labels(side.toString());
+        this.executedIds = new SequenceWindow[shardCount];
+        for (int i = 0; i < shardCount; i++) executedIds[i] = new SequenceWindow();
+        this.risk = new PreTradeRisk(RiskLimits.fromSystemProperties());
+        this.admission = AdmissionControl.fromSystemProperties();
+        this.queueLimit = Math.min(admission.getQueueLimit(), RING_SIZE);
+        this.occupancyByShard = new Gauge.Child[shardCount];
+        for (int i = 0; i < shardCount; i++) occupancyByShard[i] = Metrics.INGRESS_QUEUE_OCCUPANCY.labels(nodeId, String.valueOf(i));
+
+        if (journal != null) {
+            try {
+                this.snapshots = new StateSnapshots(nodeId, journal, symbols, agents, this::existingBook, this::bookFor,
+                        executedIds, risk, tradeHistory, clock);
+            } catch (IOException e) {
+                throw new RemoteException("MarketNode could not open its snapshot directory", e);
+            }
+            recover(journal);
+            // from now on each new id is journaled before any record that uses it
+            symbols.setListener((id, name) -> journal.appendName(Journal.NameKind.SYMBOL, id, name));
+            agents.setListener((id, name) -> journal.appendName(Journal.NameKind.AGENT, id, name));
+        } else {
+            this.snapshots = null;
+        }
+        this.history = openHistory(nodeId, journal);
+
+        this.sequencer = new ShardedSequencer(shardCount, RING_SIZE, shard -> new OrderPipeline.Handler[]{
+                new ValidationStage(), new MatchingStage(shard, executedIds[shard]), this::logOrder, this::recordOrderMetrics
+        });
+
+        // start prometheus metrics (port 8080 for the single node)
+        if (snapshots != null) snapshots.start(sequencer);
+        if (metricsPort > 0) Metrics.startMetricsServer(metricsPort);
         Metrics.NODE_STATUS.labels(this.nodeId).set(1); // market node is UP
         tick(); // update lamport clock metric
 
-        // background failure detector thread
-        Thread failureDetectorThread = new Thread(this::runFailureDetector);
-        failureDetectorThread.setDaemon(true);
-        failureDetectorThread.start();
+        // failure detector ticks on the heartbeat lane, which owns the monitor
+        sequencer.scheduleOnHeartbeatLane(this::expireHeartbeats, HeartbeatMonitor.TICK_MILLIS);
+        sequencer.scheduleOnHeartbeatLane(this::sampleOccupancy, HeartbeatMonitor.TICK_MILLIS);
 
-        System.out.println("MarketNode initialized. Failure detector started.");
+        Log.info("MarketNode initialized with {} order shards. Failure detector started.").arg(shardCount).log();
+        Log.info("MarketNode: Pre-trade {}").arg(risk.getLimits()).log();
+        Log.info("MarketNode: {}").arg(admission).log();
     }
 
-    // local lamport tick + update metric
-    private void tick() {
-        this.clock.tick();
-        Metrics.LAMPORT_CLOCK.labels(this.nodeId).set(this.clock.getTime());
+    /**
+     * Turns this node into one replica of a replicated market. Orders are no longer matched
+     * by the shards: the leader's shards append them to the replicated log, and every replica
+     * matches committed entries in log order, so all books and trades stay identical.
+     * Followers refuse orders and heartbeats with a {@link NotLeaderException}.
+     * Call before the node takes traffic, then bind and {@link RaftNode#start} the returned replica.
+     */
+    public RaftNode replicate(int replicaId, List<String> replicaUrls) throws RemoteException {
+        if (journal != null) throw new IllegalStateException("Replicated mode keeps its log in the replicas, not a journal");
+        RaftNode raft = new RaftNode(replicaId, replicaUrls, clock, new ReplicatedOrders());
+        Metrics.REPLICA_LEADER.labels(nodeId).set(0);
+        this.replica = raft;
+        return raft;
     }
 
-    // loops and checks for failed agents
-    private void runFailureDetector() {
-        while (!Thread.currentThread().isInterrupted()) {
-            try {
-                Thread.sleep(2000);
+    /**
+     * Makes this node one shard of a partitioned market: it only takes orders for symbols the
+     * map assigns to its node id and rejects the rest with a {@link WrongShardException}.
+     * On a newer map, the resting orders of symbols that moved away are drained on their
+     * shard's match thread and re-submitted to the new owner, best price and oldest first.
+     */
+    public synchronized void useShardMap(ShardMap map) {
+        if (journal != null || replica != null) {
+            throw new IllegalStateException("Sharded mode runs without a journal or replication");
+        }
+        ShardMap previous = shardMap;
+        if (previous != null && map.getVersion() <= previous.getVersion()) return;
+        shardMap = map;
+        Log.info("MarketNode: {} now owns its symbols under {}").arg(nodeId).arg(map).log();
 
-                // get latest statuses from heartbeat monitor
-                Map<String, String> currentStatuses = monitor.getStatuses(AGENT_TIMEOUT_MS);
+        if (previous != null) {
+            if (migrationLane == null) {
+                migrationLane = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "market-migration");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            sequencer.runOnEachShard(shard -> migrateMovedBooks(shard, map));
+        }
+    }
 
-                for (Map.Entry<String, String> entry : currentStatuses.entrySet()) {
-                    String agentId = entry.getKey();
-                    String currentStatus = entry.getValue();
-                    String previousStatus = agentStatuses.getOrDefault(agentId, "ACTIVE");
+    // on a shard's match thread: drains the books this shard holds for symbols another node now owns
+    private void migrateMovedBooks(int shard, ShardMap map) {
+        Map<String, List<TradeMessage>> movedByOwner = new HashMap<>();
+        OrderBook[] current = books;
+        for (OrderBook book : current) {
+            if (book == null || book.restingOrderCount() == 0) continue;
+            String symbol = book.getSymbol();
+            String owner = map.ownerOf(symbol);
+            if (sequencer.shardOf(symbol) != shard || owner == null || owner.equals(nodeId)) continue;
 
-                    // agent newly detected as failed
-                    if ("FAILED".equals(currentStatus) && "ACTIVE".equals(previousStatus)) {
-                        System.out.printf("[FAULT DETECTOR] Agent %s has failed (no heartbeat). Marking as FAILED.%n", agentId);
+            int symbolId = symbols.intern(symbol);
+            marketData.forget(symbolId, symbol);
+            List<TradeMessage> moved = movedByOwner.computeIfAbsent(owner, o -> new ArrayList<>());
+            // moved orders go out unnumbered: the new owner never saw their ids, so they cannot be cancelled by id there
+            book.drain(resting -> {
+                risk.onRemoved(symbolId, resting);
+                String agent = agents.nameOf(resting.getAgentId());
+                Order order = new Order(agent, symbol, resting.getRemaining(),
+                        OrderBook.toPrice(resting.getPriceTicks()), resting.getSide());
+                moved.add(new TradeMessage(agent, owner, MessageType.ORDER, order, clock.updateOnSend()));
+            });
+        }
+        movedByOwner.forEach((owner, orders) -> migrationLane.execute(() -> sendMovedOrders(map, owner, orders)));
+    }
 
-                        // mark failure in metrics
-                        Metrics.FAILURES_DETECTED_TOTAL.inc();
-                        Metrics.NODE_STATUS.labels(agentId).set(0); // agent DOWN
+    // executeBatch rather than submitBatch, so orders the new owner rejects (risk, validation) show up here
+    private void sendMovedOrders(ShardMap map, String owner, List<TradeMessage> orders) {
+        int moved = 0;
+        int rejected = 0;
+        String rejectReason = null;
+        for (int attempt = 1; ; attempt++) {
+            Exception failure = null;
+            try {
+                MarketNodeRemote target = (MarketNodeRemote) Naming.lookup(map.urlOf(owner));
+                List<MessageAck> acks = target.executeBatch(orders);
+                // an overloaded owner answers busy: send those orders again after the pause
+                List<TradeMessage> busy = new ArrayList<>();
+                for (int i = 0; i < orders.size(); i++) {
+                    MessageAck ack = acks.get(i);
+                    if (ack.isBusy()) {
+                        busy.add(orders.get(i));
+                    } else if (ack.isAccepted()) {
+                        moved++;
+                    } else {
+                        rejected++;
+                        rejectReason = ack.getReason();
                     }
-
-                    // update status map
-                    agentStatuses.put(agentId, currentStatus);
                 }
+                orders = busy;
+                if (orders.isEmpty()) {
+                    Log.info("MarketNode: Moved {} resting orders to {}").arg(moved).arg(owner).log();
+                    if (rejected > 0) {
+                        Log.warn("MarketNode: {} rejected {} moved orders, dropping them (last reason: {})")
+                                .arg(owner).arg(rejected).arg(rejectReason).log();
+                    }
+                    return;
+                }
+            } catch (Exception e) {
+                failure = e;
+            }
+            if (attempt == MIGRATION_ATTEMPTS) {
+                Log.error("MarketNode: Could not move {} resting orders to {}, dropping them: {}")
+                        .arg(orders.size()).arg(owner).arg(failure != null ? failure : "busy").log();
+                return;
+            }
+            try {
+                Thread.sleep(MIGRATION_RETRY_MS);
             } catch (InterruptedException e) {
-                Thread.currentThread().interrupt(); // stop thread
+                Thread.currentThread().interrupt();
+                return;
             }
         }
     }
 
-    // main entry point when agents send messages
+    // throws if the shard map assigns the symbol to another node
+    private void requireOwner(String symbol) throws WrongShardException {
+        ShardMap map = shardMap;
+        if (map == null) return;
+        String owner = map.ownerOf(symbol);
+        if (!nodeId.equals(owner)) throw new WrongShardException(symbol, owner, map.getVersion());
+    }
+
+    // rebuilds books, recent trades and clock from the newest snapshot and the journal after it, before any shard starts
+    private void recover(Journal journal) throws RemoteException {
+        StateSnapshots.Restored restored;
+        try {
+            restored = snapshots.restore();
+        } catch (IOException | RuntimeException e) {
+            throw new RemoteException("MarketNode could not load its snapshot", e);
+        }
+        long startNanos = System.nanoTime();
+        long[] recoveredTrades = {0};
+        long[] maxLamport = {0};
+        int[] replaySymbol = {0};
+        int[] replayFilled = {0};
+        // journaled orders already passed their risk checks, replay only rebuilds positions and exposure
+        OrderBook.FillHandler replayedFill = (maker, taker, side, qty, price) -> {
+            risk.onFill(maker.getAgentId(), taker, replaySymbol[0], side, qty, price);
+            replayFilled[0] += qty;
+        };
+
+        long records;
+        try {
+            // records the snapshot already holds are skipped, shard by shard, up to that shard's mark
+            records = journal.replay(new Journal.Listener() {
+                @Override
+                public void onName(Journal.NameKind kind, int id, String name) {
+                    // names were journaled in id order, so interning them again gives the same ids
+                    IdRegistry registry = kind == Journal.NameKind.SYMBOL ? symbols : agents;
+                    if (registry.intern(name) != id) {
+                        throw new IllegalStateException("Journal " + kind + " id " + id + " (" + name + ") is out of order");
+                    }
+                }
+
+                @Override
+                public void onOrder(long lamportTimestamp, long systemTimeMillis, int agentId, int symbolId,
+                                    OrderType side, int quantity, long priceTicks, long orderId) {
+                    if (!restored.replays(symbols.nameOf(symbolId))) return;
+                    // re-matching the same per-symbol order sequence rebuilds the same book
+                    if (orderId != 0) executedIdsFor(symbolId).markExecuted(agentId, orderId);
+                    replaySymbol[0] = symbolId;
+                    replayFilled[0] = 0;
+                    bookFor(symbolId).submit(agentId, orderId, side, priceTicks, quantity, replayedFill);
+                    risk.onRested(agentId, symbolId, side, quantity - replayFilled[0], priceTicks);
+                    maxLamport[0] = Math.max(maxLamport[0], lamportTimestamp);
+                }
+
+                @Override
+                public void onCancel(long lamportTimestamp, long systemTimeMillis, int agentId, int symbolId,
+                                     long originalOrderId, long requestId) {
+                    if (!restored.replays(symbols.nameOf(symbolId))) return;
+                    if (requestId != 0) executedIdsFor(symbolId).markExecuted(agentId, requestId);
+                    OrderBook.RestingOrder original = bookFor(symbolId).cancel(agentId, originalOrderId);
+                    if (original != null) risk.onRemoved(symbolId, original);
+                    maxLamport[0] = Math.max(maxLamport[0], lamportTimestamp);
+                }
+
+                @Override
+                public void onTrade(Trade trade) {
+                    if (!restored.replays(trade.getStockSymbol()) || restored.hasTrade(trade.getTradeId())) return;
+                    tradeHistory.append(trade); // only the newest TRADE_HISTORY_CAPACITY stay
+                    recoveredTrades[0]++;
+                    maxLamport[0] = Math.max(maxLamport[0], trade.getLamportTimestamp());
+                }
+
+                @Override
+                public void onMark(long snapshotId, int shard) {
+                    restored.onMark(snapshotId, shard);
+                }
+            }, restored.getJournalPosition());
+        } catch (IOException | IllegalStateException e) {
+            throw new RemoteException("MarketNode could not replay its journal", e);
+        }
+
+        clock.updateOnReceive(maxLamport[0]);
+        long elapsedNanos = System.nanoTime() - startNanos;
+        Metrics.RESTART_DURATION.labels(nodeId, "journal_replay").set(elapsedNanos / 1e9);
+        Log.info("MarketNode: Replayed {} journal records ({} trades) after snapshot {} in {} ms")
+                .arg(records).arg(recoveredTrades[0]).arg(restored.getSnapshotId()).arg(elapsedNanos / 1_000_000).log();
+    }
+
+    // the trade history in stocksim.history.dir/<nodeId>, else next to the journal, else none
+    private TradeStore openHistory(String nodeId, Journal journal) throws RemoteException {
+        String dir = System.getProperty(TradeStore.PREFIX + "dir");
+        Path directory = dir != null ? Paths.get(dir, nodeId)
+                : journal != null ? journal.getDirectory().resolve("history") : null;
+        if (directory == null) return null;
+        try {
+            // never more unwritten trades than the ring holds, so a crash loses none of them
+            TradeStore store = TradeStore.fromSystemProperties(nodeId, directory, TRADE_HISTORY_CAPACITY);
+            // trades recovered from the snapshot and journal that had not been written to disk yet
+            List<Trade> recent = new ArrayList<>();
+            tradeHistory.readLast(TRADE_HISTORY_CAPACITY, recent);
+            store.recover(recent);
+            return store;
+        } catch (IOException e) {
+            throw new RemoteException("MarketNode could not open its trade history", e);
+        }
+    }
+
+    // recent trades in memory and, if kept, the trade history on disk
+    private void appendTrade(Trade trade) {
+        tradeHistory.append(trade);
+        if (history != null) history.append(trade);
+    }
+
+    // window of the shard that owns a symbol, for replay before the shards start
+    private SequenceWindow executedIdsFor(int symbolId) {
+        return executedIds[ShardedSequencer.shardOf(symbols.nameOf(symbolId), executedIds.length)];
+    }
+
+    // local lamport tick + update metric
+    private void tick() {
+        this.clock.tick();
+        lamportGauge.set(this.clock.getTime());
+    }
+
+    // book for a symbol id, or null if it has none yet
+    private OrderBook existingBook(int symbolId) {
+        OrderBook[] current = books;
+        return symbolId < current.length ? current[symbolId] : null;
+    }
+
+    // book for a symbol id, created on first use; only the symbol's shard calls this after recovery
+    private OrderBook bookFor(int symbolId) {
+        OrderBook[] current = books;
+        if (symbolId < current.length && current[symbolId] != null) return current[symbolId];
+        return createBook(symbolId);
+    }
+
+    private synchronized OrderBook createBook(int symbolId) {
+        OrderBook[] copy = Arrays.copyOf(books, Math.max(books.length, symbolId + 1));
+        if (copy[symbolId] == null) copy[symbolId] = new OrderBook(symbols.nameOf(symbolId));
+        books = copy;
+        return copy[symbolId];
+    }
+
+    // cached reject counter for a reason
+    private Counter.Child rejectCounter(String reason) {
+        return rejectsByReason.computeIfAbsent(reason, r -> Metrics.ORDERS_REJECTED_TOTAL.labels(r));
+    }
+
+    // cached counter of orders answered busy or dropped under overload, by reason
+    private Counter.Child shedCounter(String reason) {
+        return shedByReason.computeIfAbsent(reason, r -> Metrics.INGRESS_SHED_TOTAL.labels(nodeId, r));
+    }
+
+    // heartbeat lane tick: how full each shard's ring is against the admission limit
+    private void sampleOccupancy() {
+        long[] depths = sequencer.queueDepths();
+        for (int i = 0; i < depths.length; i++) occupancyByShard[i].set((double) depths[i] / queueLimit);
+    }
+
+    // wheel tick on the heartbeat lane: fails agents whose deadline passed
+    private void expireHeartbeats() {
+        try {
+            monitor.expire(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            // a throwing periodic task would never run again
+            Log.error("[FAULT DETECTOR] tick failed: {}").arg(e).log();
+        }
+    }
+
+    // heartbeat monitor callbacks, both on the heartbeat lane
+    private final class StatusTransitions implements HeartbeatMonitor.Listener {
+        @Override
+        public void onActive(int agentId) {
+            statusLog.update(agents.nameOf(agentId), "ACTIVE");
+        }
+
+        @Override
+        public void onFailed(int agentId) {
+            String agentName = agents.nameOf(agentId);
+            Log.warn("[FAULT DETECTOR] Agent {} has failed (no heartbeat). Marking as FAILED.").arg(agentName).log();
+
+            // mark failure in metrics
+            Metrics.FAILURES_DETECTED_TOTAL.inc();
+            agentStatusGauge(agentId, agentName).set(0); // agent DOWN
+
+            // record the change for delta subscribers
+            statusLog.update(agentName, "FAILED");
+        }
+    }
+
+    // main entry point when agents send messages (no global lock; publishes into the owning shard's ring)
     @Override
-    public synchronized void submitMessage(TradeMessage message) throws RemoteException {
+    public MessageAck submitMessage(TradeMessage message) throws RemoteException {
+        long startNanos = System.nanoTime();
+        try {
+            return acceptMessage(message);
+        } finally {
+            if (message.getType() != null) processingByType[message.getType().ordinal()].recordSince(startNanos);
+        }
+    }
+
+    private MessageAck acceptMessage(TradeMessage message) throws RemoteException {
+        requireLeader();
+
         // metrics count of messages received
-        Metrics.MESSAGES_RECEIVED_TOTAL.labels(this.nodeId).inc();
+        messagesReceived.inc();
 
         // show clock before merge
-        System.out.printf("MarketNode: Local clock before receiving message from %s (LT=%d): %d%n",
-                message.getSenderId(), message.getLamportTimestamp(), clock.getTime());
+        Log.debug("MarketNode: Local clock before receiving message from {} (LT={}): {}")
+                .arg(message.getSenderId()).arg(message.getLamportTimestamp()).arg(clock.getTime()).log();
 
-        // sync lamport clock with message timestamp
+        // sync lamport clock with message timestamp (clock is internally synchronized)
         clock.updateOnReceive(message.getLamportTimestamp());
-        Metrics.LAMPORT_CLOCK.labels(this.nodeId).set(this.clock.getTime());
+        lamportGauge.set(this.clock.getTime());
 
         // show clock after merge
-        System.out.printf("MarketNode: Local clock after updateOnReceive: %d%n", clock.getTime());
+        Log.debug("MarketNode: Local clock after updateOnReceive: {}").arg(clock.getTime()).log();
 
-        // route message
+        // route message to its lane
         switch (message.getType()) {
             case ORDER:
-                handleOrder(message);
+            case CANCEL:
+            case REPLACE:
+                // orders without a symbol cannot be routed to a shard, nor charged without an agent
+                if (!isRoutable(message.getOrder())) {
+                    rejectCounter("invalid").inc();
+                    return MessageAck.rejected(message, "invalid");
+                }
+                requireOwner(message.getOrder().getStockSymbol());
+                if (overAgentRate(message)) {
+                    shedCounter(AdmissionControl.AGENT_RATE).inc();
+                    return MessageAck.busy(message, AdmissionControl.AGENT_RATE);
+                }
+                if (!publishOrders(List.of(message), null).isEmpty()) {
+                    releaseAgentRate(message);
+                    shedCounter(AdmissionControl.QUEUE_FULL).inc();
+                    return MessageAck.busy(message, AdmissionControl.QUEUE_FULL);
+                }
                 break;
             case HEARTBEAT:
-                handleHeartbeat(message);
+                if (!isValidName(message.getSenderId())) {
+                    rejectCounter("invalid").inc();
+                    return MessageAck.rejected(message, "invalid");
+                }
+                sequencer.submitHeartbeat(() -> handleHeartbeat(message));
                 break;
         }
+        return MessageAck.accepted(message);
+    }
+
+    // batch entry point: checks per-sender lamport order, merges the clock once and publishes in one claim per shard
+    @Override
+    public List<MessageAck> submitBatch(List<TradeMessage> messages) throws RemoteException {
+        long startNanos = System.nanoTime();
+        try {
+            return sequenceBatch(messages, false);
+        } finally {
+            batchProcessing.recordSince(startNanos);
+        }
+    }
+
+    // as submitBatch, then waits until the batch's orders are matched and returns their execution reports
+    @Override
+    public List<MessageAck> executeBatch(List<TradeMessage> messages) throws RemoteException {
+        long startNanos = System.nanoTime();
+        try {
+            return sequenceBatch(messages, true);
+        } finally {
+            executeProcessing.recordSince(startNanos);
+        }
+    }
+
+    private List<MessageAck> sequenceBatch(List<TradeMessage> messages, boolean awaitExecution) throws RemoteException {
+        requireLeader();
+        messagesReceived.inc(messages.size());
+
+        List<MessageAck> acks = new ArrayList<>(messages.size());
+        List<TradeMessage> orders = new ArrayList<>(messages.size());
+        List<TradeMessage> heartbeats = new ArrayList<>();
+        Map<String, Long> lastTimestampBySender = new HashMap<>();
+        long maxTimestamp = 0;
+
+        // a mis-routed order fails the whole batch, before any order is charged or sequenced
+        for (TradeMessage message : messages) {
+            if (message.getType() != MessageType.HEARTBEAT && isRoutable(message.getOrder())) {
+                requireOwner(message.getOrder().getStockSymbol());
+            }
+        }
+
+        for (TradeMessage message : messages) {
+            long timestamp = message.getLamportTimestamp();
+
+            // a sender's timestamps must strictly increase within the batch
+            Long previous = lastTimestampBySender.put(message.getSenderId(), timestamp);
+            if (previous != null && timestamp <= previous) {
+                lastTimestampBySender.put(message.getSenderId(), previous);
+                acks.add(MessageAck.rejected(message, "out-of-order"));
+                continue;
+            }
+
+            if (message.getType() != MessageType.HEARTBEAT) {
+                if (!isRoutable(message.getOrder())) {
+                    rejectCounter("invalid").inc();
+                    acks.add(MessageAck.rejected(message, "invalid"));
+                    continue;
+                }
+                if (overAgentRate(message)) {
+                    shedCounter(AdmissionControl.AGENT_RATE).inc();
+                    acks.add(MessageAck.busy(message, AdmissionControl.AGENT_RATE));
+                    continue;
+                }
+                orders.add(message);
+            } else if (isValidName(message.getSenderId())) {
+                heartbeats.add(message);
+            } else {
+                rejectCounter("invalid").inc();
+                acks.add(MessageAck.rejected(message, "invalid"));
+                continue;
+            }
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+            acks.add(MessageAck.accepted(message));
+        }
+
+        // one sequencing step for the whole batch
+        clock.updateOnReceive(maxTimestamp);
+        lamportGauge.set(this.clock.getTime());
+
+        ExecutionBatch execution = awaitExecution && !orders.isEmpty() ? new ExecutionBatch(orders) : null;
+        if (!orders.isEmpty()) {
+            List<TradeMessage> refused = publishOrders(orders, execution);
+            if (!refused.isEmpty()) refuseBusy(messages, acks, refused, execution);
+        }
+        for (TradeMessage heartbeat : heartbeats) {
+            sequencer.submitHeartbeat(() -> handleHeartbeat(heartbeat));
+        }
+
+        Log.debug("[LT={}] MarketNode: Sequenced batch of {} messages ({} orders, {} heartbeats, {} rejected)")
+                .arg(clock.getTime()).arg(messages.size()).arg(orders.size()).arg(heartbeats.size())
+                .arg(messages.size() - orders.size() - heartbeats.size()).log();
+        if (execution != null) execution.awaitInto(messages, acks, EXECUTION_TIMEOUT_MS);
+        return acks;
+    }
+
+    // an order needs a symbol to find its shard and an agent to take a token from, before validation proper
+    private static boolean isRoutable(Order order) {
+        return order != null && isValidName(order.getStockSymbol()) && isValidName(order.getAgentId());
+    }
+
+    // names are interned and journaled, so a client cannot send one longer than the journal can replay
+    private static boolean isValidName(String name) {
+        return name != null && name.length() <= MAX_NAME_CHARS;
+    }
+
+    // takes a token from the agent's bucket; cancels are free, they only shrink the agent's risk
+    private boolean overAgentRate(TradeMessage message) {
+        if (message.getType() == MessageType.CANCEL) return false;
+        return !admission.tryAcquire(agents.idOf(message.getOrder().getAgentId()), System.nanoTime());
+    }
+
+    // refunds the token overAgentRate took for an order the rings then refused (an agent first seen in
+    // this batch may get back a token it was let through without, which is harmless)
+    private void releaseAgentRate(TradeMessage message) {
+        if (message.getType() == MessageType.CANCEL) return;
+        admission.release(agents.idOf(message.getOrder().getAgentId()));
+    }
+
+    // queues orders under the admission policy, returns the ones a full shard refused
+    private List<TradeMessage> publishOrders(List<TradeMessage> orders, ExecutionBatch execution) {
+        if (admission.getPolicy() == AdmissionControl.Policy.BLOCK) {
+            sequencer.publishOrders(orders, execution);
+            return List.of();
+        }
+        return sequencer.tryPublishOrders(orders, execution, queueLimit);
     }
 
-    // handles order messages
-    private void handleOrder(TradeMessage message) {
+    // turns the acks (aligned with messages) of orders a full shard refused into busy acks
+    private void refuseBusy(List<TradeMessage> messages, List<MessageAck> acks, List<TradeMessage> refused,
+                            ExecutionBatch execution) {
+        Set<TradeMessage> busy = Collections.newSetFromMap(new IdentityHashMap<>());
+        busy.addAll(refused);
+        for (int i = 0; i < messages.size(); i++) {
+            TradeMessage message = messages.get(i);
+            if (!busy.contains(message)) continue;
+            releaseAgentRate(message);
+            MessageAck ack = MessageAck.busy(message, AdmissionControl.QUEUE_FULL);
+            acks.set(i, ack);
+            if (execution != null) execution.complete(message, ack);
+        }
+        shedCounter(AdmissionControl.QUEUE_FULL).inc(refused.size());
+    }
+
+    private boolean ownsSymbol(String symbol) {
+        ShardMap map = shardMap;
+        return map == null || nodeId.equals(map.ownerOf(symbol));
+    }
+
+    // only the leader of a replicated market takes writes
+    private void requireLeader() throws NotLeaderException {
+        RaftNode raft = replica;
+        if (raft != null && !raft.isLeader()) throw new NotLeaderException(raft.getLeaderId());
+    }
+
+    /**
+     * Pipeline stage 1, one instance per shard: pre-trade validation. When replicated it also
+     * appends each valid order to the replicated log and, at the end of the batch, waits while
+     * more than MAX_UNAPPLIED_ENTRIES are still uncommitted or unapplied, so the ring gives
+     * backpressure to the replicas without a round trip per batch.
+     */
+    private final class ValidationStage implements OrderPipeline.Handler {
+        private long lastProposed; // highest log index proposed in this batch, 0 if none
+
+        @Override
+        public void onEvent(OrderEvent event, long sequence, boolean endOfBatch) {
+            TradeMessage message = event.getMessage();
+            Order order = message.getOrder();
+            RaftNode raft = replica;
+            // only executeBatch orders can still be answered busy; a sequenced ack is a promise to match
+            if (event.getExecution() != null && admission.isStale(event.getPublishNanos())) {
+                event.reject(AdmissionControl.STALE);
+            } else if (!isValid(message.getType(), order)) {
+                event.reject("invalid");
+            } else if (!ownsSymbol(order.getStockSymbol())) {
+                // published just before the symbol moved to another node
+                event.reject("wrong-shard");
+            } else if (raft == null) {
+                // strings are resolved to ids once here; later stages work on ints
+                event.setIds(agents.intern(order.getAgentId()), symbols.intern(order.getStockSymbol()));
+            } else {
+                try {
+                    lastProposed = raft.propose(message.getType(), order);
+                    if (event.getExecution() != null) {
+                        awaitingApply.put(lastProposed, new PendingApply(message, event.getExecution()));
+                    }
+                } catch (NotLeaderException e) {
+                    event.reject("not-leader");
+                }
+            }
+            if (endOfBatch && lastProposed > 0) awaitReplication(raft);
+        }
+
+        // a cancel only names the order it cancels; new and replacement orders need a side, size and price
+        private boolean isValid(MessageType type, Order order) {
+            if (order.getAgentId() == null) return false;
+            if (type != MessageType.ORDER && order.getOriginalOrderId() <= 0) return false;
+            if (type == MessageType.CANCEL) return true;
+            return order.getType() != null && order.getQuantity() > 0 && order.getPrice() > 0;
+        }
+
+        private void awaitReplication(RaftNode raft) {
+            try {
+                long mustApply = lastProposed - MAX_UNAPPLIED_ENTRIES;
+                if (!raft.awaitApplied(mustApply, REPLICATION_TIMEOUT_MS)) {
+                    // the entries stay in the log and apply if a later leader commits them
+                    Log.warn("MarketNode: Log index {} not applied within {} ms (leader={})")
+                            .arg(mustApply).arg(REPLICATION_TIMEOUT_MS).arg(raft.isLeader()).log();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            lastProposed = 0;
+        }
+    }
+
+    // pipeline stage 3: append trades to the history and print the order outcome
+    private void logOrder(OrderEvent event, long sequence, boolean endOfBatch) {
+        TradeMessage message = event.getMessage();
         Order order = message.getOrder();
-        if (order == null) return;
-
-        // count this trade in metrics
-        Metrics.TRADES_TOTAL.labels(order.getType().toString()).inc();
-
-        // create executed trade log entry
-        Trade executedTrade = new Trade(
-                UUID.randomUUID().toString(),
-                order.getAgentId(),
-                order.getStockSymbol(),
-                order.getQuantity(),
-                order.getPrice(),
-                clock.getTime(),
-                System.currentTimeMillis()
-        );
+        if (event.isRejected()) {
+            Log.debug("MarketNode: Rejected {} order from {} ({})")
+                    .arg(order.getType()).arg(message.getSenderId()).arg(event.getRejectReason()).log();
+            if (endOfBatch && journal != null) journal.endBatch();
+            return;
+        }
+        if (replica != null) return; // logged when its log entry is applied
 
-        tradeLog.add(executedTrade);
+        for (Trade trade : event.getTrades()) appendTrade(trade);
 
-        System.out.printf("[LT=%d] MarketNode: Processed %s order from %s (Msg LT=%d)%n",
-                clock.getTime(), order.getType(), order.getAgentId(), message.getLamportTimestamp());
+        // journal what left the book, then the accepted order and the trades it produced
+        if (journal != null) {
+            long now = System.currentTimeMillis();
+            MessageType type = message.getType();
+            synchronized (journal) { // one hold of the journal lock for the order's records, appends re-enter it
+                if (type != MessageType.ORDER) {
+                    journal.appendCancel(message.getLamportTimestamp(), now, event.getAgentId(), event.getSymbolId(),
+                            order.getOriginalOrderId(), type == MessageType.CANCEL ? order.getOrderId() : 0);
+                }
+                if (type != MessageType.CANCEL) {
+                    journal.appendOrder(message.getLamportTimestamp(), now, event.getAgentId(), event.getSymbolId(),
+                            order.getType(), order.getQuantity(), OrderBook.toTicks(order.getPrice()), order.getOrderId());
+                }
+                for (Trade trade : event.getTrades()) journal.appendTrade(trade);
+            }
+            if (endOfBatch) journal.endBatch(); // forces under BATCH, outside the lock
+        }
+
+        if (Log.isEnabled(LogLevel.DEBUG)) {
+            Log.debug("[LT={}] MarketNode: Processed {} {} from {} (Msg LT={}, status={}, fills={}, resting={})")
+                    .arg(clock.getTime()).arg(message.getType()).arg(order.getType()).arg(order.getAgentId())
+                    .arg(message.getLamportTimestamp()).arg(event.getStatus()).arg(event.getTrades().size())
+                    .arg(restingLabel(event.getRestingOrderId())).log();
+        }
+    }
+
+    // pipeline stage 4: trade and reject counters, the symbol's market data and the executeBatch ack
+    private void recordOrderMetrics(OrderEvent event, long sequence, boolean endOfBatch) {
+        TradeMessage message = event.getMessage();
+        ExecutionBatch execution = event.getExecution();
+        if (event.isRejected()) {
+            String reason = event.getRejectReason();
+            (AdmissionControl.STALE.equals(reason) ? shedCounter(reason) : rejectCounter(reason)).inc();
+            if (execution != null) execution.complete(message, rejectAck(message, reason));
+            return;
+        }
+        if (replica != null) return; // counted, fed and acked when its log entry is applied
+        Order order = message.getOrder();
+        if (!event.getTrades().isEmpty()) {
+            tradesBySide[order.getType().ordinal()].inc(event.getTrades().size());
+        }
+        marketData.onOrder(event.getSymbolId(), order.getStockSymbol(), event.getTrades(),
+                event.getBidTicks(), event.getBidQuantity(), event.getAskTicks(), event.getAskQuantity());
+        if (execution != null) {
+            execution.complete(message, executionAck(message, event.getStatus(), event.getRestingQuantity(), event.getTrades()));
+        }
+    }
+
+    /**
+     * Runs on the book's single writer before an order action touches the book: refuses an order
+     * id the agent already had executed, and a CANCEL or REPLACE of an order not resting, then runs
+     * the pre-trade risk checks on new orders (a REPLACE is checked as if its original were still
+     * open), and takes the original order off the book for CANCEL and REPLACE. Returns the reject
+     * reason, or null if the action goes ahead, in which case its id is marked executed; a rejected
+     * id may be retried. Only an order that passes every other check counts against the order rate.
+     */
+    private String admit(MessageType type, Order order, int agentId, int symbolId, OrderBook book,
+                         SequenceWindow executed, long nowMillis) {
+        long orderId = order.getOrderId();
+        if (orderId != 0 && executed.isExecuted(agentId, orderId)) return DUPLICATE;
+        OrderBook.RestingOrder original = null;
+        if (type != MessageType.ORDER) {
+            original = book.find(agentId, order.getOriginalOrderId());
+            if (original == null) return "unknown-order";
+        }
+        if (type != MessageType.CANCEL) {
+            String reason = risk.check(agentId, symbolId, order.getType(), order.getQuantity(),
+                    OrderBook.toTicks(order.getPrice()), nowMillis);
+            if (reason != null) return reason;
+        }
+        if (original != null) {
+            book.cancel(original.getOrderId());
+            risk.onRemoved(symbolId, original);
+        }
+        if (orderId != 0) executed.markExecuted(agentId, orderId);
+        return null;
+    }
+
+    private static int filledQuantity(List<Trade> trades) {
+        int filled = 0;
+        for (Trade trade : trades) filled += trade.getQuantity();
+        return filled;
+    }
+
+    // a duplicate is not an error: the first copy was executed and its ack has the outcome;
+    // a stale order was shed unseen by the book and may be sent again
+    private static MessageAck rejectAck(TradeMessage message, String reason) {
+        if (AdmissionControl.STALE.equals(reason)) return MessageAck.busy(message, reason);
+        if (!DUPLICATE.equals(reason)) return MessageAck.rejected(message, reason);
+        return new MessageAck(message.getLamportTimestamp(), true, reason, message.getOrder().getOrderId(),
+                OrderStatus.DUPLICATE, 0, Collections.emptyList());
+    }
+
+    private static MessageAck executionAck(TradeMessage message, OrderStatus status, int restingQuantity, List<Trade> trades) {
+        List<Fill> fills = trades.isEmpty() ? Collections.emptyList() : new ArrayList<>(trades.size());
+        for (Trade trade : trades) fills.add(new Fill(trade.getTradeId(), trade.getQuantity(), trade.getPrice()));
+        return new MessageAck(message.getLamportTimestamp(), true, null, message.getOrder().getOrderId(),
+                status, restingQuantity, fills);
+    }
+
+    /**
+     * Pipeline stage 2, one instance per shard: matches the order against its symbol's book,
+     * after dropping duplicates, running the risk checks and cancelling what a CANCEL or REPLACE
+     * refers to.
+     * Only this shard's match thread touches the books and order id window it owns.
+     */
+    private final class MatchingStage implements OrderPipeline.Handler, OrderBook.FillHandler {
+        private final SequenceWindow executed;
+        private final String tradeIdPrefix;      // "<nodeId>-<shard>-"
+        private long nextTradeNumber;           // per shard, seeded from the clock so ids stay unique across restarts
+        private OrderEvent current;
+
+        MatchingStage(int shard, SequenceWindow executed) {
+            this.executed = executed;
+            this.tradeIdPrefix = nodeId + "-" + shard + "-";
+            this.nextTradeNumber = System.currentTimeMillis() * 1000;
+        }
+
+        @Override
+        public void onEvent(OrderEvent event, long sequence, boolean endOfBatch) {
+            if (event.isRejected() || replica != null) return; // replicas match in ReplicatedOrders
+            MessageType type = event.getMessage().getType();
+            Order order = event.getMessage().getOrder();
+            OrderBook book = bookFor(event.getSymbolId());
+
+            String reason = admit(type, order, event.getAgentId(), event.getSymbolId(), book, executed,
+                    System.currentTimeMillis());
+            if (reason != null) {
+                event.reject(reason);
+            } else if (type == MessageType.CANCEL) {
+                event.setOutcome(OrderStatus.CANCELED, 0);
+            } else {
+                current = event;
+                long priceTicks = OrderBook.toTicks(order.getPrice());
+                event.setRestingOrderId(book.submit(event.getAgentId(), order.getOrderId(), order.getType(),
+                        priceTicks, order.getQuantity(), this));
+                current = null;
+                int filled = filledQuantity(event.getTrades());
+                int resting = order.getQuantity() - filled;
+                risk.onRested(event.getAgentId(), event.getSymbolId(), order.getType(), resting, priceTicks);
+                event.setOutcome(OrderStatus.afterMatching(filled, resting), resting);
+            }
+            event.setTopOfBook(book);
+        }
+
+        // builds one trade between a resting maker and the incoming taker (names resolved only here)
+        @Override
+        public void onFill(OrderBook.RestingOrder maker, int takerAgentId, OrderType takerSide, int quantity, long priceTicks) {
+            risk.onFill(maker.getAgentId(), takerAgentId, current.getSymbolId(), takerSide, quantity, priceTicks);
+            boolean takerBuys = takerSide == OrderType.BUY;
+            Order order = current.getMessage().getOrder();
+            String taker = order.getAgentId();
+            String makerName = agents.nameOf(maker.getAgentId());
+            current.getTrades().add(new Trade(
+                    tradeIdPrefix + nextTradeNumber++, // only this shard's match thread counts, no shared state
+                    taker,
+                    takerBuys ? taker : makerName,
+                    takerBuys ? makerName : taker,
+                    order.getStockSymbol(),
+                    quantity,
+                    OrderBook.toPrice(priceTicks),
+                    clock.tick(), // each trade is a local event with its own stamp
+                    System.currentTimeMillis()
+            ));
+        }
+    }
+
+    /**
+     * Applies committed log entries on the replica's apply thread, the only writer of the books
+     * in replicated mode. Trade ids, lamport and wall-clock times come from the log entry, so
+     * every replica builds identical trades.
+     */
+    private final class ReplicatedOrders implements RaftNode.StateMachine, OrderBook.FillHandler {
+        private final List<Trade> fills = new ArrayList<>();
+        private final SequenceWindow executed = new SequenceWindow(); // built in log order, alike on every replica
+        private long currentIndex;
+        private LogEntry current;
+        private int currentSymbolId;
+
+        @Override
+        public void apply(long index, LogEntry entry) {
+            lamportGauge.set(clock.getTime()); // the replica merged the entry's lamport time
+            if (entry.isNoop()) return;
+
+            MessageType type = entry.getType();
+            Order order = entry.getOrder();
+            int agentId = agents.intern(order.getAgentId());
+            int symbolId = symbols.intern(order.getStockSymbol());
+            OrderBook book = bookFor(symbolId);
+            // only the leader that proposed this very entry has a caller waiting for it
+            PendingApply pending = awaitingApply.remove(index);
+            if (pending != null && pending.message.getOrder() != order) pending = null;
+
+            // the rate window runs on the leader's clock from the entry, so every replica decides alike
+            String reason = admit(type, order, agentId, symbolId, book, executed, entry.getSystemTimeMillis());
+            if (reason != null) {
+                rejectCounter(reason).inc();
+                if (pending != null) pending.execution.complete(pending.message, rejectAck(pending.message, reason));
+                Log.debug("MarketNode: Rejected {} from {} at log index {} ({})")
+                        .arg(type).arg(order.getAgentId()).arg(index).arg(reason).log();
+                return;
+            }
+
+            currentIndex = index;
+            current = entry;
+            currentSymbolId = symbolId;
+            fills.clear();
+            long restingOrderId = 0;
+            if (type != MessageType.CANCEL) {
+                long priceTicks = OrderBook.toTicks(order.getPrice());
+                restingOrderId = book.submit(agentId, order.getOrderId(), order.getType(),
+                        priceTicks, order.getQuantity(), this);
+                risk.onRested(agentId, symbolId, order.getType(), order.getQuantity() - filledQuantity(fills), priceTicks);
+            }
+            current = null;
+
+            for (Trade trade : fills) appendTrade(trade);
+            if (!fills.isEmpty()) tradesBySide[order.getType().ordinal()].inc(fills.size());
+            marketData.onOrder(symbolId, order.getStockSymbol(), fills,
+                    book.bestBid(), book.bestBidQuantity(), book.bestAsk(), book.bestAskQuantity());
+
+            if (pending != null) {
+                int filled = filledQuantity(fills);
+                int resting = type == MessageType.CANCEL ? 0 : order.getQuantity() - filled;
+                OrderStatus status = type == MessageType.CANCEL ? OrderStatus.CANCELED : OrderStatus.afterMatching(filled, resting);
+                pending.execution.complete(pending.message, executionAck(pending.message, status, resting, fills));
+            }
+
+            if (Log.isEnabled(LogLevel.DEBUG)) {
+                Log.debug("[LT={}] MarketNode: Applied {} {} from {} (log index {}, Msg LT={}, fills={}, resting={})")
+                        .arg(clock.getTime()).arg(type).arg(order.getType()).arg(order.getAgentId()).arg(index)
+                        .arg(entry.getLamportTimestamp()).arg(fills.size()).arg(restingLabel(restingOrderId)).log();
+            }
+        }
+
+        @Override
+        public void onFill(OrderBook.RestingOrder maker, int takerAgentId, OrderType takerSide, int quantity, long priceTicks) {
+            risk.onFill(maker.getAgentId(), takerAgentId, currentSymbolId, takerSide, quantity, priceTicks);
+            boolean takerBuys = takerSide == OrderType.BUY;
+            Order order = current.getOrder();
+            String taker = order.getAgentId();
+            String makerName = agents.nameOf(maker.getAgentId());
+            fills.add(new Trade(
+                    currentIndex + "-" + (fills.size() + 1), // log index and fill number, the same on every replica
+                    taker,
+                    takerBuys ? taker : makerName,
+                    takerBuys ? makerName : taker,
+                    order.getStockSymbol(),
+                    quantity,
+                    OrderBook.toPrice(priceTicks),
+                    current.getLamportTimestamp(),
+                    current.getSystemTimeMillis()
+            ));
+        }
+
+        @Override
+        public void onRoleChange(boolean leader, long term, int leaderId) {
+            Metrics.REPLICA_LEADER.labels(nodeId).set(leader ? 1 : 0);
+            Log.info("[LT={}] MarketNode: {} in term {} (leader is replica {})")
+                    .arg(clock.getTime()).arg(leader ? "Now LEADER" : "Following").arg(term).arg(leaderId).log();
+        }
+    }
+
+    // an executeBatch order this leader proposed, acked once its log entry is applied
+    private static final class PendingApply {
+        private final TradeMessage message;
+        private final ExecutionBatch execution;
+
+        private PendingApply(TradeMessage message, ExecutionBatch execution) {
+            this.message = message;
+            this.execution = execution;
+        }
     }
 
     // handles heartbeat messages from agents
     private void handleHeartbeat(TradeMessage message) {
-        monitor.updateHeartbeat(message.getSenderId());
+        int agentId = agents.intern(message.getSenderId());
+        monitor.updateHeartbeat(agentId);
 
         // mark agent as UP (in case previously down)
-        Metrics.NODE_STATUS.labels(message.getSenderId()).set(1);
+        agentStatusGauge(agentId, message.getSenderId()).set(1);
+
+        Log.debug("[LT={}] MarketNode: Received heartbeat from {} (Msg LT={})")
+                .arg(clock.getTime()).arg(message.getSenderId()).arg(message.getLamportTimestamp()).log();
+    }
 
-        System.out.printf("[LT=%d] MarketNode: Received heartbeat from %s (Msg LT=%d)%n",
-                clock.getTime(), message.getSenderId(), message.getLamportTimestamp());
+    private static String restingLabel(long restingOrderId) {
+        return restingOrderId == 0 ? "none" : String.valueOf(restingOrderId);
+    }
+
+    // cached status gauge for an agent id; only the heartbeat lane calls this
+    private Gauge.Child agentStatusGauge(int agentId, String agentName) {
+        if (agentId >= agentStatusGauges.length) {
+            agentStatusGauges = Arrays.copyOf(agentStatusGauges, Math.max(agentId + 1, agentStatusGauges.length * 2));
+        }
+        Gauge.Child gauge = agentStatusGauges[agentId];
+        if (gauge == null) agentStatusGauges[agentId] = gauge = Metrics.NODE_STATUS.labels(agentName);
+        return gauge;
     }
 
     // frontend UI calls this to get latest system snapshot
     @Override
     public SystemState getState() throws RemoteException {
-        List<Trade> recentTrades = tradeLog.stream()
-                .skip(Math.max(0, tradeLog.size() - MAX_TRADES_IN_STATE))
-                .collect(Collectors.toList());
+        long startNanos = System.nanoTime();
+        List<Trade> recentTrades = new ArrayList<>(MAX_TRADES_IN_STATE);
+        tradeHistory.readLast(MAX_TRADES_IN_STATE, recentTrades);
 
-        return new SystemState(
+        SystemState state = new SystemState(
                 recentTrades,
-                monitor.getStatuses(AGENT_TIMEOUT_MS),
+                statusLog.snapshot(),
                 "UP"
         );
+        stateBuild.recordSince(startNanos);
+        return state;
+    }
+
+    // frontend UI calls this repeatedly, passing the cursors from the previous delta
+    @Override
+    public StateDelta getStateDelta(long fromTradeSequence, long fromStatusVersion) throws RemoteException {
+        long startNanos = System.nanoTime();
+        long head = tradeHistory.size();
+        long from = fromTradeSequence;
+        boolean tradesReset = false;
+        if (from == StateDelta.LATEST || from > head) {
+            // new subscriber (or one from before a restart): start with the latest trades
+            from = Math.max(0, head - MAX_TRADES_IN_STATE);
+            tradesReset = true;
+        } else if (from < tradeHistory.oldestSequence()) {
+            // fell behind the ring: skip to what is still held
+            from = tradeHistory.oldestSequence();
+            tradesReset = true;
+        }
+
+        List<Trade> trades = new ArrayList<>();
+        int read = tradeHistory.readFrom(from, Math.min(head, from + MAX_TRADES_PER_DELTA), trades);
+        AgentStatusLog.Changes changes = statusLog.changesSince(fromStatusVersion);
+
+        StateDelta delta = new StateDelta(trades, from + read, tradesReset,
+                changes.statuses, changes.version, changes.reset, "UP");
+        deltaBuild.recordSince(startNanos);
+        return delta;
+    }
+
+    // answered from the trade history, or from the recent trades in memory when there is none
+    @Override
+    public TradeQueryResult queryTrades(TradeQuery query) throws RemoteException {
+        if (history != null) return history.query(query);
+        List<Trade> recent = new ArrayList<>();
+        tradeHistory.readLast(TRADE_HISTORY_CAPACITY, recent);
+        return TradeStore.query(recent, query);
+    }
+
+    @Override
+    public void subscribeMarketData(MarketDataListener listener, List<String> symbols) throws RemoteException {
+        marketData.subscribe(listener, symbols);
+    }
+
+    @Override
+    public void unsubscribeMarketData(MarketDataListener listener) throws RemoteException {
+        marketData.unsubscribe(listener);
+    }
+
+    @Override
+    public List<MarketDataUpdate> getMarketData(long fromVersion) throws RemoteException {
+        return marketData.updatesSince(fromVersion);
     }
 }
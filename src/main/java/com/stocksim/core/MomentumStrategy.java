@@ -0,0 +1,43 @@
+package com.stocksim.core;
+
+import com.stocksim.data.OrderType;
+
+import java.util.Random;
+
+/**
+ * Trend follower: keeps an exponential moving average of each symbol's mid and, when the mid
+ * has moved away from it by more than a threshold, takes liquidity in that direction by
+ * pricing at (or through) the opposite touch. No trend means no order.
+ */
+public final class MomentumStrategy implements TradingStrategy {
+
+    private static final double SMOOTHING = 0.2;         // weight of the newest mid in the average
+    private static final double THRESHOLD_TICKS = 2;     // minimum move from the average to act on
+    private static final int AGGRESSION_TICKS = 1;       // how far through the touch to price
+    private static final int MIN_QUANTITY = 10;
+    private static final int MAX_QUANTITY = 60;
+
+    private double[] averages; // per symbol index, sized on first use
+
+    @Override
+    public boolean decide(PriceBoard prices, Random random, OrderDraft draft) {
+        if (averages == null) averages = new double[prices.symbolCount()];
+        int symbol = random.nextInt(prices.symbolCount());
+        long mid = prices.midTicks(symbol);
+
+        double average = averages[symbol] == 0 ? mid : averages[symbol];
+        averages[symbol] = average + SMOOTHING * (mid - average);
+        double trend = mid - average;
+        if (Math.abs(trend) < THRESHOLD_TICKS) return false;
+
+        int quantity = MIN_QUANTITY + random.nextInt(MAX_QUANTITY - MIN_QUANTITY + 1);
+        if (trend > 0) {
+            long ask = prices.askTicks(symbol);
+            draft.set(symbol, OrderType.BUY, quantity, (ask != 0 ? ask : mid) + AGGRESSION_TICKS);
+        } else {
+            long bid = prices.bidTicks(symbol);
+            draft.set(symbol, OrderType.SELL, quantity, (bid != 0 ? bid : mid) - AGGRESSION_TICKS);
+        }
+        return true;
+    }
+}
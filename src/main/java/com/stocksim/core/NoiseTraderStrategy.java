@@ -0,0 +1,24 @@
+package com.stocksim.core;
+
+import com.stocksim.data.OrderType;
+
+import java.util.Random;
+
+/**
+ * Uninformed flow: a random side and symbol, limit price scattered normally around the mid.
+ * Orders priced through the touch cross and trade, the rest add depth near the top of book.
+ */
+public final class NoiseTraderStrategy implements TradingStrategy {
+
+    private static final double PRICE_SPREAD_TICKS = 8; // standard deviation around the mid
+    private static final int MAX_QUANTITY = 100;
+
+    @Override
+    public boolean decide(PriceBoard prices, Random random, OrderDraft draft) {
+        int symbol = random.nextInt(prices.symbolCount());
+        OrderType side = random.nextBoolean() ? OrderType.BUY : OrderType.SELL;
+        long price = prices.midTicks(symbol) + Math.round(random.nextGaussian() * PRICE_SPREAD_TICKS);
+        draft.set(symbol, side, 1 + random.nextInt(MAX_QUANTITY), price);
+        return true;
+    }
+}
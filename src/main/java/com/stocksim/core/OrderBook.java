@@ -0,0 +1,275 @@
+package com.stocksim.core;
+
+import com.stocksim.data.OrderType;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Limit order book for a single symbol with price-time priority.
+ * Price levels live in sorted maps (O(log levels)), orders at a level sit in a
+ * FIFO linked list, so inserts, cancels and fills never scan the book.
+ * Not thread safe: exactly one thread may drive a book at a time.
+ */
+public class OrderBook {
+
+    // prices are kept as integer ticks so levels compare exactly
+    public static final double TICK_SIZE = 0.01;
+
+    // callback for each fill, avoids building a result list per order
+    public interface FillHandler {
+        void onFill(RestingOrder maker, int takerAgentId, OrderType takerSide, int quantity, long priceTicks);
+    }
+
+    private final String symbol;
+    private final TreeMap<Long, PriceLevel> bids = new TreeMap<>(Collections.reverseOrder()); // best = highest
+    private final TreeMap<Long, PriceLevel> asks = new TreeMap<>();                           // best = lowest
+    private final Map<Long, RestingOrder> ordersById = new HashMap<>();
+    private final Map<ClientOrderKey, RestingOrder> ordersByClientId = new HashMap<>(); // numbered orders only
+    private long nextOrderId = 1;
+
+    public OrderBook(String symbol) {
+        this.symbol = symbol;
+    }
+
+    // converts a double price to ticks
+    public static long toTicks(double price) {
+        return Math.round(price / TICK_SIZE);
+    }
+
+    // converts ticks back to a double price
+    public static double toPrice(long priceTicks) {
+        return priceTicks * TICK_SIZE;
+    }
+
+    public String getSymbol() { return symbol; }
+
+    /**
+     * Matches an incoming limit order against the opposite side and rests any
+     * remainder. Returns the id of the resting remainder, or 0 if fully filled.
+     * Agents are identified by their interned id (see {@link IdRegistry}).
+     */
+    public long submit(int agentId, OrderType side, long priceTicks, int quantity, FillHandler handler) {
+        return submit(agentId, 0, side, priceTicks, quantity, handler);
+    }
+
+    // as above, for an order the agent numbered: a resting remainder can then be cancelled by clientOrderId
+    public long submit(int agentId, long clientOrderId, OrderType side, long priceTicks, int quantity, FillHandler handler) {
+        int remaining = quantity;
+        TreeMap<Long, PriceLevel> opposite = (side == OrderType.BUY) ? asks : bids;
+
+        while (remaining > 0 && !opposite.isEmpty()) {
+            Map.Entry<Long, PriceLevel> best = opposite.firstEntry();
+            long levelPrice = best.getKey();
+
+            // stop once the best opposite price no longer crosses
+            if (side == OrderType.BUY ? levelPrice > priceTicks : levelPrice < priceTicks) break;
+
+            PriceLevel level = best.getValue();
+            while (remaining > 0 && level.head != null) {
+                RestingOrder maker = level.head;
+                int fillQty = Math.min(remaining, maker.remaining);
+                maker.remaining -= fillQty;
+                level.totalQuantity -= fillQty;
+                remaining -= fillQty;
+
+                // fills execute at the resting price
+                handler.onFill(maker, agentId, side, fillQty, levelPrice);
+
+                if (maker.remaining == 0) {
+                    level.unlink(maker);
+                    ordersById.remove(maker.orderId);
+                    if (maker.clientKey != null) ordersByClientId.remove(maker.clientKey);
+                }
+            }
+            if (level.head == null) opposite.pollFirstEntry();
+        }
+
+        if (remaining == 0) return 0;
+        return rest(nextOrderId++, agentId, clientOrderId, side, priceTicks, remaining);
+    }
+
+    // puts back an order from a snapshot behind those already at its price, without matching
+    public void restore(long orderId, int agentId, long clientOrderId, OrderType side, long priceTicks, int quantity) {
+        rest(orderId, agentId, clientOrderId, side, priceTicks, quantity);
+        nextOrderId = Math.max(nextOrderId, orderId + 1);
+    }
+
+    // id the next resting order gets, kept in snapshots so a replay after one hands out the same ids
+    public long getNextOrderId() { return nextOrderId; }
+    public void setNextOrderId(long nextOrderId) { this.nextOrderId = nextOrderId; }
+
+    // removes a resting order, returns false if it is no longer on the book
+    public boolean cancel(long orderId) {
+        RestingOrder order = ordersById.get(orderId);
+        if (order == null) return false;
+        remove(order);
+        return true;
+    }
+
+    // an agent's resting order by its client order id, null if not resting
+    public RestingOrder find(int agentId, long clientOrderId) {
+        return ordersByClientId.get(new ClientOrderKey(agentId, clientOrderId));
+    }
+
+    // removes an agent's resting order by its client order id, returns it (null if not resting)
+    public RestingOrder cancel(int agentId, long clientOrderId) {
+        RestingOrder order = ordersByClientId.get(new ClientOrderKey(agentId, clientOrderId));
+        if (order != null) remove(order);
+        return order;
+    }
+
+    private void remove(RestingOrder order) {
+        ordersById.remove(order.orderId);
+        if (order.clientKey != null) ordersByClientId.remove(order.clientKey);
+
+        PriceLevel level = order.level;
+        level.totalQuantity -= order.remaining;
+        level.unlink(order);
+        if (level.head == null) {
+            TreeMap<Long, PriceLevel> side = (order.side == OrderType.BUY) ? bids : asks;
+            side.remove(order.priceTicks);
+        }
+    }
+
+    // best bid in ticks, or Long.MIN_VALUE if no bids
+    public long bestBid() {
+        return bids.isEmpty() ? Long.MIN_VALUE : bids.firstKey();
+    }
+
+    // best ask in ticks, or Long.MAX_VALUE if no asks
+    public long bestAsk() {
+        return asks.isEmpty() ? Long.MAX_VALUE : asks.firstKey();
+    }
+
+    // shares resting at the best bid, 0 if no bids
+    public long bestBidQuantity() {
+        return bids.isEmpty() ? 0 : bids.get(bids.firstKey()).totalQuantity;
+    }
+
+    // shares resting at the best ask, 0 if no asks
+    public long bestAskQuantity() {
+        return asks.isEmpty() ? 0 : asks.get(asks.firstKey()).totalQuantity;
+    }
+
+    public int restingOrderCount() {
+        return ordersById.size();
+    }
+
+    // hands every resting order to sink, best price first and oldest first within a price
+    public void forEachResting(Consumer<RestingOrder> sink) {
+        for (TreeMap<Long, PriceLevel> side : List.of(bids, asks)) {
+            for (PriceLevel level : side.values()) {
+                for (RestingOrder order = level.head; order != null; order = order.next) sink.accept(order);
+            }
+        }
+    }
+
+    // removes every resting order, handing each to sink in the same order as forEachResting
+    public void drain(Consumer<RestingOrder> sink) {
+        forEachResting(sink);
+        bids.clear();
+        asks.clear();
+        ordersById.clear();
+        ordersByClientId.clear();
+    }
+
+    // appends remainder to the tail of its price level
+    private long rest(long orderId, int agentId, long clientOrderId, OrderType side, long priceTicks, int quantity) {
+        TreeMap<Long, PriceLevel> book = (side == OrderType.BUY) ? bids : asks;
+        PriceLevel level = book.get(priceTicks);
+        if (level == null) {
+            level = new PriceLevel();
+            book.put(priceTicks, level);
+        }
+
+        ClientOrderKey clientKey = clientOrderId == 0 ? null : new ClientOrderKey(agentId, clientOrderId);
+        RestingOrder order = new RestingOrder(orderId, agentId, clientKey, side, priceTicks, quantity, level);
+        level.append(order);
+        level.totalQuantity += quantity;
+        ordersById.put(order.orderId, order);
+        if (clientKey != null) ordersByClientId.put(clientKey, order);
+        return order.orderId;
+    }
+
+    /**
+     * An order resting on the book. Doubles as a node in its level's FIFO list.
+     */
+    public static final class RestingOrder {
+        private final long orderId;
+        private final int agentId;
+        private final ClientOrderKey clientKey; // null for an unnumbered order
+        private final OrderType side;
+        private final long priceTicks;
+        private int remaining;
+        private final PriceLevel level;
+        private RestingOrder prev;
+        private RestingOrder next;
+
+        private RestingOrder(long orderId, int agentId, ClientOrderKey clientKey, OrderType side, long priceTicks,
+                             int remaining, PriceLevel level) {
+            this.orderId = orderId;
+            this.agentId = agentId;
+            this.clientKey = clientKey;
+            this.side = side;
+            this.priceTicks = priceTicks;
+            this.remaining = remaining;
+            this.level = level;
+        }
+
+        // getters
+        public long getOrderId() { return orderId; }
+        public int getAgentId() { return agentId; }
+        public long getClientOrderId() { return clientKey == null ? 0 : clientKey.clientOrderId; }
+        public OrderType getSide() { return side; }
+        public long getPriceTicks() { return priceTicks; }
+        public int getRemaining() { return remaining; }
+    }
+
+    // all orders at one price, oldest first
+    private static final class PriceLevel {
+        private RestingOrder head;
+        private RestingOrder tail;
+        private long totalQuantity;
+
+        private void append(RestingOrder order) {
+            order.prev = tail;
+            if (tail == null) head = order; else tail.next = order;
+            tail = order;
+        }
+
+        private void unlink(RestingOrder order) {
+            if (order.prev == null) head = order.next; else order.prev.next = order.next;
+            if (order.next == null) tail = order.prev; else order.next.prev = order.prev;
+            order.prev = null;
+            order.next = null;
+        }
+    }
+
+    // an agent's own id for one of its orders
+    private static final class ClientOrderKey {
+        private final int agentId;
+        private final long clientOrderId;
+
+        private ClientOrderKey(int agentId, long clientOrderId) {
+            this.agentId = agentId;
+            this.clientOrderId = clientOrderId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ClientOrderKey)) return false;
+            ClientOrderKey other = (ClientOrderKey) o;
+            return agentId == other.agentId && clientOrderId == other.clientOrderId;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * agentId + Long.hashCode(clientOrderId);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.stocksim.core;
+
+import com.stocksim.data.OrderType;
+
+// an agent's reusable scratch order, filled in by its strategy (one per agent, never shared)
+public final class OrderDraft {
+
+    private int symbolIndex;  // index on the agent's PriceBoard
+    private OrderType side;
+    private int quantity;
+    private long priceTicks;
+    private boolean refreshesQuote;  // cancel the agent's previous order on this side first
+
+    public void set(int symbolIndex, OrderType side, int quantity, long priceTicks) {
+        this.symbolIndex = symbolIndex;
+        this.side = side;
+        this.quantity = quantity;
+        this.priceTicks = Math.max(1, priceTicks); // never at or below zero
+        this.refreshesQuote = false;
+    }
+
+    // marks the order as a new quote: the agent cancels its last quote on the same side before sending it
+    public void refreshQuote() {
+        this.refreshesQuote = true;
+    }
+
+    public int getSymbolIndex() { return symbolIndex; }
+    public OrderType getSide() { return side; }
+    public int getQuantity() { return quantity; }
+    public long getPriceTicks() { return priceTicks; }
+    public boolean refreshesQuote() { return refreshesQuote; }
+}
@@ -0,0 +1,120 @@
+package com.stocksim.core;
+
+import com.stocksim.data.OrderStatus;
+import com.stocksim.data.Trade;
+import com.stocksim.data.TradeMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mutable slot in an order pipeline ring. Slots are preallocated and reused;
+ * each stage reads what the earlier stages wrote and adds its own results.
+ */
+public final class OrderEvent {
+
+    // message published by the rmi thread
+    private TradeMessage message;
+
+    // work to run on the match thread instead of an order (see OrderPipeline.publishTask)
+    private Runnable task;
+
+    // optional second half of a task, run on the log thread when it reaches the same slot
+    private Runnable logTask;
+
+    // executeBatch call waiting for this order's ack, null when the sender only wanted it sequenced
+    private ExecutionBatch execution;
+
+    // nanoTime at publish and at the end of each stage
+    private long publishNanos;
+    private final long[] stageDoneNanos = new long[OrderPipeline.STAGE_COUNT];
+
+    // set by validation, later stages skip rejected events
+    private String rejectReason;
+
+    // interned ids of the order's agent and symbol, set by validation
+    private int agentId;
+    private int symbolId;
+
+    // trades produced by matching (list reused across events)
+    private final List<Trade> trades = new ArrayList<>();
+
+    // resting order id left on the book, 0 if fully filled
+    private long restingOrderId;
+
+    // outcome set by matching: status and shares of the order left on the book
+    private OrderStatus status;
+    private int restingQuantity;
+
+    // best bid and ask (ticks and quantity) left on the book after matching, for the data feed
+    private long bidTicks;
+    private long bidQuantity;
+    private long askTicks;
+    private long askQuantity;
+
+    // fills the slot for a new message
+    void reset(TradeMessage message, ExecutionBatch execution, long publishNanos) {
+        this.message = message;
+        this.task = null;
+        this.logTask = null;
+        this.execution = execution;
+        this.publishNanos = publishNanos;
+        this.rejectReason = null;
+        this.restingOrderId = 0;
+        this.status = OrderStatus.SEQUENCED;
+        this.restingQuantity = 0;
+        this.trades.clear();
+    }
+
+    // drops references once the last stage is done so the slot does not pin garbage
+    void release() {
+        this.message = null;
+        this.task = null;
+        this.logTask = null;
+        this.execution = null;
+        this.trades.clear();
+    }
+
+    public TradeMessage getMessage() { return message; }
+    Runnable getTask() { return task; }
+    void setTask(Runnable task) { this.task = task; }
+    Runnable getLogTask() { return logTask; }
+    void setLogTask(Runnable logTask) { this.logTask = logTask; }
+    ExecutionBatch getExecution() { return execution; }
+    public long getPublishNanos() { return publishNanos; }
+    public long getStageDoneNanos(int stage) { return stageDoneNanos[stage]; }
+    void markStageDone(int stage, long nanos) { stageDoneNanos[stage] = nanos; }
+
+    public boolean isRejected() { return rejectReason != null; }
+    public String getRejectReason() { return rejectReason; }
+    public void reject(String reason) { this.rejectReason = reason; }
+
+    public int getAgentId() { return agentId; }
+    public int getSymbolId() { return symbolId; }
+    public void setIds(int agentId, int symbolId) {
+        this.agentId = agentId;
+        this.symbolId = symbolId;
+    }
+
+    public List<Trade> getTrades() { return trades; }
+    public long getRestingOrderId() { return restingOrderId; }
+    public void setRestingOrderId(long restingOrderId) { this.restingOrderId = restingOrderId; }
+
+    public OrderStatus getStatus() { return status; }
+    public int getRestingQuantity() { return restingQuantity; }
+    public void setOutcome(OrderStatus status, int restingQuantity) {
+        this.status = status;
+        this.restingQuantity = restingQuantity;
+    }
+
+    public long getBidTicks() { return bidTicks; }
+    public long getBidQuantity() { return bidQuantity; }
+    public long getAskTicks() { return askTicks; }
+    public long getAskQuantity() { return askQuantity; }
+    public void setTopOfBook(OrderBook book) {
+        this.bidTicks = book.bestBid();
+        this.bidQuantity = book.bestBidQuantity();
+        this.askTicks = book.bestAsk();
+        this.askQuantity = book.bestAskQuantity();
+    }
+}
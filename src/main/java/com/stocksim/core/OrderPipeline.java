@@ -0,0 +1,222 @@
+package com.stocksim.core;
+
+import com.stocksim.data.TradeMessage;
+import com.stocksim.logging.Log;
+import com.stocksim.metrics.LatencyRecorder;
+import com.stocksim.metrics.Metrics;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Staged order processor fed by a {@link RingBuffer}.
+ * RMI threads only claim a slot and publish; validation, matching, trade logging and
+ * metrics each run on their own thread, consuming the ring strictly in sequence order.
+ * Each stage waits on the stage before it (a sequence barrier) and drains everything
+ * available in one batch, so no locks are taken anywhere on the order path.
+ * Tasks published with {@link #publishTask} run on the match thread (optionally followed by
+ * a second task on the log thread) in sequence with the orders and are never shown to the handlers.
+ */
+public class OrderPipeline {
+
+    public static final int VALIDATE = 0;
+    public static final int MATCH = 1;
+    public static final int LOG = 2;
+    public static final int METRICS = 3;
+    public static final int STAGE_COUNT = 4;
+
+    private static final String[] STAGE_NAMES = {"validate", "match", "log", "metrics"};
+
+    // work done by one stage on one event
+    public interface Handler {
+        void onEvent(OrderEvent event, long sequence, boolean endOfBatch);
+    }
+
+    private final RingBuffer<OrderEvent> ring;
+    private final AtomicLong[] stageSequences = new AtomicLong[STAGE_COUNT];
+    private final Thread[] stageThreads = new Thread[STAGE_COUNT];
+    private final Histogram.Child[] stageLatency = new Histogram.Child[STAGE_COUNT];
+    private final Gauge.Child queueDepth;
+    private final LatencyRecorder.Child queueWait;
+    private volatile boolean running = true;
+
+    // handlers are given in stage order: validate, match, log, metrics
+    public OrderPipeline(String name, int ringSize, Handler... handlers) {
+        if (handlers.length != STAGE_COUNT) throw new IllegalArgumentException("expected " + STAGE_COUNT + " stage handlers");
+
+        this.ring = new RingBuffer<>(ringSize, OrderEvent::new);
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            stageSequences[i] = new AtomicLong(-1);
+            stageLatency[i] = Metrics.PIPELINE_STAGE_LATENCY.labels(STAGE_NAMES[i]);
+        }
+        this.queueDepth = Metrics.PIPELINE_QUEUE_DEPTH.labels(name);
+        this.queueWait = Metrics.QUEUE_WAIT.labels(name);
+
+        // producers may not lap the last stage
+        ring.setGatingSequences(stageSequences[STAGE_COUNT - 1]);
+
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            final int stage = i;
+            Thread t = new Thread(() -> runStage(stage, handlers[stage]), name + "-" + STAGE_NAMES[i]);
+            t.setDaemon(true);
+            stageThreads[i] = t;
+            t.start();
+        }
+    }
+
+    // called from rmi threads: claim, fill, publish
+    public void publish(TradeMessage message) {
+        long sequence = ring.next();
+        ring.get(sequence).reset(message, null, System.nanoTime());
+        ring.publish(sequence);
+    }
+
+    // publishes a batch under one claim so the batch occupies contiguous sequences
+    public void publishAll(List<TradeMessage> messages) {
+        publishAll(messages, null);
+    }
+
+    // as above, with the executeBatch call (may be null) that waits for the orders' acks
+    void publishAll(List<TradeMessage> messages, ExecutionBatch execution) {
+        int offset = 0;
+        while (offset < messages.size()) {
+            int n = Math.min(messages.size() - offset, ring.size());
+            long hi = ring.next(n);
+            long lo = hi - n + 1;
+            long now = System.nanoTime();
+            for (long s = lo; s <= hi; s++) {
+                ring.get(s).reset(messages.get(offset + (int) (s - lo)), execution, now);
+            }
+            ring.publish(lo, hi);
+            offset += n;
+        }
+    }
+
+    /**
+     * As publishAll, but only if the whole batch fits under limit events queued in the ring;
+     * returns false, publishing nothing, if it does not.
+     */
+    boolean tryPublishAll(List<TradeMessage> messages, ExecutionBatch execution, int limit) {
+        int n = messages.size();
+        if (n > limit) return false;
+        long hi = ring.tryNext(n, limit);
+        if (hi < 0) return false;
+        long lo = hi - n + 1;
+        long now = System.nanoTime();
+        for (long s = lo; s <= hi; s++) {
+            ring.get(s).reset(messages.get((int) (s - lo)), execution, now);
+        }
+        ring.publish(lo, hi);
+        return true;
+    }
+
+    public int ringSize() {
+        return ring.size();
+    }
+
+    // runs a task on the match thread, after every order published before it
+    public void publishTask(Runnable task) {
+        publishTask(task, null);
+    }
+
+    /**
+     * As above, then runs logTask on the log thread at the same point of the sequence: after
+     * every earlier order was logged and before any later one is.
+     */
+    public void publishTask(Runnable task, Runnable logTask) {
+        long sequence = ring.next();
+        OrderEvent event = ring.get(sequence);
+        event.reset(null, null, System.nanoTime());
+        event.setTask(task);
+        event.setLogTask(logTask);
+        ring.publish(sequence);
+    }
+
+    // events published but not yet through the last stage
+    public long depth() {
+        return ring.depth();
+    }
+
+    public void shutdown() {
+        running = false;
+        for (Thread t : stageThreads) t.interrupt();
+    }
+
+    // consume loop for one stage
+    private void runStage(int stage, Handler handler) {
+        AtomicLong sequence = stageSequences[stage];
+        long next = sequence.get() + 1;
+        int idle = 0;
+
+        while (running) {
+            long available = availableFor(stage, next);
+            if (available < next) {
+                idle = backOff(idle);
+                continue;
+            }
+            idle = 0;
+
+            // the end of the batch is its last order, tasks are invisible to handlers
+            long lastOrder = available;
+            while (lastOrder >= next && ring.get(lastOrder).getTask() != null) lastOrder--;
+            long batchStart = (stage == 0) ? System.nanoTime() : 0;
+
+            for (long s = next; s <= available; s++) {
+                OrderEvent event = ring.get(s);
+                try {
+                    Runnable task = event.getTask();
+                    if (task == null) {
+                        if (stage == 0) queueWait.recordNanos(batchStart - event.getPublishNanos());
+                        handler.onEvent(event, s, s == lastOrder);
+                    } else if (stage == MATCH) {
+                        task.run();
+                    } else if (stage == LOG && event.getLogTask() != null) {
+                        event.getLogTask().run();
+                    }
+                } catch (RuntimeException e) {
+                    // one bad event must not stall the whole shard
+                    event.reject("error");
+                    Log.error("OrderPipeline stage {} failed on sequence {}: {}").arg(STAGE_NAMES[stage]).arg(s).arg(e).log();
+                }
+                event.markStageDone(stage, System.nanoTime());
+                if (stage == STAGE_COUNT - 1) finish(event);
+            }
+
+            sequence.lazySet(available);
+            next = available + 1;
+            if (stage == STAGE_COUNT - 1) queueDepth.set(ring.getCursor() - available);
+        }
+    }
+
+    // sequence barrier: first stage follows publishers, the rest follow the previous stage
+    private long availableFor(int stage, long next) {
+        if (stage == 0) return ring.highestPublished(next, ring.getCursor());
+        return stageSequences[stage - 1].get();
+    }
+
+    // records per-stage latency and frees the slot's references
+    private void finish(OrderEvent event) {
+        long previous = event.getPublishNanos();
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            long done = event.getStageDoneNanos(i);
+            stageLatency[i].observe((done - previous) / 1e9);
+            previous = done;
+        }
+        event.release();
+    }
+
+    // spin, then yield, then park so idle shards do not burn a core
+    private static int backOff(int idle) {
+        if (idle < 100) {
+            Thread.onSpinWait();
+        } else if (idle < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(100_000);
+        }
+        return idle + 1;
+    }
+}
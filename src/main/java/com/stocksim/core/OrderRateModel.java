@@ -0,0 +1,36 @@
+package com.stocksim.core;
+
+import java.util.Random;
+
+/**
+ * Decides how long an agent waits before its next action.
+ */
+public interface OrderRateModel {
+
+    // nanoseconds until the agent acts again
+    long nextDelayNanos(Random random);
+
+    /**
+     * Poisson arrivals: exponential gaps with the given mean rate per agent.
+     * With N agents each at aggregateRate / N, the process emits aggregateRate actions/sec.
+     */
+    static OrderRateModel poisson(double actionsPerSecond) {
+        if (!(actionsPerSecond > 0)) throw new IllegalArgumentException("rate must be > 0");
+        double meanNanos = 1e9 / actionsPerSecond;
+        return random -> (long) (-Math.log(1.0 - random.nextDouble()) * meanNanos);
+    }
+
+    // fixed gap of 1 / rate
+    static OrderRateModel fixed(double actionsPerSecond) {
+        if (!(actionsPerSecond > 0)) throw new IllegalArgumentException("rate must be > 0");
+        long gapNanos = (long) (1e9 / actionsPerSecond);
+        return random -> gapNanos;
+    }
+
+    // uniform gap between min and max millis (the original 1-3s agent behaviour)
+    static OrderRateModel uniform(long minMillis, long maxMillis) {
+        long spanNanos = (maxMillis - minMillis) * 1_000_000L;
+        long minNanos = minMillis * 1_000_000L;
+        return random -> minNanos + (long) (random.nextDouble() * spanNanos);
+    }
+}
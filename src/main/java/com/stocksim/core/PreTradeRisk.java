@@ -0,0 +1,218 @@
+package com.stocksim.core;
+
+import com.stocksim.data.OrderType;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Pre-trade risk checks, run inline by the single writer of a symbol's book just before an
+ * order is matched: order size and notional, per-agent order rate, per-symbol position and
+ * per-agent exposure. The same writer applies the order's fills, so a symbol's positions are
+ * plain long arrays indexed by interned agent id, with no locks or boxing on the order path.
+ *
+ * The order rate here is a risk limit on orders that would trade: it is charged last, only for
+ * orders that pass every other check, and replicas apply it on the leader's clock. Throttling
+ * what a node takes in is {@link AdmissionControl}'s per-agent bucket, which answers busy.
+ *
+ * Rate and exposure span symbols, and so shards: they are kept per agent in atomic arrays,
+ * one cache line per agent. They are checked, not reserved, so orders of one agent racing
+ * on different shards can overshoot a limit by one order each.
+ * Prices and notionals are in ticks ({@link OrderBook#TICK_SIZE}).
+ */
+public final class PreTradeRisk {
+
+    // reject reasons, also the reason label of the reject counter
+    public static final String ORDER_SIZE = "order-size";
+    public static final String ORDER_NOTIONAL = "order-notional";
+    public static final String ORDER_RATE = "order-rate";
+    public static final String POSITION_LIMIT = "position-limit";
+    public static final String EXPOSURE_LIMIT = "exposure-limit";
+
+    private static final int AGENT_STRIDE = 8;              // longs per agent: one 64-byte line
+    private static final int OPEN_NOTIONAL = 0;             // resting buy and sell orders
+    private static final int NET_NOTIONAL = 1;              // bought minus sold
+    private static final int RATE = 2;                      // wall-clock second << RATE_BITS | orders in it
+    private static final int RATE_BITS = 24;
+    private static final long RATE_COUNT_MASK = (1L << RATE_BITS) - 1;
+    private static final int AGENTS_PER_CHUNK = 1024;
+
+    private static final int POSITION_STRIDE = 4;           // longs per agent in a symbol's table
+    private static final int POSITION = 0;                  // shares held, negative when short
+    private static final int OPEN_BUY = 1;                  // shares on resting buy orders
+    private static final int OPEN_SELL = 2;                 // shares on resting sell orders
+    private static final int SYMBOL_NET_NOTIONAL = 3;       // this symbol's part of the agent's NET_NOTIONAL
+
+    // callback for each agent holding a position in a symbol
+    public interface PositionVisitor {
+        void visit(int agentId, long position, long netNotionalTicks);
+    }
+
+    private final RiskLimits limits;
+    private final long maxOrderNotionalTicks;
+    private final long maxExposureTicks;
+    private final long maxOrdersPerSecond;
+
+    // agent chunks are created once and never moved, so a shard never sees a stale copy
+    private volatile AtomicLongArray[] agentChunks = new AtomicLongArray[1];
+    // per-symbol tables: the array is copied on a new symbol, a table is only touched by its symbol's writer
+    private volatile long[][] positionsBySymbol = new long[16][];
+
+    public PreTradeRisk(RiskLimits limits) {
+        this.limits = limits;
+        this.maxOrderNotionalTicks = toTicks(limits.getMaxOrderNotional());
+        this.maxExposureTicks = toTicks(limits.getMaxExposure());
+        this.maxOrdersPerSecond = Math.min(limits.getMaxOrdersPerSecond(), RATE_COUNT_MASK);
+    }
+
+    public RiskLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Checks a new order of agentId before it is matched. If every other check passes, the order
+     * counts against the agent's rate. Returns the reject reason, or null if it may trade. Nothing is reserved: the caller
+     * reports what the order did through {@link #onFill} and {@link #onRested}.
+     */
+    public String check(int agentId, int symbolId, OrderType side, int quantity, long priceTicks, long nowMillis) {
+        if (quantity > limits.getMaxOrderQuantity()) return ORDER_SIZE;
+        long notional = quantity * priceTicks;
+        if (notional > maxOrderNotionalTicks) return ORDER_NOTIONAL;
+
+        AtomicLongArray agent = agentChunk(agentId);
+        int base = agentBase(agentId);
+
+        long[] positions = positions(symbolId, agentId);
+        int p = agentId * POSITION_STRIDE;
+        // worst case if every open order on this side and the new one fill
+        long worst = side == OrderType.BUY
+                ? positions[p + POSITION] + positions[p + OPEN_BUY] + quantity
+                : positions[p + OPEN_SELL] + quantity - positions[p + POSITION];
+        if (worst > limits.getMaxPosition()) return POSITION_LIMIT;
+
+        long exposure = agent.get(base + OPEN_NOTIONAL) + Math.abs(agent.get(base + NET_NOTIONAL)) + notional;
+        if (exposure > maxExposureTicks) return EXPOSURE_LIMIT;
+
+        // last, so rejected orders do not use up the agent's rate
+        if (!countOrder(agent, base + RATE, nowMillis / 1000)) return ORDER_RATE;
+        return null;
+    }
+
+    // the unfilled rest of an order joined the book
+    public void onRested(int agentId, int symbolId, OrderType side, int quantity, long priceTicks) {
+        if (quantity <= 0) return;
+        long[] positions = positions(symbolId, agentId);
+        positions[agentId * POSITION_STRIDE + (side == OrderType.BUY ? OPEN_BUY : OPEN_SELL)] += quantity;
+        agentChunk(agentId).getAndAdd(agentBase(agentId) + OPEN_NOTIONAL, quantity * priceTicks);
+    }
+
+    // a resting order left the book without trading: cancelled, replaced or moved to another node
+    public void onRemoved(int symbolId, OrderBook.RestingOrder order) {
+        int agentId = order.getAgentId();
+        long[] positions = positions(symbolId, agentId);
+        positions[agentId * POSITION_STRIDE + (order.getSide() == OrderType.BUY ? OPEN_BUY : OPEN_SELL)] -= order.getRemaining();
+        agentChunk(agentId).getAndAdd(agentBase(agentId) + OPEN_NOTIONAL, -order.getRemaining() * order.getPriceTicks());
+    }
+
+    // quantity traded at priceTicks between a resting order of makerAgentId and an incoming one of takerAgentId
+    public void onFill(int makerAgentId, int takerAgentId, int symbolId, OrderType takerSide, int quantity, long priceTicks) {
+        long shares = takerSide == OrderType.BUY ? quantity : -quantity; // bought by the taker
+        long notional = shares * priceTicks;
+
+        long[] positions = positions(symbolId, Math.max(makerAgentId, takerAgentId));
+        int maker = makerAgentId * POSITION_STRIDE;
+        positions[takerAgentId * POSITION_STRIDE + POSITION] += shares;
+        positions[takerAgentId * POSITION_STRIDE + SYMBOL_NET_NOTIONAL] += notional;
+        positions[maker + POSITION] -= shares;
+        positions[maker + SYMBOL_NET_NOTIONAL] -= notional;
+        positions[maker + (takerSide == OrderType.BUY ? OPEN_SELL : OPEN_BUY)] -= quantity;
+
+        agentChunk(takerAgentId).getAndAdd(agentBase(takerAgentId) + NET_NOTIONAL, notional);
+        AtomicLongArray makerAgent = agentChunk(makerAgentId);
+        int makerBase = agentBase(makerAgentId);
+        makerAgent.getAndAdd(makerBase + NET_NOTIONAL, -notional);
+        makerAgent.getAndAdd(makerBase + OPEN_NOTIONAL, -(long) quantity * priceTicks);
+    }
+
+    // shares of symbolId held by agentId, negative when short; only the symbol's writer may ask
+    public long positionOf(int agentId, int symbolId) {
+        return positions(symbolId, agentId)[agentId * POSITION_STRIDE + POSITION];
+    }
+
+    // hands every agent with a position or traded notional in symbolId to visitor; only the symbol's writer may ask
+    public void forEachPosition(int symbolId, PositionVisitor visitor) {
+        long[][] current = positionsBySymbol;
+        long[] table = symbolId < current.length ? current[symbolId] : null;
+        if (table == null) return;
+        for (int p = 0; p < table.length; p += POSITION_STRIDE) {
+            if (table[p + POSITION] != 0 || table[p + SYMBOL_NET_NOTIONAL] != 0) {
+                visitor.visit(p / POSITION_STRIDE, table[p + POSITION], table[p + SYMBOL_NET_NOTIONAL]);
+            }
+        }
+    }
+
+    // sets a position from a snapshot, before any order is matched; open orders come back through onRested
+    public void restorePosition(int agentId, int symbolId, long position, long netNotionalTicks) {
+        long[] positions = positions(symbolId, agentId);
+        int p = agentId * POSITION_STRIDE;
+        agentChunk(agentId).getAndAdd(agentBase(agentId) + NET_NOTIONAL, netNotionalTicks - positions[p + SYMBOL_NET_NOTIONAL]);
+        positions[p + POSITION] = position;
+        positions[p + SYMBOL_NET_NOTIONAL] = netNotionalTicks;
+    }
+
+    // open order notional plus |net traded notional| of agentId, in ticks
+    public long exposureOf(int agentId) {
+        AtomicLongArray agent = agentChunk(agentId);
+        int base = agentBase(agentId);
+        return agent.get(base + OPEN_NOTIONAL) + Math.abs(agent.get(base + NET_NOTIONAL));
+    }
+
+    // one more order this second, unless the agent already sent its limit
+    private boolean countOrder(AtomicLongArray agent, int index, long second) {
+        while (true) {
+            long current = agent.get(index);
+            long next = (current >>> RATE_BITS) == second ? current + 1 : (second << RATE_BITS) | 1;
+            if ((next & RATE_COUNT_MASK) > maxOrdersPerSecond) return false;
+            if (agent.compareAndSet(index, current, next)) return true;
+        }
+    }
+
+    private static int agentBase(int agentId) {
+        return (agentId % AGENTS_PER_CHUNK) * AGENT_STRIDE;
+    }
+
+    private AtomicLongArray agentChunk(int agentId) {
+        int chunk = agentId / AGENTS_PER_CHUNK;
+        AtomicLongArray[] current = agentChunks;
+        if (chunk < current.length && current[chunk] != null) return current[chunk];
+        return createAgentChunk(chunk);
+    }
+
+    private synchronized AtomicLongArray createAgentChunk(int chunk) {
+        AtomicLongArray[] copy = Arrays.copyOf(agentChunks, Math.max(agentChunks.length, chunk + 1));
+        if (copy[chunk] == null) copy[chunk] = new AtomicLongArray(AGENTS_PER_CHUNK * AGENT_STRIDE);
+        agentChunks = copy;
+        return copy[chunk];
+    }
+
+    // the symbol's table, grown to hold agentId; called on the symbol's writer only
+    private long[] positions(int symbolId, int agentId) {
+        long[][] current = positionsBySymbol;
+        long[] table = symbolId < current.length ? current[symbolId] : null;
+        if (table != null && agentId * POSITION_STRIDE < table.length) return table;
+        return growPositions(symbolId, agentId);
+    }
+
+    private synchronized long[] growPositions(int symbolId, int agentId) {
+        long[][] copy = Arrays.copyOf(positionsBySymbol, Math.max(positionsBySymbol.length, symbolId + 1));
+        long[] table = copy[symbolId] == null ? new long[0] : copy[symbolId];
+        int agents = Math.max(agentId + 1, Math.max(64, table.length / POSITION_STRIDE * 2));
+        copy[symbolId] = Arrays.copyOf(table, agents * POSITION_STRIDE);
+        positionsBySymbol = copy;
+        return copy[symbolId];
+    }
+
+    private static long toTicks(double amount) {
+        return amount >= Long.MAX_VALUE * OrderBook.TICK_SIZE ? Long.MAX_VALUE : Math.round(amount / OrderBook.TICK_SIZE);
+    }
+}
@@ -0,0 +1,120 @@
+package com.stocksim.core;
+
+import com.stocksim.data.MarketDataUpdate;
+import com.stocksim.logging.Log;
+import com.stocksim.net.MarketDataRemote;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latest prices of a fixed set of symbols, as agents see them. A "price-board" thread polls a
+ * market node's data feed and stores best bid, best ask and last trade per symbol as ticks;
+ * strategies read them by symbol index without locks or allocation. Without a feed (or before
+ * the first trade) the board quotes each symbol at its reference price.
+ */
+public final class PriceBoard {
+
+    public static final double DEFAULT_REFERENCE_PRICE = 100.0;
+
+    private static final int BID = 0;
+    private static final int ASK = 1;
+    private static final int LAST = 2;
+    private static final int FIELDS = 3;
+    private static final long NONE = 0; // no price yet (prices are at least one tick)
+
+    private final String[] symbols;
+    private final Map<String, Integer> indexBySymbol = new HashMap<>();
+    private final long referenceTicks;
+    private final AtomicLongArray ticks; // FIELDS per symbol
+
+    public PriceBoard(String[] symbols, double referencePrice) {
+        this.symbols = symbols.clone();
+        for (int i = 0; i < symbols.length; i++) indexBySymbol.put(symbols[i], i);
+        this.referenceTicks = OrderBook.toTicks(referencePrice);
+        this.ticks = new AtomicLongArray(symbols.length * FIELDS);
+    }
+
+    public int symbolCount() {
+        return symbols.length;
+    }
+
+    public String symbol(int index) {
+        return symbols[index];
+    }
+
+    // best bid in ticks, 0 if unknown or no bids
+    public long bidTicks(int index) {
+        return ticks.get(index * FIELDS + BID);
+    }
+
+    // best ask in ticks, 0 if unknown or no asks
+    public long askTicks(int index) {
+        return ticks.get(index * FIELDS + ASK);
+    }
+
+    // last trade in ticks, 0 before the first trade
+    public long lastTicks(int index) {
+        return ticks.get(index * FIELDS + LAST);
+    }
+
+    // middle of the book, else the last trade, else the one quoted side, else the reference price
+    public long midTicks(int index) {
+        long bid = bidTicks(index);
+        long ask = askTicks(index);
+        if (bid != NONE && ask != NONE) return (bid + ask) / 2;
+        long last = lastTicks(index);
+        if (last != NONE) return last;
+        if (bid != NONE) return bid;
+        if (ask != NONE) return ask;
+        return referenceTicks;
+    }
+
+    // stores the prices of one feed update; symbols not on the board are ignored
+    public void apply(MarketDataUpdate update) {
+        Integer index = indexBySymbol.get(update.getSymbol());
+        if (index == null) return;
+        int at = index * FIELDS;
+        ticks.set(at + BID, toTicks(update.getBidPrice()));
+        ticks.set(at + ASK, toTicks(update.getAskPrice()));
+        ticks.set(at + LAST, toTicks(update.getLastPrice()));
+    }
+
+    // polls the feed every intervalMillis on a daemon thread
+    public void startPolling(MarketDataRemote feed, long intervalMillis) {
+        Thread poller = new Thread(() -> poll(feed, intervalMillis), "price-board");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    private void poll(MarketDataRemote feed, long intervalMillis) {
+        long version = 0;
+        boolean failing = false;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                List<MarketDataUpdate> updates = feed.getMarketData(version);
+                for (MarketDataUpdate update : updates) {
+                    apply(update);
+                    version = Math.max(version, update.getVersion());
+                }
+                if (failing) Log.info("PriceBoard: market data feed is back").log();
+                failing = false;
+            } catch (Exception e) {
+                // keep the last prices and retry; report once per outage
+                if (!failing) Log.warn("PriceBoard: market data poll failed, keeping last prices: {}").arg(e).log();
+                failing = true;
+            }
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static long toTicks(double price) {
+        return Double.isNaN(price) ? NONE : OrderBook.toTicks(price);
+    }
+}
@@ -0,0 +1,138 @@
+package com.stocksim.core;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Preallocated multi-producer ring buffer in the style of the LMAX Disruptor.
+ * Producers claim a sequence with a CAS on the cursor, fill the slot and publish it;
+ * consumers track their own sequences and never take a lock.
+ * A producer waits (it never overwrites) while the slowest gating consumer is a full lap behind.
+ */
+public final class RingBuffer<E> {
+
+    private final Object[] entries;
+    private final int mask;
+    private final int indexShift;
+
+    // highest claimed sequence
+    private final AtomicLong cursor = new AtomicLong(-1);
+
+    // lap number written per slot when published, lets consumers spot gaps between producers
+    private final AtomicIntegerArray availableLaps;
+
+    // last consumer sequences, producers may not lap them
+    private volatile AtomicLong[] gatingSequences = new AtomicLong[0];
+    private final AtomicLong cachedGating = new AtomicLong(-1);
+
+    // size must be a power of two
+    public RingBuffer(int size, Supplier<E> factory) {
+        if (size < 1 || Integer.bitCount(size) != 1) throw new IllegalArgumentException("ring size must be a power of two");
+        this.entries = new Object[size];
+        this.mask = size - 1;
+        this.indexShift = Integer.numberOfTrailingZeros(size);
+        this.availableLaps = new AtomicIntegerArray(size);
+        for (int i = 0; i < size; i++) {
+            entries[i] = factory.get();
+            availableLaps.set(i, -1);
+        }
+    }
+
+    public int size() {
+        return entries.length;
+    }
+
+    // consumers the producers must not overtake
+    public void setGatingSequences(AtomicLong... sequences) {
+        this.gatingSequences = sequences;
+    }
+
+    // claims the next sequence, waiting while the ring is full
+    public long next() {
+        return next(1);
+    }
+
+    // claims n contiguous sequences and returns the highest, waiting while the ring is full
+    public long next(int n) {
+        if (n < 1 || n > entries.length) throw new IllegalArgumentException("n must be in 1.." + entries.length);
+        while (true) {
+            long current = cursor.get();
+            long next = current + n;
+            long wrapPoint = next - entries.length;
+
+            if (wrapPoint > cachedGating.get()) {
+                long minGating = minimumGatingSequence(current);
+                cachedGating.set(minGating);
+                if (wrapPoint > minGating) {
+                    LockSupport.parkNanos(1_000); // full, let consumers catch up
+                    continue;
+                }
+            }
+            if (cursor.compareAndSet(current, next)) return next;
+        }
+    }
+
+    /**
+     * Claims n contiguous sequences only if that leaves at most limit (<= size) claimed but not
+     * consumed, returning the highest; returns -1 without waiting otherwise.
+     */
+    public long tryNext(int n, int limit) {
+        if (n < 1 || limit > entries.length) throw new IllegalArgumentException("n must be >= 1 and limit <= " + entries.length);
+        while (true) {
+            long current = cursor.get();
+            long next = current + n;
+            if (next - cachedGating.get() > limit) {
+                long minGating = minimumGatingSequence(current);
+                cachedGating.set(minGating);
+                if (next - minGating > limit) return -1;
+            }
+            if (cursor.compareAndSet(current, next)) return next;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) entries[(int) sequence & mask];
+    }
+
+    // makes a claimed slot visible to consumers
+    public void publish(long sequence) {
+        availableLaps.lazySet((int) sequence & mask, (int) (sequence >>> indexShift));
+    }
+
+    // publishes a claimed range [lo, hi]
+    public void publish(long lo, long hi) {
+        for (long sequence = lo; sequence <= hi; sequence++) publish(sequence);
+    }
+
+    public boolean isAvailable(long sequence) {
+        return availableLaps.get((int) sequence & mask) == (int) (sequence >>> indexShift);
+    }
+
+    // highest contiguous published sequence in [lowerBound, upperBound]
+    public long highestPublished(long lowerBound, long upperBound) {
+        for (long sequence = lowerBound; sequence <= upperBound; sequence++) {
+            if (!isAvailable(sequence)) return sequence - 1;
+        }
+        return upperBound;
+    }
+
+    public long getCursor() {
+        return cursor.get();
+    }
+
+    // claimed but not yet fully consumed
+    public long depth() {
+        return cursor.get() - minimumGatingSequence(cursor.get());
+    }
+
+    private long minimumGatingSequence(long fallback) {
+        long min = fallback;
+        for (AtomicLong sequence : gatingSequences) {
+            min = Math.min(min, sequence.get());
+        }
+        return min;
+    }
+}
@@ -0,0 +1,54 @@
+package com.stocksim.core;
+
+/**
+ * Pre-trade limits enforced by {@link PreTradeRisk}. Each can be overridden with a system
+ * property, e.g. -Dstocksim.risk.maxPosition=5000; the defaults only stop runaway agents.
+ */
+public final class RiskLimits {
+
+    public static final String PREFIX = "stocksim.risk.";
+
+    private final int maxOrderQuantity;      // shares in one order
+    private final double maxOrderNotional;   // price * quantity of one order
+    private final int maxOrdersPerSecond;    // orders one agent may send per wall-clock second, all symbols
+    private final long maxPosition;          // shares long or short in one symbol, counting open orders on that side
+    private final double maxExposure;        // open order notional plus |net traded notional| of one agent, all symbols
+
+    public RiskLimits(int maxOrderQuantity, double maxOrderNotional, int maxOrdersPerSecond,
+                      long maxPosition, double maxExposure) {
+        this.maxOrderQuantity = maxOrderQuantity;
+        this.maxOrderNotional = maxOrderNotional;
+        this.maxOrdersPerSecond = maxOrdersPerSecond;
+        this.maxPosition = maxPosition;
+        this.maxExposure = maxExposure;
+    }
+
+    // the stocksim.risk.* system properties, defaults for the ones not set
+    public static RiskLimits fromSystemProperties() {
+        return new RiskLimits(
+                Integer.getInteger(PREFIX + "maxOrderQuantity", 10_000),
+                doubleProperty("maxOrderNotional", 1_000_000),
+                Integer.getInteger(PREFIX + "maxOrdersPerSecond", 5_000),
+                Long.getLong(PREFIX + "maxPosition", 100_000),
+                doubleProperty("maxExposure", 50_000_000));
+    }
+
+    private static double doubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(PREFIX + name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    // getters
+    public int getMaxOrderQuantity() { return maxOrderQuantity; }
+    public double getMaxOrderNotional() { return maxOrderNotional; }
+    public int getMaxOrdersPerSecond() { return maxOrdersPerSecond; }
+    public long getMaxPosition() { return maxPosition; }
+    public double getMaxExposure() { return maxExposure; }
+
+    @Override
+    public String toString() {
+        return "RiskLimits{" + "maxOrderQuantity=" + maxOrderQuantity + ", maxOrderNotional=" + maxOrderNotional
+                + ", maxOrdersPerSecond=" + maxOrdersPerSecond + ", maxPosition=" + maxPosition
+                + ", maxExposure=" + maxExposure + '}';
+    }
+}
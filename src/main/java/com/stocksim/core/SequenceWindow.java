@@ -0,0 +1,96 @@
+package com.stocksim.core;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Remembers which client order ids each agent has already had executed, so a retried or
+ * duplicated message runs at most once. Per agent it keeps the highest id seen and a bitmap
+ * of the WINDOW ids below it (a sliding anti-replay window): a check is a few array reads,
+ * and memory is fixed per agent however many orders it sends.
+ *
+ * Ids may arrive out of order within the window, as pipelined batches do. An id that has
+ * fallen below the window can no longer be told apart from a duplicate and is refused as one,
+ * so an agent must not retry an order after sending WINDOW newer ones.
+ * Agents are identified by their interned id (see {@link IdRegistry}). Not thread safe:
+ * like a book, one window has exactly one writer.
+ */
+public final class SequenceWindow {
+
+    public static final int WINDOW = 256; // ids tracked below each agent's highest (a multiple of 64)
+
+    private static final int WORDS = WINDOW / 64;
+
+    private long[] highest = new long[64];          // by agent id, 0 until the agent's first id
+    private long[] seen = new long[64 * WORDS];     // WORDS bitmap words per agent, bit = id mod WINDOW
+
+    // true if orderId (> 0) was already executed for the agent, or is too old to tell
+    public boolean isExecuted(int agentId, long orderId) {
+        if (agentId >= highest.length) return false;
+        long top = highest[agentId];
+        if (orderId > top) return false;
+        if (orderId <= top - WINDOW) return true;
+        return (seen[agentId * WORDS + word(orderId)] & bit(orderId)) != 0;
+    }
+
+    // records orderId (> 0) as executed for the agent; a rejected order is not marked, so its retry is checked again
+    public void markExecuted(int agentId, long orderId) {
+        if (agentId >= highest.length) grow(agentId);
+        int base = agentId * WORDS;
+        long top = highest[agentId];
+
+        if (orderId > top) {
+            // slide the window up: bits of ids that drop out are reused by the new ones
+            if (orderId - top >= WINDOW) {
+                Arrays.fill(seen, base, base + WORDS, 0L);
+            } else {
+                for (long id = top + 1; id < orderId; id++) seen[base + word(id)] &= ~bit(id);
+            }
+            highest[agentId] = orderId;
+        }
+        if (orderId > top - WINDOW) seen[base + word(orderId)] |= bit(orderId);
+    }
+
+    // writes the window of every agent that has one, for a snapshot
+    public void writeTo(DataOutput out) throws IOException {
+        int agents = 0;
+        for (long top : highest) if (top != 0) agents++;
+        out.writeInt(agents);
+        for (int agentId = 0; agentId < highest.length; agentId++) {
+            if (highest[agentId] == 0) continue;
+            out.writeInt(agentId);
+            out.writeLong(highest[agentId]);
+            for (int w = 0; w < WORDS; w++) out.writeLong(seen[agentId * WORDS + w]);
+        }
+    }
+
+    // marks the ids of a window written by writeTo as executed, merging with those already here
+    public void readFrom(ByteBuffer in) {
+        int agents = in.getInt();
+        long[] words = new long[WORDS];
+        for (int i = 0; i < agents; i++) {
+            int agentId = in.getInt();
+            long top = in.getLong();
+            for (int w = 0; w < WORDS; w++) words[w] = in.getLong();
+            for (long id = Math.max(1, top - WINDOW + 1); id <= top; id++) {
+                if ((words[word(id)] & bit(id)) != 0) markExecuted(agentId, id);
+            }
+        }
+    }
+
+    private static int word(long id) {
+        return (int) ((id & (WINDOW - 1)) >>> 6);
+    }
+
+    private static long bit(long id) {
+        return 1L << (id & 63);
+    }
+
+    private void grow(int agentId) {
+        int agents = Math.max(agentId + 1, highest.length * 2);
+        highest = Arrays.copyOf(highest, agents);
+        seen = Arrays.copyOf(seen, agents * WORDS);
+    }
+}
@@ -0,0 +1,149 @@
+package com.stocksim.core;
+
+import com.stocksim.data.TradeMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * Routes market work to single-writer shards keyed by stock symbol.
+ * Every symbol always lands on the same shard's {@link OrderPipeline}, so its order book
+ * has exactly one writer and needs no locking, while different symbols run in parallel.
+ * Heartbeats get their own lane so they never queue behind order matching.
+ */
+public class ShardedSequencer {
+
+    private final OrderPipeline[] shards;
+    private final ScheduledExecutorService heartbeatLane;
+
+    // creates shardCount order pipelines plus one heartbeat lane; stagesForShard builds each shard's handlers
+    public ShardedSequencer(int shardCount, int ringSize, IntFunction<OrderPipeline.Handler[]> stagesForShard) {
+        if (shardCount < 1) throw new IllegalArgumentException("shardCount must be >= 1");
+        this.shards = new OrderPipeline[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new OrderPipeline("market-shard-" + i, ringSize, stagesForShard.apply(i));
+        }
+        this.heartbeatLane = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "market-heartbeats");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    // shard that owns a symbol
+    public int shardOf(String symbol) {
+        return shardOf(symbol, shards.length);
+    }
+
+    // shard that owns a symbol among shardCount, for callers that run before the shards exist
+    public static int shardOf(String symbol, int shardCount) {
+        return Math.floorMod(symbol.hashCode(), shardCount);
+    }
+
+    // publishes an order message into its symbol's pipeline, returns once it is queued
+    public void publishOrder(TradeMessage message) {
+        shards[shardOf(message.getOrder().getStockSymbol())].publish(message);
+    }
+
+    // publishes a batch of order messages, one contiguous claim per shard touched
+    public void publishOrders(List<TradeMessage> messages) {
+        publishOrders(messages, null);
+    }
+
+    // as above, with the executeBatch call (may be null) that waits for the orders' acks
+    void publishOrders(List<TradeMessage> messages, ExecutionBatch execution) {
+        if (shards.length == 1) {
+            shards[0].publishAll(messages, execution);
+            return;
+        }
+        List<List<TradeMessage>> byShard = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) byShard.add(new ArrayList<>());
+        for (TradeMessage message : messages) {
+            byShard.get(shardOf(message.getOrder().getStockSymbol())).add(message);
+        }
+        for (int i = 0; i < shards.length; i++) {
+            if (!byShard.get(i).isEmpty()) shards[i].publishAll(byShard.get(i), execution);
+        }
+    }
+
+    /**
+     * Publishes a batch of order messages like publishOrders, except that a shard whose ring
+     * would go past limit queued events takes none of its part of the batch. Returns the
+     * messages left out (empty if all were queued).
+     */
+    List<TradeMessage> tryPublishOrders(List<TradeMessage> messages, ExecutionBatch execution, int limit) {
+        if (shards.length == 1) {
+            return shards[0].tryPublishAll(messages, execution, limit) ? List.of() : messages;
+        }
+        List<List<TradeMessage>> byShard = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) byShard.add(new ArrayList<>());
+        for (TradeMessage message : messages) {
+            byShard.get(shardOf(message.getOrder().getStockSymbol())).add(message);
+        }
+        List<TradeMessage> refused = List.of();
+        for (int i = 0; i < shards.length; i++) {
+            List<TradeMessage> part = byShard.get(i);
+            if (part.isEmpty() || shards[i].tryPublishAll(part, execution, limit)) continue;
+            if (refused.isEmpty()) refused = new ArrayList<>();
+            refused.addAll(part);
+        }
+        return refused;
+    }
+
+    // ring capacity of each shard
+    public int ringSize() {
+        return shards[0].ringSize();
+    }
+
+    // depth of each shard's ring, in shard order
+    public long[] queueDepths() {
+        long[] depths = new long[shards.length];
+        for (int i = 0; i < shards.length; i++) depths[i] = shards[i].depth();
+        return depths;
+    }
+
+    // runs a task on every shard's match thread, the only writer of that shard's books
+    public void runOnEachShard(IntConsumer task) {
+        for (int i = 0; i < shards.length; i++) {
+            int shard = i;
+            shards[i].publishTask(() -> task.accept(shard));
+        }
+    }
+
+    // runs onMatch on a shard's match thread, then onLog on its log thread at the same point of its sequence
+    public void runOnShard(int shard, Runnable onMatch, Runnable onLog) {
+        shards[shard].publishTask(onMatch, onLog);
+    }
+
+    // runs heartbeat work on the heartbeat lane
+    public void submitHeartbeat(Runnable task) {
+        heartbeatLane.execute(task);
+    }
+
+    // runs periodic work on the heartbeat lane, so it never races with heartbeat handling
+    public void scheduleOnHeartbeatLane(Runnable task, long periodMillis) {
+        heartbeatLane.scheduleAtFixedRate(task, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // events queued across all shards
+    public long queueDepth() {
+        long depth = 0;
+        for (OrderPipeline shard : shards) depth += shard.depth();
+        return depth;
+    }
+
+    // stops all shard threads
+    public void shutdown() {
+        for (OrderPipeline shard : shards) shard.shutdown();
+        heartbeatLane.shutdownNow();
+    }
+}
@@ -0,0 +1,364 @@
+package com.stocksim.core;
+
+import com.stocksim.data.OrderType;
+import com.stocksim.data.Trade;
+import com.stocksim.journal.Journal;
+import com.stocksim.journal.SnapshotStore;
+import com.stocksim.logging.Log;
+import com.stocksim.metrics.LatencyRecorder;
+import com.stocksim.metrics.Metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * Point-in-time snapshots of a journaled MarketNode, so a restart loads the newest one and
+ * replays only the journal after it.
+ *
+ * A snapshot is sequenced like an order: a task published into each shard's ring copies that
+ * shard's books, positions and dedup window into a byte image on the match thread (the only
+ * pause, and only for that shard), then writes a MARK record on the log thread at the same
+ * point of the sequence. Every record of a shard before its mark is in the image, every one
+ * after it is not. The encoding, names, recent trades and file write run on a background
+ * thread while the shards keep matching. Journal segments only older snapshots need are deleted.
+ *
+ * Agent statuses are not snapshotted: they are soft state, rebuilt from the next heartbeats.
+ * Interval from stocksim.snapshot.intervalSeconds (60, 0 turns snapshots off).
+ */
+final class StateSnapshots {
+
+    public static final String INTERVAL_PROPERTY = "stocksim.snapshot.intervalSeconds";
+
+    private static final long DEFAULT_INTERVAL_SECONDS = 60;
+    private static final long CAPTURE_TIMEOUT_MS = 30_000;  // longest to wait for every shard to reach the snapshot task
+    private static final int TRADE_HISTORY_LIMIT = 8192;     // recent trades kept in a snapshot
+    private static final OrderType[] ORDER_TYPES = OrderType.values();
+
+    private final String nodeId;
+    private final SnapshotStore store;
+    private final Journal journal;
+    private final IdRegistry symbols;
+    private final IdRegistry agents;
+    private final IntFunction<OrderBook> existingBook;  // book of a symbol id, null if it has none
+    private final IntFunction<OrderBook> bookFor;       // book of a symbol id, created if needed
+    private final SequenceWindow[] executedIds;
+    private final PreTradeRisk risk;
+    private final TradeHistory tradeHistory;
+    private final LogicalClock clock;
+    private final LatencyRecorder.Child captureLatency = Metrics.STATE_SNAPSHOT_LATENCY.labels("capture");
+    private final LatencyRecorder.Child writeLatency = Metrics.STATE_SNAPSHOT_LATENCY.labels("write");
+    private ShardedSequencer sequencer;
+    private long nextSnapshotId = 1;
+
+    StateSnapshots(String nodeId, Journal journal, IdRegistry symbols, IdRegistry agents,
+                   IntFunction<OrderBook> existingBook, IntFunction<OrderBook> bookFor, SequenceWindow[] executedIds,
+                   PreTradeRisk risk, TradeHistory tradeHistory, LogicalClock clock) throws IOException {
+        this.nodeId = nodeId;
+        this.store = new SnapshotStore(journal.getDirectory());
+        this.journal = journal;
+        this.symbols = symbols;
+        this.agents = agents;
+        this.existingBook = existingBook;
+        this.bookFor = bookFor;
+        this.executedIds = executedIds;
+        this.risk = risk;
+        this.tradeHistory = tradeHistory;
+        this.clock = clock;
+    }
+
+    /**
+     * What a restore brought back, and which journal records after its position it already
+     * holds: a shard's records up to that shard's mark, and the recent trades.
+     */
+    static final class Restored {
+        private final long snapshotId;
+        private final long journalPosition;
+        private final boolean[] marked;     // by snapshot shard: its mark was replayed, records after it are new
+        private final Set<String> tradeIds;
+
+        private Restored(long snapshotId, long journalPosition, int shardCount, Set<String> tradeIds) {
+            this.snapshotId = snapshotId;
+            this.journalPosition = journalPosition;
+            this.marked = new boolean[shardCount];
+            this.tradeIds = tradeIds;
+        }
+
+        // nothing restored: every record is replayed from the start of the journal
+        private static Restored none() {
+            Restored restored = new Restored(0, 0, 1, Set.of());
+            restored.marked[0] = true;
+            return restored;
+        }
+
+        long getSnapshotId() { return snapshotId; }
+        long getJournalPosition() { return journalPosition; }
+
+        void onMark(long snapshotId, int shard) {
+            if (snapshotId == this.snapshotId && shard < marked.length) marked[shard] = true;
+        }
+
+        // false for a record of symbol the snapshot already holds
+        boolean replays(String symbol) {
+            return marked[ShardedSequencer.shardOf(symbol, marked.length)];
+        }
+
+        boolean hasTrade(String tradeId) {
+            return tradeIds.contains(tradeId);
+        }
+    }
+
+    /**
+     * Loads the newest intact snapshot into the books, positions, dedup windows, names, trade
+     * history and clock, before any shard starts. Returns where the journal replay continues.
+     */
+    Restored restore() throws IOException {
+        long startNanos = System.nanoTime();
+        SnapshotStore.Snapshot snapshot = store.readNewest();
+        if (snapshot == null) return Restored.none();
+
+        ByteBuffer in = snapshot.getBody();
+        int shardCount = in.getInt();
+        clock.updateOnReceive(in.getLong());
+        internAll(in, symbols, "symbol");
+        internAll(in, agents, "agent");
+
+        int orders = 0;
+        for (int shard = 0; shard < shardCount; shard++) {
+            int length = in.getInt();
+            ByteBuffer image = in.slice();
+            image.limit(length);
+            in.position(in.position() + length);
+            orders += restoreShard(image, shard, shardCount);
+        }
+
+        Set<String> tradeIds = new HashSet<>();
+        int trades = in.getInt();
+        for (int i = 0; i < trades; i++) {
+            Trade trade = new Trade(getString(in), getString(in), getString(in), getString(in), getString(in),
+                    in.getInt(), in.getDouble(), in.getLong(), in.getLong());
+            tradeHistory.append(trade);
+            tradeIds.add(trade.getTradeId());
+        }
+
+        nextSnapshotId = snapshot.getSnapshotId() + 1;
+        long elapsedNanos = System.nanoTime() - startNanos;
+        Metrics.RESTART_DURATION.labels(nodeId, "snapshot_load").set(elapsedNanos / 1e9);
+        Log.info("MarketNode: Loaded snapshot {} ({} bytes, {} resting orders, {} trades) in {} ms")
+                .arg(snapshot.getSnapshotId()).arg(snapshot.getSizeBytes()).arg(orders).arg(trades)
+                .arg(elapsedNanos / 1_000_000).log();
+        return new Restored(snapshot.getSnapshotId(), snapshot.getJournalPosition(), shardCount, tradeIds);
+    }
+
+    // takes a snapshot every intervalSeconds (stocksim.snapshot.intervalSeconds) once the shards run
+    void start(ShardedSequencer sequencer) {
+        this.sequencer = sequencer;
+        long intervalSeconds = Long.getLong(INTERVAL_PROPERTY, DEFAULT_INTERVAL_SECONDS);
+        if (intervalSeconds <= 0) return;
+        ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "market-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        writer.scheduleWithFixedDelay(this::snapshotQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        Log.info("MarketNode: State snapshot every {} s").arg(intervalSeconds).log();
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            Log.error("MarketNode: State snapshot failed: {}").arg(e).log();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // takes one snapshot; returns false if a shard did not reach its snapshot task in time
+    boolean snapshot() throws IOException, InterruptedException {
+        long startNanos = System.nanoTime();
+        long snapshotId = nextSnapshotId++;
+        int shardCount = sequencer.shardCount();
+        byte[][] images = new byte[shardCount][];
+        long[] marks = new long[shardCount];
+        CountDownLatch marked = new CountDownLatch(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            int shard = i;
+            sequencer.runOnShard(shard, () -> images[shard] = captureShard(shard), () -> {
+                marks[shard] = journal.appendMark(snapshotId, shard);
+                marked.countDown();
+            });
+        }
+        if (!marked.await(CAPTURE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            Log.warn("MarketNode: Snapshot {} abandoned, shards busy for {} ms").arg(snapshotId).arg(CAPTURE_TIMEOUT_MS).log();
+            return false;
+        }
+        // the snapshot names journal positions: they must be on disk before it is
+        journal.sync();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(shardCount);
+        // names and trades are read after every mark, so they hold at least what the images refer to
+        out.writeLong(clock.getTime());
+        writeAll(out, symbols);
+        writeAll(out, agents);
+        long journalPosition = Long.MAX_VALUE;
+        for (int shard = 0; shard < shardCount; shard++) {
+            if (images[shard] == null) throw new IllegalStateException("shard " + shard + " could not copy its state");
+            out.writeInt(images[shard].length);
+            out.write(images[shard]);
+            journalPosition = Math.min(journalPosition, marks[shard]);
+        }
+        List<Trade> trades = new ArrayList<>();
+        tradeHistory.readLast(TRADE_HISTORY_LIMIT, trades);
+        out.writeInt(trades.size());
+        for (Trade trade : trades) writeTrade(out, trade);
+        out.flush();
+
+        long size = store.write(snapshotId, journalPosition, bytes.toByteArray(), bytes.size());
+        int deleted = journal.deleteSegmentsBefore(store.oldestJournalPosition());
+        writeLatency.recordSince(startNanos);
+        Metrics.STATE_SNAPSHOT_SIZE.labels(nodeId).set(size);
+        Log.info("MarketNode: Wrote snapshot {} ({} bytes, {} journal segments dropped) in {} ms")
+                .arg(snapshotId).arg(size).arg(deleted).arg((System.nanoTime() - startNanos) / 1_000_000).log();
+        return true;
+    }
+
+    // runs on the shard's match thread: copies the books, positions and dedup window of its symbols
+    private byte[] captureShard(int shard) {
+        long startNanos = System.nanoTime();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            int symbolCount = symbols.size();
+            for (int symbolId = 0; symbolId < symbolCount; symbolId++) {
+                OrderBook book = existingBook.apply(symbolId);
+                if (book == null || sequencer.shardOf(symbols.nameOf(symbolId)) != shard) continue;
+                out.writeInt(symbolId);
+                out.writeLong(book.getNextOrderId());
+                out.writeInt(book.restingOrderCount());
+                book.forEachResting(order -> writeOrder(out, order));
+                risk.forEachPosition(symbolId, (agentId, position, netNotional) -> writePosition(out, agentId, position, netNotional));
+                out.writeInt(-1);
+            }
+            out.writeInt(-1);
+            executedIds[shard].writeTo(out);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException | RuntimeException e) {
+            Log.error("MarketNode: Shard {} could not copy its state: {}").arg(shard).arg(e).log();
+            return null;
+        } finally {
+            captureLatency.recordSince(startNanos);
+        }
+    }
+
+    // returns the number of resting orders restored
+    private int restoreShard(ByteBuffer image, int shard, int shardCount) {
+        int orders = 0;
+        for (int symbolId = image.getInt(); symbolId >= 0; symbolId = image.getInt()) {
+            OrderBook book = bookFor.apply(symbolId);
+            long nextOrderId = image.getLong();
+            int resting = image.getInt();
+            for (int i = 0; i < resting; i++) {
+                long orderId = image.getLong();
+                int agentId = image.getInt();
+                long clientOrderId = image.getLong();
+                OrderType side = ORDER_TYPES[image.get()];
+                long priceTicks = image.getLong();
+                int quantity = image.getInt();
+                book.restore(orderId, agentId, clientOrderId, side, priceTicks, quantity);
+                risk.onRested(agentId, symbolId, side, quantity, priceTicks);
+            }
+            book.setNextOrderId(nextOrderId);
+            orders += resting;
+            for (int agentId = image.getInt(); agentId >= 0; agentId = image.getInt()) {
+                risk.restorePosition(agentId, symbolId, image.getLong(), image.getLong());
+            }
+        }
+        if (shardCount == executedIds.length) {
+            executedIds[shard].readFrom(image);
+        } else {
+            // other shard count: an agent's ids are one sequence, so every window takes every old one
+            for (SequenceWindow window : executedIds) window.readFrom(image.duplicate());
+        }
+        return orders;
+    }
+
+    private static void writeOrder(DataOutputStream out, OrderBook.RestingOrder order) {
+        try {
+            out.writeLong(order.getOrderId());
+            out.writeInt(order.getAgentId());
+            out.writeLong(order.getClientOrderId());
+            out.writeByte(order.getSide().ordinal());
+            out.writeLong(order.getPriceTicks());
+            out.writeInt(order.getRemaining());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writePosition(DataOutputStream out, int agentId, long position, long netNotional) {
+        try {
+            out.writeInt(agentId);
+            out.writeLong(position);
+            out.writeLong(netNotional);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeTrade(DataOutputStream out, Trade trade) throws IOException {
+        putString(out, trade.getTradeId());
+        putString(out, trade.getAgentId());
+        putString(out, trade.getBuyerId());
+        putString(out, trade.getSellerId());
+        putString(out, trade.getStockSymbol());
+        out.writeInt(trade.getQuantity());
+        out.writeDouble(trade.getPrice());
+        out.writeLong(trade.getLamportTimestamp());
+        out.writeLong(trade.getSystemTimeMillis());
+    }
+
+    private static void writeAll(DataOutputStream out, IdRegistry registry) throws IOException {
+        int size = registry.size();
+        out.writeInt(size);
+        for (int id = 0; id < size; id++) putString(out, registry.nameOf(id));
+    }
+
+    // names are interned in id order, so they get their old ids back
+    private static void internAll(ByteBuffer in, IdRegistry registry, String kind) {
+        int size = in.getInt();
+        for (int id = 0; id < size; id++) {
+            String name = getString(in);
+            if (registry.intern(name) != id) {
+                throw new IllegalStateException("Snapshot " + kind + " id " + id + " (" + name + ") is out of order");
+            }
+        }
+    }
+
+    private static void putString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
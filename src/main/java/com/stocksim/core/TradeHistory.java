@@ -0,0 +1,140 @@
+package com.stocksim.core;
+
+import com.stocksim.data.Trade;
+
+import java.lang.invoke.VarHandle;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-capacity ring of the most recent trades, stored column-wise in parallel arrays.
+ * Appending copies a trade's fields into the slot for its sequence number, so memory stays
+ * flat no matter how many trades execute and nothing is allocated on the write path.
+ *
+ * Every trade gets a global sequence number from one atomic increment, so shard threads can
+ * append without locks. Each slot carries the sequence it holds (a per-slot seqlock): readers
+ * check it before and after copying a slot and drop the copy if a writer lapped them.
+ */
+public final class TradeHistory {
+
+    private static final long WRITING = -1;
+
+    private final int capacity;
+    private final int mask;
+
+    // next sequence to hand out
+    private final AtomicLong cursor = new AtomicLong();
+
+    // sequence held by each slot, WRITING while a writer is filling it
+    private final AtomicLongArray slotSequences;
+
+    // trade columns
+    private final String[] tradeIds;
+    private final String[] agentIds;
+    private final String[] buyerIds;
+    private final String[] sellerIds;
+    private final String[] symbols;
+    private final int[] quantities;
+    private final double[] prices;
+    private final long[] lamportTimestamps;
+    private final long[] systemTimes;
+
+    // capacity must be a power of two
+    public TradeHistory(int capacity) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("capacity must be a power of two");
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.slotSequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) slotSequences.set(i, WRITING);
+        this.tradeIds = new String[capacity];
+        this.agentIds = new String[capacity];
+        this.buyerIds = new String[capacity];
+        this.sellerIds = new String[capacity];
+        this.symbols = new String[capacity];
+        this.quantities = new int[capacity];
+        this.prices = new double[capacity];
+        this.lamportTimestamps = new long[capacity];
+        this.systemTimes = new long[capacity];
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    // total trades ever appended (also the next sequence number)
+    public long size() {
+        return cursor.get();
+    }
+
+    // copies a trade into the ring, returns its sequence number
+    public long append(Trade trade) {
+        long sequence = cursor.getAndIncrement();
+        int slot = (int) sequence & mask;
+
+        slotSequences.set(slot, WRITING);
+        // the WRITING mark must be visible before any column store, or a reader could pair
+        // the old sequence with new column values
+        VarHandle.storeStoreFence();
+        tradeIds[slot] = trade.getTradeId();
+        agentIds[slot] = trade.getAgentId();
+        buyerIds[slot] = trade.getBuyerId();
+        sellerIds[slot] = trade.getSellerId();
+        symbols[slot] = trade.getStockSymbol();
+        quantities[slot] = trade.getQuantity();
+        prices[slot] = trade.getPrice();
+        lamportTimestamps[slot] = trade.getLamportTimestamp();
+        systemTimes[slot] = trade.getSystemTimeMillis();
+        slotSequences.lazySet(slot, sequence);
+        return sequence;
+    }
+
+    /**
+     * Adds up to n of the newest trades to out, oldest first. O(n) regardless of total volume.
+     * Trades still being written, or overwritten while reading, are skipped.
+     */
+    public int readLast(int n, List<Trade> out) {
+        long head = cursor.get();
+        return readRange(Math.max(0, head - Math.min(n, capacity)), head, out, false);
+    }
+
+    /**
+     * Adds trades with sequence in [from, to) to out, stopping at the first one that is not
+     * readable. Returns how many were added; from + that count is where to resume.
+     */
+    public int readFrom(long from, long to, List<Trade> out) {
+        return readRange(from, to, out, true);
+    }
+
+    // sequence of the oldest trade still held
+    public long oldestSequence() {
+        return Math.max(0, cursor.get() - capacity);
+    }
+
+    private int readRange(long from, long to, List<Trade> out, boolean stopAtGap) {
+        int added = 0;
+        for (long sequence = from; sequence < to; sequence++) {
+            Trade trade = read(sequence);
+            if (trade == null) {
+                if (stopAtGap) break;
+                continue;
+            }
+            out.add(trade);
+            added++;
+        }
+        return added;
+    }
+
+    // seqlock read of one slot, null if it does not (or no longer) hold this sequence
+    private Trade read(long sequence) {
+        int slot = (int) sequence & mask;
+        if (slotSequences.get(slot) != sequence) return null;
+
+        Trade trade = new Trade(tradeIds[slot], agentIds[slot], buyerIds[slot], sellerIds[slot], symbols[slot],
+                quantities[slot], prices[slot], lamportTimestamps[slot], systemTimes[slot]);
+
+        // column reads must complete before the re-check (pairs with the writer's storeStoreFence)
+        VarHandle.loadLoadFence();
+        return slotSequences.get(slot) == sequence ? trade : null;
+    }
+}
@@ -1,137 +1,249 @@
 package com.stocksim.core;
 
 import com.stocksim.data.*;
+import com.stocksim.logging.Log;
 import com.stocksim.metrics.Metrics;
+import com.stocksim.net.BatchingSender;
 import com.stocksim.net.MarketNodeRemote;
+import io.prometheus.client.Gauge;
 
-import java.rmi.RemoteException;
 import java.util.Random;
 
 /**
- * A TradingAgent runs as a separate thread, simulating a trader.
- * Sends orders and heartbeats to the MarketNode.
+ * A TradingAgent simulates a trader that sends orders and heartbeats to the MarketNode.
+ * What it orders, and at what price, is up to its {@link TradingStrategy}, which reads the
+ * market's prices from a {@link PriceBoard} shared by the agents of a process.
+ * It can run as its own thread ({@link #run()}), or be stepped one action at a time
+ * by an {@link AgentRuntime} that multiplexes many agents over a few threads.
+ * Every order carries a client order id, so the market executes it once however often
+ * the sender retries it, and can later cancel it by that id.
+ * Heartbeats go out every HEARTBEAT_INTERVAL_MS on their own, however slowly the agent trades,
+ * so the market's failure detector sees the agent alive at any order rate.
+ * When the market answers busy the agent backs off with its sender: it keeps sending
+ * heartbeats but no orders until the sender's pause is over, then decides afresh.
  */
 public class TradingAgent implements Runnable {
 
-    private static final int BASE_METRICS_PORT = 9090;
+    public static final int DEFAULT_BATCH_SIZE = 32;         // messages per submitBatch call
+    public static final long DEFAULT_BATCH_DELAY_MS = 50;   // max time a message waits for its batch
+    public static final String[] DEFAULT_SYMBOLS = {"AAPL", "GOOG", "TSLA"};
+    public static final long HEARTBEAT_INTERVAL_MS = 3000;  // well inside the market's 10s agent timeout
 
     private final String agentId;           // agent name
-    private final MarketNodeRemote market;  // remote market node ref
-    private final LamportClock clock;       // local lamport clock
+    private final BatchingSender sender;    // batches messages to the remote market node
+    private final LogicalClock clock;       // local logical clock (stocksim.clock)
     private final Random random = new Random();
-    private final String[] stockSymbols = {"AAPL", "GOOG", "TSLA"}; // random stocks
+    private final TradingStrategy strategy; // picks each order from the board's prices
+    private final PriceBoard prices;        // latest market prices, shared with other agents
+    private final OrderDraft draft = new OrderDraft(); // reused for every decision
     private final boolean simulateFailure;  // make agent die on purpose
+    private final Gauge.Child statusGauge;  // metric children for the agent's metrics label, resolved once
+    private final Gauge.Child clockGauge;
+    private long nextOrderId;               // client order ids, increasing for the agent's lifetime
+    private final long[] quoteIds = new long[OrderType.values().length];       // last quote per side, 0 if none
+    private final String[] quoteSymbols = new String[OrderType.values().length];
     private int messageCount = 0;
+    private volatile boolean stopped;       // no more orders or heartbeats
 
-    // agent constructor
+    // agent constructor with default batching
     public TradingAgent(String agentId, MarketNodeRemote market, boolean simulateFailure) {
+        this(agentId, market, simulateFailure, DEFAULT_BATCH_SIZE, DEFAULT_BATCH_DELAY_MS);
+    }
+
+    // agent constructor with its own batching sender (batchSize 1 sends every message on its own)
+    public TradingAgent(String agentId, MarketNodeRemote market, boolean simulateFailure, int batchSize, long batchDelayMillis) {
+        this(agentId, agentId, new BatchingSender(market, batchSize, batchDelayMillis,
+                (message, ack) -> recordAck(agentId, message, ack)), simulateFailure);
+    }
+
+    // noise trader around the reference price, for callers without a price feed
+    public TradingAgent(String agentId, String metricsId, BatchingSender sender, boolean simulateFailure) {
+        this(agentId, metricsId, sender, simulateFailure, new NoiseTraderStrategy(),
+                new PriceBoard(DEFAULT_SYMBOLS, PriceBoard.DEFAULT_REFERENCE_PRICE));
+    }
+
+    // agent constructor sharing a process-wide sender and price board; metricsId may be shared by many agents
+    public TradingAgent(String agentId, String metricsId, BatchingSender sender, boolean simulateFailure,
+                        TradingStrategy strategy, PriceBoard prices) {
         this.agentId = agentId;
-        this.market = market;
-        this.clock = new LamportClock();
+        this.sender = sender;
+        this.strategy = strategy;
+        this.prices = prices;
+        this.clock = LogicalClock.fromSystemProperty();
         this.simulateFailure = simulateFailure;
+        this.statusGauge = Metrics.NODE_STATUS.labels(metricsId);
+        this.clockGauge = Metrics.LAMPORT_CLOCK.labels(metricsId);
+        // ids start at the wall clock in microseconds, so an agent restarted under the same name
+        // keeps going up and the market does not take its new orders for old duplicates
+        this.nextOrderId = System.currentTimeMillis() * 1000;
+        markUp();
+    }
 
-        // start metrics server for this agent
-        try {
-            int agentNumericId = Integer.parseInt(agentId.substring(agentId.lastIndexOf("-") + 1));
-            int metricsPort = BASE_METRICS_PORT + agentNumericId;
-            Metrics.startMetricsServer(metricsPort);
-            Metrics.NODE_STATUS.labels(this.agentId).set(1); // agent UP
-            tick(); // init lamport value
-        } catch (NumberFormatException e) {
-            System.err.println("Could not parse agent ID for metrics port: " + agentId);
-        }
+    public String getAgentId() { return agentId; }
+
+    // agent UP, init lamport value (the process exposes /metrics, not the agent)
+    private void markUp() {
+        statusGauge.set(1);
+        tick();
     }
 
     // tick lamport clock and update metric
     private long tick() {
         long timestamp = this.clock.updateOnSend();
-        Metrics.LAMPORT_CLOCK.labels(this.agentId).set(timestamp);
+        clockGauge.set(timestamp);
         return timestamp;
     }
 
-    // main agent loop
+    // main agent loop when the agent owns a thread
     @Override
     public void run() {
+        long lastHeartbeat = 0;
         try {
             while (!Thread.currentThread().isInterrupted()) {
 
                 // random delay between actions
                 Thread.sleep(1000 + random.nextInt(2000));
 
-                // simulate the agent dying after a few messages
-                if (simulateFailure && messageCount > (5 + random.nextInt(5))) {
-                    System.out.printf("!!! Agent %s is now SIMULATING FAILURE - stopping all messages. !!!%n", agentId);
-                    Metrics.NODE_STATUS.labels(this.agentId).set(0); // mark DOWN
-                    break;
-                }
-
-                // 70 percent chance send order, 30 percent heartbeat
-                boolean sendOrder = random.nextDouble() > 0.3;
-                if (sendOrder) {
-                    sendOrderMessage();
-                } else {
-                    sendHeartbeatMessage();
+                long now = System.currentTimeMillis();
+                if (now - lastHeartbeat >= HEARTBEAT_INTERVAL_MS) {
+                    if (!heartbeat()) break;
+                    lastHeartbeat = now;
                 }
-
-                messageCount++;
+                if (!act()) break;
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt(); // thread stopped
-        } catch (RemoteException e) {
-            System.err.printf("Agent %s lost connection to MarketNode: %s%n", agentId, e.getMessage());
-            Metrics.NODE_STATUS.labels(this.agentId).set(0); // mark failed
         }
     }
 
-    // builds and sends an ORDER message
-    private void sendOrderMessage() throws RemoteException {
-        OrderType type = random.nextBoolean() ? OrderType.BUY : OrderType.SELL;
-        String symbol = stockSymbols[random.nextInt(stockSymbols.length)];
-        int quantity = 1 + random.nextInt(100);
-        double price = 10.0 + (190.0 * random.nextDouble());
-        Order order = new Order(agentId, symbol, quantity, price, type);
+    /**
+     * Performs one trading action without blocking: the order the strategy asks for, or nothing
+     * if it passes or the market is busy. Returns false once the agent has stopped and should not
+     * be scheduled again. Runs under the agent's lock, like {@link #heartbeat()}, so each message
+     * is stamped and queued in one step and the batch sees this agent's timestamps in order.
+     */
+    public synchronized boolean act() {
+        if (stopped) return false;
+
+        // simulate the agent dying after a few orders
+        if (simulateFailure && messageCount > (5 + random.nextInt(5))) {
+            sender.flush(); // messages already sent still go out
+            Log.warn("!!! Agent {} is now SIMULATING FAILURE - stopping all messages. !!!").arg(agentId).log();
+            stop();
+            return false;
+        }
+
+        // no new orders while the market is busy; heartbeats keep going
+        if (!sender.isBackingOff()) sendOrderMessage();
+
+        messageCount++;
+        return true;
+    }
+
+    /**
+     * Sends one heartbeat, every HEARTBEAT_INTERVAL_MS whatever the order rate.
+     * Returns false once the agent has stopped.
+     */
+    public synchronized boolean heartbeat() {
+        if (stopped) return false;
+        sendHeartbeatMessage();
+        return true;
+    }
+
+    // stops orders and heartbeats, so the market sees the agent fail
+    void stop() {
+        stopped = true;
+        statusGauge.set(0); // mark DOWN
+    }
+
+    // builds and sends the ORDER message the strategy asks for, nothing if it passes
+    private void sendOrderMessage() {
+        if (!strategy.decide(prices, random, draft)) return;
+        OrderType type = draft.getSide();
+        String symbol = prices.symbol(draft.getSymbolIndex());
+        int quantity = draft.getQuantity();
+        double price = OrderBook.toPrice(draft.getPriceTicks());
+        if (draft.refreshesQuote()) cancelQuote(type);
+        long orderId = nextOrderId++;
+        Order order = new Order(agentId, symbol, quantity, price, type, orderId, 0);
+        if (draft.refreshesQuote()) {
+            quoteIds[type.ordinal()] = orderId;
+            quoteSymbols[type.ordinal()] = symbol;
+        }
 
         // show clock before sending
-        System.out.printf("Agent %s: Local clock before sending ORDER: %d%n", agentId, clock.getTime());
+        Log.debug("Agent {}: Local clock before sending ORDER: {}").arg(agentId).arg(clock.getTime()).log();
 
         long timestamp = tick(); // lamport tick
-        System.out.printf("Agent %s: Local clock after tick (ORDER): %d. Sending timestamp: %d%n",
-                agentId, clock.getTime(), timestamp);
+        Log.debug("Agent {}: Local clock after tick (ORDER): {}. Sending timestamp: {}")
+                .arg(agentId).arg(clock.getTime()).arg(timestamp).log();
 
         // create message object
         TradeMessage message = new TradeMessage(agentId, MarketNode.RMI_NAME, MessageType.ORDER, order, timestamp);
 
-        // send to market
-        market.submitMessage(message);
-
-        // metrics update
-        Metrics.MESSAGES_SENT_TOTAL.labels(this.agentId).inc();
+        // queue for the next batch to market
+        sender.send(message);
 
         // debug log
-        System.out.printf("[LT=%d] Agent %s -> Market: Sent ORDER %s %d %s @ %.2f%n",
-                timestamp, agentId, type, quantity, symbol, price);
+        Log.debug("[LT={}] Agent {} -> Market: Queued ORDER {} {} {} {} @ {}")
+                .arg(timestamp).arg(agentId).arg(orderId).arg(type).arg(quantity).arg(symbol).arg(price).log();
+    }
+
+    // cancels the previous quote on a side; one that already traded is refused as unknown, which is harmless
+    private void cancelQuote(OrderType side) {
+        long quoteId = quoteIds[side.ordinal()];
+        if (quoteId == 0) return;
+        Order cancel = Order.cancel(agentId, quoteSymbols[side.ordinal()], nextOrderId++, quoteId);
+        long timestamp = tick();
+        sender.send(new TradeMessage(agentId, MarketNode.RMI_NAME, MessageType.CANCEL, cancel, timestamp));
+        Log.debug("[LT={}] Agent {} -> Market: Queued CANCEL of {}").arg(timestamp).arg(agentId).arg(quoteId).log();
     }
 
     // builds and sends a HEARTBEAT message
-    private void sendHeartbeatMessage() throws RemoteException {
+    private void sendHeartbeatMessage() {
         // log clock before sending
-        System.out.printf("Agent %s: Local clock before sending HEARTBEAT: %d%n", agentId, clock.getTime());
+        Log.debug("Agent {}: Local clock before sending HEARTBEAT: {}").arg(agentId).arg(clock.getTime()).log();
 
         long timestamp = tick(); // tick
-        System.out.printf("Agent %s: Local clock after tick (HEARTBEAT): %d. Sending timestamp: %d%n",
-                agentId, clock.getTime(), timestamp);
+        Log.debug("Agent {}: Local clock after tick (HEARTBEAT): {}. Sending timestamp: {}")
+                .arg(agentId).arg(clock.getTime()).arg(timestamp).log();
 
         // heartbeat has no order attached
         TradeMessage message = new TradeMessage(agentId, MarketNode.RMI_NAME, MessageType.HEARTBEAT, null, timestamp);
 
-        // send
-        market.submitMessage(message);
-
-        // metrics
-        Metrics.HEARTBEATS_TOTAL.labels(this.agentId).inc();
-        Metrics.MESSAGES_SENT_TOTAL.labels(this.agentId).inc();
+        // queue for the next batch
+        sender.send(message);
 
         // log
-        System.out.printf("[LT=%d] Agent %s -> Market: Sent HEARTBEAT%n", timestamp, agentId);
+        Log.debug("[LT={}] Agent {} -> Market: Queued HEARTBEAT").arg(timestamp).arg(agentId).log();
+    }
+
+    // called once per message after its batch comes back
+    public static void recordAck(String metricsId, TradeMessage message, MessageAck ack) {
+        Metrics.MESSAGES_SENT_TOTAL.labels(metricsId).inc();
+        if (message.getType() == MessageType.HEARTBEAT) {
+            Metrics.HEARTBEATS_TOTAL.labels(metricsId).inc();
+        }
+        if (BatchingSender.UNREACHABLE.equals(ack.getReason())) {
+            // the sender already logged the dropped batch once
+            Log.debug("Agent {}: market unreachable, {} dropped").arg(message.getSenderId()).arg(message.getType()).log();
+        } else if (ack.isBusy()) {
+            // the sender backs off, the strategy decides again on fresher prices
+            Log.debug("Agent {}: market busy, {} not taken ({})")
+                    .arg(message.getSenderId()).arg(message.getType()).arg(ack.getReason()).log();
+        } else if (!ack.isAccepted()) {
+            // a quote cancel racing with a fill is routine, anything else is worth a warning
+            boolean routine = message.getType() == MessageType.CANCEL && "unknown-order".equals(ack.getReason());
+            if (routine) {
+                Log.debug("Agent {}: quote {} already gone").arg(message.getSenderId()).arg(message.getOrder().getOriginalOrderId()).log();
+            } else {
+                Log.warn("Agent {}: market rejected {} (LT={}): {}")
+                        .arg(message.getSenderId()).arg(message.getType()).arg(ack.getLamportTimestamp()).arg(ack.getReason()).log();
+            }
+        } else if (!ack.getFills().isEmpty()) {
+            Log.debug("Agent {}: order {} {}, filled {} at {}, {} resting")
+                    .arg(message.getSenderId()).arg(ack.getOrderId()).arg(ack.getStatus()).arg(ack.getFilledQuantity())
+                    .arg(ack.getFills()).arg(ack.getRestingQuantity()).log();
+        }
     }
 }
@@ -0,0 +1,41 @@
+package com.stocksim.core;
+
+import java.util.Random;
+
+/**
+ * Decides what order an agent sends next, from the prices on its {@link PriceBoard}.
+ * One instance per agent (strategies may keep per-agent state) and only that agent's
+ * thread calls it, so implementations need no synchronization. A decision must not
+ * allocate: it reads the board and fills the agent's {@link OrderDraft}.
+ */
+public interface TradingStrategy {
+
+    // fills draft and returns true to send an order, or returns false to send a heartbeat instead
+    boolean decide(PriceBoard prices, Random random, OrderDraft draft);
+
+    // noise, maker or momentum
+    static TradingStrategy create(String kind) {
+        switch (kind) {
+            case "noise":
+                return new NoiseTraderStrategy();
+            case "maker":
+                return new MarketMakerStrategy();
+            case "momentum":
+                return new MomentumStrategy();
+            default:
+                throw new IllegalArgumentException("Unknown strategy '" + kind + "', expected noise, maker, momentum or mix");
+        }
+    }
+
+    /**
+     * Strategy for the agent at index i of a population: a named strategy for everyone, or for
+     * "mix" one market maker in ten, two momentum traders in ten and noise traders for the rest.
+     */
+    static TradingStrategy forAgent(String kind, int agentIndex) {
+        if (!"mix".equals(kind)) return create(kind);
+        int slot = agentIndex % 10;
+        if (slot == 0) return new MarketMakerStrategy();
+        if (slot <= 2) return new MomentumStrategy();
+        return new NoiseTraderStrategy();
+    }
+}
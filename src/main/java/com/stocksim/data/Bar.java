@@ -0,0 +1,54 @@
+package com.stocksim.data;
+
+import java.io.Serializable;
+
+// open/high/low/close/volume of one symbol over one fixed interval
+public class Bar implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // bar length, e.g. 1, 60 or 300
+    private final int intervalSeconds;
+
+    // wall-clock start of the interval in ms (a multiple of the interval)
+    private final long startMillis;
+
+    private final double open;
+    private final double high;
+    private final double low;
+    private final double close;
+
+    // shares traded in the interval
+    private final long volume;
+
+    // builds bar object
+    public Bar(int intervalSeconds, long startMillis, double open, double high, double low, double close, long volume) {
+        this.intervalSeconds = intervalSeconds;
+        this.startMillis = startMillis;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.volume = volume;
+    }
+
+    // getters
+    public int getIntervalSeconds() { return intervalSeconds; }
+    public long getStartMillis() { return startMillis; }
+    public long getEndMillis() { return startMillis + intervalSeconds * 1000L; }
+    public double getOpen() { return open; }
+    public double getHigh() { return high; }
+    public double getLow() { return low; }
+    public double getClose() { return close; }
+    public long getVolume() { return volume; }
+
+    // a bar is final once its interval has ended; until then it is still forming
+    public boolean isClosed(long nowMillis) {
+        return nowMillis >= getEndMillis();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%ds@%d O %.2f H %.2f L %.2f C %.2f V %d",
+                intervalSeconds, startMillis, open, high, low, close, volume);
+    }
+}
@@ -0,0 +1,33 @@
+package com.stocksim.data;
+
+import java.io.Serializable;
+
+// one execution of an order, as reported back to the agent that sent it
+public class Fill implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // id of the trade on the market's trade feed
+    private final String tradeId;
+
+    // shares executed
+    private final int quantity;
+
+    // execution price
+    private final double price;
+
+    public Fill(String tradeId, int quantity, double price) {
+        this.tradeId = tradeId;
+        this.quantity = quantity;
+        this.price = price;
+    }
+
+    // getters
+    public String getTradeId() { return tradeId; }
+    public int getQuantity() { return quantity; }
+    public double getPrice() { return price; }
+
+    @Override
+    public String toString() {
+        return quantity + "@" + String.format("%.2f", price);
+    }
+}
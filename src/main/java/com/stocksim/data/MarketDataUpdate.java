@@ -0,0 +1,75 @@
+package com.stocksim.data;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+// latest aggregates and top of book for one symbol; a newer update replaces an older one
+public class MarketDataUpdate implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String symbol;
+
+    // feed version this update was published in, increasing across all symbols
+    private final long version;
+
+    // last trade, NaN price before the first trade
+    private final double lastPrice;
+    private final int lastQuantity;
+
+    // volume weighted average price and totals since the node started
+    private final double vwap;
+    private final long volume;
+    private final long tradeCount;
+
+    // best bid and ask, NaN price and 0 quantity when that side is empty
+    private final double bidPrice;
+    private final long bidQuantity;
+    private final double askPrice;
+    private final long askQuantity;
+
+    // forming bar per interval, and the bar before it (null before the first one closes)
+    private final List<Bar> bars;
+    private final List<Bar> previousBars;
+
+    // builds update object
+    public MarketDataUpdate(String symbol, long version, double lastPrice, int lastQuantity,
+                            double vwap, long volume, long tradeCount,
+                            double bidPrice, long bidQuantity, double askPrice, long askQuantity,
+                            List<Bar> bars, List<Bar> previousBars) {
+        this.symbol = symbol;
+        this.version = version;
+        this.lastPrice = lastPrice;
+        this.lastQuantity = lastQuantity;
+        this.vwap = vwap;
+        this.volume = volume;
+        this.tradeCount = tradeCount;
+        this.bidPrice = bidPrice;
+        this.bidQuantity = bidQuantity;
+        this.askPrice = askPrice;
+        this.askQuantity = askQuantity;
+        this.bars = Collections.unmodifiableList(bars);
+        this.previousBars = Collections.unmodifiableList(previousBars);
+    }
+
+    // getters
+    public String getSymbol() { return symbol; }
+    public long getVersion() { return version; }
+    public double getLastPrice() { return lastPrice; }
+    public int getLastQuantity() { return lastQuantity; }
+    public double getVwap() { return vwap; }
+    public long getVolume() { return volume; }
+    public long getTradeCount() { return tradeCount; }
+    public double getBidPrice() { return bidPrice; }
+    public long getBidQuantity() { return bidQuantity; }
+    public double getAskPrice() { return askPrice; }
+    public long getAskQuantity() { return askQuantity; }
+    public List<Bar> getBars() { return bars; }
+    public List<Bar> getPreviousBars() { return previousBars; }
+
+    @Override
+    public String toString() {
+        return String.format("%s last %.2f x %d vwap %.2f vol %d | bid %.2f x %d / ask %.2f x %d",
+                symbol, lastPrice, lastQuantity, vwap, volume, bidPrice, bidQuantity, askPrice, askQuantity);
+    }
+}
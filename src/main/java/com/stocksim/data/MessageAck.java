@@ -0,0 +1,105 @@
+package com.stocksim.data;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+// per-message reply from the market node
+public class MessageAck implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // lamport timestamp of the message being acknowledged
+    private final long lamportTimestamp;
+
+    // true if the message was sequenced
+    private final boolean accepted;
+
+    // why it was rejected (null when accepted)
+    private final String reason;
+
+    // client order id of the acknowledged message, 0 if it had none
+    private final long orderId;
+
+    // SEQUENCED until matched, then what the message led to
+    private final OrderStatus status;
+
+    // shares of the order left on the book after the message (0 before matching, after a cancel or a full fill)
+    private final int restingQuantity;
+
+    // executions of the order against the book, empty before matching
+    private final List<Fill> fills;
+
+    // builds ack object
+    public MessageAck(long lamportTimestamp, boolean accepted, String reason) {
+        this(lamportTimestamp, accepted, reason, 0, accepted ? OrderStatus.SEQUENCED : OrderStatus.REJECTED,
+                0, Collections.emptyList());
+    }
+
+    // builds ack object with an execution report
+    public MessageAck(long lamportTimestamp, boolean accepted, String reason, long orderId, OrderStatus status,
+                      int restingQuantity, List<Fill> fills) {
+        this.lamportTimestamp = lamportTimestamp;
+        this.accepted = accepted;
+        this.reason = reason;
+        this.orderId = orderId;
+        this.status = status;
+        this.restingQuantity = restingQuantity;
+        this.fills = fills;
+    }
+
+    public static MessageAck accepted(long lamportTimestamp) {
+        return new MessageAck(lamportTimestamp, true, null);
+    }
+
+    public static MessageAck rejected(long lamportTimestamp, String reason) {
+        return new MessageAck(lamportTimestamp, false, reason);
+    }
+
+    // sequenced, echoing the message's client order id
+    public static MessageAck accepted(TradeMessage message) {
+        return new MessageAck(message.getLamportTimestamp(), true, null, orderIdOf(message),
+                OrderStatus.SEQUENCED, 0, Collections.emptyList());
+    }
+
+    public static MessageAck rejected(TradeMessage message, String reason) {
+        return new MessageAck(message.getLamportTimestamp(), false, reason, orderIdOf(message),
+                OrderStatus.REJECTED, 0, Collections.emptyList());
+    }
+
+    // not taken because the market is overloaded; the sender should back off
+    public static MessageAck busy(TradeMessage message, String reason) {
+        return new MessageAck(message.getLamportTimestamp(), false, reason, orderIdOf(message),
+                OrderStatus.BUSY, 0, Collections.emptyList());
+    }
+
+    public boolean isBusy() { return status == OrderStatus.BUSY; }
+
+    private static long orderIdOf(TradeMessage message) {
+        return message.getOrder() == null ? 0 : message.getOrder().getOrderId();
+    }
+
+    // getters
+    public long getLamportTimestamp() { return lamportTimestamp; }
+    public boolean isAccepted() { return accepted; }
+    public String getReason() { return reason; }
+    public long getOrderId() { return orderId; }
+    public OrderStatus getStatus() { return status; }
+    public int getRestingQuantity() { return restingQuantity; }
+    public List<Fill> getFills() { return fills; }
+
+    // shares executed across the fills
+    public int getFilledQuantity() {
+        int filled = 0;
+        for (Fill fill : fills) filled += fill.getQuantity();
+        return filled;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageAck{" + "LT=" + lamportTimestamp + ", accepted=" + accepted
+                + (orderId != 0 ? ", id=" + orderId : "") + ", status=" + status
+                + (restingQuantity != 0 ? ", resting=" + restingQuantity : "")
+                + (!fills.isEmpty() ? ", fills=" + fills : "")
+                + (reason != null ? ", reason='" + reason + "'" : "") + '}';
+    }
+}
@@ -2,8 +2,10 @@ package com.stocksim.data;
 
 import java.io.Serializable;
 
-// message types sent between agents and market
+// message types sent between agents and market (new types go last: the binary codec writes ordinals)
 public enum MessageType implements Serializable {
-    ORDER,      // order message
-    HEARTBEAT   // heartbeat message
+    ORDER,      // new order (NEW)
+    HEARTBEAT,  // heartbeat message
+    CANCEL,     // cancels a resting order by its client order id
+    REPLACE     // cancels a resting order and enters the attached order in its place
 }
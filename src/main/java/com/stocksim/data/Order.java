@@ -20,13 +20,32 @@ public class Order implements Serializable {
     // buy or sell
     private final OrderType type;
 
-    // builds order object
+    // client order id: unique and increasing per agent, 0 for an unnumbered order (never deduplicated)
+    private final long orderId;
+
+    // for CANCEL and REPLACE, the client order id of the resting order they act on; 0 otherwise
+    private final long originalOrderId;
+
+    // builds an unnumbered order
     public Order(String agentId, String stockSymbol, int quantity, double price, OrderType type) {
+        this(agentId, stockSymbol, quantity, price, type, 0, 0);
+    }
+
+    // builds a numbered order; originalOrderId is only set on a replacement
+    public Order(String agentId, String stockSymbol, int quantity, double price, OrderType type,
+                 long orderId, long originalOrderId) {
         this.agentId = agentId;
         this.stockSymbol = stockSymbol;
         this.quantity = quantity;
         this.price = price;
         this.type = type;
+        this.orderId = orderId;
+        this.originalOrderId = originalOrderId;
+    }
+
+    // the body of a CANCEL message: which of the agent's orders on which symbol to take off the book
+    public static Order cancel(String agentId, String stockSymbol, long orderId, long originalOrderId) {
+        return new Order(agentId, stockSymbol, 0, 0, null, orderId, originalOrderId);
     }
 
     // getters for fields
@@ -35,9 +54,13 @@ public class Order implements Serializable {
     public int getQuantity() { return quantity; }
     public double getPrice() { return price; }
     public OrderType getType() { return type; }
+    public long getOrderId() { return orderId; }
+    public long getOriginalOrderId() { return originalOrderId; }
 
     @Override
     public String toString() {
-        return "Order{" + "agentId='" + agentId + "'" + ", type=" + type + '}' ;
+        return "Order{" + "agentId='" + agentId + "'" + ", type=" + type
+                + (orderId != 0 ? ", id=" + orderId : "")
+                + (originalOrderId != 0 ? ", original=" + originalOrderId : "") + '}';
     }
 }
@@ -0,0 +1,19 @@
+package com.stocksim.data;
+
+// what a message led to, as reported in its MessageAck
+public enum OrderStatus {
+    SEQUENCED,          // queued for matching, outcome not known yet (submitBatch acks)
+    NEW,                // resting on the book, nothing filled
+    PARTIALLY_FILLED,   // some shares filled, the rest resting
+    FILLED,             // every share filled
+    CANCELED,           // the referenced order was taken off the book
+    DUPLICATE,          // an order id already executed; the first copy's ack has the outcome
+    REJECTED,           // refused, see the ack's reason
+    BUSY;               // not taken, the market is overloaded (see the reason); send it again later
+
+    // status of a new or replacement order after matching
+    public static OrderStatus afterMatching(int filledQuantity, int restingQuantity) {
+        if (filledQuantity == 0) return NEW;
+        return restingQuantity > 0 ? PARTIALLY_FILLED : FILLED;
+    }
+}
@@ -0,0 +1,56 @@
+package com.stocksim.data;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// changes to the system state since a client's last cursors
+public class StateDelta implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // pass as a cursor to start from the current state instead of resuming
+    public static final long LATEST = -1;
+
+    // trades after the requested trade sequence, oldest first
+    private final List<Trade> trades;
+
+    // trade cursor to pass on the next call
+    private final long nextTradeSequence;
+
+    // true if the requested trades are gone and the client should drop what it shows
+    private final boolean tradesReset;
+
+    // agents whose status changed (or every agent when statusesReset)
+    private final Map<String, String> statusChanges;
+
+    // status cursor to pass on the next call
+    private final long statusVersion;
+
+    // true if statusChanges is the full status map rather than changes
+    private final boolean statusesReset;
+
+    // status of market node (UP or DOWN)
+    private final String marketNodeStatus;
+
+    public StateDelta(List<Trade> trades, long nextTradeSequence, boolean tradesReset,
+                      Map<String, String> statusChanges, long statusVersion, boolean statusesReset,
+                      String marketNodeStatus) {
+        this.trades = Collections.unmodifiableList(trades);
+        this.nextTradeSequence = nextTradeSequence;
+        this.tradesReset = tradesReset;
+        this.statusChanges = Collections.unmodifiableMap(statusChanges);
+        this.statusVersion = statusVersion;
+        this.statusesReset = statusesReset;
+        this.marketNodeStatus = marketNodeStatus;
+    }
+
+    // getters
+    public List<Trade> getTrades() { return trades; }
+    public long getNextTradeSequence() { return nextTradeSequence; }
+    public boolean isTradesReset() { return tradesReset; }
+    public Map<String, String> getStatusChanges() { return statusChanges; }
+    public long getStatusVersion() { return statusVersion; }
+    public boolean isStatusesReset() { return statusesReset; }
+    public String getMarketNodeStatus() { return marketNodeStatus; }
+}
@@ -8,9 +8,15 @@ public class Trade implements Serializable {
     // unique id for the trade
     private final String tradeId;
 
-    // agent who executed trade
+    // agent whose incoming order executed the trade (taker)
     private final String agentId;
 
+    // buying side of the trade
+    private final String buyerId;
+
+    // selling side of the trade
+    private final String sellerId;
+
     // stock symbol
     private final String stockSymbol;
 
@@ -27,9 +33,12 @@ public class Trade implements Serializable {
     private final long systemTimeMillis;
 
     // builds trade object
-    public Trade(String tradeId, String agentId, String stockSymbol, int quantity, double price, long lamportTimestamp, long systemTimeMillis) {
+    public Trade(String tradeId, String agentId, String buyerId, String sellerId, String stockSymbol,
+                 int quantity, double price, long lamportTimestamp, long systemTimeMillis) {
         this.tradeId = tradeId;
         this.agentId = agentId;
+        this.buyerId = buyerId;
+        this.sellerId = sellerId;
         this.stockSymbol = stockSymbol;
         this.quantity = quantity;
         this.price = price;
@@ -40,6 +49,8 @@ public class Trade implements Serializable {
     // getters
     public String getTradeId() { return tradeId; }
     public String getAgentId() { return agentId; }
+    public String getBuyerId() { return buyerId; }
+    public String getSellerId() { return sellerId; }
     public String getStockSymbol() { return stockSymbol; }
     public int getQuantity() { return quantity; }
     public double getPrice() { return price; }
@@ -11,10 +11,10 @@ public class TradeMessage implements Serializable {
     // receiver id (usually market)
     private final String receiverId;
 
-    // type of message (ORDER or HEARTBEAT)
+    // type of message (ORDER, CANCEL, REPLACE or HEARTBEAT)
     private final MessageType type;
 
-    // order attached (only if type = ORDER)
+    // order attached (null for HEARTBEAT)
     private final Order order;
 
     // lamport timestamp attached to message
@@ -0,0 +1,55 @@
+package com.stocksim.data;
+
+import java.io.Serializable;
+
+// filter for a trade history query: which trades to aggregate and how many of them to return
+public class TradeQuery implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // symbol to match, null for all symbols
+    private final String stockSymbol;
+
+    // agent on either side of the trade, null for all agents
+    private final String agentId;
+
+    // wall-clock range in ms, from inclusive, to exclusive
+    private final long fromMillis;
+    private final long toMillis;
+
+    // trades to return, earliest first (0 for aggregates only)
+    private final int maxTrades;
+
+    // builds query object
+    public TradeQuery(String stockSymbol, String agentId, long fromMillis, long toMillis, int maxTrades) {
+        this.stockSymbol = stockSymbol;
+        this.agentId = agentId;
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+        this.maxTrades = maxTrades;
+    }
+
+    // volume and VWAP of one symbol over a range, no trades returned
+    public static TradeQuery aggregate(String stockSymbol, long fromMillis, long toMillis) {
+        return new TradeQuery(stockSymbol, null, fromMillis, toMillis, 0);
+    }
+
+    // getters
+    public String getStockSymbol() { return stockSymbol; }
+    public String getAgentId() { return agentId; }
+    public long getFromMillis() { return fromMillis; }
+    public long getToMillis() { return toMillis; }
+    public int getMaxTrades() { return maxTrades; }
+
+    // true if the trade passes the filter
+    public boolean matches(Trade trade) {
+        return (stockSymbol == null || stockSymbol.equals(trade.getStockSymbol()))
+                && (agentId == null || agentId.equals(trade.getBuyerId()) || agentId.equals(trade.getSellerId()))
+                && trade.getSystemTimeMillis() >= fromMillis && trade.getSystemTimeMillis() < toMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "TradeQuery{" + "symbol=" + stockSymbol + ", agent=" + agentId + ", from=" + fromMillis
+                + ", to=" + toMillis + ", maxTrades=" + maxTrades + '}';
+    }
+}
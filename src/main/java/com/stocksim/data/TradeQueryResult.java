@@ -0,0 +1,85 @@
+package com.stocksim.data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// answer to a trade history query: aggregates over every matching trade, and the earliest of them
+public class TradeQueryResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // orders trades by wall-clock time, then lamport time
+    public static final Comparator<Trade> BY_TIME = Comparator.comparingLong(Trade::getSystemTimeMillis)
+            .thenComparingLong(Trade::getLamportTimestamp);
+
+    // earliest matching trades, at most the query's maxTrades, oldest first
+    private final List<Trade> trades;
+
+    // matching trades, shares traded and price * shares, over the whole range
+    private final long tradeCount;
+    private final long volume;
+    private final double notional;
+
+    // lowest and highest trade price, 0 if nothing matched
+    private final double low;
+    private final double high;
+
+    // builds result object
+    public TradeQueryResult(List<Trade> trades, long tradeCount, long volume, double notional, double low, double high) {
+        this.trades = Collections.unmodifiableList(trades);
+        this.tradeCount = tradeCount;
+        this.volume = volume;
+        this.notional = notional;
+        this.low = low;
+        this.high = high;
+    }
+
+    // combines the results of one query run on several nodes, keeping the earliest maxTrades trades
+    public static TradeQueryResult merge(List<TradeQueryResult> results, int maxTrades) {
+        List<Trade> trades = new ArrayList<>();
+        long tradeCount = 0;
+        long volume = 0;
+        double notional = 0;
+        double low = Double.MAX_VALUE;
+        double high = 0;
+        for (TradeQueryResult result : results) {
+            trades.addAll(result.trades);
+            tradeCount += result.tradeCount;
+            volume += result.volume;
+            notional += result.notional;
+            if (result.tradeCount > 0) {
+                low = Math.min(low, result.low);
+                high = Math.max(high, result.high);
+            }
+        }
+        trades.sort(BY_TIME);
+        List<Trade> earliest = new ArrayList<>(trades.subList(0, Math.min(trades.size(), maxTrades)));
+        return new TradeQueryResult(earliest, tradeCount, volume, notional, tradeCount > 0 ? low : 0, high);
+    }
+
+    // getters
+    public List<Trade> getTrades() { return trades; }
+    public long getTradeCount() { return tradeCount; }
+    public long getVolume() { return volume; }
+    public double getNotional() { return notional; }
+    public double getLow() { return low; }
+    public double getHigh() { return high; }
+
+    // volume weighted average price, 0 if nothing matched
+    public double getVwap() {
+        return volume == 0 ? 0 : notional / volume;
+    }
+
+    // true if more trades matched than were returned
+    public boolean isTruncated() {
+        return tradeCount > trades.size();
+    }
+
+    @Override
+    public String toString() {
+        return "TradeQueryResult{" + "trades=" + tradeCount + ", volume=" + volume + ", vwap=" + getVwap()
+                + ", low=" + low + ", high=" + high + ", returned=" + trades.size() + '}';
+    }
+}
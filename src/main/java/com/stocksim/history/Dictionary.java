@@ -0,0 +1,39 @@
+package com.stocksim.history;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Names of one segment (symbols or agents) by dense code, in first-seen order. Columns store
+ * the code, so a name is kept once per segment however many trades use it. Not thread safe.
+ */
+final class Dictionary {
+
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> codes = new HashMap<>();
+
+    // code of name, assigning the next one if it is new
+    int code(String name) {
+        Integer code = codes.get(name);
+        if (code != null) return code;
+        names.add(name);
+        codes.put(name, names.size() - 1);
+        return names.size() - 1;
+    }
+
+    // code of name, or -1 if no trade in the segment uses it
+    int find(String name) {
+        Integer code = codes.get(name);
+        return code == null ? -1 : code;
+    }
+
+    String name(int code) {
+        return names.get(code);
+    }
+
+    int size() {
+        return names.size();
+    }
+}
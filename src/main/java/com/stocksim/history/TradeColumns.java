@@ -0,0 +1,90 @@
+package com.stocksim.history;
+
+import com.stocksim.core.OrderBook;
+import com.stocksim.data.Trade;
+
+import java.util.Arrays;
+
+/**
+ * Trades held column by column in parallel arrays: the open segment being filled, or one
+ * symbol run of a written segment decoded to return its trades. Symbols and agents are
+ * dictionary codes, prices are ticks. Appends need outside locking.
+ */
+final class TradeColumns {
+
+    final Dictionary symbols;
+    final Dictionary agents;
+    int size;
+    long[] times;           // wall-clock ms
+    long[] lamports;
+    int[] symbolCodes;
+    int[] buyers;
+    int[] sellers;
+    boolean[] takerBuys;    // the taker (the trade's agent) is the buyer
+    int[] quantities;
+    long[] priceTicks;
+    String[] tradeIds;
+
+    TradeColumns(Dictionary symbols, Dictionary agents, int capacity) {
+        this.symbols = symbols;
+        this.agents = agents;
+        this.times = new long[capacity];
+        this.lamports = new long[capacity];
+        this.symbolCodes = new int[capacity];
+        this.buyers = new int[capacity];
+        this.sellers = new int[capacity];
+        this.takerBuys = new boolean[capacity];
+        this.quantities = new int[capacity];
+        this.priceTicks = new long[capacity];
+        this.tradeIds = new String[capacity];
+    }
+
+    TradeColumns(int capacity) {
+        this(new Dictionary(), new Dictionary(), capacity);
+    }
+
+    void add(Trade trade) {
+        if (size == times.length) grow();
+        int row = size++;
+        times[row] = trade.getSystemTimeMillis();
+        lamports[row] = trade.getLamportTimestamp();
+        symbolCodes[row] = symbols.code(trade.getStockSymbol());
+        buyers[row] = agents.code(trade.getBuyerId());
+        sellers[row] = agents.code(trade.getSellerId());
+        takerBuys[row] = trade.getAgentId().equals(trade.getBuyerId());
+        quantities[row] = trade.getQuantity();
+        priceTicks[row] = OrderBook.toTicks(trade.getPrice());
+        tradeIds[row] = trade.getTradeId();
+    }
+
+    Trade toTrade(int row) {
+        String buyer = agents.name(buyers[row]);
+        String seller = agents.name(sellers[row]);
+        return new Trade(tradeIds[row], takerBuys[row] ? buyer : seller, buyer, seller, symbols.name(symbolCodes[row]),
+                quantities[row], OrderBook.toPrice(priceTicks[row]), lamports[row], times[row]);
+    }
+
+    // adds the rows of symbolCode and agentCode (-1 for any) to scan
+    void scan(int symbolCode, int agentCode, TradeScan scan) {
+        for (int row = 0; row < size; row++) {
+            if (symbolCode >= 0 && symbolCodes[row] != symbolCode) continue;
+            if (agentCode >= 0 && buyers[row] != agentCode && sellers[row] != agentCode) continue;
+            if (!scan.inRange(times[row])) continue;
+            scan.add(quantities[row], priceTicks[row]);
+            if (scan.wants(times[row])) scan.offer(toTrade(row));
+        }
+    }
+
+    private void grow() {
+        int capacity = Math.max(16, times.length * 2);
+        times = Arrays.copyOf(times, capacity);
+        lamports = Arrays.copyOf(lamports, capacity);
+        symbolCodes = Arrays.copyOf(symbolCodes, capacity);
+        buyers = Arrays.copyOf(buyers, capacity);
+        sellers = Arrays.copyOf(sellers, capacity);
+        takerBuys = Arrays.copyOf(takerBuys, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        priceTicks = Arrays.copyOf(priceTicks, capacity);
+        tradeIds = Arrays.copyOf(tradeIds, capacity);
+    }
+}
@@ -0,0 +1,89 @@
+package com.stocksim.history;
+
+import com.stocksim.core.OrderBook;
+import com.stocksim.data.Trade;
+import com.stocksim.data.TradeQuery;
+import com.stocksim.data.TradeQueryResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Running answer to one query: aggregates in ticks, plus the earliest maxTrades matching
+ * trades in a bounded max-heap, so only trades that may be returned are ever built.
+ */
+final class TradeScan {
+
+    private final long fromMillis;
+    private final long toMillis;
+    private final int maxTrades;
+    private final PriorityQueue<Trade> earliest;  // latest of the kept trades on top
+    private long count;
+    private long volume;
+    private long notionalTicks;
+    private long lowTicks = Long.MAX_VALUE;
+    private long highTicks = Long.MIN_VALUE;
+
+    TradeScan(TradeQuery query) {
+        this.fromMillis = query.getFromMillis();
+        this.toMillis = query.getToMillis();
+        this.maxTrades = Math.max(0, query.getMaxTrades());
+        this.earliest = new PriorityQueue<>(Math.max(1, Math.min(maxTrades, 1024)), TradeQueryResult.BY_TIME.reversed());
+    }
+
+    long getToMillis() {
+        return toMillis;
+    }
+
+    boolean overlaps(long minMillis, long maxMillis) {
+        return maxMillis >= fromMillis && minMillis < toMillis;
+    }
+
+    boolean covers(long minMillis, long maxMillis) {
+        return minMillis >= fromMillis && maxMillis < toMillis;
+    }
+
+    boolean inRange(long millis) {
+        return millis >= fromMillis && millis < toMillis;
+    }
+
+    boolean wantsTrades() {
+        return maxTrades > 0;
+    }
+
+    // a matching trade at millis could still be among the earliest maxTrades
+    boolean wants(long millis) {
+        if (maxTrades == 0) return false;
+        return earliest.size() < maxTrades || millis <= earliest.peek().getSystemTimeMillis();
+    }
+
+    void add(int quantity, long priceTicks) {
+        count++;
+        volume += quantity;
+        notionalTicks += quantity * priceTicks;
+        lowTicks = Math.min(lowTicks, priceTicks);
+        highTicks = Math.max(highTicks, priceTicks);
+    }
+
+    // a whole run of matching trades, from its precomputed aggregates
+    void addAggregate(long runCount, long runVolume, long runNotionalTicks, long runLowTicks, long runHighTicks) {
+        count += runCount;
+        volume += runVolume;
+        notionalTicks += runNotionalTicks;
+        lowTicks = Math.min(lowTicks, runLowTicks);
+        highTicks = Math.max(highTicks, runHighTicks);
+    }
+
+    void offer(Trade trade) {
+        earliest.add(trade);
+        if (earliest.size() > maxTrades) earliest.poll();
+    }
+
+    TradeQueryResult result() {
+        List<Trade> trades = new ArrayList<>(earliest);
+        trades.sort(TradeQueryResult.BY_TIME);
+        return new TradeQueryResult(trades, count, volume, notionalTicks * OrderBook.TICK_SIZE,
+                count == 0 ? 0 : OrderBook.toPrice(lowTicks), count == 0 ? 0 : OrderBook.toPrice(highTicks));
+    }
+}
@@ -0,0 +1,418 @@
+package com.stocksim.history;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+
+/**
+ * One immutable file of trades, stored by column. Rows are sorted by symbol then time, so
+ * each symbol's trades form a run; the run directory in the header holds each run's time
+ * range, its volume, notional, low and high, and where each of its columns starts.
+ *
+ * File layout: [int magic][int version][int rows][long minMillis][long maxMillis]
+ * [symbol dictionary][agent dictionary][int runs][run directory][column data].
+ * Columns per run: wall-clock times and lamport times as deltas, prices in ticks as zigzag
+ * deltas, buyer and seller as agent codes, quantities, all as varints; a bitmap of the
+ * taker's side; trade ids as length-prefixed UTF-8. Rows are only decoded for the columns a
+ * query needs, and runs outside its symbol or time range are not read at all.
+ */
+final class TradeSegment {
+
+    static final String SUFFIX = ".trades";
+
+    private static final int MAGIC = 0x53545244; // "STRD"
+    private static final int VERSION = 1;
+    private static final int TIME = 0;
+    private static final int LAMPORT = 1;
+    private static final int PRICE = 2;
+    private static final int QUANTITY = 3;
+    private static final int BUYER = 4;
+    private static final int SELLER = 5;
+    private static final int TAKER_BUYS = 6;
+    private static final int TRADE_ID = 7;
+    private static final int COLUMNS = 8;
+    private static final int RUN_BYTES = 4 + 4 + 6 * 8 + (COLUMNS + 1) * 4;
+
+    // one symbol's rows in this segment
+    private static final class Run {
+        int symbolCode;
+        int rows;
+        long minMillis;
+        long maxMillis;
+        long volume;
+        long notionalTicks;
+        long lowTicks;
+        long highTicks;
+        final int[] offsets = new int[COLUMNS + 1];    // file offset of each column, then of the run's end
+    }
+
+    private final Path path;
+    private final ByteBuffer data;
+    private final int rows;
+    private final long minMillis;
+    private final long maxMillis;
+    private final Dictionary symbols;
+    private final Dictionary agents;
+    private final Run[] runs;
+
+    private TradeSegment(Path path, ByteBuffer data, int rows, long minMillis, long maxMillis,
+                         Dictionary symbols, Dictionary agents, Run[] runs) {
+        this.path = path;
+        this.data = data;
+        this.rows = rows;
+        this.minMillis = minMillis;
+        this.maxMillis = maxMillis;
+        this.symbols = symbols;
+        this.agents = agents;
+        this.runs = runs;
+    }
+
+    Path getPath() { return path; }
+    int getRows() { return rows; }
+    long getMinMillis() { return minMillis; }
+    long getMaxMillis() { return maxMillis; }
+    long getSizeBytes() { return data.capacity(); }
+
+    /**
+     * Encodes the trades in columns to path, through a temporary file that is forced to disk and
+     * renamed, so the file is either whole or absent. Returns the segment opened for queries.
+     */
+    static TradeSegment write(Path path, TradeColumns columns) throws IOException {
+        Integer[] order = new Integer[columns.size];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, Comparator.<Integer>comparingInt(row -> columns.symbolCodes[row])
+                .thenComparingLong(row -> columns.times[row])
+                .thenComparingLong(row -> columns.lamports[row]));
+
+        Encoder head = new Encoder(256);
+        Encoder body = new Encoder(columns.size * 32);
+        long minMillis = Long.MAX_VALUE;
+        long maxMillis = Long.MIN_VALUE;
+        for (int i = 0; i < columns.size; i++) {
+            minMillis = Math.min(minMillis, columns.times[i]);
+            maxMillis = Math.max(maxMillis, columns.times[i]);
+        }
+        head.putInt(MAGIC);
+        head.putInt(VERSION);
+        head.putInt(columns.size);
+        head.putLong(minMillis);
+        head.putLong(maxMillis);
+        putDictionary(head, columns.symbols);
+        putDictionary(head, columns.agents);
+
+        // one run per symbol, its columns back to back
+        Run[] runs = new Run[columns.symbols.size()];
+        int runCount = 0;
+        for (int start = 0; start < order.length; ) {
+            int symbolCode = columns.symbolCodes[order[start]];
+            int end = start;
+            while (end < order.length && columns.symbolCodes[order[end]] == symbolCode) end++;
+            runs[runCount++] = encodeRun(columns, order, start, end, body);
+            start = end;
+        }
+        head.putInt(runCount);
+        int base = head.size() + runCount * RUN_BYTES;
+        for (int r = 0; r < runCount; r++) {
+            Run run = runs[r];
+            head.putInt(run.symbolCode);
+            head.putInt(run.rows);
+            head.putLong(run.minMillis);
+            head.putLong(run.maxMillis);
+            head.putLong(run.volume);
+            head.putLong(run.notionalTicks);
+            head.putLong(run.lowTicks);
+            head.putLong(run.highTicks);
+            for (int offset : run.offsets) head.putInt(base + offset);
+        }
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] buffers = {head.buffer(), body.buffer()};
+            while (buffers[0].hasRemaining() || buffers[1].hasRemaining()) channel.write(buffers);
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return open(path);
+    }
+
+    // rows [start, end) of order, all of one symbol; offsets are relative to the body until written
+    private static Run encodeRun(TradeColumns columns, Integer[] order, int start, int end, Encoder body) {
+        Run run = new Run();
+        run.symbolCode = columns.symbolCodes[order[start]];
+        run.rows = end - start;
+        run.minMillis = columns.times[order[start]];
+        run.maxMillis = columns.times[order[end - 1]];
+        run.lowTicks = Long.MAX_VALUE;
+        run.highTicks = Long.MIN_VALUE;
+
+        run.offsets[TIME] = body.size();
+        long previous = run.minMillis;
+        for (int i = start; i < end; i++) {
+            long millis = columns.times[order[i]];
+            body.putVarLong(millis - previous); // sorted, so never negative
+            previous = millis;
+        }
+        run.offsets[LAMPORT] = body.size();
+        previous = 0;
+        for (int i = start; i < end; i++) {
+            long lamport = columns.lamports[order[i]];
+            body.putVarLong(zigzag(lamport - previous));
+            previous = lamport;
+        }
+        run.offsets[PRICE] = body.size();
+        previous = 0;
+        for (int i = start; i < end; i++) {
+            long ticks = columns.priceTicks[order[i]];
+            body.putVarLong(zigzag(ticks - previous));
+            previous = ticks;
+            int quantity = columns.quantities[order[i]];
+            run.volume += quantity;
+            run.notionalTicks += quantity * ticks;
+            run.lowTicks = Math.min(run.lowTicks, ticks);
+            run.highTicks = Math.max(run.highTicks, ticks);
+        }
+        run.offsets[QUANTITY] = body.size();
+        for (int i = start; i < end; i++) body.putVarLong(columns.quantities[order[i]]);
+        run.offsets[BUYER] = body.size();
+        for (int i = start; i < end; i++) body.putVarLong(columns.buyers[order[i]]);
+        run.offsets[SELLER] = body.size();
+        for (int i = start; i < end; i++) body.putVarLong(columns.sellers[order[i]]);
+        run.offsets[TAKER_BUYS] = body.size();
+        for (int i = start; i < end; i += 8) {
+            int bits = 0;
+            for (int b = 0; b < 8 && i + b < end; b++) {
+                if (columns.takerBuys[order[i + b]]) bits |= 1 << b;
+            }
+            body.putByte(bits);
+        }
+        run.offsets[TRADE_ID] = body.size();
+        for (int i = start; i < end; i++) {
+            byte[] id = columns.tradeIds[order[i]].getBytes(StandardCharsets.UTF_8);
+            body.putVarLong(id.length);
+            body.putBytes(id);
+        }
+        run.offsets[COLUMNS] = body.size();
+        return run;
+    }
+
+    // maps a segment file and reads its header and run directory; columns are read by queries
+    static TradeSegment open(Path path) throws IOException {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer in = data.duplicate();
+        if (in.remaining() < 28 || in.getInt() != MAGIC || in.getInt() != VERSION) {
+            throw new IOException("not a trade segment: " + path);
+        }
+        int rows = in.getInt();
+        long minMillis = in.getLong();
+        long maxMillis = in.getLong();
+        Dictionary symbols = getDictionary(in);
+        Dictionary agents = getDictionary(in);
+        Run[] runs = new Run[in.getInt()];
+        for (int r = 0; r < runs.length; r++) {
+            Run run = new Run();
+            run.symbolCode = in.getInt();
+            run.rows = in.getInt();
+            run.minMillis = in.getLong();
+            run.maxMillis = in.getLong();
+            run.volume = in.getLong();
+            run.notionalTicks = in.getLong();
+            run.lowTicks = in.getLong();
+            run.highTicks = in.getLong();
+            for (int c = 0; c <= COLUMNS; c++) run.offsets[c] = in.getInt();
+            runs[r] = run;
+        }
+        return new TradeSegment(path, data, rows, minMillis, maxMillis, symbols, agents, runs);
+    }
+
+    // adds this segment's matching trades to scan
+    void scan(String symbol, String agent, TradeScan scan) {
+        if (!scan.overlaps(minMillis, maxMillis)) return;
+        int symbolCode = symbol == null ? -1 : symbols.find(symbol);
+        int agentCode = agent == null ? -1 : agents.find(agent);
+        if ((symbol != null && symbolCode < 0) || (agent != null && agentCode < 0)) return;
+
+        for (Run run : runs) {
+            if (symbolCode >= 0 && run.symbolCode != symbolCode) continue;
+            if (!scan.overlaps(run.minMillis, run.maxMillis)) continue;
+            if (agentCode < 0 && !scan.wantsTrades() && scan.covers(run.minMillis, run.maxMillis)) {
+                // the whole run matches: its aggregates answer without reading a column
+                scan.addAggregate(run.rows, run.volume, run.notionalTicks, run.lowTicks, run.highTicks);
+                continue;
+            }
+            scanRun(run, agentCode, scan);
+        }
+    }
+
+    private void scanRun(Run run, int agentCode, TradeScan scan) {
+        ByteBuffer times = column(run, TIME);
+        ByteBuffer prices = column(run, PRICE);
+        ByteBuffer quantities = column(run, QUANTITY);
+        ByteBuffer buyers = agentCode >= 0 ? column(run, BUYER) : null;
+        ByteBuffer sellers = agentCode >= 0 ? column(run, SELLER) : null;
+        TradeColumns decoded = null;
+        long millis = run.minMillis;
+        long ticks = 0;
+        for (int row = 0; row < run.rows; row++) {
+            millis += getVarLong(times);
+            ticks += unzigzag(getVarLong(prices));
+            int quantity = (int) getVarLong(quantities);
+            if (millis >= scan.getToMillis()) break; // sorted by time within the run
+            if (agentCode >= 0) {
+                long buyer = getVarLong(buyers);
+                long seller = getVarLong(sellers);
+                if (buyer != agentCode && seller != agentCode) continue;
+            }
+            if (!scan.inRange(millis)) continue;
+            scan.add(quantity, ticks);
+            if (scan.wants(millis)) {
+                if (decoded == null) decoded = decode(run);
+                scan.offer(decoded.toTrade(row));
+            }
+        }
+    }
+
+    // every column of a run, to build the trades a query returns
+    private TradeColumns decode(Run run) {
+        TradeColumns columns = new TradeColumns(symbols, agents, run.rows);
+        ByteBuffer times = column(run, TIME);
+        ByteBuffer lamports = column(run, LAMPORT);
+        ByteBuffer prices = column(run, PRICE);
+        ByteBuffer quantities = column(run, QUANTITY);
+        ByteBuffer buyers = column(run, BUYER);
+        ByteBuffer sellers = column(run, SELLER);
+        ByteBuffer takerBuys = column(run, TAKER_BUYS);
+        ByteBuffer tradeIds = column(run, TRADE_ID);
+        long millis = run.minMillis;
+        long lamport = 0;
+        long ticks = 0;
+        for (int row = 0; row < run.rows; row++) {
+            millis += getVarLong(times);
+            lamport += unzigzag(getVarLong(lamports));
+            ticks += unzigzag(getVarLong(prices));
+            columns.times[row] = millis;
+            columns.lamports[row] = lamport;
+            columns.priceTicks[row] = ticks;
+            columns.symbolCodes[row] = run.symbolCode;
+            columns.quantities[row] = (int) getVarLong(quantities);
+            columns.buyers[row] = (int) getVarLong(buyers);
+            columns.sellers[row] = (int) getVarLong(sellers);
+            columns.takerBuys[row] = (takerBuys.get(takerBuys.position() + row / 8) & (1 << (row % 8))) != 0;
+            byte[] id = new byte[(int) getVarLong(tradeIds)];
+            tradeIds.get(id);
+            columns.tradeIds[row] = new String(id, StandardCharsets.UTF_8);
+        }
+        columns.size = run.rows;
+        return columns;
+    }
+
+    // trade ids of every row, to tell which recovered trades are already stored
+    void collectTradeIds(Set<String> out) {
+        for (Run run : runs) {
+            ByteBuffer tradeIds = column(run, TRADE_ID);
+            for (int row = 0; row < run.rows; row++) {
+                byte[] id = new byte[(int) getVarLong(tradeIds)];
+                tradeIds.get(id);
+                out.add(new String(id, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private ByteBuffer column(Run run, int column) {
+        ByteBuffer buf = data.duplicate();
+        buf.limit(run.offsets[column + 1]).position(run.offsets[column]);
+        return buf;
+    }
+
+    private static void putDictionary(Encoder out, Dictionary dictionary) {
+        out.putInt(dictionary.size());
+        for (int code = 0; code < dictionary.size(); code++) {
+            byte[] name = dictionary.name(code).getBytes(StandardCharsets.UTF_8);
+            out.putVarLong(name.length);
+            out.putBytes(name);
+        }
+    }
+
+    private static Dictionary getDictionary(ByteBuffer in) {
+        Dictionary dictionary = new Dictionary();
+        int size = in.getInt();
+        for (int i = 0; i < size; i++) {
+            byte[] name = new byte[(int) getVarLong(in)];
+            in.get(name);
+            dictionary.code(new String(name, StandardCharsets.UTF_8));
+        }
+        return dictionary;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+    // growable big-endian byte buffer with unsigned varints (7 bits per byte, high bit = more)
+    private static final class Encoder {
+        private byte[] bytes;
+        private int size;
+
+        Encoder(int capacity) {
+            this.bytes = new byte[Math.max(16, capacity)];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void putByte(int b) {
+            if (size == bytes.length) bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            bytes[size++] = (byte) b;
+        }
+
+        void putBytes(byte[] b) {
+            for (byte value : b) putByte(value);
+        }
+
+        void putInt(int v) {
+            for (int shift = 24; shift >= 0; shift -= 8) putByte(v >>> shift);
+        }
+
+        void putLong(long v) {
+            for (int shift = 56; shift >= 0; shift -= 8) putByte((int) (v >>> shift));
+        }
+
+        void putVarLong(long v) {
+            while ((v & ~0x7FL) != 0) {
+                putByte((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            putByte((int) v);
+        }
+
+        ByteBuffer buffer() {
+            return ByteBuffer.wrap(bytes, 0, size);
+        }
+    }
+}
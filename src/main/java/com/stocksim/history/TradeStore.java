@@ -0,0 +1,264 @@
+package com.stocksim.history;
+
+import com.stocksim.data.Trade;
+import com.stocksim.data.TradeQuery;
+import com.stocksim.data.TradeQueryResult;
+import com.stocksim.logging.Log;
+import com.stocksim.metrics.LatencyRecorder;
+import com.stocksim.metrics.Metrics;
+import io.prometheus.client.Gauge;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Every trade of a market node, queryable by symbol, agent and time range. Trades are
+ * appended to an open in-memory segment, which is rolled into an immutable columnar file
+ * ({@link TradeSegment}) once it holds segmentTrades trades or is rollSeconds old. Rolling
+ * swaps the open segment under the lock; encoding and writing run on a background thread.
+ * Queries read the open segment, segments being written and the files on disk; per-segment
+ * and per-symbol time ranges skip what a query cannot match, and volume and VWAP over whole
+ * symbol runs come from the run directory without reading a column.
+ *
+ * At most maxUnwritten trades are ever held only in memory (open, or rolled and not written
+ * yet): an append past that waits for the writer. The node sets it to the size of its recent
+ * trade ring, so after a crash every trade not in a file is still in the ring it recovers from
+ * the snapshot and journal (see {@link #recover}). A segment holds at most half of it, so
+ * appends go on while the previous segment is written. If writes fail, appends stop waiting
+ * and the bound no longer holds until a write succeeds again.
+ *
+ * Configured with system properties (defaults in brackets): stocksim.history.segmentTrades
+ * (4096) and rollSeconds (10). Appends take a lock, like the journal's.
+ */
+public class TradeStore {
+
+    public static final String PREFIX = "stocksim.history.";
+
+    private final Path directory;
+    private final int segmentTrades;
+    private final int maxUnwritten;
+    private final long rollMillis;
+    private final ScheduledExecutorService writer;
+    private final LatencyRecorder.Child queryLatency = Metrics.TRADE_HISTORY_LATENCY.labels("query");
+    private final LatencyRecorder.Child rollLatency = Metrics.TRADE_HISTORY_LATENCY.labels("roll");
+    private final Gauge.Child sizeGauge;
+
+    // guarded by this
+    private TradeColumns open;
+    private long openedMillis;
+    private final List<TradeColumns> rolled = new ArrayList<>();    // swapped out, not on disk yet
+    private List<TradeSegment> segments = new ArrayList<>();       // replaced, never changed, so queries can keep one
+    private long nextSegment;
+    private long sizeBytes;
+    private int unwritten;              // trades in open and rolled
+    private boolean writeFailing;       // the last write failed, appends do not wait for the writer
+
+    // opens (or creates) the store in directory and loads its segment directories
+    public TradeStore(String nodeId, Path directory, int segmentTrades, long rollSeconds, int maxUnwritten) throws IOException {
+        if (maxUnwritten < 2) throw new IllegalArgumentException("maxUnwritten must be >= 2");
+        this.directory = directory;
+        this.segmentTrades = Math.max(1, Math.min(segmentTrades, maxUnwritten / 2));
+        this.maxUnwritten = maxUnwritten;
+        this.rollMillis = TimeUnit.SECONDS.toMillis(rollSeconds);
+        this.open = new TradeColumns(Math.min(segmentTrades, 1024));
+        this.sizeGauge = Metrics.TRADE_HISTORY_SIZE.labels(nodeId);
+        Files.createDirectories(directory);
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.filter(p -> p.getFileName().toString().endsWith(TradeSegment.SUFFIX))
+                    .sorted().collect(Collectors.toList())) {
+                TradeSegment segment = TradeSegment.open(path);
+                segments.add(segment);
+                sizeBytes += segment.getSizeBytes();
+                nextSegment = indexOf(path) + 1;
+            }
+        }
+        sizeGauge.set(sizeBytes);
+
+        this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "trade-history");
+            t.setDaemon(true);
+            return t;
+        });
+        if (rollSeconds > 0) writer.scheduleWithFixedDelay(this::rollIfDue, rollSeconds, rollSeconds, TimeUnit.SECONDS);
+        Log.info("TradeStore: {} segments ({} bytes) in {}").arg(segments.size()).arg(sizeBytes).arg(directory).log();
+    }
+
+    // the stocksim.history.* system properties, defaults for the ones not set
+    public static TradeStore fromSystemProperties(String nodeId, Path directory, int maxUnwritten) throws IOException {
+        return new TradeStore(nodeId, directory, Integer.getInteger(PREFIX + "segmentTrades", 4096),
+                Long.getLong(PREFIX + "rollSeconds", 10), maxUnwritten);
+    }
+
+    public synchronized void append(Trade trade) {
+        while (unwritten >= maxUnwritten && !writeFailing) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (open.size == 0) openedMillis = System.currentTimeMillis();
+        open.add(trade);
+        unwritten++;
+        if (open.size >= segmentTrades) {
+            swapOpen();
+            writer.execute(this::writeRolled);
+        }
+    }
+
+    /**
+     * Appends the trades of recent (oldest first) that no segment holds yet: after a restart,
+     * the node's recent trades bring back those that were not rolled to disk before it stopped.
+     * All of them are there as long as recent holds at least maxUnwritten trades.
+     */
+    public void recover(List<Trade> recent) {
+        if (recent.isEmpty()) return;
+        long oldest = recent.get(0).getSystemTimeMillis();
+        Set<String> stored = new HashSet<>();
+        List<TradeSegment> current;
+        synchronized (this) {
+            current = segments;
+        }
+        for (TradeSegment segment : current) {
+            if (segment.getMaxMillis() >= oldest) segment.collectTradeIds(stored);
+        }
+        int recovered = 0;
+        for (Trade trade : recent) {
+            if (stored.contains(trade.getTradeId())) continue;
+            append(trade);
+            recovered++;
+        }
+        if (recovered > 0) Log.info("TradeStore: Recovered {} trades not yet in a segment").arg(recovered).log();
+    }
+
+    public TradeQueryResult query(TradeQuery query) {
+        long startNanos = System.nanoTime();
+        TradeScan scan = new TradeScan(query);
+        List<TradeSegment> onDisk;
+        List<TradeColumns> inMemory;
+        synchronized (this) {
+            scanColumns(open, query, scan); // still being appended to
+            inMemory = new ArrayList<>(rolled);
+            onDisk = segments;
+        }
+        for (TradeColumns columns : inMemory) scanColumns(columns, query, scan);
+        for (TradeSegment segment : onDisk) segment.scan(query.getStockSymbol(), query.getAgentId(), scan);
+        queryLatency.recordSince(startNanos);
+        return scan.result();
+    }
+
+    // answers a query over trades in memory, e.g. a node's recent trades when it has no store
+    public static TradeQueryResult query(List<Trade> trades, TradeQuery query) {
+        TradeColumns columns = new TradeColumns(trades.size());
+        for (Trade trade : trades) columns.add(trade);
+        TradeScan scan = new TradeScan(query);
+        scanColumns(columns, query, scan);
+        return scan.result();
+    }
+
+    // rolls the open segment and waits until every rolled one is on disk
+    public void flush() throws IOException {
+        synchronized (this) {
+            if (open.size > 0) swapOpen();
+        }
+        try {
+            Future<?> written = writer.submit(this::writeRolled);
+            written.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IOException("TradeStore could not write its segments", e.getCause());
+        }
+        synchronized (this) {
+            if (!rolled.isEmpty()) throw new IOException("TradeStore could not write " + rolled.size() + " segments");
+        }
+    }
+
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    public synchronized long sizeBytes() {
+        return sizeBytes;
+    }
+
+    private static void scanColumns(TradeColumns columns, TradeQuery query, TradeScan scan) {
+        int symbolCode = query.getStockSymbol() == null ? -1 : columns.symbols.find(query.getStockSymbol());
+        int agentCode = query.getAgentId() == null ? -1 : columns.agents.find(query.getAgentId());
+        if ((query.getStockSymbol() != null && symbolCode < 0) || (query.getAgentId() != null && agentCode < 0)) return;
+        columns.scan(symbolCode, agentCode, scan);
+    }
+
+    // under the lock: the open segment joins the rolled ones and a new one starts
+    private void swapOpen() {
+        rolled.add(open);
+        open = new TradeColumns(Math.min(segmentTrades, 1024));
+    }
+
+    private void rollIfDue() {
+        synchronized (this) {
+            if (open.size == 0 || System.currentTimeMillis() - openedMillis < rollMillis) return;
+            swapOpen();
+        }
+        writeRolled();
+    }
+
+    // on the writer thread: writes rolled segments oldest first; one that fails stays in memory for the next try
+    private void writeRolled() {
+        while (true) {
+            TradeColumns columns;
+            Path path;
+            synchronized (this) {
+                if (rolled.isEmpty()) return;
+                columns = rolled.get(0);
+                path = directory.resolve(String.format("%020d%s", nextSegment, TradeSegment.SUFFIX));
+            }
+            long startNanos = System.nanoTime();
+            TradeSegment segment;
+            try {
+                segment = TradeSegment.write(path, columns);
+            } catch (IOException | RuntimeException e) {
+                Log.error("TradeStore: Could not write {}: {}").arg(path).arg(e).log();
+                synchronized (this) {
+                    writeFailing = true;
+                    notifyAll();
+                }
+                return;
+            }
+            synchronized (this) {
+                List<TradeSegment> next = new ArrayList<>(segments);
+                next.add(segment);
+                segments = next;
+                rolled.remove(0);
+                unwritten -= columns.size;
+                writeFailing = false;
+                notifyAll();
+                nextSegment++;
+                sizeBytes += segment.getSizeBytes();
+                sizeGauge.set(sizeBytes);
+            }
+            rollLatency.recordSince(startNanos);
+            Log.debug("TradeStore: Wrote {} trades to {} ({} bytes)")
+                    .arg(segment.getRows()).arg(path.getFileName()).arg(segment.getSizeBytes()).log();
+        }
+    }
+
+    private static long indexOf(Path segmentPath) {
+        String name = segmentPath.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - TradeSegment.SUFFIX.length()));
+    }
+}
@@ -0,0 +1,446 @@
+package com.stocksim.journal;
+
+import com.stocksim.data.OrderType;
+import com.stocksim.data.Trade;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of accepted orders and executed trades, written through
+ * memory-mapped segment files.
+ *
+ * Record layout: [int payloadLength][int crc32c(payload)][payload], payload starts with a
+ * type byte. Orders refer to agents and symbols by interned int id; a NAME record defining
+ * an id is written before the first record that uses it. A cancel (or the cancel half of a
+ * replace) is its own record, so replay takes the order off its book at the same point.
+ * Segments are preallocated (zero filled), so a zero length marks the end of data, and a
+ * record whose checksum does not match is a torn write from a crash: recovery stops there
+ * and new appends overwrite it.
+ *
+ * A MARK record notes where a shard's part of a state snapshot was cut. A position is
+ * (segment index << 32 | offset), so a restart can replay from a snapshot's position onwards
+ * and drop the segments before it.
+ *
+ * Durability: records are appended by a market node's log stage, after matching, and under
+ * BATCH are forced at the end of each pipeline batch, before the next stage sees it. So an
+ * execution ack (executeBatch, after the log stage) is on disk when it is sent, but a SEQUENCED
+ * ack (submitMessage, submitBatch) is sent before the order is journaled at all: acked is not
+ * durable, under every policy. force() runs outside the lock.
+ *
+ * Every shard's log stage appends to the one journal, so appends take one lock; a log stage
+ * holds it once per order for all of that order's records. One journal per shard would drop
+ * the lock, but a node may restart with a different shard count, and replaying per-shard
+ * journals one after the other would then reorder a moved symbol's records.
+ */
+public class Journal implements Closeable {
+
+    // when appended data is forced to disk
+    public enum FsyncPolicy {
+        BATCH,      // on every endBatch()
+        INTERVAL,   // from a background thread every intervalMillis
+        NONE        // left to the OS page cache
+    }
+
+    // which registry a NAME record belongs to
+    public enum NameKind {
+        SYMBOL,
+        AGENT
+    }
+
+    // callback for replay
+    public interface Listener {
+        void onName(NameKind kind, int id, String name);
+
+        // orderId is the agent's client order id, 0 if unnumbered (or journaled before order ids)
+        void onOrder(long lamportTimestamp, long systemTimeMillis, int agentId, int symbolId,
+                     OrderType side, int quantity, long priceTicks, long orderId);
+
+        // requestId is the CANCEL message's own client order id, 0 for the cancel half of a replace
+        void onCancel(long lamportTimestamp, long systemTimeMillis, int agentId, int symbolId,
+                      long originalOrderId, long requestId);
+
+        void onTrade(Trade trade);
+
+        // a shard's records up to here are in snapshot snapshotId
+        void onMark(long snapshotId, int shard);
+    }
+
+    public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+    private static final byte ORDER_RECORD = 1;
+    private static final byte TRADE_RECORD = 2;
+    private static final byte NAME_RECORD = 3;
+    private static final byte CANCEL_RECORD = 4;
+    private static final byte MARK_RECORD = 5;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final OrderType[] ORDER_TYPES = OrderType.values();
+    private static final NameKind[] NAME_KINDS = NameKind.values();
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final FsyncPolicy fsyncPolicy;
+    private final ByteBuffer scratch;   // payload is built here, then checksummed and copied
+    private final CRC32C crc = new CRC32C();
+
+    private long segmentIndex;
+    private volatile MappedByteBuffer segment;
+    private Thread syncThread;
+    private volatile boolean closed;
+
+    // opens (or creates) the journal in directory; call replay() before the first append
+    public Journal(Path directory, int segmentBytes, FsyncPolicy fsyncPolicy, long intervalMillis) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsyncPolicy = fsyncPolicy;
+        this.scratch = ByteBuffer.allocate(64 * 1024);
+        Files.createDirectories(directory);
+
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            syncThread = new Thread(() -> runIntervalSync(intervalMillis), "journal-sync");
+            syncThread.setDaemon(true);
+        }
+    }
+
+    /**
+     * Replays every intact record in order and positions the writer after the last one.
+     * Returns the number of records replayed.
+     */
+    public long replay(Listener listener) throws IOException {
+        return replay(listener, 0);
+    }
+
+    // as above, starting at a position from position(), e.g. a snapshot's
+    public synchronized long replay(Listener listener, long fromPosition) throws IOException {
+        List<Path> segments = listSegments();
+        long records = 0;
+
+        for (int i = 0; i < segments.size(); i++) {
+            Path path = segments.get(i);
+            long index = indexOf(path);
+            boolean last = i == segments.size() - 1;
+            boolean before = index < segmentOf(fromPosition); // only scanned to find the end of data
+            if (before && !last) continue;
+            MappedByteBuffer buf = map(path);
+            if (index == segmentOf(fromPosition)) buf.position(offsetOf(fromPosition));
+            boolean intact = true;
+
+            while (buf.remaining() >= RECORD_HEADER_BYTES) {
+                int start = buf.position();
+                int length = buf.getInt(start);
+                if (length == 0) break; // end of data in this segment
+                if (length < 0 || length > buf.remaining() - RECORD_HEADER_BYTES || !checksumMatches(buf, start, length)) {
+                    intact = false;
+                    break;
+                }
+                ByteBuffer payload = buf.duplicate();
+                payload.position(start + RECORD_HEADER_BYTES).limit(start + RECORD_HEADER_BYTES + length);
+                if (!before) {
+                    dispatch(payload, listener);
+                    records++;
+                }
+                buf.position(start + RECORD_HEADER_BYTES + length);
+            }
+
+            if (!intact) {
+                System.err.printf("Journal: torn record in %s at offset %d, truncating there%n", path, buf.position());
+            }
+            if (!intact || last) {
+                // everything after the recovery point is garbage from before the crash
+                zeroFrom(buf, buf.position());
+                for (int j = i + 1; j < segments.size(); j++) Files.delete(segments.get(j));
+                segmentIndex = indexOf(path);
+                segment = buf;
+                break;
+            }
+        }
+
+        if (segment == null) openSegment(0);
+        if (syncThread != null && !syncThread.isAlive()) syncThread.start();
+        return records;
+    }
+
+    // records the name behind a newly interned id
+    public synchronized void appendName(NameKind kind, int id, String name) {
+        scratch.clear();
+        scratch.put(NAME_RECORD);
+        scratch.putLong(0);
+        scratch.putLong(System.currentTimeMillis());
+        scratch.put((byte) kind.ordinal());
+        scratch.putInt(id);
+        putString(scratch, name);
+        writeRecord();
+    }
+
+    // records an unnumbered order accepted into matching
+    public void appendOrder(long lamportTimestamp, long systemTimeMillis, int agentId, int symbolId,
+                            OrderType side, int quantity, long priceTicks) {
+        appendOrder(lamportTimestamp, systemTimeMillis, agentId, symbolId, side, quantity, priceTicks, 0);
+    }
+
+    // records an order accepted into matching, with the agent's client order id
+    public synchronized void appendOrder(long lamportTimestamp, long systemTimeMillis, int agentId, int symbolId,
+                                         OrderType side, int quantity, long priceTicks, long orderId) {
+        scratch.clear();
+        scratch.put(ORDER_RECORD);
+        scratch.putLong(lamportTimestamp);
+        scratch.putLong(systemTimeMillis);
+        scratch.putInt(agentId);
+        scratch.putInt(symbolId);
+        scratch.put((byte) side.ordinal());
+        scratch.putInt(quantity);
+        scratch.putLong(priceTicks);
+        scratch.putLong(orderId);
+        writeRecord();
+    }
+
+    // records a resting order taken off the book by a CANCEL or REPLACE
+    public synchronized void appendCancel(long lamportTimestamp, long systemTimeMillis, int agentId, int symbolId,
+                                          long originalOrderId, long requestId) {
+        scratch.clear();
+        scratch.put(CANCEL_RECORD);
+        scratch.putLong(lamportTimestamp);
+        scratch.putLong(systemTimeMillis);
+        scratch.putInt(agentId);
+        scratch.putInt(symbolId);
+        scratch.putLong(originalOrderId);
+        scratch.putLong(requestId);
+        writeRecord();
+    }
+
+    /**
+     * Records that the shard's records so far are in snapshot snapshotId and returns the
+     * position of the mark, where a replay from that snapshot starts for this shard.
+     */
+    public synchronized long appendMark(long snapshotId, int shard) {
+        long position = position();
+        scratch.clear();
+        scratch.put(MARK_RECORD);
+        scratch.putLong(0);
+        scratch.putLong(System.currentTimeMillis());
+        scratch.putLong(snapshotId);
+        scratch.putInt(shard);
+        writeRecord();
+        // a roll moves the record to the start of the next segment
+        return segmentOf(position) == segmentIndex ? position : toPosition(segmentIndex, 0);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    // position the next record is appended at
+    public synchronized long position() {
+        return toPosition(segmentIndex, segment.position());
+    }
+
+    // deletes the segments that end before position (no replay from an older position is possible after)
+    public synchronized int deleteSegmentsBefore(long position) throws IOException {
+        int deleted = 0;
+        for (Path path : listSegments()) {
+            if (indexOf(path) >= segmentOf(position) || indexOf(path) >= segmentIndex) break;
+            Files.delete(path);
+            deleted++;
+        }
+        return deleted;
+    }
+
+    // records an executed trade
+    public synchronized void appendTrade(Trade trade) {
+        scratch.clear();
+        scratch.put(TRADE_RECORD);
+        scratch.putLong(trade.getLamportTimestamp());
+        scratch.putLong(trade.getSystemTimeMillis());
+        putString(scratch, trade.getTradeId());
+        putString(scratch, trade.getAgentId());
+        putString(scratch, trade.getBuyerId());
+        putString(scratch, trade.getSellerId());
+        putString(scratch, trade.getStockSymbol());
+        scratch.putInt(trade.getQuantity());
+        scratch.putDouble(trade.getPrice());
+        writeRecord();
+    }
+
+    // marks the end of a processing batch; forces to disk under the BATCH policy
+    public void endBatch() {
+        if (fsyncPolicy == FsyncPolicy.BATCH) sync();
+    }
+
+    // forces the current segment to disk
+    public void sync() {
+        MappedByteBuffer current = segment;
+        if (current != null) current.force();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (syncThread != null) syncThread.interrupt();
+        sync();
+    }
+
+    // checksums the scratch payload and copies it into the mapped segment
+    private void writeRecord() {
+        scratch.flip();
+        int length = scratch.remaining();
+        if (segment.remaining() < RECORD_HEADER_BYTES + length + 4) rollSegment();
+
+        crc.reset();
+        crc.update(scratch.array(), 0, length);
+
+        int start = segment.position();
+        segment.position(start + 4);
+        segment.putInt((int) crc.getValue());
+        segment.put(scratch);
+        // length last, so a reader never sees a length without its payload
+        segment.putInt(start, length);
+    }
+
+    // starts the next segment file (the unused tail of the old one stays zero = end marker)
+    private void rollSegment() {
+        MappedByteBuffer old = segment;
+        try {
+            openSegment(segmentIndex + 1);
+        } catch (IOException e) {
+            throw new IllegalStateException("Journal could not open a new segment", e);
+        }
+        if (fsyncPolicy != FsyncPolicy.NONE) old.force();
+    }
+
+    private void openSegment(long index) throws IOException {
+        segmentIndex = index;
+        segment = map(directory.resolve(String.format("%020d%s", index, SEGMENT_SUFFIX)));
+    }
+
+    // maps a whole segment read-write, creating and sizing it if needed
+    private MappedByteBuffer map(Path path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw");
+             FileChannel channel = file.getChannel()) {
+            if (file.length() < segmentBytes) file.setLength(segmentBytes);
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+    }
+
+    // segment files in index order
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long toPosition(long segmentIndex, int offset) {
+        return segmentIndex << 32 | offset;
+    }
+
+    private static long segmentOf(long position) {
+        return position >>> 32;
+    }
+
+    private static int offsetOf(long position) {
+        return (int) position;
+    }
+
+    private static long indexOf(Path segmentPath) {
+        String name = segmentPath.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private boolean checksumMatches(MappedByteBuffer buf, int start, int length) {
+        ByteBuffer payload = buf.duplicate();
+        payload.position(start + RECORD_HEADER_BYTES).limit(start + RECORD_HEADER_BYTES + length);
+        crc.reset();
+        crc.update(payload);
+        return (int) crc.getValue() == buf.getInt(start + 4);
+    }
+
+    // decodes one payload and hands it to the listener
+    private static void dispatch(ByteBuffer payload, Listener listener) {
+        byte type = payload.get();
+        long lamportTimestamp = payload.getLong();
+        long systemTimeMillis = payload.getLong();
+        if (type == ORDER_RECORD) {
+            int agentId = payload.getInt();
+            int symbolId = payload.getInt();
+            OrderType side = ORDER_TYPES[payload.get()];
+            int quantity = payload.getInt();
+            long priceTicks = payload.getLong();
+            long orderId = payload.remaining() >= 8 ? payload.getLong() : 0; // absent in older journals
+            listener.onOrder(lamportTimestamp, systemTimeMillis, agentId, symbolId, side, quantity, priceTicks, orderId);
+        } else if (type == CANCEL_RECORD) {
+            int agentId = payload.getInt();
+            int symbolId = payload.getInt();
+            listener.onCancel(lamportTimestamp, systemTimeMillis, agentId, symbolId, payload.getLong(), payload.getLong());
+        } else if (type == NAME_RECORD) {
+            NameKind kind = NAME_KINDS[payload.get()];
+            int id = payload.getInt();
+            listener.onName(kind, id, getString(payload));
+        } else if (type == TRADE_RECORD) {
+            String tradeId = getString(payload);
+            String agentId = getString(payload);
+            String buyerId = getString(payload);
+            String sellerId = getString(payload);
+            String symbol = getString(payload);
+            int quantity = payload.getInt();
+            double price = payload.getDouble();
+            listener.onTrade(new Trade(tradeId, agentId, buyerId, sellerId, symbol, quantity,
+                    price, lamportTimestamp, systemTimeMillis));
+        } else if (type == MARK_RECORD) {
+            listener.onMark(payload.getLong(), payload.getInt());
+        }
+    }
+
+    private static void zeroFrom(MappedByteBuffer buf, int offset) {
+        for (int i = offset; i < buf.limit(); i++) {
+            if (buf.get(i) != 0) buf.put(i, (byte) 0);
+        }
+    }
+
+    private void runIntervalSync(long intervalMillis) {
+        while (!closed) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            sync();
+        }
+    }
+
+    private static void putString(ByteBuffer buf, String value) {
+        if (value == null) {
+            buf.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("string of " + bytes.length + " bytes is too long to journal");
+        }
+        buf.putShort((short) bytes.length);
+        buf.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buf) {
+        short length = buf.getShort();
+        if (length == -1) return null;
+        if (length < 0 || length > buf.remaining()) {
+            throw new IllegalArgumentException("corrupt string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,131 @@
+package com.stocksim.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * State snapshot files next to the journal. A snapshot is written to a temporary file,
+ * forced to disk and renamed into place, so a crash leaves either the whole file or none.
+ *
+ * File layout: [int magic][int version][long snapshotId][long journalPosition][int crc32c(body)][body].
+ * The body format belongs to the writer; the store only checks it arrived intact. The
+ * newest KEEP snapshots are kept, older ones are deleted after each write.
+ */
+public class SnapshotStore {
+
+    public static final int KEEP = 2;
+
+    private static final int MAGIC = 0x53534E50; // "SSNP"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".snap";
+
+    // a snapshot read back from disk
+    public static final class Snapshot {
+        private final long snapshotId;
+        private final long journalPosition;
+        private final ByteBuffer body;
+        private final long sizeBytes;
+
+        private Snapshot(long snapshotId, long journalPosition, ByteBuffer body, long sizeBytes) {
+            this.snapshotId = snapshotId;
+            this.journalPosition = journalPosition;
+            this.body = body;
+            this.sizeBytes = sizeBytes;
+        }
+
+        public long getSnapshotId() { return snapshotId; }
+        public long getJournalPosition() { return journalPosition; }
+        public ByteBuffer getBody() { return body; }
+        public long getSizeBytes() { return sizeBytes; }
+    }
+
+    private final Path directory;
+
+    public SnapshotStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Writes snapshot snapshotId, taken at journalPosition, and deletes all but the newest KEEP.
+     * Returns the file size in bytes.
+     */
+    public long write(long snapshotId, long journalPosition, byte[] body, int length) throws IOException {
+        CRC32C crc = new CRC32C();
+        crc.update(body, 0, length);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putLong(snapshotId).putLong(journalPosition).putInt((int) crc.getValue());
+
+        Path target = directory.resolve(fileName(snapshotId));
+        Path temp = directory.resolve(fileName(snapshotId) + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            header.flip();
+            ByteBuffer data = ByteBuffer.wrap(body, 0, length);
+            while (header.hasRemaining() || data.hasRemaining()) channel.write(new ByteBuffer[]{header, data});
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        List<Path> snapshots = list();
+        for (int i = 0; i < snapshots.size() - KEEP; i++) Files.delete(snapshots.get(i));
+        return HEADER_BYTES + length;
+    }
+
+    // the newest intact snapshot, or null if there is none; a corrupt one falls back to the one before
+    public Snapshot readNewest() throws IOException {
+        List<Path> snapshots = list();
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            Path path = snapshots.get(i);
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(path));
+            if (buf.remaining() >= HEADER_BYTES && buf.getInt() == MAGIC && buf.getInt() == VERSION) {
+                long snapshotId = buf.getLong();
+                long journalPosition = buf.getLong();
+                int expected = buf.getInt();
+                CRC32C crc = new CRC32C();
+                crc.update(buf.duplicate());
+                if ((int) crc.getValue() == expected) {
+                    return new Snapshot(snapshotId, journalPosition, buf.slice(), buf.capacity());
+                }
+            }
+            System.err.printf("SnapshotStore: %s is damaged, trying an older snapshot%n", path);
+        }
+        return null;
+    }
+
+    // journal position of the oldest kept snapshot, from which every kept one can still be replayed
+    public long oldestJournalPosition() throws IOException {
+        List<Path> snapshots = list();
+        if (snapshots.isEmpty()) return 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        try (FileChannel channel = FileChannel.open(snapshots.get(0), StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header) >= 0) { }
+        }
+        return header.getLong(16);
+    }
+
+    // snapshot files, oldest first
+    private List<Path> list() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static String fileName(long snapshotId) {
+        return String.format("%s%020d%s", PREFIX, snapshotId, SUFFIX);
+    }
+}
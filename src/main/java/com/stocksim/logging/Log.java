@@ -0,0 +1,186 @@
+package com.stocksim.logging;
+
+import com.stocksim.metrics.Metrics;
+
+import java.io.PrintStream;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous logging for the order path. Each thread writes events into its own preallocated
+ * ring of {@link LogEvent} slots (no locks, no formatting, no allocation); one background
+ * "log-writer" thread formats them and writes to stdout (DEBUG, INFO) or stderr (WARN, ERROR).
+ * A thread whose ring is full drops the event rather than waiting, and the writer reports how
+ * many were lost. Events from one thread come out in order; events from different threads may
+ * interleave differently than they happened.
+ *
+ * The level is fixed at startup with -Dstocksim.log.level=debug|info|warn|error|off (default
+ * info), so a call below it is a constant check the jit folds away. Per-message events are DEBUG.
+ */
+public final class Log {
+
+    public static final String PROPERTY = "stocksim.log.level";
+
+    private static final LogLevel LEVEL = parseLevel(System.getProperty(PROPERTY, "info"));
+    private static final int BUFFER_SIZE = 1024;          // events per thread, a power of two
+    private static final long IDLE_PARK_NANOS = 1_000_000; // writer poll interval when nothing is queued
+    private static final int WRITE_CHUNK = 16 * 1024;      // chars formatted before each write
+
+    private static final ConcurrentLinkedQueue<ThreadBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private static final ThreadLocal<ThreadBuffer> local = ThreadLocal.withInitial(() -> {
+        ThreadBuffer buffer = new ThreadBuffer(Thread.currentThread());
+        buffers.add(buffer);
+        return buffer;
+    });
+
+    // writer thread and shutdown hook both drain, one at a time
+    private static final Object drainLock = new Object();
+    private static final StringBuilder out = new StringBuilder(WRITE_CHUNK * 2);
+    private static final StringBuilder err = new StringBuilder(1024);
+
+    static {
+        if (LEVEL != LogLevel.OFF) {
+            Thread writer = new Thread(Log::runWriter, "log-writer");
+            writer.setDaemon(true);
+            writer.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(Log::drain, "log-flush"));
+        }
+    }
+
+    private Log() {
+    }
+
+    public static LogEvent debug(String template) {
+        return event(LogLevel.DEBUG, template);
+    }
+
+    public static LogEvent info(String template) {
+        return event(LogLevel.INFO, template);
+    }
+
+    public static LogEvent warn(String template) {
+        return event(LogLevel.WARN, template);
+    }
+
+    public static LogEvent error(String template) {
+        return event(LogLevel.ERROR, template);
+    }
+
+    // for the rare argument that costs something to compute
+    public static boolean isEnabled(LogLevel level) {
+        return level.compareTo(LEVEL) >= 0 && LEVEL != LogLevel.OFF;
+    }
+
+    public static LogLevel getLevel() {
+        return LEVEL;
+    }
+
+    private static LogEvent event(LogLevel level, String template) {
+        if (!isEnabled(level)) return LogEvent.DISABLED;
+        return local.get().claim(level, template);
+    }
+
+    static LogLevel parseLevel(String name) {
+        try {
+            return LogLevel.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown log level '" + name + "', expected debug, info, warn, error or off");
+        }
+    }
+
+    private static void runWriter() {
+        while (true) {
+            if (drain() == 0) LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    // formats and writes everything published so far, returns how many events that was
+    private static int drain() {
+        synchronized (drainLock) {
+            int drained = 0;
+            for (Iterator<ThreadBuffer> it = buffers.iterator(); it.hasNext(); ) {
+                ThreadBuffer buffer = it.next();
+                drained += buffer.drainTo(out, err);
+                if (out.length() >= WRITE_CHUNK) write(System.out, out);
+                if (err.length() > 0) write(System.err, err);
+                // a finished thread logs nothing more once drained
+                if (!buffer.thread.isAlive() && buffer.isEmpty()) it.remove();
+            }
+            write(System.out, out);
+            return drained;
+        }
+    }
+
+    private static void write(PrintStream stream, StringBuilder text) {
+        if (text.length() == 0) return;
+        stream.append(text); // one locked write (and flush) per chunk instead of per line
+        text.setLength(0);
+    }
+
+    /**
+     * Single-producer ring of event slots owned by one thread. The owner claims the slot at
+     * tail and publishes it by advancing tail; the writer consumes up to tail and advances head.
+     */
+    static final class ThreadBuffer {
+        private final Thread thread;
+        private final LogEvent[] slots = new LogEvent[BUFFER_SIZE];
+        private final AtomicLong head = new AtomicLong(); // next slot to format (writer)
+        private final AtomicLong tail = new AtomicLong(); // next slot to fill (owner)
+        private final AtomicLong dropped = new AtomicLong();
+        private long cachedHead;                         // owner's last view of head
+
+        private ThreadBuffer(Thread thread) {
+            this.thread = thread;
+            for (int i = 0; i < BUFFER_SIZE; i++) slots[i] = new LogEvent(this);
+        }
+
+        // the slot at tail, or DISABLED while the writer is a full ring behind
+        private LogEvent claim(LogLevel level, String template) {
+            long next = tail.get();
+            if (next - cachedHead >= BUFFER_SIZE) {
+                cachedHead = head.get();
+                if (next - cachedHead >= BUFFER_SIZE) {
+                    dropped.incrementAndGet();
+                    Metrics.LOG_EVENTS_DROPPED_TOTAL.inc();
+                    return LogEvent.DISABLED;
+                }
+            }
+            LogEvent event = slots[(int) next & (BUFFER_SIZE - 1)];
+            event.level = level;
+            event.template = template;
+            event.argCount = 0;
+            return event;
+        }
+
+        void publish() {
+            tail.lazySet(tail.get() + 1);
+        }
+
+        private boolean isEmpty() {
+            return head.get() == tail.get();
+        }
+
+        // writer side: formats every published slot, one line each
+        private int drainTo(StringBuilder out, StringBuilder err) {
+            long from = head.get();
+            long to = tail.get();
+            for (long sequence = from; sequence < to; sequence++) {
+                LogEvent event = slots[(int) sequence & (BUFFER_SIZE - 1)];
+                StringBuilder target = event.level.compareTo(LogLevel.WARN) >= 0 ? err : out;
+                event.formatTo(target);
+                target.append(System.lineSeparator());
+                event.clear();
+            }
+            head.lazySet(to);
+
+            long lost = dropped.getAndSet(0);
+            if (lost > 0) {
+                err.append("Log: dropped ").append(lost).append(" events from thread ")
+                        .append(thread.getName()).append(" (writer fell behind)").append(System.lineSeparator());
+            }
+            return (int) (to - from);
+        }
+    }
+}
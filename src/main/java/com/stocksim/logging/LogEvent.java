@@ -0,0 +1,117 @@
+package com.stocksim.logging;
+
+/**
+ * One preallocated slot in a thread's log buffer. The caller fills it with a template and typed
+ * arguments and publishes it with {@link #log()}; the background writer formats it later.
+ * Numbers are kept unboxed and object arguments by reference, so filling a slot allocates nothing.
+ *
+ *   Log.debug("[LT={}] Agent {} -> Market: Queued HEARTBEAT").arg(timestamp).arg(agentId).log();
+ *
+ * Argument expressions must not log themselves: they would claim this same slot.
+ */
+public final class LogEvent {
+
+    static final int MAX_ARGS = 8; // further arguments are ignored
+
+    static final byte LONG = 0;
+    static final byte DOUBLE = 1;
+    static final byte OBJECT = 2;
+
+    // handed out when the level is off or the buffer is full; every call on it is a no-op
+    static final LogEvent DISABLED = new LogEvent(null);
+
+    private final Log.ThreadBuffer buffer;
+
+    LogLevel level;
+    String template;
+    int argCount;
+    final byte[] kinds = new byte[MAX_ARGS];
+    final long[] numbers = new long[MAX_ARGS];
+    final Object[] objects = new Object[MAX_ARGS];
+
+    LogEvent(Log.ThreadBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public LogEvent arg(long value) {
+        if (buffer != null && argCount < MAX_ARGS) {
+            kinds[argCount] = LONG;
+            numbers[argCount++] = value;
+        }
+        return this;
+    }
+
+    public LogEvent arg(double value) {
+        if (buffer != null && argCount < MAX_ARGS) {
+            kinds[argCount] = DOUBLE;
+            numbers[argCount++] = Double.doubleToRawLongBits(value);
+        }
+        return this;
+    }
+
+    public LogEvent arg(Object value) {
+        if (buffer != null && argCount < MAX_ARGS) {
+            kinds[argCount] = OBJECT;
+            objects[argCount++] = value;
+        }
+        return this;
+    }
+
+    // hands the event to the writer
+    public void log() {
+        if (buffer != null) buffer.publish();
+    }
+
+    // renders the template with "{}" replaced by the arguments in order (writer thread only)
+    void formatTo(StringBuilder out) {
+        int arg = 0;
+        int from = 0;
+        for (int at = template.indexOf("{}"); at >= 0; at = template.indexOf("{}", from)) {
+            out.append(template, from, at);
+            if (arg < argCount) {
+                appendArg(out, arg++);
+            } else {
+                out.append("{}");
+            }
+            from = at + 2;
+        }
+        out.append(template, from, template.length());
+    }
+
+    private void appendArg(StringBuilder out, int i) {
+        switch (kinds[i]) {
+            case LONG:
+                out.append(numbers[i]);
+                break;
+            case DOUBLE:
+                appendFixed(out, Double.longBitsToDouble(numbers[i]));
+                break;
+            default:
+                out.append(objects[i]);
+        }
+    }
+
+    // two decimals, like the "%.2f" prices the console output always used
+    private static void appendFixed(StringBuilder out, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= 1e15) {
+            out.append(value);
+            return;
+        }
+        long cents = Math.round(value * 100);
+        if (cents < 0) {
+            out.append('-');
+            cents = -cents;
+        }
+        out.append(cents / 100).append('.');
+        long fraction = cents % 100;
+        if (fraction < 10) out.append('0');
+        out.append(fraction);
+    }
+
+    // drops references so a drained slot keeps nothing alive
+    void clear() {
+        template = null;
+        for (int i = 0; i < argCount; i++) objects[i] = null;
+        argCount = 0;
+    }
+}
@@ -0,0 +1,10 @@
+package com.stocksim.logging;
+
+// severity of a log event; a logger set to a level drops everything below it
+public enum LogLevel {
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR,
+    OFF
+}
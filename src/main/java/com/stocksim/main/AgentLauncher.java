@@ -1,46 +1,147 @@
 package com.stocksim.main;
 
+import com.stocksim.core.AgentRuntime;
 import com.stocksim.core.MarketNode;
+import com.stocksim.core.OrderRateModel;
+import com.stocksim.core.PriceBoard;
 import com.stocksim.core.TradingAgent;
+import com.stocksim.core.TradingStrategy;
+import com.stocksim.metrics.Metrics;
+import com.stocksim.net.BatchingSender;
+import com.stocksim.net.MarketDataRemote;
 import com.stocksim.net.MarketNodeRemote;
+import com.stocksim.net.NioMarketClient;
+import com.stocksim.net.NioMarketServer;
+import com.stocksim.replication.ReplicatedMarketClient;
+import com.stocksim.sharding.ShardRoutingClient;
 
 import java.rmi.Naming;
 
 public class AgentLauncher {
 
+    private static final int METRICS_PORT = 9091;            // one /metrics endpoint per launcher process
+    private static final int PER_AGENT_METRICS_LIMIT = 100;  // above this, agents share one metrics label
+    private static final String SHARED_METRICS_ID = "agent-launcher";
+    private static final int SHARED_BATCH_SIZE = 256;
+    private static final long SHARED_BATCH_DELAY_MS = 5;
+    private static final long PRICE_POLL_INTERVAL_MS = 100;
+    private static final String ACKS_PROPERTY = "stocksim.acks"; // sequenced (default) or executed
+
     // starts the agent launcher
+    // args: <numberOfAgents> [rmi|nio|replicated|sharded] [messagesPerSecond|-] [noise|maker|momentum|mix];
+    // without a rate each agent acts every 1-3s, and the default strategy is mix
+    // (replicated follows the leader of the replicas started by ReplicaLauncher,
+    // sharded routes each order to the ShardLauncher node that owns its symbol)
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.err.println("Usage: java com.stocksim.main.AgentLauncher <numberOfAgents>");
+        if (args.length < 1 || args.length > 4) {
+            System.err.println("Usage: java com.stocksim.main.AgentLauncher <numberOfAgents> [rmi|nio|replicated|sharded] [messagesPerSecond|-] [noise|maker|momentum|mix]");
             System.exit(1);
         }
         try {
             int numberOfAgents = Integer.parseInt(args[0]);
+            String transport = (args.length > 1) ? args[1] : "rmi";
 
-            // builds rmi url
-            String rmiUrl = "//localhost/" + MarketNode.RMI_NAME;
+            // poisson arrivals at the aggregate target rate, or the original 1-3s pacing
+            OrderRateModel rateModel = (args.length > 2 && !"-".equals(args[2]))
+                    ? OrderRateModel.poisson(Double.parseDouble(args[2]) / numberOfAgents)
+                    : OrderRateModel.uniform(1000, 3000);
+            String strategy = (args.length > 3) ? args[3] : "mix";
+            TradingStrategy.forAgent(strategy, 0); // fails fast on an unknown name
+
+            Metrics.startMetricsServer(METRICS_PORT);
 
             // connects to market node
-            MarketNodeRemote market = (MarketNodeRemote) Naming.lookup(rmiUrl);
-            System.out.println("Successfully connected to MarketNode at " + rmiUrl);
+            MarketNodeRemote market = connect(transport);
+
+            // one board of live prices for every agent in the process
+            PriceBoard prices = new PriceBoard(TradingAgent.DEFAULT_SYMBOLS, PriceBoard.DEFAULT_REFERENCE_PRICE);
+            MarketDataRemote feed = marketDataFor(transport, market);
+            if (feed != null) {
+                prices.startPolling(feed, PRICE_POLL_INTERVAL_MS);
+            } else {
+                System.out.println("No market data feed over " + transport + "; agents quote around the reference price");
+            }
+
+            // large populations report under one label so metric series stay bounded
+            boolean perAgentMetrics = numberOfAgents <= PER_AGENT_METRICS_LIMIT;
+
+            // every agent in the process shares one batching lane to the market; with
+            // -Dstocksim.acks=executed its acks wait for matching and carry the fills
+            boolean executionAcks = "executed".equals(System.getProperty(ACKS_PROPERTY, "sequenced"));
+            BatchingSender sender = new BatchingSender(market, SHARED_BATCH_SIZE, SHARED_BATCH_DELAY_MS, executionAcks,
+                    (message, ack) -> TradingAgent.recordAck(
+                            perAgentMetrics ? message.getSenderId() : SHARED_METRICS_ID, message, ack));
+
+            // agents are timer entries on a few event-loop threads, not threads of their own
+            AgentRuntime runtime = new AgentRuntime(Runtime.getRuntime().availableProcessors(), rateModel);
 
             // creates and starts the agents
             for (int i = 0; i < numberOfAgents; i++) {
                 String agentId = "agent-" + (i + 1);
                 boolean willFail = (i == 0); // first agent fails on purpose
 
-                TradingAgent agent = new TradingAgent(agentId, market, willFail);
-                new Thread(agent).start();
+                TradingAgent agent = new TradingAgent(agentId, perAgentMetrics ? agentId : SHARED_METRICS_ID, sender, willFail,
+                        TradingStrategy.forAgent(strategy, i), prices);
+                runtime.add(agent);
 
                 if (willFail) {
                     System.out.printf("Agent %s will simulate failure.%n", agentId);
                 }
             }
-            System.out.printf("Started %d trading agents.%n", numberOfAgents);
+            System.out.printf("Started %d %s trading agents on %d event-loop threads.%n",
+                    numberOfAgents, strategy, Runtime.getRuntime().availableProcessors());
 
         } catch (Exception e) {
             System.err.println("AgentLauncher exception: " + e.toString());
             e.printStackTrace();
         }
     }
+
+    // the data feed agents read prices from: the rmi market node itself, or the node also
+    // serving rmi next to nio, or any replica (they all apply the same log); null if none answers
+    static MarketDataRemote marketDataFor(String transport, MarketNodeRemote market) {
+        if (market instanceof MarketDataRemote) return (MarketDataRemote) market;
+        String[] urls;
+        if ("nio".equals(transport)) {
+            urls = new String[]{"//localhost/" + MarketNode.RMI_NAME};
+        } else if ("replicated".equals(transport)) {
+            urls = ReplicaLauncher.marketUrls(ReplicaLauncher.DEFAULT_REPLICAS).toArray(new String[0]);
+        } else {
+            return null; // a sharded market has one feed per shard
+        }
+        for (String url : urls) {
+            try {
+                return (MarketDataRemote) Naming.lookup(url);
+            } catch (Exception e) {
+                // try the next one
+            }
+        }
+        return null;
+    }
+
+    // market client for a transport name: rmi (default), nio, replicated or sharded
+    public static MarketNodeRemote connect(String transport) throws Exception {
+        MarketNodeRemote market;
+        if ("nio".equals(transport)) {
+            // one pipelined connection shared by every agent
+            market = new NioMarketClient("localhost", NioMarketServer.DEFAULT_PORT);
+            System.out.println("Successfully connected to MarketNode on NIO port " + NioMarketServer.DEFAULT_PORT);
+        } else if ("replicated".equals(transport)) {
+            // fails over to whichever replica is elected leader
+            ReplicaLauncher.useRmiTimeouts();
+            market = new ReplicatedMarketClient(ReplicaLauncher.marketUrls(ReplicaLauncher.DEFAULT_REPLICAS));
+            System.out.println("Using " + ReplicaLauncher.DEFAULT_REPLICAS + " MarketNode replicas with failover");
+        } else if ("sharded".equals(transport)) {
+            // routes by the shard directory's symbol -> node map
+            ReplicaLauncher.useRmiTimeouts();
+            market = new ShardRoutingClient(ShardLauncher.DIRECTORY_URL);
+            System.out.println("Routing orders by the shard map at " + ShardLauncher.DIRECTORY_URL);
+        } else {
+            // builds rmi url
+            String rmiUrl = "//localhost/" + MarketNode.RMI_NAME;
+            market = (MarketNodeRemote) Naming.lookup(rmiUrl);
+            System.out.println("Successfully connected to MarketNode at " + rmiUrl);
+        }
+        return market;
+    }
 }
@@ -0,0 +1,229 @@
+package com.stocksim.main;
+
+import com.stocksim.data.MessageAck;
+import com.stocksim.data.MessageType;
+import com.stocksim.data.Order;
+import com.stocksim.data.OrderType;
+import com.stocksim.data.TradeMessage;
+import com.stocksim.net.MarketNodeRemote;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator for capacity planning. Orders are due at a fixed rate from the
+ * start of the run, whether or not earlier calls have returned; due orders are sent in
+ * batches from a pool of IN_FLIGHT_CALLS callers. Latency is measured from when an order was
+ * due, not when it was sent, so a stalled market shows up as queueing delay instead of
+ * silently lowering the offered load (no coordinated omission).
+ *
+ * Prints achieved throughput and p99 every second, then percentile tables for response time
+ * (due to ack) and service time (sent to ack) over the run after warm-up. Step the rate up
+ * between runs until response time takes off: that is the node's saturation point.
+ */
+public class LoadGenerator {
+
+    private static final int IN_FLIGHT_CALLS = 16;
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(2);
+    private static final long DRAIN_TIMEOUT_SECONDS = 30;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99, 100};
+
+    private final MarketNodeRemote market;
+    private final double ordersPerSecond;
+    private final long durationNanos;
+    private final long warmupNanos;
+    private final String[] agents;
+    private final String[] symbols;
+    private final int maxBatch;
+
+    private final Recorder responseTimes = new Recorder(MAX_LATENCY_NANOS, 3);
+    private final Recorder serviceTimes = new Recorder(MAX_LATENCY_NANOS, 3);
+    private final Histogram totalResponse = new Histogram(MAX_LATENCY_NANOS, 3);
+    private final Histogram totalService = new Histogram(MAX_LATENCY_NANOS, 3);
+    private final AtomicLong acked = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong busy = new AtomicLong();      // refused by the market's admission control
+    private final AtomicLong failed = new AtomicLong();
+    private final SplittableRandom random = new SplittableRandom(42);
+    private long lamport;
+
+    public LoadGenerator(MarketNodeRemote market, double ordersPerSecond, int seconds, int agentCount, int symbolCount, int maxBatch) {
+        this.market = market;
+        this.ordersPerSecond = ordersPerSecond;
+        this.durationNanos = TimeUnit.SECONDS.toNanos(seconds);
+        this.warmupNanos = durationNanos / 5; // first fifth warms up the jit and the market
+        this.maxBatch = maxBatch;
+        this.agents = new String[agentCount];
+        for (int i = 0; i < agentCount; i++) agents[i] = "load-" + (i + 1);
+        this.symbols = new String[symbolCount];
+        for (int i = 0; i < symbolCount; i++) symbols[i] = "SYM" + i;
+    }
+
+    // runs the load generator
+    // args: <ordersPerSecond> [seconds] [rmi|nio|replicated|sharded] [agents] [symbols] [maxBatch]
+    // (defaults: 60s over rmi, 100 agents, 8 symbols, up to 64 orders per call)
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 6) {
+            System.err.println("Usage: java com.stocksim.main.LoadGenerator <ordersPerSecond> [seconds] [rmi|nio|replicated|sharded] [agents] [symbols] [maxBatch]");
+            System.exit(1);
+        }
+        try {
+            double ordersPerSecond = Double.parseDouble(args[0]);
+            int seconds = (args.length > 1) ? Integer.parseInt(args[1]) : 60;
+            String transport = (args.length > 2) ? args[2] : "rmi";
+            int agentCount = (args.length > 3) ? Integer.parseInt(args[3]) : 100;
+            int symbolCount = (args.length > 4) ? Integer.parseInt(args[4]) : 8;
+            int maxBatch = (args.length > 5) ? Integer.parseInt(args[5]) : 64;
+
+            MarketNodeRemote market = AgentLauncher.connect(transport);
+            new LoadGenerator(market, ordersPerSecond, seconds, agentCount, symbolCount, maxBatch).run();
+            System.exit(0); // rmi and nio client threads would keep the jvm alive
+
+        } catch (Exception e) {
+            System.err.println("LoadGenerator exception: " + e.toString());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    public void run() throws InterruptedException {
+        ExecutorService callers = Executors.newFixedThreadPool(IN_FLIGHT_CALLS, r -> {
+            Thread t = new Thread(r, "load-caller");
+            t.setDaemon(true);
+            return t;
+        });
+        double intervalNanos = 1e9 / ordersPerSecond;
+        long totalOrders = (long) (ordersPerSecond * durationNanos / 1e9);
+        System.out.printf("LoadGenerator: %.0f orders/s for %ds (%d orders) from %d agents over %d symbols, batches of up to %d%n",
+                ordersPerSecond, TimeUnit.NANOSECONDS.toSeconds(durationNanos), totalOrders, agents.length, symbols.length, maxBatch);
+
+        long start = System.nanoTime();
+        long nextReport = start + TimeUnit.SECONDS.toNanos(1);
+        long lastAcked = 0;
+        long issued = 0;
+        while (issued < totalOrders) {
+            long now = System.nanoTime();
+
+            // everything due by now goes out, at most maxBatch per call
+            long due = Math.min(totalOrders, (long) ((now - start) / intervalNanos) + 1);
+            while (issued < due) {
+                int size = (int) Math.min(maxBatch, due - issued);
+                long[] dueAt = new long[size];
+                List<TradeMessage> batch = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    dueAt[i] = start + (long) ((issued + i) * intervalNanos);
+                    batch.add(nextOrder());
+                }
+                issued += size;
+                callers.execute(() -> send(batch, dueAt, start));
+            }
+
+            if (now >= nextReport) {
+                lastAcked = report(now - start, lastAcked);
+                nextReport += TimeUnit.SECONDS.toNanos(1);
+            }
+
+            // sleep until the next order is due
+            long nextDue = start + (long) (issued * intervalNanos);
+            long sleep = nextDue - System.nanoTime();
+            if (sleep > 0) LockSupport.parkNanos(sleep);
+        }
+
+        // keeps reporting while the backlog of due orders drains
+        callers.shutdown();
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DRAIN_TIMEOUT_SECONDS);
+        while (!callers.awaitTermination(Math.max(0, nextReport - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+            long now = System.nanoTime();
+            if (now >= drainDeadline) {
+                System.out.println("LoadGenerator: calls still outstanding after " + DRAIN_TIMEOUT_SECONDS + "s, reporting without them");
+                break;
+            }
+            lastAcked = report(now - start, lastAcked);
+            nextReport += TimeUnit.SECONDS.toNanos(1);
+        }
+        long elapsed = System.nanoTime() - start;
+        report(elapsed, lastAcked);
+        summarize(elapsed);
+    }
+
+    // a limit order near 100.00 on a random symbol, so orders both trade and rest
+    private TradeMessage nextOrder() {
+        String agent = agents[random.nextInt(agents.length)];
+        OrderType side = random.nextBoolean() ? OrderType.BUY : OrderType.SELL;
+        double price = 100.0 + (random.nextInt(11) - 5) * 0.01;
+        Order order = new Order(agent, symbols[random.nextInt(symbols.length)], 1 + random.nextInt(100), price, side);
+        // one increasing sequence keeps every agent's timestamps in order across batches
+        return new TradeMessage(agent, "MarketNode", MessageType.ORDER, order, ++lamport);
+    }
+
+    // on a caller thread: one submitBatch, recording each order's latency
+    private void send(List<TradeMessage> batch, long[] dueAt, long start) {
+        long sentAt = System.nanoTime();
+        List<MessageAck> acks;
+        try {
+            acks = market.submitBatch(batch);
+        } catch (Exception e) {
+            if (failed.getAndAdd(batch.size()) == 0) System.err.println("LoadGenerator: submitBatch failed: " + e);
+            return;
+        }
+        long ackedAt = System.nanoTime();
+        boolean measured = sentAt - start >= warmupNanos;
+        for (int i = 0; i < acks.size(); i++) {
+            if (!acks.get(i).isAccepted()) {
+                (acks.get(i).isBusy() ? busy : rejected).incrementAndGet();
+                continue;
+            }
+            acked.incrementAndGet();
+            long response = Math.min(ackedAt - dueAt[i], MAX_LATENCY_NANOS);
+            long service = Math.min(ackedAt - sentAt, MAX_LATENCY_NANOS);
+            responseTimes.recordValue(response);
+            serviceTimes.recordValue(service);
+            if (measured) {
+                synchronized (totalResponse) {
+                    totalResponse.recordValue(response);
+                    totalService.recordValue(service);
+                }
+            }
+        }
+    }
+
+    // one line per second: acked rate and this second's latencies
+    private long report(long elapsedNanos, long lastAcked) {
+        long total = acked.get();
+        Histogram response = responseTimes.getIntervalHistogram();
+        Histogram service = serviceTimes.getIntervalHistogram();
+        System.out.printf("%6.1fs  %8d acks/s  response p50 %9.3f ms  p99 %9.3f ms  max %9.3f ms  call p99 %9.3f ms%n",
+                elapsedNanos / 1e9, total - lastAcked,
+                millis(response.getValueAtPercentile(50)), millis(response.getValueAtPercentile(99)),
+                millis(response.getMaxValue()), millis(service.getValueAtPercentile(99)));
+        return total;
+    }
+
+    private void summarize(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%nOffered %.0f orders/s, achieved %.0f acks/s over %.1fs (%d acked, %d busy, %d rejected, %d failed)%n",
+                ordersPerSecond, acked.get() / seconds, seconds, acked.get(), busy.get(), rejected.get(), failed.get());
+        System.out.printf("Latency after %.1fs warm-up, in ms:%n", warmupNanos / 1e9);
+        System.out.printf("%10s %14s %14s%n", "percentile", "response", "service");
+        synchronized (totalResponse) {
+            for (double percentile : PERCENTILES) {
+                System.out.printf("%10s %14.3f %14.3f%n", percentile == 100 ? "max" : percentile,
+                        millis(totalResponse.getValueAtPercentile(percentile)),
+                        millis(totalService.getValueAtPercentile(percentile)));
+            }
+            System.out.printf("%10s %14d %14d%n", "count", totalResponse.getTotalCount(), totalService.getTotalCount());
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
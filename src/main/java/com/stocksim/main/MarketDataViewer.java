@@ -0,0 +1,57 @@
+package com.stocksim.main;
+
+import com.stocksim.core.MarketNode;
+import com.stocksim.data.Bar;
+import com.stocksim.data.MarketDataUpdate;
+import com.stocksim.net.MarketDataListener;
+import com.stocksim.net.MarketDataRemote;
+
+import java.rmi.Naming;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Subscribes to a market node's data feed and prints each conflated update: last trade,
+ * VWAP, top of book and the forming 1m bar.
+ */
+public class MarketDataViewer implements MarketDataListener {
+
+    // starts the viewer
+    // args: [rmiUrl] [symbol ...] (defaults: the local MarketNode, every symbol)
+    public static void main(String[] args) {
+        try {
+            String rmiUrl = (args.length > 0) ? args[0] : "//localhost/" + MarketNode.RMI_NAME;
+            List<String> symbols = (args.length > 1) ? Arrays.asList(Arrays.copyOfRange(args, 1, args.length)) : List.of();
+
+            MarketDataRemote feed = (MarketDataRemote) Naming.lookup(rmiUrl);
+            MarketDataViewer viewer = new MarketDataViewer();
+            MarketDataListener stub = (MarketDataListener) UnicastRemoteObject.exportObject(viewer, 0);
+            feed.subscribeMarketData(stub, symbols);
+            System.out.println("Subscribed to market data at " + rmiUrl
+                    + (symbols.isEmpty() ? " for all symbols" : " for " + symbols));
+
+            // the exported listener keeps the jvm alive; unsubscribe on ctrl-c
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    feed.unsubscribeMarketData(stub);
+                } catch (Exception ignored) {
+                    // the node is gone, nothing to unsubscribe from
+                }
+            }));
+
+        } catch (Exception e) {
+            System.err.println("MarketDataViewer exception: " + e.toString());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    @Override
+    public void onMarketData(List<MarketDataUpdate> updates) {
+        for (MarketDataUpdate update : updates) {
+            Bar minute = update.getBars().get(1); // BAR_SECONDS: 1s, 1m, 5m
+            System.out.println(update + (minute == null ? "" : " | " + minute));
+        }
+    }
+}
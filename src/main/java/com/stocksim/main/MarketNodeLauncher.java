@@ -1,34 +1,65 @@
 package com.stocksim.main;
 
 import com.stocksim.core.MarketNode;
+import com.stocksim.journal.Journal;
+import com.stocksim.net.NioMarketServer;
 
+import java.nio.file.Paths;
 import java.rmi.Naming;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 
 public class MarketNodeLauncher {
 
+    private static final long JOURNAL_SYNC_INTERVAL_MS = 100;
+
     // launches the market node server
+    // args: [shards] [rmi|nio|both] [journalDir|-] [batch|interval|none] [phiThreshold]
+    // (defaults: one shard per core, rmi, no journal, interval fsync, fixed 10s heartbeat timeout)
     public static void main(String[] args) {
         try {
-            try {
-                // tries to create registry
-                LocateRegistry.createRegistry(Registry.REGISTRY_PORT);
-                System.out.println("RMI registry created.");
-            } catch (Exception e) {
-                // registry already running
-                System.out.println("RMI registry already running.");
+            int shards = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+            String transport = (args.length > 1) ? args[1] : "rmi";
+
+            // optional durable journal, replayed on startup
+            Journal journal = null;
+            if (args.length > 2 && !"-".equals(args[2])) {
+                Journal.FsyncPolicy fsync = (args.length > 3)
+                        ? Journal.FsyncPolicy.valueOf(args[3].toUpperCase())
+                        : Journal.FsyncPolicy.INTERVAL;
+                journal = new Journal(Paths.get(args[2]), Journal.DEFAULT_SEGMENT_BYTES, fsync, JOURNAL_SYNC_INTERVAL_MS);
+                System.out.printf("Journal at %s (fsync=%s)%n", args[2], fsync);
             }
 
+            // optional phi-accrual failure detection (e.g. 8)
+            double phiThreshold = (args.length > 4) ? Double.parseDouble(args[4]) : 0;
+
             // creates market node instance
-            MarketNode marketNode = new MarketNode();
+            MarketNode marketNode = new MarketNode(shards, journal, phiThreshold);
+
+            if ("rmi".equals(transport) || "both".equals(transport)) {
+                try {
+                    // tries to create registry
+                    LocateRegistry.createRegistry(Registry.REGISTRY_PORT);
+                    System.out.println("RMI registry created.");
+                } catch (Exception e) {
+                    // registry already running
+                    System.out.println("RMI registry already running.");
+                }
 
-            // builds rmi url
-            String rmiUrl = "//localhost/" + MarketNode.RMI_NAME;
+                // builds rmi url
+                String rmiUrl = "//localhost/" + MarketNode.RMI_NAME;
 
-            // binds market node to registry
-            Naming.rebind(rmiUrl, marketNode);
-            System.out.println("MarketNode is ready and bound to " + rmiUrl);
+                // binds market node to registry
+                Naming.rebind(rmiUrl, marketNode);
+                System.out.println("MarketNode is ready and bound to " + rmiUrl);
+            }
+
+            if ("nio".equals(transport) || "both".equals(transport)) {
+                // binary protocol on a persistent socket
+                new NioMarketServer(marketNode, NioMarketServer.DEFAULT_PORT).start();
+                System.out.println("MarketNode is ready on NIO port " + NioMarketServer.DEFAULT_PORT);
+            }
 
         } catch (Exception e) {
             System.err.println("MarketNodeLauncher exception: " + e.toString());
@@ -0,0 +1,84 @@
+package com.stocksim.main;
+
+import com.stocksim.core.MarketNode;
+import com.stocksim.replication.RaftNode;
+import com.stocksim.replication.ReplicaRemote;
+
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ReplicaLauncher {
+
+    public static final int DEFAULT_REPLICAS = 3;
+    private static final int REGISTRY_BASE_PORT = 1100; // replica i has its own registry on 1100 + i
+    private static final int METRICS_BASE_PORT = 8080;  // and its /metrics on 8080 + i
+    private static final String RMI_TIMEOUT_MS = "1000"; // a hung replica must not stall elections
+
+    // launches one market node replica, or all of them as threads of this process
+    // args: <replicaId|all> [replicaCount] [shards] [phiThreshold]
+    // (defaults: 3 replicas, one shard per core, fixed 10s heartbeat timeout)
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 4) {
+            System.err.println("Usage: java com.stocksim.main.ReplicaLauncher <replicaId|all> [replicaCount] [shards] [phiThreshold]");
+            System.exit(1);
+        }
+        try {
+            int replicaCount = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_REPLICAS;
+            int shards = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            double phiThreshold = (args.length > 3) ? Double.parseDouble(args[3]) : 0;
+            useRmiTimeouts();
+
+            if ("all".equals(args[0])) {
+                for (int id = 0; id < replicaCount; id++) startReplica(id, replicaCount, shards, phiThreshold);
+            } else {
+                startReplica(Integer.parseInt(args[0]), replicaCount, shards, phiThreshold);
+            }
+
+        } catch (Exception e) {
+            System.err.println("ReplicaLauncher exception: " + e.toString());
+            e.printStackTrace();
+        }
+    }
+
+    // creates a replica with its own registry, binds its market node and raft endpoint, starts it
+    public static RaftNode startReplica(int id, int replicaCount, int shards, double phiThreshold) throws Exception {
+        Registry registry = LocateRegistry.createRegistry(REGISTRY_BASE_PORT + id);
+
+        MarketNode marketNode = new MarketNode("market-node-" + id, shards, null, phiThreshold, METRICS_BASE_PORT + id);
+        RaftNode raft = marketNode.replicate(id, replicaUrls(replicaCount));
+
+        registry.rebind(ReplicaRemote.RMI_NAME, raft);
+        registry.rebind(MarketNode.RMI_NAME, marketNode);
+        raft.start();
+        System.out.printf("Replica %d of %d is ready on registry port %d%n", id, replicaCount, REGISTRY_BASE_PORT + id);
+        return raft;
+    }
+
+    // market node url of every replica, by replica id (what agents connect to)
+    public static List<String> marketUrls(int replicaCount) {
+        return urls(replicaCount, MarketNode.RMI_NAME);
+    }
+
+    // raft endpoint url of every replica, by replica id
+    public static List<String> replicaUrls(int replicaCount) {
+        return urls(replicaCount, ReplicaRemote.RMI_NAME);
+    }
+
+    // bounds rmi connect and read times unless set on the command line
+    public static void useRmiTimeouts() {
+        if (System.getProperty("sun.rmi.transport.tcp.responseTimeout") == null) {
+            System.setProperty("sun.rmi.transport.tcp.responseTimeout", RMI_TIMEOUT_MS);
+        }
+        if (System.getProperty("sun.rmi.transport.proxy.connectTimeout") == null) {
+            System.setProperty("sun.rmi.transport.proxy.connectTimeout", RMI_TIMEOUT_MS);
+        }
+    }
+
+    private static List<String> urls(int replicaCount, String name) {
+        List<String> urls = new ArrayList<>(replicaCount);
+        for (int id = 0; id < replicaCount; id++) urls.add("//localhost:" + (REGISTRY_BASE_PORT + id) + "/" + name);
+        return urls;
+    }
+}
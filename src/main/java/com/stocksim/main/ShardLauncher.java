@@ -0,0 +1,90 @@
+package com.stocksim.main;
+
+import com.stocksim.core.MarketNode;
+import com.stocksim.sharding.ShardDirectory;
+import com.stocksim.sharding.ShardDirectoryRemote;
+import com.stocksim.sharding.ShardMap;
+
+import java.rmi.Naming;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class ShardLauncher {
+
+    public static final String DIRECTORY_URL = "//localhost/" + ShardDirectoryRemote.RMI_NAME;
+    private static final int REGISTRY_BASE_PORT = 1300; // shard i has its own registry on 1300 + i
+    private static final int METRICS_BASE_PORT = 8080;  // and its /metrics on 8080 + i
+    private static final long MAP_POLL_MS = 1000;
+    private static final long LEAVE_GRACE_MS = 2000;    // lets resting orders reach their new owners on exit
+
+    // starts the shard directory, or one market node shard that joins it
+    // args: directory | <shardIndex> [shards] [phiThreshold]
+    // (defaults: one pipeline shard per core, fixed 10s heartbeat timeout)
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("Usage: java com.stocksim.main.ShardLauncher directory | <shardIndex> [shards] [phiThreshold]");
+            System.exit(1);
+        }
+        try {
+            if ("directory".equals(args[0])) {
+                Registry registry = LocateRegistry.createRegistry(1099);
+                registry.rebind(ShardDirectoryRemote.RMI_NAME, new ShardDirectory());
+                System.out.println("ShardDirectory is ready.");
+                return;
+            }
+            int index = Integer.parseInt(args[0]);
+            int shards = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+            double phiThreshold = (args.length > 2) ? Double.parseDouble(args[2]) : 0;
+            ReplicaLauncher.useRmiTimeouts();
+            startShard(index, shards, phiThreshold);
+
+        } catch (Exception e) {
+            System.err.println("ShardLauncher exception: " + e.toString());
+            e.printStackTrace();
+        }
+    }
+
+    // creates a market node with its own registry, joins the directory and follows its map
+    private static void startShard(int index, int shards, double phiThreshold) throws Exception {
+        String nodeId = "market-shard-" + index;
+        String url = "//localhost:" + (REGISTRY_BASE_PORT + index) + "/" + MarketNode.RMI_NAME;
+
+        Registry registry = LocateRegistry.createRegistry(REGISTRY_BASE_PORT + index);
+        MarketNode marketNode = new MarketNode(nodeId, shards, null, phiThreshold, METRICS_BASE_PORT + index);
+        registry.rebind(MarketNode.RMI_NAME, marketNode);
+
+        ShardDirectoryRemote directory = (ShardDirectoryRemote) Naming.lookup(DIRECTORY_URL);
+        marketNode.useShardMap(directory.join(nodeId, url));
+
+        // picks up nodes joining or leaving
+        ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "shard-map-poller");
+            t.setDaemon(true);
+            return t;
+        });
+        poller.scheduleWithFixedDelay(() -> {
+            try {
+                marketNode.useShardMap(directory.getShardMap());
+            } catch (RemoteException e) {
+                System.err.println("ShardLauncher: Shard directory unreachable: " + e.getMessage());
+            }
+        }, MAP_POLL_MS, MAP_POLL_MS, TimeUnit.MILLISECONDS);
+
+        // hands this node's symbols and resting orders to the others before exiting
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                ShardMap remaining = directory.leave(nodeId);
+                marketNode.useShardMap(remaining);
+                Thread.sleep(LEAVE_GRACE_MS);
+            } catch (Exception e) {
+                System.err.println("ShardLauncher: Could not leave cleanly: " + e);
+            }
+        }, "shard-leave"));
+
+        System.out.printf("Shard %d (%s) is ready on registry port %d%n", index, nodeId, REGISTRY_BASE_PORT + index);
+    }
+}
@@ -0,0 +1,157 @@
+package com.stocksim.metrics;
+
+import io.prometheus.client.Collector;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SingleWriterRecorder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Latency metric recorded into per-thread HdrHistograms and merged only when Prometheus
+ * scrapes, so recording is a few uncontended writes with no shared counters or locks.
+ *
+ * Each scrape exports two families:
+ * - {@code <name>}: a histogram with fixed buckets, cumulative, for aggregating across
+ *   instances with histogram_quantile.
+ * - {@code <name minus _seconds>_recent_seconds}: a summary with exact p50/p99/p999 over the
+ *   values recorded since the previous scrape (so one scraper per endpoint).
+ */
+public class LatencyRecorder extends Collector {
+
+    private static final long LOWEST_NANOS = 100;
+    private static final long HIGHEST_NANOS = 60_000_000_000L; // longer values are clamped to a minute
+    private static final int SIGNIFICANT_DIGITS = 2;             // 1% resolution keeps each thread's histogram small
+    private static final double[] BUCKETS_SECONDS = {
+            0.000001, 0.000005, 0.00001, 0.000025, 0.00005, 0.0001, 0.00025, 0.0005,
+            0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private final String name;
+    private final String summaryName;
+    private final String help;
+    private final List<String> labelNames;
+    private final Map<List<String>, Child> children = new ConcurrentHashMap<>();
+
+    public LatencyRecorder(String name, String help, String... labelNames) {
+        this.name = name;
+        this.summaryName = name.replaceFirst("_seconds$", "") + "_recent_seconds";
+        this.help = help;
+        this.labelNames = List.of(labelNames);
+    }
+
+    // the series for one set of label values; look it up once and keep it on hot paths
+    public Child labels(String... labelValues) {
+        if (labelValues.length != labelNames.size()) {
+            throw new IllegalArgumentException("Expected " + labelNames.size() + " label values for " + name);
+        }
+        return children.computeIfAbsent(List.of(labelValues), values -> new Child());
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        List<MetricFamilySamples.Sample> histogramSamples = new ArrayList<>();
+        List<MetricFamilySamples.Sample> summarySamples = new ArrayList<>();
+        List<String> bucketLabels = with(labelNames, "le");
+        List<String> quantileLabels = with(labelNames, "quantile");
+
+        for (Map.Entry<List<String>, Child> entry : children.entrySet()) {
+            List<String> values = entry.getKey();
+            Child child = entry.getValue();
+            synchronized (child) {
+                child.drain();
+                Histogram total = child.total;
+                for (double bucket : BUCKETS_SECONDS) {
+                    long count = total.getCountBetweenValues(0, (long) (bucket * 1e9));
+                    histogramSamples.add(new MetricFamilySamples.Sample(name + "_bucket", bucketLabels,
+                            with(values, doubleToGoString(bucket)), count));
+                }
+                histogramSamples.add(new MetricFamilySamples.Sample(name + "_bucket", bucketLabels,
+                        with(values, "+Inf"), total.getTotalCount()));
+                histogramSamples.add(new MetricFamilySamples.Sample(name + "_count", labelNames, values, total.getTotalCount()));
+                histogramSamples.add(new MetricFamilySamples.Sample(name + "_sum", labelNames, values, child.sumNanos / 1e9));
+
+                for (double quantile : QUANTILES) {
+                    double seconds = child.recent.getTotalCount() == 0 ? Double.NaN
+                            : child.recent.getValueAtPercentile(quantile * 100) / 1e9;
+                    summarySamples.add(new MetricFamilySamples.Sample(summaryName, quantileLabels,
+                            with(values, doubleToGoString(quantile)), seconds));
+                }
+                summarySamples.add(new MetricFamilySamples.Sample(summaryName + "_count", labelNames, values, total.getTotalCount()));
+                summarySamples.add(new MetricFamilySamples.Sample(summaryName + "_sum", labelNames, values, child.sumNanos / 1e9));
+            }
+        }
+        return Arrays.asList(
+                new MetricFamilySamples(name, Type.HISTOGRAM, help, histogramSamples),
+                new MetricFamilySamples(summaryName, Type.SUMMARY, help + " Quantiles since the previous scrape.", summarySamples));
+    }
+
+    private static List<String> with(List<String> list, String extra) {
+        List<String> copy = new ArrayList<>(list.size() + 1);
+        copy.addAll(list);
+        copy.add(extra);
+        return copy;
+    }
+
+    /**
+     * One labelled series. Every recording thread gets its own single-writer recorder;
+     * a scrape swaps out each thread's interval histogram and folds it into the totals.
+     */
+    public static final class Child {
+        private final ConcurrentLinkedQueue<ThreadRecorder> recorders = new ConcurrentLinkedQueue<>();
+        private final ThreadLocal<SingleWriterRecorder> local = ThreadLocal.withInitial(() -> {
+            ThreadRecorder recorder = new ThreadRecorder(Thread.currentThread());
+            recorders.add(recorder);
+            return recorder.recorder;
+        });
+
+        // touched only while holding this child's monitor (at scrape time)
+        private final Histogram total = newHistogram();
+        private final Histogram recent = newHistogram();
+        private double sumNanos;
+
+        private Child() {
+        }
+
+        public void recordNanos(long nanos) {
+            local.get().recordValue(Math.max(LOWEST_NANOS, Math.min(nanos, HIGHEST_NANOS)));
+        }
+
+        // convenience for "time since start"
+        public void recordSince(long startNanos) {
+            recordNanos(System.nanoTime() - startNanos);
+        }
+
+        private void drain() {
+            recent.reset();
+            for (Iterator<ThreadRecorder> it = recorders.iterator(); it.hasNext(); ) {
+                ThreadRecorder recorder = it.next();
+                recorder.interval = recorder.recorder.getIntervalHistogram(recorder.interval);
+                recent.add(recorder.interval);
+                // a finished thread records nothing more once drained
+                if (!recorder.thread.isAlive()) it.remove();
+            }
+            total.add(recent);
+            sumNanos += recent.getMean() * recent.getTotalCount();
+        }
+    }
+
+    private static final class ThreadRecorder {
+        private final Thread thread;
+        private final SingleWriterRecorder recorder = new SingleWriterRecorder(LOWEST_NANOS, HIGHEST_NANOS, SIGNIFICANT_DIGITS);
+        private Histogram interval; // handed back to the recorder on the next swap
+
+        private ThreadRecorder(Thread thread) {
+            this.thread = thread;
+        }
+    }
+
+    private static Histogram newHistogram() {
+        return new Histogram(LOWEST_NANOS, HIGHEST_NANOS, SIGNIFICANT_DIGITS);
+    }
+}
@@ -2,6 +2,7 @@ package com.stocksim.metrics;
 
 import io.prometheus.client.Counter;
 import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
 import io.prometheus.client.exporter.HTTPServer;
 import io.prometheus.client.hotspot.DefaultExports;
 
@@ -60,6 +61,138 @@ public class Metrics {
             .help("Total number of agent failures detected by the MarketNode.")
             .register();
 
+    // counter for orders rejected before matching
+    public static final Counter ORDERS_REJECTED_TOTAL = Counter.build()
+            .name("order_rejected_total")
+            .help("Total number of orders rejected by the MarketNode before matching.")
+            .labelNames("reason")
+            .register();
+
+    // gauge for events waiting in an order pipeline ring
+    public static final Gauge PIPELINE_QUEUE_DEPTH = Gauge.build()
+            .name("pipeline_queue_depth")
+            .help("Events published to an order pipeline ring but not yet fully processed.")
+            .labelNames("pipeline")
+            .register();
+
+    // gauge for how full each shard's ingress queue is, against the admission limit
+    public static final Gauge INGRESS_QUEUE_OCCUPANCY = Gauge.build()
+            .name("ingress_queue_occupancy_ratio")
+            .help("Orders queued in a MarketNode shard's ring as a fraction of its admission limit.")
+            .labelNames("node_id", "shard")
+            .register();
+
+    // counter for orders answered busy or dropped by admission control
+    public static final Counter INGRESS_SHED_TOTAL = Counter.build()
+            .name("ingress_shed_total")
+            .help("Orders the MarketNode answered busy or dropped because it was overloaded, by reason.")
+            .labelNames("node_id", "reason")
+            .register();
+
+    // histogram for time spent in (and waiting for) each pipeline stage
+    public static final Histogram PIPELINE_STAGE_LATENCY = Histogram.build()
+            .name("pipeline_stage_latency_seconds")
+            .help("Time from the previous pipeline stage finishing to this stage finishing.")
+            .labelNames("stage")
+            .buckets(0.000001, 0.000005, 0.00001, 0.00005, 0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1)
+            .register();
+
+    // gauge for which market node replica leads
+    public static final Gauge REPLICA_LEADER = Gauge.build()
+            .name("replica_leader")
+            .help("1 if this market node replica is the leader, 0 if it follows.")
+            .labelNames("node_id")
+            .register();
+
+    // time inside submitMessage / submitBatch on the market node, by message type (BATCH for batches)
+    public static final LatencyRecorder MESSAGE_PROCESSING_LATENCY = new LatencyRecorder(
+            "message_processing_seconds",
+            "Server-side time to accept and sequence a message or batch.",
+            "message_type").register();
+
+    // agent-side round trip of one submitBatch call
+    public static final LatencyRecorder SEND_RTT = new LatencyRecorder(
+            "agent_send_rtt_seconds",
+            "Round trip of a batch from an agent process to the market node and back.").register();
+
+    // agent-side batches given up on after every send attempt failed
+    public static final Counter BATCHES_DROPPED_TOTAL = Counter.build()
+            .name("agent_batches_dropped_total")
+            .help("Batches an agent process dropped after every attempt to send them failed.")
+            .register();
+
+    // time an order sits in a pipeline ring before the validation stage picks it up
+    public static final LatencyRecorder QUEUE_WAIT = new LatencyRecorder(
+            "pipeline_queue_wait_seconds",
+            "Time from publishing an order into a pipeline ring to its first stage starting on it.",
+            "pipeline").register();
+
+    // time to build the ui snapshot (state) or delta
+    public static final LatencyRecorder SNAPSHOT_BUILD_LATENCY = new LatencyRecorder(
+            "snapshot_build_seconds",
+            "Time to build a getState snapshot or a getStateDelta.",
+            "kind").register();
+
+    // size of the newest state snapshot written to disk
+    public static final Gauge STATE_SNAPSHOT_SIZE = Gauge.build()
+            .name("state_snapshot_size_bytes")
+            .help("Size of the newest MarketNode state snapshot file.")
+            .labelNames("node_id")
+            .register();
+
+    // time to take a state snapshot: the whole write, or one shard's pause to copy its state (capture)
+    public static final LatencyRecorder STATE_SNAPSHOT_LATENCY = new LatencyRecorder(
+            "state_snapshot_seconds",
+            "Time to write a MarketNode state snapshot (write) and each shard's pause to copy its state (capture).",
+            "phase").register();
+
+    // gauge for how long the last restart took, by phase
+    public static final Gauge RESTART_DURATION = Gauge.build()
+            .name("restart_duration_seconds")
+            .help("Time the MarketNode spent loading its snapshot and replaying the journal after it on startup.")
+            .labelNames("node_id", "phase")
+            .register();
+
+    // time to answer a trade history query, or to encode and write one segment (roll)
+    public static final LatencyRecorder TRADE_HISTORY_LATENCY = new LatencyRecorder(
+            "trade_history_seconds",
+            "Time to answer a trade history query (query) or to write one columnar trade segment (roll).",
+            "op").register();
+
+    // gauge for the trade history on disk
+    public static final Gauge TRADE_HISTORY_SIZE = Gauge.build()
+            .name("trade_history_size_bytes")
+            .help("Bytes of columnar trade segments a MarketNode keeps on disk.")
+            .labelNames("node_id")
+            .register();
+
+    // gauge for market data subscribers
+    public static final Gauge MARKET_DATA_SUBSCRIBERS = Gauge.build()
+            .name("market_data_subscribers")
+            .help("Listeners subscribed to a market node's data feed.")
+            .labelNames("node_id")
+            .register();
+
+    // counter for per-symbol market data updates published
+    public static final Counter MARKET_DATA_UPDATES_TOTAL = Counter.build()
+            .name("market_data_updates_total")
+            .help("Per-symbol market data updates published by the feed.")
+            .labelNames("node_id")
+            .register();
+
+    // counter for updates replaced by a newer one before a slow subscriber got them
+    public static final Counter MARKET_DATA_CONFLATED_TOTAL = Counter.build()
+            .name("market_data_conflated_total")
+            .help("Market data updates superseded before delivery to a subscriber.")
+            .labelNames("node_id")
+            .register();
+
+    // counter for log events thrown away because a thread's log buffer was full
+    public static final Counter LOG_EVENTS_DROPPED_TOTAL = Counter.build()
+            .name("log_events_dropped_total")
+            .help("Log events dropped because the writer fell a full buffer behind.")
+            .register();
+
     // starts the metrics server
     public static void startMetricsServer(int port) {
         try {
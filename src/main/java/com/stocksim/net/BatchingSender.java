@@ -0,0 +1,203 @@
+package com.stocksim.net;
+
+import com.stocksim.data.MessageAck;
+import com.stocksim.data.TradeMessage;
+import com.stocksim.logging.Log;
+import com.stocksim.metrics.LatencyRecorder;
+import com.stocksim.metrics.Metrics;
+
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Client-side batcher for {@link MarketNodeRemote#submitBatch}, or for
+ * {@link MarketNodeRemote#executeBatch} when the caller wants fills in its acks.
+ * Messages are queued in send order and flushed in one round trip when the batch
+ * reaches maxBatchSize or when the oldest queued message is maxDelayMillis old.
+ * A taken batch is handed to a send pool shared by every sender, with at most MAX_IN_FLIGHT
+ * batches of one sender in flight, so callers (agent loops, the flush timer) only ever queue
+ * and never wait on a round trip or a retry. Batches waiting for a free slot count as
+ * backlog: past MAX_READY_BATCHES the sender reports itself backing off until it drains.
+ * A failed round trip is sent again as is: the market executes each client order id
+ * once, so a batch that got through before the failure is not traded twice. A batch that
+ * fails SEND_ATTEMPTS times is dropped: it is logged and counted, and every message in it
+ * gets an "unreachable" rejection, so the failure never reaches an unrelated caller.
+ *
+ * When the market answers busy, or cannot be reached, the sender backs off: the pause
+ * doubles with every such batch (up to MAX_BACKOFF_MS) and halves with every batch that
+ * goes through. Callers ask {@link #isBackingOff()} before producing new orders.
+ */
+public class BatchingSender {
+
+    public static final String UNREACHABLE = "unreachable";
+
+    // one timer thread shared by every sender in the process
+    private static final ScheduledExecutorService FLUSH_TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "batch-flush-timer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // runs the round trips; a sender never has more than MAX_IN_FLIGHT threads in it
+    private static final AtomicInteger SEND_THREADS = new AtomicInteger();
+    private static final ExecutorService SEND_POOL = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "batch-sender-" + SEND_THREADS.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final int SEND_ATTEMPTS = 3;
+    private static final int MAX_IN_FLIGHT = 4;
+    private static final int MAX_READY_BATCHES = 16;
+    private static final long RETRY_DELAY_MS = 100;
+    private static final long MIN_BACKOFF_MS = 10;
+    private static final long MAX_BACKOFF_MS = 2000;
+
+    private final MarketNodeRemote market;
+    private final int maxBatchSize;
+    private final long maxDelayMillis;
+    private final boolean awaitExecution;
+    private final BiConsumer<TradeMessage, MessageAck> ackListener;
+    private final LatencyRecorder.Child sendRtt = Metrics.SEND_RTT.labels();
+
+    // guarded by this
+    private List<TradeMessage> pending = new ArrayList<>();
+    private final Queue<List<TradeMessage>> ready = new ArrayDeque<>(); // taken batches waiting for a slot
+    private int inFlight;
+    private ScheduledFuture<?> scheduledFlush;
+    private long backoffMillis;            // current pause after busy acks, 0 when the market keeps up
+    private volatile long backoffUntilNanos = System.nanoTime();
+    private volatile boolean backlogged;   // more than MAX_READY_BATCHES waiting for a slot
+
+    // ackListener is called once per message after its batch is sequenced (or dropped)
+    public BatchingSender(MarketNodeRemote market, int maxBatchSize, long maxDelayMillis,
+                          BiConsumer<TradeMessage, MessageAck> ackListener) {
+        this(market, maxBatchSize, maxDelayMillis, false, ackListener);
+    }
+
+    // with awaitExecution the acks come after matching and carry each order's status and fills
+    public BatchingSender(MarketNodeRemote market, int maxBatchSize, long maxDelayMillis, boolean awaitExecution,
+                          BiConsumer<TradeMessage, MessageAck> ackListener) {
+        if (maxBatchSize < 1) throw new IllegalArgumentException("maxBatchSize must be >= 1");
+        this.market = market;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMillis = maxDelayMillis;
+        this.awaitExecution = awaitExecution;
+        this.ackListener = ackListener;
+    }
+
+    // queues a message, handing the batch to the send pool if it is full; never blocks on the market
+    public synchronized void send(TradeMessage message) {
+        pending.add(message);
+        if (pending.size() >= maxBatchSize || maxDelayMillis <= 0) {
+            takePending();
+        } else if (scheduledFlush == null) {
+            scheduledFlush = FLUSH_TIMER.schedule(this::flush, maxDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // hands everything queued to the send pool as one batch
+    public synchronized void flush() {
+        takePending();
+    }
+
+    // true while the market asked this sender to slow down, or batches pile up faster than they go out
+    public boolean isBackingOff() {
+        return backlogged || System.nanoTime() - backoffUntilNanos < 0;
+    }
+
+    // current backoff pause, 0 when the market keeps up
+    public synchronized long getBackoffMillis() {
+        return backoffMillis;
+    }
+
+    // under the lock: moves the queued messages, if any, to the ready batches and dispatches them
+    private void takePending() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (pending.isEmpty()) return;
+        ready.add(pending);
+        pending = new ArrayList<>(maxBatchSize);
+        dispatch();
+    }
+
+    // under the lock: starts ready batches while a slot is free
+    private void dispatch() {
+        while (inFlight < MAX_IN_FLIGHT && !ready.isEmpty()) {
+            List<TradeMessage> batch = ready.poll();
+            inFlight++;
+            SEND_POOL.execute(() -> sendBatch(batch));
+        }
+        backlogged = ready.size() > MAX_READY_BATCHES;
+    }
+
+    // on a send-pool thread: one round trip, then the acks go to the listener
+    private void sendBatch(List<TradeMessage> batch) {
+        boolean busy = false;
+        try {
+            List<MessageAck> acks;
+            try {
+                long sentAt = System.nanoTime();
+                acks = send(batch);
+                sendRtt.recordSince(sentAt);
+            } catch (RemoteException e) {
+                Metrics.BATCHES_DROPPED_TOTAL.inc();
+                Log.error("BatchingSender: Dropped a batch of {} messages after {} attempts: {}")
+                        .arg(batch.size()).arg(SEND_ATTEMPTS).arg(e.getMessage()).log();
+                acks = new ArrayList<>(batch.size());
+                for (TradeMessage message : batch) acks.add(MessageAck.rejected(message, UNREACHABLE));
+                busy = true;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                busy |= acks.get(i).isBusy();
+                ackListener.accept(batch.get(i), acks.get(i));
+            }
+        } finally {
+            synchronized (this) {
+                inFlight--;
+                adaptBackoff(busy);
+                dispatch();
+            }
+        }
+    }
+
+    // multiplicative increase on busy, decrease otherwise; the pause is jittered so senders spread out
+    private void adaptBackoff(boolean busy) {
+        if (busy) {
+            backoffMillis = Math.min(MAX_BACKOFF_MS, Math.max(MIN_BACKOFF_MS, backoffMillis * 2));
+            long pause = backoffMillis / 2 + ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1);
+            backoffUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pause);
+        } else if (backoffMillis > 0) {
+            backoffMillis = backoffMillis / 2 < MIN_BACKOFF_MS ? 0 : backoffMillis / 2;
+        }
+    }
+
+    private List<MessageAck> send(List<TradeMessage> batch) throws RemoteException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return awaitExecution ? market.executeBatch(batch) : market.submitBatch(batch);
+            } catch (RemoteException e) {
+                if (attempt == SEND_ATTEMPTS) throw e;
+            }
+            try {
+                Thread.sleep(RETRY_DELAY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RemoteException("Interrupted retrying a batch");
+            }
+        }
+    }
+}
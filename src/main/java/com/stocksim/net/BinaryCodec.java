@@ -0,0 +1,303 @@
+package com.stocksim.net;
+
+import com.stocksim.data.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fixed-layout binary encoding for the NIO transport.
+ * Every frame is [int length][byte opcode][int correlationId][payload], where length
+ * counts everything after itself. Strings are [short length][UTF-8 bytes], -1 for null.
+ * Enums are written as their ordinal byte; no class descriptors or reflection.
+ */
+public final class BinaryCodec {
+
+    // request opcodes
+    public static final byte SUBMIT = 1;
+    public static final byte SUBMIT_BATCH = 2;
+    public static final byte GET_STATE = 3;
+    public static final byte GET_STATE_DELTA = 4;
+    public static final byte EXECUTE_BATCH = 5;
+    public static final byte QUERY_TRADES = 6;
+
+    // response opcodes
+    public static final byte ACKS = (byte) 0x82;
+    public static final byte STATE = (byte) 0x83;
+    public static final byte STATE_DELTA = (byte) 0x84;
+    public static final byte TRADES = (byte) 0x86;
+    public static final byte ERROR = (byte) 0xFF;
+
+    // length prefix + opcode + correlation id
+    public static final int HEADER_BYTES = 4 + 1 + 4;
+
+    // longest frame either end accepts, so a bad length prefix cannot make the reader allocate without bound
+    public static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+
+    // smallest encodings of a list entry: all strings null, no order, no fills
+    private static final int MIN_MESSAGE_BYTES = 1 + 8 + 2 + 2 + 1;
+    private static final int MIN_ACK_BYTES = 8 + 1 + 2 + 8 + 1 + 4 + 4;
+    private static final int MIN_FILL_BYTES = 2 + 4 + 8;
+    private static final int MIN_TRADE_BYTES = 5 * 2 + 4 + 8 + 8 + 8;
+    private static final int MIN_STATUS_BYTES = 2 + 2;
+
+    private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+    private static final OrderType[] ORDER_TYPES = OrderType.values();
+    private static final OrderStatus[] ORDER_STATUSES = OrderStatus.values();
+
+    private BinaryCodec() {
+    }
+
+    // writes the header with a placeholder length, returns the frame start position
+    public static int beginFrame(ByteBuffer buf, byte opcode, int correlationId) {
+        int start = buf.position();
+        buf.putInt(0);
+        buf.put(opcode);
+        buf.putInt(correlationId);
+        return start;
+    }
+
+    // back-fills the length of a frame started at frameStart
+    public static void endFrame(ByteBuffer buf, int frameStart) {
+        buf.putInt(frameStart, buf.position() - frameStart - 4);
+    }
+
+    public static void putString(ByteBuffer buf, String value) {
+        if (value == null) {
+            buf.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("string of " + bytes.length + " bytes is too long to encode");
+        }
+        buf.putShort((short) bytes.length);
+        buf.put(bytes);
+    }
+
+    public static String getString(ByteBuffer buf) {
+        short length = buf.getShort();
+        if (length == -1) return null;
+        if (length < 0 || length > buf.remaining()) {
+            throw new IllegalArgumentException("string of " + length + " bytes with " + buf.remaining() + " left");
+        }
+        String value = new String(buf.array(), buf.arrayOffset() + buf.position(), length, StandardCharsets.UTF_8);
+        buf.position(buf.position() + length);
+        return value;
+    }
+
+    public static void putMessage(ByteBuffer buf, TradeMessage message) {
+        buf.put((byte) message.getType().ordinal());
+        buf.putLong(message.getLamportTimestamp());
+        putString(buf, message.getSenderId());
+        putString(buf, message.getReceiverId());
+        putOrder(buf, message.getOrder());
+    }
+
+    /**
+     * Reads an entry count and checks it against the bytes left, given the smallest encoding of
+     * one entry, so a corrupt or hostile count fails here instead of sizing an allocation.
+     */
+    public static int getCount(ByteBuffer buf, int minEntryBytes) {
+        int count = buf.getInt();
+        if (count < 0 || count > buf.remaining() / minEntryBytes) {
+            throw new IllegalArgumentException("count " + count + " with " + buf.remaining() + " bytes left");
+        }
+        return count;
+    }
+
+    public static TradeMessage getMessage(ByteBuffer buf) {
+        MessageType type = MESSAGE_TYPES[buf.get()];
+        long lamportTimestamp = buf.getLong();
+        String senderId = getString(buf);
+        String receiverId = getString(buf);
+        Order order = getOrder(buf);
+        return new TradeMessage(senderId, receiverId, type, order, lamportTimestamp);
+    }
+
+    // [byte present][agentId][symbol][int quantity][double price][byte side][long orderId][long originalOrderId]; just 0 for null
+    public static void putOrder(ByteBuffer buf, Order order) {
+        buf.put(order == null ? (byte) 0 : (byte) 1);
+        if (order != null) {
+            putString(buf, order.getAgentId());
+            putString(buf, order.getStockSymbol());
+            buf.putInt(order.getQuantity());
+            buf.putDouble(order.getPrice());
+            buf.put(order.getType() == null ? (byte) -1 : (byte) order.getType().ordinal());
+            buf.putLong(order.getOrderId());
+            buf.putLong(order.getOriginalOrderId());
+        }
+    }
+
+    public static Order getOrder(ByteBuffer buf) {
+        if (buf.get() != 1) return null;
+        String agentId = getString(buf);
+        String symbol = getString(buf);
+        int quantity = buf.getInt();
+        double price = buf.getDouble();
+        byte side = buf.get();
+        long orderId = buf.getLong();
+        long originalOrderId = buf.getLong();
+        return new Order(agentId, symbol, quantity, price, side < 0 ? null : ORDER_TYPES[side], orderId, originalOrderId);
+    }
+
+    // upper bound on putOrder's output
+    public static int maxOrderBytes(Order order) {
+        if (order == null) return 1;
+        return 1 + maxStringBytes(order.getAgentId()) + maxStringBytes(order.getStockSymbol()) + 4 + 8 + 1 + 8 + 8;
+    }
+
+    private static int maxStringBytes(String value) {
+        return 2 + (value == null ? 0 : value.length() * 3); // at most 3 UTF-8 bytes per char
+    }
+
+    public static void putMessages(ByteBuffer buf, List<TradeMessage> messages) {
+        buf.putInt(messages.size());
+        for (TradeMessage message : messages) putMessage(buf, message);
+    }
+
+    public static List<TradeMessage> getMessages(ByteBuffer buf) {
+        int count = getCount(buf, MIN_MESSAGE_BYTES);
+        List<TradeMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) messages.add(getMessage(buf));
+        return messages;
+    }
+
+    // per ack: [long lamport][byte accepted][reason][long orderId][byte status][int resting][int fills]([tradeId][int qty][double price])*
+    public static void putAcks(ByteBuffer buf, List<MessageAck> acks) {
+        buf.putInt(acks.size());
+        for (MessageAck ack : acks) {
+            buf.putLong(ack.getLamportTimestamp());
+            buf.put(ack.isAccepted() ? (byte) 1 : (byte) 0);
+            putString(buf, ack.getReason());
+            buf.putLong(ack.getOrderId());
+            buf.put((byte) ack.getStatus().ordinal());
+            buf.putInt(ack.getRestingQuantity());
+            buf.putInt(ack.getFills().size());
+            for (Fill fill : ack.getFills()) {
+                putString(buf, fill.getTradeId());
+                buf.putInt(fill.getQuantity());
+                buf.putDouble(fill.getPrice());
+            }
+        }
+    }
+
+    public static List<MessageAck> getAcks(ByteBuffer buf) {
+        int count = getCount(buf, MIN_ACK_BYTES);
+        List<MessageAck> acks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long lamportTimestamp = buf.getLong();
+            boolean accepted = buf.get() == 1;
+            String reason = getString(buf);
+            long orderId = buf.getLong();
+            OrderStatus status = ORDER_STATUSES[buf.get()];
+            int restingQuantity = buf.getInt();
+            int fillCount = getCount(buf, MIN_FILL_BYTES);
+            List<Fill> fills = fillCount == 0 ? Collections.emptyList() : new ArrayList<>(fillCount);
+            for (int f = 0; f < fillCount; f++) fills.add(new Fill(getString(buf), buf.getInt(), buf.getDouble()));
+            acks.add(new MessageAck(lamportTimestamp, accepted, reason, orderId, status, restingQuantity, fills));
+        }
+        return acks;
+    }
+
+    public static void putTrade(ByteBuffer buf, Trade trade) {
+        putString(buf, trade.getTradeId());
+        putString(buf, trade.getAgentId());
+        putString(buf, trade.getBuyerId());
+        putString(buf, trade.getSellerId());
+        putString(buf, trade.getStockSymbol());
+        buf.putInt(trade.getQuantity());
+        buf.putDouble(trade.getPrice());
+        buf.putLong(trade.getLamportTimestamp());
+        buf.putLong(trade.getSystemTimeMillis());
+    }
+
+    public static Trade getTrade(ByteBuffer buf) {
+        return new Trade(getString(buf), getString(buf), getString(buf), getString(buf), getString(buf),
+                buf.getInt(), buf.getDouble(), buf.getLong(), buf.getLong());
+    }
+
+    public static void putState(ByteBuffer buf, SystemState state) {
+        buf.putInt(state.getRecentTrades().size());
+        for (Trade trade : state.getRecentTrades()) putTrade(buf, trade);
+        buf.putInt(state.getAgentStatuses().size());
+        for (Map.Entry<String, String> entry : state.getAgentStatuses().entrySet()) {
+            putString(buf, entry.getKey());
+            putString(buf, entry.getValue());
+        }
+        putString(buf, state.getMarketNodeStatus());
+    }
+
+    public static SystemState getState(ByteBuffer buf) {
+        int tradeCount = getCount(buf, MIN_TRADE_BYTES);
+        List<Trade> trades = new ArrayList<>(tradeCount);
+        for (int i = 0; i < tradeCount; i++) trades.add(getTrade(buf));
+        int statusCount = getCount(buf, MIN_STATUS_BYTES);
+        Map<String, String> statuses = new HashMap<>();
+        for (int i = 0; i < statusCount; i++) statuses.put(getString(buf), getString(buf));
+        return new SystemState(trades, statuses, getString(buf));
+    }
+
+    public static void putStateDelta(ByteBuffer buf, StateDelta delta) {
+        buf.putLong(delta.getNextTradeSequence());
+        buf.put(delta.isTradesReset() ? (byte) 1 : (byte) 0);
+        buf.putInt(delta.getTrades().size());
+        for (Trade trade : delta.getTrades()) putTrade(buf, trade);
+        buf.putLong(delta.getStatusVersion());
+        buf.put(delta.isStatusesReset() ? (byte) 1 : (byte) 0);
+        buf.putInt(delta.getStatusChanges().size());
+        for (Map.Entry<String, String> entry : delta.getStatusChanges().entrySet()) {
+            putString(buf, entry.getKey());
+            putString(buf, entry.getValue());
+        }
+        putString(buf, delta.getMarketNodeStatus());
+    }
+
+    public static StateDelta getStateDelta(ByteBuffer buf) {
+        long nextTradeSequence = buf.getLong();
+        boolean tradesReset = buf.get() == 1;
+        int tradeCount = getCount(buf, MIN_TRADE_BYTES);
+        List<Trade> trades = new ArrayList<>(tradeCount);
+        for (int i = 0; i < tradeCount; i++) trades.add(getTrade(buf));
+        long statusVersion = buf.getLong();
+        boolean statusesReset = buf.get() == 1;
+        int statusCount = getCount(buf, MIN_STATUS_BYTES);
+        Map<String, String> statuses = new HashMap<>();
+        for (int i = 0; i < statusCount; i++) statuses.put(getString(buf), getString(buf));
+        return new StateDelta(trades, nextTradeSequence, tradesReset, statuses, statusVersion, statusesReset, getString(buf));
+    }
+
+    public static void putTradeQuery(ByteBuffer buf, TradeQuery query) {
+        putString(buf, query.getStockSymbol());
+        putString(buf, query.getAgentId());
+        buf.putLong(query.getFromMillis());
+        buf.putLong(query.getToMillis());
+        buf.putInt(query.getMaxTrades());
+    }
+
+    public static TradeQuery getTradeQuery(ByteBuffer buf) {
+        return new TradeQuery(getString(buf), getString(buf), buf.getLong(), buf.getLong(), buf.getInt());
+    }
+
+    public static void putTradeQueryResult(ByteBuffer buf, TradeQueryResult result) {
+        buf.putInt(result.getTrades().size());
+        for (Trade trade : result.getTrades()) putTrade(buf, trade);
+        buf.putLong(result.getTradeCount());
+        buf.putLong(result.getVolume());
+        buf.putDouble(result.getNotional());
+        buf.putDouble(result.getLow());
+        buf.putDouble(result.getHigh());
+    }
+
+    public static TradeQueryResult getTradeQueryResult(ByteBuffer buf) {
+        int tradeCount = getCount(buf, MIN_TRADE_BYTES);
+        List<Trade> trades = new ArrayList<>(tradeCount);
+        for (int i = 0; i < tradeCount; i++) trades.add(getTrade(buf));
+        return new TradeQueryResult(trades, buf.getLong(), buf.getLong(), buf.getDouble(), buf.getDouble(), buf.getDouble());
+    }
+}
@@ -1,43 +1,241 @@
 package com.stocksim.net;
 
+import com.stocksim.core.IdRegistry;
+
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.stream.Collectors;
 
+/**
+ * Heartbeat failure detector built on a hashed timer wheel.
+ *
+ * Each agent sits in the wheel bucket of its deadline (intrusive int lists indexed by
+ * agent id, so nothing is allocated per heartbeat). A heartbeat moves the agent to its new
+ * bucket in O(1); {@link #expire} only walks the buckets whose tick has passed, so the
+ * cost per tick depends on how many agents are due, not on how many agents exist.
+ *
+ * The deadline is either a fixed timeout, or (when a phi threshold is set) the time at
+ * which the phi-accrual suspicion level learned from that agent's heartbeat inter-arrival
+ * times would cross the threshold.
+ *
+ * {@link #updateHeartbeat} and {@link #expire} must be called from one thread (the heartbeat
+ * lane); the status getters may be called from any thread.
+ */
 public class HeartbeatMonitor {
 
-    // stores last timestamps for each agent
-    private final Map<String, Long> lastSeenTimestamps = new ConcurrentHashMap<>();
+    // callback for status transitions, invoked on the updating thread
+    public interface Listener {
+        void onActive(int agentId);
+
+        void onFailed(int agentId);
+    }
+
+    public static final long TICK_MILLIS = 100;
+
+    private static final int WHEEL_SIZE = 512;            // buckets, spans 51.2s of ticks
+    private static final int NONE = -1;
+    private static final int UNKNOWN = 0, ACTIVE = 1, FAILED = 2;
+    private static final int MIN_SAMPLES = 3;             // intervals needed before phi is used
+    private static final double MIN_STD_DEV_MILLIS = 100; // floor so regular agents are not hair-trigger
+    private static final double EWMA_ALPHA = 0.1;         // weight of the newest inter-arrival sample
+
+    // agent names for the int ids heartbeats are recorded under
+    private final IdRegistry agents;
+    private final long timeoutMillis;
+    private final double phiThreshold;
+    private final double thresholdDeviations; // standard deviations past the mean where phi = threshold
+    private final Listener listener;
+
+    // timer wheel: bucket heads, plus per-agent links and deadlines
+    private final int[] bucketHeads = new int[WHEEL_SIZE];
+    private long processedTick;
+    private int[] next = new int[0];
+    private int[] prev = new int[0];
+    private int[] bucket = new int[0];
+    private long[] deadlines = new long[0];
+
+    // inter-arrival statistics per agent (exponentially weighted)
+    private double[] meanIntervals = new double[0];
+    private double[] intervalVariances = new double[0];
+    private int[] samples = new int[0];
+
+    // readable from any thread
+    private volatile AtomicLongArray lastSeenTimestamps = new AtomicLongArray(0);
+    private volatile AtomicIntegerArray statuses = new AtomicIntegerArray(0);
+
+    // fixed-timeout detector
+    public HeartbeatMonitor(IdRegistry agents, long timeoutMillis, Listener listener) {
+        this(agents, timeoutMillis, 0, listener);
+    }
 
-    // updates last heartbeat time
-    public void updateHeartbeat(String agentId) {
-        lastSeenTimestamps.put(agentId, System.currentTimeMillis());
+    // phiThreshold > 0 switches to phi-accrual deadlines (timeoutMillis still applies until an agent has history)
+    public HeartbeatMonitor(IdRegistry agents, long timeoutMillis, double phiThreshold, Listener listener) {
+        this.agents = agents;
+        this.timeoutMillis = timeoutMillis;
+        this.phiThreshold = phiThreshold;
+        this.thresholdDeviations = phiThreshold > 0 ? deviationsForPhi(phiThreshold) : 0;
+        this.listener = listener;
+        this.processedTick = System.currentTimeMillis() / TICK_MILLIS;
+        Arrays.fill(bucketHeads, NONE);
     }
 
-    // returns map of agent statuses
-    public synchronized Map<String, String> getStatuses(long timeoutMillis) {
-        Map<String, String> statuses = new HashMap<>();
+    // records a heartbeat and moves the agent to its new deadline bucket
+    public void updateHeartbeat(int agentId) {
         long now = System.currentTimeMillis();
-        for (Map.Entry<String, Long> entry : lastSeenTimestamps.entrySet()) {
-            if (now - entry.getValue() > timeoutMillis) {
-                statuses.put(entry.getKey(), "FAILED");
-            } else {
-                statuses.put(entry.getKey(), "ACTIVE");
+        ensureCapacity(agentId);
+
+        long previous = lastSeenTimestamps.get(agentId);
+        if (previous != 0) recordInterval(agentId, now - previous);
+        lastSeenTimestamps.set(agentId, now);
+
+        unlink(agentId);
+        deadlines[agentId] = now + deadlineAfter(agentId);
+        // rounded up, so by the time a bucket's tick is processed every deadline in it has passed
+        long deadlineTick = (deadlines[agentId] + TICK_MILLIS - 1) / TICK_MILLIS;
+        link(agentId, Math.max(deadlineTick, processedTick + 1));
+
+        if (statuses.get(agentId) != ACTIVE) {
+            statuses.lazySet(agentId, ACTIVE);
+            if (listener != null) listener.onActive(agentId);
+        }
+    }
+
+    // fails every agent whose deadline has passed; visits only buckets for ticks up to now
+    public void expire(long now) {
+        long nowTick = now / TICK_MILLIS;
+        // after a long stall one pass over the wheel covers every bucket
+        long firstTick = Math.max(processedTick + 1, nowTick - WHEEL_SIZE + 1);
+        for (long tick = firstTick; tick <= nowTick; tick++) {
+            int agentId = bucketHeads[(int) (tick & (WHEEL_SIZE - 1))];
+            while (agentId != NONE) {
+                int following = next[agentId];
+                // agents a full wheel turn (or more) away share the bucket; leave them
+                if (deadlines[agentId] <= now) {
+                    unlink(agentId);
+                    statuses.lazySet(agentId, FAILED);
+                    if (listener != null) listener.onFailed(agentId);
+                }
+                agentId = following;
             }
         }
-        return statuses;
+        processedTick = Math.max(processedTick, nowTick);
+    }
+
+    /**
+     * Current phi-accrual suspicion for an agent: -log10 of the probability that a heartbeat
+     * this late would still arrive. 0 until the agent has enough history.
+     */
+    public double phi(int agentId, long now) {
+        if (agentId >= samples.length || samples[agentId] < MIN_SAMPLES) return 0;
+        double elapsed = now - lastSeenTimestamps.get(agentId);
+        return phi((elapsed - meanIntervals[agentId]) / stdDev(agentId));
+    }
+
+    // returns map of agent statuses (a full scan; for snapshots, not the hot path)
+    public Map<String, String> getStatuses() {
+        AtomicIntegerArray current = statuses;
+        Map<String, String> result = new HashMap<>();
+        int known = Math.min(current.length(), agents.size());
+        for (int id = 0; id < known; id++) {
+            int status = current.get(id);
+            if (status == UNKNOWN) continue;
+            result.put(agents.nameOf(id), status == FAILED ? "FAILED" : "ACTIVE");
+        }
+        return result;
     }
 
     // returns failed flags as booleans
-    public synchronized Map<String, Boolean> getFailureFlags(long timeoutMillis) {
-        return getStatuses(timeoutMillis).entrySet().stream()
+    public Map<String, Boolean> getFailureFlags() {
+        return getStatuses().entrySet().stream()
                 .collect(Collectors.toMap(Map.Entry::getKey, e -> "FAILED".equals(e.getValue())));
     }
 
-    // checks if one agent is failed
-    public synchronized boolean isAgentFailed(String agentId, long timeoutMillis) {
-        long lastSeen = lastSeenTimestamps.getOrDefault(agentId, 0L);
-        return (System.currentTimeMillis() - lastSeen) > timeoutMillis;
+    // checks if one agent is failed (never-seen agents count as failed)
+    public boolean isAgentFailed(int agentId) {
+        AtomicIntegerArray current = statuses;
+        return agentId >= current.length() || current.get(agentId) != ACTIVE;
+    }
+
+    // time from a heartbeat to the agent's deadline
+    private long deadlineAfter(int agentId) {
+        if (phiThreshold <= 0 || samples[agentId] < MIN_SAMPLES) return timeoutMillis;
+        return (long) Math.ceil(meanIntervals[agentId] + thresholdDeviations * stdDev(agentId));
+    }
+
+    private void recordInterval(int agentId, long interval) {
+        int n = samples[agentId]++;
+        if (n == 0) {
+            meanIntervals[agentId] = interval;
+            return;
+        }
+        double delta = interval - meanIntervals[agentId];
+        meanIntervals[agentId] += EWMA_ALPHA * delta;
+        intervalVariances[agentId] = (1 - EWMA_ALPHA) * (intervalVariances[agentId] + EWMA_ALPHA * delta * delta);
+    }
+
+    private double stdDev(int agentId) {
+        return Math.max(Math.sqrt(intervalVariances[agentId]), MIN_STD_DEV_MILLIS);
+    }
+
+    // phi for a lateness of y standard deviations (logistic approximation of the normal CDF)
+    private static double phi(double y) {
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        return y > 0 ? -Math.log10(e / (1.0 + e)) : -Math.log10(1.0 - 1.0 / (1.0 + e));
+    }
+
+    // inverts phi by bisection once, so deadlines are a multiply-add per heartbeat
+    private static double deviationsForPhi(double threshold) {
+        double low = -10, high = 40;
+        for (int i = 0; i < 100; i++) {
+            double mid = (low + high) / 2;
+            if (phi(mid) < threshold) low = mid; else high = mid;
+        }
+        return high;
+    }
+
+    private void link(int agentId, long tick) {
+        int b = (int) (tick & (WHEEL_SIZE - 1));
+        int head = bucketHeads[b];
+        next[agentId] = head;
+        prev[agentId] = NONE;
+        if (head != NONE) prev[head] = agentId;
+        bucketHeads[b] = agentId;
+        bucket[agentId] = b;
+    }
+
+    private void unlink(int agentId) {
+        int b = bucket[agentId];
+        if (b == NONE) return;
+        if (prev[agentId] == NONE) bucketHeads[b] = next[agentId]; else next[prev[agentId]] = next[agentId];
+        if (next[agentId] != NONE) prev[next[agentId]] = prev[agentId];
+        bucket[agentId] = NONE;
+    }
+
+    // grows the per-agent arrays to cover agentId
+    private void ensureCapacity(int agentId) {
+        int length = next.length;
+        if (agentId < length) return;
+        int size = Math.max(agentId + 1, Math.max(1024, length * 2));
+
+        next = Arrays.copyOf(next, size);
+        prev = Arrays.copyOf(prev, size);
+        bucket = Arrays.copyOf(bucket, size);
+        Arrays.fill(bucket, length, size, NONE);
+        deadlines = Arrays.copyOf(deadlines, size);
+        meanIntervals = Arrays.copyOf(meanIntervals, size);
+        intervalVariances = Arrays.copyOf(intervalVariances, size);
+        samples = Arrays.copyOf(samples, size);
+
+        AtomicLongArray lastSeen = new AtomicLongArray(size);
+        AtomicIntegerArray status = new AtomicIntegerArray(size);
+        for (int i = 0; i < length; i++) {
+            lastSeen.set(i, lastSeenTimestamps.get(i));
+            status.set(i, statuses.get(i));
+        }
+        lastSeenTimestamps = lastSeen;
+        statuses = status;
     }
 }
@@ -0,0 +1,15 @@
+package com.stocksim.net;
+
+import com.stocksim.data.MarketDataUpdate;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+// callback for market data subscribers; export it (UnicastRemoteObject) to subscribe over rmi
+public interface MarketDataListener extends Remote {
+
+    // the latest update of every subscribed symbol that changed since the previous call;
+    // a slow listener gets fewer, newer updates rather than a backlog
+    void onMarketData(List<MarketDataUpdate> updates) throws RemoteException;
+}
@@ -0,0 +1,20 @@
+package com.stocksim.net;
+
+import com.stocksim.data.MarketDataUpdate;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+// interface for the market node's data feed (bound under the same rmi name as MarketNodeRemote)
+public interface MarketDataRemote extends Remote {
+
+    // pushes conflated updates for the given symbols (empty for all) to the listener
+    void subscribeMarketData(MarketDataListener listener, List<String> symbols) throws RemoteException;
+
+    void unsubscribeMarketData(MarketDataListener listener) throws RemoteException;
+
+    // polling alternative: the latest update of each symbol published after fromVersion (0 for all);
+    // pass the highest version seen on the next call
+    List<MarketDataUpdate> getMarketData(long fromVersion) throws RemoteException;
+}
@@ -1,17 +1,36 @@
 package com.stocksim.net;
 
+import com.stocksim.data.MessageAck;
+import com.stocksim.data.StateDelta;
 import com.stocksim.data.SystemState;
 import com.stocksim.data.TradeMessage;
+import com.stocksim.data.TradeQuery;
+import com.stocksim.data.TradeQueryResult;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
 
 // interface for remote market node communication
 public interface MarketNodeRemote extends Remote {
 
-    // sends a trade message
-    void submitMessage(TradeMessage message) throws RemoteException;
+    // sends a trade message, returns its ack once it is sequenced
+    MessageAck submitMessage(TradeMessage message) throws RemoteException;
+
+    // sends many messages in one round trip, returns one ack per message in the same order once they are sequenced
+    List<MessageAck> submitBatch(List<TradeMessage> messages) throws RemoteException;
+
+    // as submitBatch, but returns once the orders have been matched: each ack carries the order's
+    // status, fills and resting quantity (an order still in flight after a timeout stays SEQUENCED)
+    List<MessageAck> executeBatch(List<TradeMessage> messages) throws RemoteException;
 
     // returns full system state
     SystemState getState() throws RemoteException;
+
+    // returns what changed since the given cursors (StateDelta.LATEST to start fresh);
+    // pass the returned cursors on the next call to resume where this one ended
+    StateDelta getStateDelta(long fromTradeSequence, long fromStatusVersion) throws RemoteException;
+
+    // volume, VWAP and the earliest matching trades from the trade history, by symbol, agent and time range
+    TradeQueryResult queryTrades(TradeQuery query) throws RemoteException;
 }
@@ -0,0 +1,177 @@
+package com.stocksim.net;
+
+import com.stocksim.data.MessageAck;
+import com.stocksim.data.StateDelta;
+import com.stocksim.data.SystemState;
+import com.stocksim.data.TradeMessage;
+import com.stocksim.data.TradeQuery;
+import com.stocksim.data.TradeQueryResult;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * {@link MarketNodeRemote} over one persistent NIO connection using {@link BinaryCodec}.
+ * Any number of threads may call concurrently: each request gets a correlation id, is
+ * written straight to the socket, and a reader thread completes the matching reply,
+ * so calls pipeline instead of queueing behind each other's round trips.
+ */
+public class NioMarketClient implements MarketNodeRemote, AutoCloseable {
+
+    private static final long CALL_TIMEOUT_MS = 10_000;
+
+    private final SocketChannel channel;
+    private final AtomicInteger nextCorrelationId = new AtomicInteger();
+    private final Map<Integer, CompletableFuture<ByteBuffer>> pending = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(64 * 1024);
+    private volatile IOException closedCause;
+
+    // opens the connection and starts the reply reader
+    public NioMarketClient(String host, int port) throws IOException {
+        this.channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+        Thread reader = new Thread(this::readReplies, "nio-market-client-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @Override
+    public MessageAck submitMessage(TradeMessage message) throws RemoteException {
+        return BinaryCodec.getAcks(call(BinaryCodec.SUBMIT, buf -> BinaryCodec.putMessage(buf, message))).get(0);
+    }
+
+    @Override
+    public List<MessageAck> submitBatch(List<TradeMessage> messages) throws RemoteException {
+        return BinaryCodec.getAcks(call(BinaryCodec.SUBMIT_BATCH, buf -> BinaryCodec.putMessages(buf, messages)));
+    }
+
+    @Override
+    public List<MessageAck> executeBatch(List<TradeMessage> messages) throws RemoteException {
+        return BinaryCodec.getAcks(call(BinaryCodec.EXECUTE_BATCH, buf -> BinaryCodec.putMessages(buf, messages)));
+    }
+
+    @Override
+    public SystemState getState() throws RemoteException {
+        return BinaryCodec.getState(call(BinaryCodec.GET_STATE, buf -> { }));
+    }
+
+    @Override
+    public StateDelta getStateDelta(long fromTradeSequence, long fromStatusVersion) throws RemoteException {
+        return BinaryCodec.getStateDelta(call(BinaryCodec.GET_STATE_DELTA, buf -> {
+            buf.putLong(fromTradeSequence);
+            buf.putLong(fromStatusVersion);
+        }));
+    }
+
+    @Override
+    public TradeQueryResult queryTrades(TradeQuery query) throws RemoteException {
+        return BinaryCodec.getTradeQueryResult(call(BinaryCodec.QUERY_TRADES, buf -> BinaryCodec.putTradeQuery(buf, query)));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // sends one request frame and waits for its reply payload
+    private ByteBuffer call(byte opcode, Consumer<ByteBuffer> body) throws RemoteException {
+        if (closedCause != null) throw new RemoteException("NIO connection closed", closedCause);
+
+        int correlationId = nextCorrelationId.incrementAndGet();
+        CompletableFuture<ByteBuffer> reply = new CompletableFuture<>();
+        pending.put(correlationId, reply);
+
+        try {
+            write(opcode, correlationId, body);
+            ByteBuffer payload = reply.get(CALL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            byte replyOpcode = payload.get();
+            payload.getInt(); // correlation id
+            if (replyOpcode == BinaryCodec.ERROR) {
+                throw new RemoteException("MarketNode error: " + BinaryCodec.getString(payload));
+            }
+            return payload;
+        } catch (IOException e) {
+            throw new RemoteException("NIO send failed", e);
+        } catch (ExecutionException e) {
+            throw new RemoteException("NIO connection failed", e.getCause());
+        } catch (TimeoutException e) {
+            throw new RemoteException("NIO call timed out after " + CALL_TIMEOUT_MS + "ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted waiting for NIO reply");
+        } finally {
+            pending.remove(correlationId);
+        }
+    }
+
+    // encodes and writes a frame; the lock only covers the local copy and socket write
+    private void write(byte opcode, int correlationId, Consumer<ByteBuffer> body) throws IOException {
+        synchronized (writeLock) {
+            while (true) {
+                writeBuffer.clear();
+                try {
+                    int start = BinaryCodec.beginFrame(writeBuffer, opcode, correlationId);
+                    body.accept(writeBuffer);
+                    BinaryCodec.endFrame(writeBuffer, start);
+                    break;
+                } catch (BufferOverflowException e) {
+                    writeBuffer = ByteBuffer.allocate(writeBuffer.capacity() * 2);
+                }
+            }
+            writeBuffer.flip();
+            while (writeBuffer.hasRemaining()) channel.write(writeBuffer);
+        }
+    }
+
+    // reads reply frames and hands each payload (starting at the opcode) to its caller
+    private void readReplies() {
+        ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+        try {
+            while (true) {
+                if (channel.read(in) < 0) throw new IOException("MarketNode closed the connection");
+                in.flip();
+                while (in.remaining() >= 4) {
+                    int length = in.getInt(in.position());
+                    if (length < BinaryCodec.HEADER_BYTES - 4 || length > BinaryCodec.MAX_FRAME_BYTES) {
+                        throw new IOException("MarketNode sent a frame of " + length + " bytes");
+                    }
+                    if (in.remaining() < 4 + length) break;
+                    in.getInt(); // length
+                    byte[] frame = new byte[length];
+                    in.get(frame);
+
+                    ByteBuffer payload = ByteBuffer.wrap(frame);
+                    int correlationId = payload.getInt(1);
+                    CompletableFuture<ByteBuffer> reply = pending.get(correlationId);
+                    if (reply != null) reply.complete(payload);
+                }
+                in.compact();
+                if (in.position() == in.capacity()) {
+                    ByteBuffer bigger = ByteBuffer.allocate(in.capacity() * 2);
+                    in.flip();
+                    bigger.put(in);
+                    in = bigger;
+                }
+            }
+        } catch (IOException e) {
+            closedCause = e;
+            for (CompletableFuture<ByteBuffer> reply : pending.values()) reply.completeExceptionally(e);
+        }
+    }
+}
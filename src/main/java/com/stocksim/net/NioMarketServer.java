@@ -0,0 +1,343 @@
+package com.stocksim.net;
+
+import com.stocksim.data.MessageAck;
+import com.stocksim.data.StateDelta;
+import com.stocksim.data.SystemState;
+import com.stocksim.data.TradeMessage;
+import com.stocksim.data.TradeQuery;
+import com.stocksim.data.TradeQueryResult;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Serves a {@link MarketNodeRemote} over the length-prefixed binary protocol in {@link BinaryCodec}.
+ * One selector thread owns every socket: it reads and decodes frames and writes replies, but
+ * never calls the delegate. Decoded requests run on a pool of WORKERS threads, one at a time
+ * per connection and in the order they arrived, so a slow call (an executeBatch waiting for
+ * matching, a publish blocked on a full ring) holds up only its own connection. Connections
+ * are persistent and pipelined: a client may send many frames without waiting, and replies
+ * come back in request order tagged with the request's correlation id. A connection with
+ * MAX_QUEUED_REQUESTS requests waiting is not read until the workers catch up, and a frame
+ * longer than {@link BinaryCodec#MAX_FRAME_BYTES} closes it.
+ */
+public class NioMarketServer {
+
+    public static final int DEFAULT_PORT = 7070;
+    private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+    private static final int WORKERS = 8;
+    private static final int MAX_QUEUED_REQUESTS = 64;
+
+    // one request, decoded on the selector thread and run on a worker
+    private interface Request {
+        void run() throws Exception;
+    }
+
+    private final MarketNodeRemote delegate;
+    private final int port;
+    private final ExecutorService workers;
+    private final Queue<SelectionKey> repliesReady = new ConcurrentLinkedQueue<>(); // connections with new replies
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running;
+
+    public NioMarketServer(MarketNodeRemote delegate, int port) {
+        this.delegate = delegate;
+        this.port = port;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(WORKERS, r -> {
+            Thread t = new Thread(r, "nio-market-worker-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // binds the port and starts the selector thread
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+
+        Thread t = new Thread(this::runLoop, "nio-market-server");
+        t.setDaemon(true);
+        t.start();
+        System.out.println("NIO market transport listening on port " + port);
+    }
+
+    public void stop() throws IOException {
+        running = false;
+        selector.wakeup();
+        serverChannel.close();
+        workers.shutdown();
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) accept();
+                        if (key.isValid() && key.isReadable()) read(key);
+                        if (key.isValid() && key.isWritable()) write(key);
+                    } catch (IOException e) {
+                        close(key);
+                    }
+                }
+                flushReplies();
+            } catch (IOException e) {
+                System.err.println("NIO market server selector failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection());
+    }
+
+    // reads what is available and handles every complete frame
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection conn = (Connection) key.attachment();
+
+        if (channel.read(conn.in) < 0) {
+            close(key);
+            return;
+        }
+
+        conn.in.flip();
+        int needed = 0;
+        while (conn.in.remaining() >= 4) {
+            int length = conn.in.getInt(conn.in.position());
+            if (length < BinaryCodec.HEADER_BYTES - 4 || length > BinaryCodec.MAX_FRAME_BYTES) {
+                throw new IOException("frame of " + length + " bytes, closing the connection");
+            }
+            if (conn.in.remaining() < 4 + length) {
+                needed = 4 + length; // wait for the rest of the frame
+                break;
+            }
+            int frameEnd = conn.in.position() + 4 + length;
+            conn.in.getInt(); // length
+            byte opcode = conn.in.get();
+            int correlationId = conn.in.getInt();
+            ByteBuffer payload = conn.in.slice().limit(length - (BinaryCodec.HEADER_BYTES - 4));
+            submit(key, conn, correlationId, decode(conn, opcode, correlationId, payload));
+            conn.in.position(frameEnd);
+        }
+        conn.in.compact();
+        if (needed > conn.in.capacity()) conn.in = grow(conn.in, needed);
+
+        flush(key, conn);
+    }
+
+    // decodes one frame's payload; a payload that does not decode exactly answers an error in turn
+    private Request decode(Connection conn, byte opcode, int correlationId, ByteBuffer payload) {
+        try {
+            Request request = decodeRequest(conn, opcode, correlationId, payload);
+            if (payload.hasRemaining()) {
+                throw new IllegalArgumentException(payload.remaining() + " bytes left over in the frame");
+            }
+            return request;
+        } catch (RuntimeException e) {
+            return () -> {
+                throw e;
+            };
+        }
+    }
+
+    private Request decodeRequest(Connection conn, byte opcode, int correlationId, ByteBuffer payload) {
+        switch (opcode) {
+            case BinaryCodec.SUBMIT: {
+                TradeMessage message = BinaryCodec.getMessage(payload);
+                return () -> {
+                    MessageAck ack = delegate.submitMessage(message);
+                    reply(conn, BinaryCodec.ACKS, correlationId, buf -> BinaryCodec.putAcks(buf, List.of(ack)));
+                };
+            }
+            case BinaryCodec.SUBMIT_BATCH: {
+                List<TradeMessage> messages = BinaryCodec.getMessages(payload);
+                return () -> {
+                    List<MessageAck> acks = delegate.submitBatch(messages);
+                    reply(conn, BinaryCodec.ACKS, correlationId, buf -> BinaryCodec.putAcks(buf, acks));
+                };
+            }
+            case BinaryCodec.EXECUTE_BATCH: {
+                // waits until the orders are matched, holding up only this connection's worker
+                List<TradeMessage> messages = BinaryCodec.getMessages(payload);
+                return () -> {
+                    List<MessageAck> executed = delegate.executeBatch(messages);
+                    reply(conn, BinaryCodec.ACKS, correlationId, buf -> BinaryCodec.putAcks(buf, executed));
+                };
+            }
+            case BinaryCodec.GET_STATE:
+                return () -> {
+                    SystemState state = delegate.getState();
+                    reply(conn, BinaryCodec.STATE, correlationId, buf -> BinaryCodec.putState(buf, state));
+                };
+            case BinaryCodec.GET_STATE_DELTA: {
+                long fromTradeSequence = payload.getLong();
+                long fromStatusVersion = payload.getLong();
+                return () -> {
+                    StateDelta delta = delegate.getStateDelta(fromTradeSequence, fromStatusVersion);
+                    reply(conn, BinaryCodec.STATE_DELTA, correlationId, buf -> BinaryCodec.putStateDelta(buf, delta));
+                };
+            }
+            case BinaryCodec.QUERY_TRADES: {
+                TradeQuery query = BinaryCodec.getTradeQuery(payload);
+                return () -> {
+                    TradeQueryResult result = delegate.queryTrades(query);
+                    reply(conn, BinaryCodec.TRADES, correlationId, buf -> BinaryCodec.putTradeQueryResult(buf, result));
+                };
+            }
+            default:
+                throw new IllegalArgumentException("unknown opcode " + opcode);
+        }
+    }
+
+    // queues a request behind the connection's earlier ones, starting a worker if none is on it;
+    // a connection with too many waiting is not read until they drain
+    private void submit(SelectionKey key, Connection conn, int correlationId, Request request) {
+        boolean start;
+        synchronized (conn) {
+            conn.requests.add(() -> handle(key, conn, correlationId, request));
+            start = !conn.draining;
+            conn.draining = true;
+            if (conn.requests.size() >= MAX_QUEUED_REQUESTS) conn.readPaused = true;
+        }
+        if (start) workers.execute(() -> drain(conn));
+    }
+
+    // on a worker: runs the connection's requests in order until none is left
+    private void drain(Connection conn) {
+        while (true) {
+            Runnable next;
+            synchronized (conn) {
+                next = conn.requests.poll();
+                if (next == null) {
+                    conn.draining = false;
+                    return;
+                }
+                if (conn.requests.size() < MAX_QUEUED_REQUESTS / 2) conn.readPaused = false;
+            }
+            next.run();
+        }
+    }
+
+    // on a worker: runs one request, then hands its reply to the selector thread to write
+    private void handle(SelectionKey key, Connection conn, int correlationId, Request request) {
+        try {
+            request.run();
+        } catch (Exception e) {
+            reply(conn, BinaryCodec.ERROR, correlationId, buf -> BinaryCodec.putString(buf, String.valueOf(e.getMessage())));
+        }
+        repliesReady.add(key);
+        selector.wakeup();
+    }
+
+    // appends a reply frame to the connection's out buffer, growing it if needed
+    private void reply(Connection conn, byte opcode, int correlationId, Consumer<ByteBuffer> body) {
+        synchronized (conn) {
+            encode(conn, opcode, correlationId, body);
+        }
+    }
+
+    private static void encode(Connection conn, byte opcode, int correlationId, Consumer<ByteBuffer> body) {
+        while (true) {
+            int mark = conn.out.position();
+            try {
+                int start = BinaryCodec.beginFrame(conn.out, opcode, correlationId);
+                body.accept(conn.out);
+                BinaryCodec.endFrame(conn.out, start);
+                return;
+            } catch (BufferOverflowException e) {
+                conn.out.position(mark);
+                conn.out = grow(conn.out, conn.out.capacity() * 2);
+            } catch (RuntimeException e) {
+                conn.out.position(mark); // drop the partial frame, the caller answers an error instead
+                throw e;
+            }
+        }
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        flush(key, (Connection) key.attachment());
+    }
+
+    // writes the replies workers finished since the last select
+    private void flushReplies() {
+        SelectionKey key;
+        while ((key = repliesReady.poll()) != null) {
+            if (!key.isValid()) continue;
+            try {
+                flush(key, (Connection) key.attachment());
+            } catch (IOException e) {
+                close(key);
+            }
+        }
+    }
+
+    // writes pending replies, asks for OP_WRITE if the socket is full and stops reading while requests pile up
+    private void flush(SelectionKey key, Connection conn) throws IOException {
+        synchronized (conn) {
+            conn.out.flip();
+            ((SocketChannel) key.channel()).write(conn.out);
+            boolean more = conn.out.hasRemaining();
+            conn.out.compact();
+            key.interestOps((conn.readPaused ? 0 : SelectionKey.OP_READ) | (more ? SelectionKey.OP_WRITE : 0));
+        }
+    }
+
+    private static void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+            // already closed
+        }
+    }
+
+    // copies a buffer (in write mode) into a larger one
+    private static ByteBuffer grow(ByteBuffer buf, int minCapacity) {
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(minCapacity, buf.capacity() * 2));
+        buf.flip();
+        bigger.put(buf);
+        return bigger;
+    }
+
+    // per-connection buffers, both kept in write mode between events, and the requests waiting for a worker
+    private static final class Connection {
+        private ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);     // selector thread only
+        // guarded by this
+        private ByteBuffer out = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+        private final Queue<Runnable> requests = new ArrayDeque<>();
+        private boolean draining;       // a worker is running this connection's requests
+        private boolean readPaused;     // too many requests waiting, not read until they drain
+    }
+}
@@ -0,0 +1,29 @@
+package com.stocksim.replication;
+
+import java.io.Serializable;
+
+// reply to an append (or heartbeat) from the leader
+public class AppendReply implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // follower's current term, so a stale leader can step down
+    private final long term;
+
+    // true if the entries matched the follower's log and were appended
+    private final boolean success;
+
+    // follower's last log index, lets the leader skip back quickly after a mismatch
+    private final long lastIndex;
+
+    // builds append reply
+    public AppendReply(long term, boolean success, long lastIndex) {
+        this.term = term;
+        this.success = success;
+        this.lastIndex = lastIndex;
+    }
+
+    // getters
+    public long getTerm() { return term; }
+    public boolean isSuccess() { return success; }
+    public long getLastIndex() { return lastIndex; }
+}
@@ -0,0 +1,85 @@
+package com.stocksim.replication;
+
+import com.stocksim.data.MessageType;
+import com.stocksim.data.Order;
+import com.stocksim.net.BinaryCodec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// one replicated log entry: an order, cancel or replace stamped by the leader, or a no-op (order == null) opening a term
+public class LogEntry {
+
+    private static final int FIXED_BYTES = 8 + 8 + 8 + 1; // term, lamport, wall clock, message type
+    private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+
+    // term of the leader that created the entry
+    private final long term;
+
+    // leader's lamport time when the entry was appended (increases along the log)
+    private final long lamportTimestamp;
+
+    // leader's wall clock when the entry was appended, so every replica stamps trades alike
+    private final long systemTimeMillis;
+
+    // ORDER, CANCEL or REPLACE, null for a no-op
+    private final MessageType type;
+
+    // the order to match, null for a no-op
+    private final Order order;
+
+    // builds log entry
+    public LogEntry(long term, long lamportTimestamp, long systemTimeMillis, MessageType type, Order order) {
+        this.term = term;
+        this.lamportTimestamp = lamportTimestamp;
+        this.systemTimeMillis = systemTimeMillis;
+        this.type = type;
+        this.order = order;
+    }
+
+    // getters
+    public long getTerm() { return term; }
+    public long getLamportTimestamp() { return lamportTimestamp; }
+    public long getSystemTimeMillis() { return systemTimeMillis; }
+    public MessageType getType() { return type; }
+    public Order getOrder() { return order; }
+    public boolean isNoop() { return order == null; }
+
+    // packs entries as [int count]([long term][long lamport][long millis][byte type][order])*, shipped as one byte[]
+    public static byte[] encode(List<LogEntry> entries) {
+        int capacity = 4;
+        for (LogEntry entry : entries) capacity += FIXED_BYTES + BinaryCodec.maxOrderBytes(entry.order);
+        ByteBuffer buf = ByteBuffer.allocate(capacity);
+        buf.putInt(entries.size());
+        for (LogEntry entry : entries) {
+            buf.putLong(entry.term);
+            buf.putLong(entry.lamportTimestamp);
+            buf.putLong(entry.systemTimeMillis);
+            buf.put(entry.type == null ? (byte) -1 : (byte) entry.type.ordinal());
+            BinaryCodec.putOrder(buf, entry.order);
+        }
+        return buf.position() == capacity ? buf.array() : Arrays.copyOf(buf.array(), buf.position());
+    }
+
+    public static List<LogEntry> decode(byte[] encoded) {
+        ByteBuffer buf = ByteBuffer.wrap(encoded);
+        int count = BinaryCodec.getCount(buf, FIXED_BYTES + 1);
+        List<LogEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long term = buf.getLong();
+            long lamportTimestamp = buf.getLong();
+            long systemTimeMillis = buf.getLong();
+            byte type = buf.get();
+            entries.add(new LogEntry(term, lamportTimestamp, systemTimeMillis, type < 0 ? null : MESSAGE_TYPES[type],
+                    BinaryCodec.getOrder(buf)));
+        }
+        return entries;
+    }
+
+    @Override
+    public String toString() {
+        return "LogEntry{" + "term=" + term + ", LT=" + lamportTimestamp + ", type=" + type + ", order=" + order + '}';
+    }
+}
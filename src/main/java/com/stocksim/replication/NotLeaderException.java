@@ -0,0 +1,25 @@
+package com.stocksim.replication;
+
+import java.rmi.RemoteException;
+
+// thrown by a replica that cannot take writes; carries the leader it knows of (-1 if none)
+public class NotLeaderException extends RemoteException {
+    private static final long serialVersionUID = 1L;
+
+    private final int leaderId;
+
+    public NotLeaderException(int leaderId) {
+        super("Not the leader (leader is " + (leaderId < 0 ? "unknown" : "replica " + leaderId) + ")");
+        this.leaderId = leaderId;
+    }
+
+    public int getLeaderId() { return leaderId; }
+
+    // finds a NotLeaderException in a remote failure (rmi wraps server-side RemoteExceptions), or null
+    public static NotLeaderException find(Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof NotLeaderException) return (NotLeaderException) t;
+        }
+        return null;
+    }
+}
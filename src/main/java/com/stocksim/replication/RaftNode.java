@@ -0,0 +1,503 @@
+package com.stocksim.replication;
+
+import com.stocksim.core.LogicalClock;
+import com.stocksim.data.MessageType;
+import com.stocksim.data.Order;
+
+import java.rmi.Naming;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * One replica of a raft-style replicated log.
+ *
+ * Replicas start as followers; one that hears nothing from a leader for a randomized
+ * election timeout becomes a candidate for the next term and wins with a majority of votes
+ * (only replicas whose log is at least as up to date as the voter's can win). The leader
+ * stamps each proposed order with its term and lamport time, ships entries to every follower
+ * on one thread per peer, and commits an entry once a majority holds it. Every replica,
+ * leader included, hands committed entries to its {@link StateMachine} in log order on a
+ * single apply thread, so all replicas apply the same orders in the same order.
+ *
+ * Term, vote and log live in memory only: a restarted replica rejoins empty and is caught
+ * up from the leader's retained log.
+ */
+public class RaftNode extends UnicastRemoteObject implements ReplicaRemote {
+    private static final long serialVersionUID = 1L;
+
+    // receives committed entries (apply thread) and leadership changes (event thread)
+    public interface StateMachine {
+        void apply(long index, LogEntry entry);
+
+        void onRoleChange(boolean leader, long term, int leaderId);
+    }
+
+    private enum Role { FOLLOWER, CANDIDATE, LEADER }
+
+    private static final long HEARTBEAT_MS = 50;
+    private static final long ELECTION_TIMEOUT_MIN_MS = 200;
+    private static final long ELECTION_TIMEOUT_MAX_MS = 400;
+    private static final long TICK_MS = 10;
+    private static final long PEER_RETRY_MS = 100;          // pause after a peer call fails
+    private static final int MAX_ENTRIES_PER_APPEND = 512;
+    private static final int RETAINED_ENTRIES = 1 << 20;   // applied entries kept for lagging or rejoining replicas
+    private static final int COMPACTION_CHUNK = 1 << 16;   // entries dropped at a time
+
+    private final int id;
+    private final String[] peerUrls;          // by replica id, null at our own id
+    private final ReplicaRemote[] peers;      // looked up lazily, dropped on failure
+    private final LogicalClock clock;
+    private final StateMachine stateMachine;
+    private final int majority;
+
+    // all guarded by this
+    private Role role = Role.FOLLOWER;
+    private long currentTerm;
+    private int votedFor = -1;
+    private int leaderId = -1;
+    private int votes;
+    private final List<LogEntry> log = new ArrayList<>(); // entry i is at index logOffset + i + 1
+    private long logOffset;                 // entries up to here were compacted away
+    private long logOffsetTerm;
+    private long commitIndex;
+    private long lastApplied;
+    private long electionDeadlineNanos;
+    private final long[] nextIndex;
+    private final long[] matchIndex;
+    private final long[] lastAckNanos;      // last successful reply per peer, for leader step-down
+    private final long[] lastSentNanos;
+    private boolean running = true;
+    private boolean diverged;               // a leader tried to overwrite committed entries
+    private int idleReplicators;            // replicator threads waiting for entries
+
+    private final ExecutorService events; // role change callbacks and vote requests, off the lock
+
+    // peerUrls holds the rmi url of every replica by id (our own entry is ignored)
+    public RaftNode(int id, List<String> peerUrls, LogicalClock clock, StateMachine stateMachine) throws RemoteException {
+        super();
+        int size = peerUrls.size();
+        if (id < 0 || id >= size) throw new IllegalArgumentException("replica id " + id + " outside 0.." + (size - 1));
+        this.id = id;
+        this.peerUrls = new String[size];
+        for (int i = 0; i < size; i++) if (i != id) this.peerUrls[i] = peerUrls.get(i);
+        this.peers = new ReplicaRemote[size];
+        this.clock = clock;
+        this.stateMachine = stateMachine;
+        this.majority = size / 2 + 1;
+        this.nextIndex = new long[size];
+        this.matchIndex = new long[size];
+        this.lastAckNanos = new long[size];
+        this.lastSentNanos = new long[size];
+        this.events = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "raft-" + id + "-events");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // starts the election timer, one replicator per peer and the apply thread
+    public void start() {
+        synchronized (this) {
+            resetElectionDeadline();
+        }
+        startThread("raft-" + id + "-timer", this::runTimer);
+        startThread("raft-" + id + "-apply", this::runApplier);
+        for (int peer = 0; peer < peerUrls.length; peer++) {
+            if (peer == id) continue;
+            int target = peer;
+            startThread("raft-" + id + "-to-" + peer, () -> runReplicator(target));
+        }
+    }
+
+    public synchronized void shutdown() {
+        running = false;
+        notifyAll();
+        events.shutdownNow();
+    }
+
+    public int getId() { return id; }
+    public synchronized boolean isLeader() { return role == Role.LEADER; }
+    public synchronized int getLeaderId() { return leaderId; }
+    public synchronized long getTerm() { return currentTerm; }
+    public synchronized long getCommitIndex() { return commitIndex; }
+    public synchronized long getLastApplied() { return lastApplied; }
+
+    // appends an order, cancel or replace to the leader's log and returns its index; throws if this replica is not the leader
+    public synchronized long propose(MessageType type, Order order) throws NotLeaderException {
+        if (role != Role.LEADER) throw new NotLeaderException(leaderId);
+        log.add(new LogEntry(currentTerm, clock.updateOnSend(), System.currentTimeMillis(), type, order));
+        if (majority == 1) {
+            commitIndex = lastIndex(); // a cluster of one commits on append
+            notifyAll();
+        } else if (idleReplicators > 0) {
+            notifyAll(); // busy replicators pick the entry up when their call returns
+        }
+        return lastIndex();
+    }
+
+    // waits until the entry at index has been applied here; false on timeout or lost leadership
+    public synchronized boolean awaitApplied(long index, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        long term = currentTerm;
+        while (lastApplied < index) {
+            // once leadership is lost the entry may be overwritten by the next leader
+            if (role != Role.LEADER || currentTerm != term) return false;
+            long remaining = (deadline - System.nanoTime()) / 1_000_000;
+            if (remaining <= 0) return false;
+            wait(remaining);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized VoteReply requestVote(long term, int candidateId, long lastLogIndex, long lastLogTerm) {
+        if (term < currentTerm) return new VoteReply(currentTerm, false);
+        if (term > currentTerm) becomeFollower(term, -1);
+
+        // only vote for a candidate whose log holds everything we might have acknowledged
+        boolean upToDate = lastLogTerm > lastTerm() || (lastLogTerm == lastTerm() && lastLogIndex >= lastIndex());
+        boolean granted = upToDate && (votedFor == -1 || votedFor == candidateId);
+        if (granted) {
+            votedFor = candidateId;
+            resetElectionDeadline();
+        }
+        return new VoteReply(currentTerm, granted);
+    }
+
+    @Override
+    public AppendReply appendEntries(long term, int leader, long prevLogIndex, long prevLogTerm,
+                                     byte[] entries, long leaderCommit) {
+        // decoded before taking the lock
+        return append(term, leader, prevLogIndex, prevLogTerm, LogEntry.decode(entries), leaderCommit);
+    }
+
+    private synchronized AppendReply append(long term, int leader, long prevLogIndex, long prevLogTerm,
+                                            List<LogEntry> entries, long leaderCommit) {
+        if (term < currentTerm) return new AppendReply(currentTerm, false, lastIndex());
+        if (term > currentTerm || role != Role.FOLLOWER || leaderId != leader) becomeFollower(term, leader);
+        resetElectionDeadline();
+
+        // our log must hold the entry the new ones follow
+        if (prevLogIndex > lastIndex()) return new AppendReply(currentTerm, false, lastIndex());
+        if (prevLogIndex >= logOffset && termAt(prevLogIndex) != prevLogTerm) {
+            return new AppendReply(currentTerm, false, Math.max(commitIndex, prevLogIndex - 1));
+        }
+
+        long index = prevLogIndex;
+        for (LogEntry entry : entries) {
+            index++;
+            if (index <= logOffset) continue; // already applied and compacted
+            if (index <= lastIndex()) {
+                if (termAt(index) == entry.getTerm()) continue;
+                if (index <= commitIndex) {
+                    // only possible if a majority restarted empty and elected a leader without our entries
+                    if (!diverged) System.err.printf("[REPLICA %d] Leader %d would overwrite committed index %d; "
+                            + "refusing its log (restart this replica to rejoin)%n", id, leader, index);
+                    diverged = true;
+                    return new AppendReply(currentTerm, false, lastIndex());
+                }
+                // conflicting suffix from an old term
+                log.subList((int) (index - logOffset - 1), log.size()).clear();
+            }
+            log.add(entry);
+        }
+
+        if (leaderCommit > commitIndex) {
+            commitIndex = Math.min(leaderCommit, index);
+            notifyAll(); // wakes the applier
+        }
+        return new AppendReply(currentTerm, true, index);
+    }
+
+    // election timer, plus leader step-down when a majority stops answering
+    private void runTimer() {
+        while (true) {
+            synchronized (this) {
+                if (!running) return;
+                long now = System.nanoTime();
+                if (role == Role.LEADER) {
+                    if (!hasRecentMajority(now)) {
+                        System.out.printf("[REPLICA %d] Lost contact with a majority in term %d, stepping down%n", id, currentTerm);
+                        becomeFollower(currentTerm, -1);
+                    }
+                } else if (now >= electionDeadlineNanos) {
+                    startElection();
+                }
+            }
+            sleep(TICK_MS);
+        }
+    }
+
+    // becomes a candidate for the next term and asks every peer for a vote
+    private void startElection() {
+        role = Role.CANDIDATE;
+        currentTerm++;
+        votedFor = id;
+        votes = 1;
+        leaderId = -1;
+        resetElectionDeadline();
+        System.out.printf("[REPLICA %d] Election timeout, standing for term %d%n", id, currentTerm);
+        if (votes >= majority) {
+            becomeLeader();
+            return;
+        }
+
+        long term = currentTerm;
+        long lastIndex = lastIndex();
+        long lastTerm = lastTerm();
+        for (int peer = 0; peer < peerUrls.length; peer++) {
+            if (peer == id) continue;
+            int target = peer;
+            events.execute(() -> requestVoteFrom(target, term, lastIndex, lastTerm));
+        }
+    }
+
+    private void requestVoteFrom(int peer, long term, long lastIndex, long lastTerm) {
+        VoteReply reply;
+        try {
+            reply = peer(peer).requestVote(term, id, lastIndex, lastTerm);
+        } catch (RemoteException e) {
+            dropPeer(peer);
+            return;
+        }
+        synchronized (this) {
+            if (reply.getTerm() > currentTerm) {
+                becomeFollower(reply.getTerm(), -1);
+            } else if (role == Role.CANDIDATE && currentTerm == term && reply.isGranted() && ++votes >= majority) {
+                becomeLeader();
+            }
+        }
+    }
+
+    private void becomeLeader() {
+        role = Role.LEADER;
+        leaderId = id;
+        long now = System.nanoTime();
+        for (int peer = 0; peer < peerUrls.length; peer++) {
+            nextIndex[peer] = lastIndex() + 1;
+            matchIndex[peer] = 0;
+            lastAckNanos[peer] = now; // a fresh leader gets one election timeout to reach its followers
+            lastSentNanos[peer] = 0;
+        }
+        // a no-op in the new term lets earlier entries commit without waiting for the next order
+        log.add(new LogEntry(currentTerm, clock.updateOnSend(), System.currentTimeMillis(), null, null));
+        if (majority == 1) commitIndex = lastIndex();
+        System.out.printf("[REPLICA %d] Elected leader for term %d%n", id, currentTerm);
+        notifyAll();
+        announceRole();
+    }
+
+    private void becomeFollower(long term, int leader) {
+        boolean wasLeader = role == Role.LEADER;
+        if (term > currentTerm) {
+            currentTerm = term;
+            votedFor = -1;
+        }
+        role = Role.FOLLOWER;
+        boolean newLeader = leader != leaderId;
+        leaderId = leader;
+        notifyAll(); // wakes awaitApplied callers, which now give up
+        if (wasLeader || (newLeader && leader >= 0)) announceRole();
+    }
+
+    private void announceRole() {
+        boolean leader = role == Role.LEADER;
+        long term = currentTerm;
+        int knownLeader = leaderId;
+        if (stateMachine == null || !running) return;
+        events.execute(() -> stateMachine.onRoleChange(leader, term, knownLeader));
+    }
+
+    // ships entries (or a heartbeat) to one follower while we lead
+    private void runReplicator(int peer) {
+        while (true) {
+            long term, prevIndex, prevTerm, commit;
+            List<LogEntry> batch;
+            synchronized (this) {
+                try {
+                    idleReplicators++;
+                    while (running && !(role == Role.LEADER && (nextIndex[peer] <= lastIndex() || heartbeatDue(peer)))) {
+                        wait(role == Role.LEADER ? HEARTBEAT_MS : 0);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    idleReplicators--;
+                }
+                if (!running) return;
+
+                prevIndex = nextIndex[peer] - 1;
+                if (prevIndex < logOffset) {
+                    // the entries this follower needs were compacted; it needs a snapshot instead
+                    System.err.printf("[REPLICA %d] Replica %d is behind the retained log (needs %d, kept from %d)%n",
+                            id, peer, prevIndex + 1, logOffset + 1);
+                    nextIndex[peer] = lastIndex() + 1;
+                    continue;
+                }
+                term = currentTerm;
+                prevTerm = termAt(prevIndex);
+                int from = (int) (prevIndex - logOffset);
+                int to = (int) Math.min(log.size(), from + (long) MAX_ENTRIES_PER_APPEND);
+                batch = new ArrayList<>(log.subList(from, to));
+                commit = commitIndex;
+                lastSentNanos[peer] = System.nanoTime();
+            }
+
+            AppendReply reply;
+            try {
+                reply = peer(peer).appendEntries(term, id, prevIndex, prevTerm, LogEntry.encode(batch), commit);
+            } catch (RemoteException e) {
+                dropPeer(peer);
+                sleep(PEER_RETRY_MS);
+                continue;
+            }
+
+            synchronized (this) {
+                if (reply.getTerm() > currentTerm) {
+                    becomeFollower(reply.getTerm(), -1);
+                    continue;
+                }
+                if (role != Role.LEADER || currentTerm != term) continue;
+                lastAckNanos[peer] = System.nanoTime();
+                if (reply.isSuccess()) {
+                    matchIndex[peer] = Math.max(matchIndex[peer], prevIndex + batch.size());
+                    nextIndex[peer] = matchIndex[peer] + 1;
+                    advanceCommitIndex();
+                } else {
+                    // back up past the mismatch, using the follower's last index as a hint
+                    nextIndex[peer] = Math.max(1, Math.min(nextIndex[peer] - 1, reply.getLastIndex() + 1));
+                }
+            }
+        }
+    }
+
+    // commits the highest entry held by a majority, once it is from the current term
+    private void advanceCommitIndex() {
+        long[] held = new long[peerUrls.length];
+        for (int peer = 0; peer < held.length; peer++) held[peer] = peer == id ? lastIndex() : matchIndex[peer];
+        Arrays.sort(held);
+        long n = held[held.length - majority]; // the majority-th highest index
+        // older-term entries commit along with a current one, never on their own
+        if (n > commitIndex && termAt(n) == currentTerm) {
+            commitIndex = n;
+            notifyAll();
+        }
+    }
+
+    // applies committed entries in log order
+    private void runApplier() {
+        while (true) {
+            long first;
+            List<LogEntry> batch;
+            synchronized (this) {
+                try {
+                    while (running && lastApplied >= commitIndex) wait();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (!running) return;
+                first = lastApplied + 1;
+                batch = new ArrayList<>(log.subList((int) (first - logOffset - 1), (int) (commitIndex - logOffset)));
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                LogEntry entry = batch.get(i);
+                clock.updateOnReceive(entry.getLamportTimestamp());
+                if (stateMachine != null) stateMachine.apply(first + i, entry);
+            }
+
+            synchronized (this) {
+                lastApplied = first + batch.size() - 1;
+                compact();
+                notifyAll(); // wakes awaitApplied callers
+            }
+        }
+    }
+
+    // drops applied entries no live follower still needs, keeping RETAINED_ENTRIES for slow ones
+    private void compact() {
+        long keepFrom = lastIndex() - RETAINED_ENTRIES;
+        if (role == Role.LEADER) {
+            long slowest = lastIndex();
+            for (int peer = 0; peer < peerUrls.length; peer++) {
+                if (peer != id) slowest = Math.min(slowest, matchIndex[peer]);
+            }
+            keepFrom = Math.max(keepFrom, slowest);
+        }
+        long upTo = Math.min(lastApplied, keepFrom);
+        if (upTo - logOffset < COMPACTION_CHUNK) return;
+        logOffsetTerm = termAt(upTo);
+        log.subList(0, (int) (upTo - logOffset)).clear();
+        logOffset = upTo;
+    }
+
+    private boolean heartbeatDue(int peer) {
+        return System.nanoTime() - lastSentNanos[peer] >= HEARTBEAT_MS * 1_000_000;
+    }
+
+    private boolean hasRecentMajority(long now) {
+        int reachable = 1;
+        for (int peer = 0; peer < peerUrls.length; peer++) {
+            if (peer != id && now - lastAckNanos[peer] < ELECTION_TIMEOUT_MAX_MS * 1_000_000) reachable++;
+        }
+        return reachable >= majority;
+    }
+
+    private void resetElectionDeadline() {
+        long timeout = ThreadLocalRandom.current().nextLong(ELECTION_TIMEOUT_MIN_MS, ELECTION_TIMEOUT_MAX_MS + 1);
+        electionDeadlineNanos = System.nanoTime() + timeout * 1_000_000;
+    }
+
+    private long lastIndex() {
+        return logOffset + log.size();
+    }
+
+    private long lastTerm() {
+        return termAt(lastIndex());
+    }
+
+    private long termAt(long index) {
+        if (index == logOffset) return logOffsetTerm;
+        return log.get((int) (index - logOffset - 1)).getTerm();
+    }
+
+    // rmi stub for a peer, looked up on first use
+    private ReplicaRemote peer(int peer) throws RemoteException {
+        ReplicaRemote stub = peers[peer];
+        if (stub != null) return stub;
+        try {
+            stub = (ReplicaRemote) Naming.lookup(peerUrls[peer]);
+        } catch (RemoteException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RemoteException("Replica " + peer + " not reachable at " + peerUrls[peer], e);
+        }
+        peers[peer] = stub;
+        return stub;
+    }
+
+    // forgets a stub after a failure so a restarted peer is looked up again
+    private void dropPeer(int peer) {
+        peers[peer] = null;
+    }
+
+    private void startThread(String name, Runnable task) {
+        Thread t = new Thread(task, name);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
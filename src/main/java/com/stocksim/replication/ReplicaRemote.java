@@ -0,0 +1,18 @@
+package com.stocksim.replication;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+// interface between market node replicas (raft-style election and log shipping)
+public interface ReplicaRemote extends Remote {
+
+    // name each replica's RaftNode is bound under in its own registry
+    String RMI_NAME = "Replica";
+
+    // asks for this replica's vote in the candidate's term
+    VoteReply requestVote(long term, int candidateId, long lastLogIndex, long lastLogTerm) throws RemoteException;
+
+    // appends entries after prevLogIndex (see LogEntry.encode; no entries is a heartbeat) and advances the commit index
+    AppendReply appendEntries(long term, int leaderId, long prevLogIndex, long prevLogTerm,
+                              byte[] entries, long leaderCommit) throws RemoteException;
+}
@@ -0,0 +1,129 @@
+package com.stocksim.replication;
+
+import com.stocksim.data.MessageAck;
+import com.stocksim.data.StateDelta;
+import com.stocksim.data.SystemState;
+import com.stocksim.data.TradeMessage;
+import com.stocksim.data.TradeQuery;
+import com.stocksim.data.TradeQueryResult;
+import com.stocksim.net.MarketNodeRemote;
+
+import java.rmi.Naming;
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * Market client for a replicated market. Calls go to the replica believed to lead; when it
+ * answers "not leader" the call moves to the leader it names, and when it is unreachable the
+ * call tries the next replica, until one succeeds or the failover timeout passes.
+ *
+ * A batch that reached a leader which died before replying is sent again, so orders are
+ * delivered at least once across a failover; orders that carry a client order id are
+ * executed once, since every replica drops ids it has already applied.
+ */
+public class ReplicatedMarketClient implements MarketNodeRemote {
+
+    private static final long FAILOVER_TIMEOUT_MS = 5000;
+    private static final long RETRY_DELAY_MS = 25; // while no leader is known (election in progress)
+
+    private interface Call<T> {
+        T invoke(MarketNodeRemote market) throws RemoteException;
+    }
+
+    private final String[] urls;
+    private final MarketNodeRemote[] stubs;
+    private volatile int current;
+
+    // urls of every replica's market node, indexed by replica id
+    public ReplicatedMarketClient(List<String> replicaUrls) {
+        this.urls = replicaUrls.toArray(new String[0]);
+        this.stubs = new MarketNodeRemote[urls.length];
+    }
+
+    @Override
+    public MessageAck submitMessage(TradeMessage message) throws RemoteException {
+        return call(market -> market.submitMessage(message));
+    }
+
+    @Override
+    public List<MessageAck> submitBatch(List<TradeMessage> messages) throws RemoteException {
+        return call(market -> market.submitBatch(messages));
+    }
+
+    @Override
+    public List<MessageAck> executeBatch(List<TradeMessage> messages) throws RemoteException {
+        return call(market -> market.executeBatch(messages));
+    }
+
+    @Override
+    public SystemState getState() throws RemoteException {
+        return call(MarketNodeRemote::getState);
+    }
+
+    // note: the cursors are only meaningful on the replica that issued them; after a
+    // failover the new leader's trade sequence restarts the subscriber with a reset
+    @Override
+    public StateDelta getStateDelta(long fromTradeSequence, long fromStatusVersion) throws RemoteException {
+        return call(market -> market.getStateDelta(fromTradeSequence, fromStatusVersion));
+    }
+
+    @Override
+    public TradeQueryResult queryTrades(TradeQuery query) throws RemoteException {
+        return call(market -> market.queryTrades(query));
+    }
+
+    // replica currently used
+    public int currentReplica() {
+        return current;
+    }
+
+    private <T> T call(Call<T> call) throws RemoteException {
+        long deadline = System.currentTimeMillis() + FAILOVER_TIMEOUT_MS;
+        while (true) {
+            int target = current;
+            int next;
+            RemoteException failure;
+            try {
+                return call.invoke(stub(target));
+            } catch (RemoteException e) {
+                failure = e;
+                NotLeaderException notLeader = NotLeaderException.find(e);
+                if (notLeader != null && notLeader.getLeaderId() >= 0 && notLeader.getLeaderId() != target) {
+                    next = notLeader.getLeaderId();
+                } else {
+                    if (notLeader == null) stubs[target] = null; // unreachable: look it up again later
+                    next = (target + 1) % urls.length;
+                    pause();
+                }
+            }
+            if (System.currentTimeMillis() >= deadline) throw failure;
+            if (next != target) {
+                current = next;
+                System.out.printf("ReplicatedMarketClient: Replica %d failed (%s), trying replica %d%n",
+                        target, failure.getMessage(), next);
+            }
+        }
+    }
+
+    private MarketNodeRemote stub(int replica) throws RemoteException {
+        MarketNodeRemote stub = stubs[replica];
+        if (stub != null) return stub;
+        try {
+            stub = (MarketNodeRemote) Naming.lookup(urls[replica]);
+        } catch (RemoteException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RemoteException("Replica " + replica + " not reachable at " + urls[replica], e);
+        }
+        stubs[replica] = stub;
+        return stub;
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(RETRY_DELAY_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.stocksim.replication;
+
+import java.io.Serializable;
+
+// reply to a vote request
+public class VoteReply implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // voter's current term, so a stale candidate can step down
+    private final long term;
+
+    // true if the vote was granted
+    private final boolean granted;
+
+    // builds vote reply
+    public VoteReply(long term, boolean granted) {
+        this.term = term;
+        this.granted = granted;
+    }
+
+    // getters
+    public long getTerm() { return term; }
+    public boolean isGranted() { return granted; }
+}
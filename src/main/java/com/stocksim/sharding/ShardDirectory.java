@@ -0,0 +1,38 @@
+package com.stocksim.sharding;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+
+/**
+ * Holder of the current shard map. Market nodes join on startup and poll for changes;
+ * routing clients read the map and re-read it when a node reports a wrong shard.
+ */
+public class ShardDirectory extends UnicastRemoteObject implements ShardDirectoryRemote {
+    private static final long serialVersionUID = 1L;
+
+    private ShardMap map = new ShardMap();
+
+    public ShardDirectory() throws RemoteException {
+        super();
+    }
+
+    @Override
+    public synchronized ShardMap getShardMap() {
+        return map;
+    }
+
+    @Override
+    public synchronized ShardMap join(String nodeId, String rmiUrl) {
+        map = map.withNode(nodeId, rmiUrl);
+        System.out.printf("ShardDirectory: %s joined at %s, now %s%n", nodeId, rmiUrl, map);
+        return map;
+    }
+
+    @Override
+    public synchronized ShardMap leave(String nodeId) {
+        if (map.urlOf(nodeId) == null) return map;
+        map = map.withoutNode(nodeId);
+        System.out.printf("ShardDirectory: %s left, now %s%n", nodeId, map);
+        return map;
+    }
+}
@@ -0,0 +1,20 @@
+package com.stocksim.sharding;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+// publishes the shard map; market nodes join and leave through it, clients read it
+public interface ShardDirectoryRemote extends Remote {
+
+    // name the directory is bound under in the default registry
+    String RMI_NAME = "ShardDirectory";
+
+    // current shard map
+    ShardMap getShardMap() throws RemoteException;
+
+    // adds a market node and returns the new map (symbols it now owns move to it)
+    ShardMap join(String nodeId, String rmiUrl) throws RemoteException;
+
+    // removes a market node and returns the new map (its symbols move to the others)
+    ShardMap leave(String nodeId) throws RemoteException;
+}
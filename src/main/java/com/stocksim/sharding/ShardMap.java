@@ -0,0 +1,100 @@
+package com.stocksim.sharding;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned assignment of symbols to market nodes by consistent hashing.
+ * Each node owns VIRTUAL_NODES points on a 64-bit hash ring and a symbol belongs to the
+ * first point at or after its own hash, so adding or removing one of N nodes moves only
+ * about 1/N of the symbols. Immutable: changes return a new map with the next version.
+ */
+public final class ShardMap implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int VIRTUAL_NODES = 128; // ring points per node, evens out the share per node
+
+    private final long version;
+    private final Map<String, String> urlsByNode; // node id -> rmi url, in join order
+    private final long[] points;                   // sorted ring positions
+    private final String[] owners;                 // node owning each point
+
+    public ShardMap() {
+        this(0, Collections.emptyMap());
+    }
+
+    private ShardMap(long version, Map<String, String> urlsByNode) {
+        this.version = version;
+        this.urlsByNode = Collections.unmodifiableMap(new LinkedHashMap<>(urlsByNode));
+
+        // ring points sorted by position, ties broken by node id so every copy builds the same ring
+        List<String> nodes = new ArrayList<>(urlsByNode.keySet());
+        Collections.sort(nodes);
+        long[][] ring = new long[nodes.size() * VIRTUAL_NODES][];
+        int n = 0;
+        for (int node = 0; node < nodes.size(); node++) {
+            for (int v = 0; v < VIRTUAL_NODES; v++) ring[n++] = new long[]{hash(nodes.get(node) + "#" + v), node};
+        }
+        Arrays.sort(ring, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        this.points = new long[ring.length];
+        this.owners = new String[ring.length];
+        for (int i = 0; i < ring.length; i++) {
+            points[i] = ring[i][0];
+            owners[i] = nodes.get((int) ring[i][1]);
+        }
+    }
+
+    public long getVersion() { return version; }
+    public int size() { return urlsByNode.size(); }
+    public boolean isEmpty() { return urlsByNode.isEmpty(); }
+    public Map<String, String> getUrlsByNode() { return urlsByNode; }
+    public String urlOf(String nodeId) { return urlsByNode.get(nodeId); }
+
+    // node that owns a symbol, null while the map is empty
+    public String ownerOf(String symbol) {
+        if (points.length == 0) return null;
+        int i = Arrays.binarySearch(points, hash(symbol));
+        if (i < 0) i = -i - 1;                // first point after the hash
+        return owners[i == points.length ? 0 : i]; // wraps around the ring
+    }
+
+    // the map with a node added (or its url changed)
+    public ShardMap withNode(String nodeId, String url) {
+        Map<String, String> urls = new LinkedHashMap<>(urlsByNode);
+        urls.put(nodeId, url);
+        return new ShardMap(version + 1, urls);
+    }
+
+    // the map with a node removed
+    public ShardMap withoutNode(String nodeId) {
+        Map<String, String> urls = new LinkedHashMap<>(urlsByNode);
+        urls.remove(nodeId);
+        return new ShardMap(version + 1, urls);
+    }
+
+    // 64-bit FNV-1a over the chars (no encoding, so no allocation per lookup),
+    // then a murmur3 finalizer so nearby names land far apart
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardMap{" + "version=" + version + ", nodes=" + urlsByNode.keySet() + '}';
+    }
+}
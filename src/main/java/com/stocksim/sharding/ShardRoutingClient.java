@@ -0,0 +1,242 @@
+package com.stocksim.sharding;
+
+import com.stocksim.data.MessageAck;
+import com.stocksim.data.MessageType;
+import com.stocksim.data.StateDelta;
+import com.stocksim.data.SystemState;
+import com.stocksim.data.Trade;
+import com.stocksim.data.TradeMessage;
+import com.stocksim.data.TradeQuery;
+import com.stocksim.data.TradeQueryResult;
+import com.stocksim.net.MarketNodeRemote;
+
+import java.rmi.Naming;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Market client for a sharded market. Each order goes straight to the node that owns its
+ * symbol in the published {@link ShardMap}; a batch is split into one sub-batch per node.
+ * Heartbeats go to every node, since each node detects failures of the agents trading on it.
+ * The map is re-read every MAP_REFRESH_MS and whenever a node reports a wrong shard.
+ */
+public class ShardRoutingClient implements MarketNodeRemote {
+
+    private static final long MAP_REFRESH_MS = 1000;
+    private static final int MAX_ATTEMPTS = 10;
+    private static final long RETRY_DELAY_MS = 250; // retries span more than a node's 1s map poll
+    private static final int MAX_TRADES_IN_STATE = 50;
+
+    private final ShardDirectoryRemote directory;
+    private final Map<String, MarketNodeRemote> stubs = new ConcurrentHashMap<>();
+    private volatile ShardMap map;
+    private volatile long refreshedAtMillis;
+
+    public ShardRoutingClient(String directoryUrl) throws RemoteException {
+        this.directory = lookup(directoryUrl, ShardDirectoryRemote.class);
+        refreshMap();
+    }
+
+    // shard map the client currently routes by
+    public ShardMap getShardMap() {
+        return map;
+    }
+
+    @Override
+    public MessageAck submitMessage(TradeMessage message) throws RemoteException {
+        MessageAck ack = route(List.of(message), false).get(0);
+        if (!ack.isAccepted() && "unreachable".equals(ack.getReason())) {
+            throw new RemoteException("No market node reachable for " + message);
+        }
+        return ack;
+    }
+
+    @Override
+    public List<MessageAck> submitBatch(List<TradeMessage> messages) throws RemoteException {
+        return route(messages, false);
+    }
+
+    @Override
+    public List<MessageAck> executeBatch(List<TradeMessage> messages) throws RemoteException {
+        return route(messages, true);
+    }
+
+    // merges every node's snapshot: newest trades across nodes, an agent is ACTIVE if any node sees it
+    @Override
+    public SystemState getState() throws RemoteException {
+        refreshIfStale();
+        List<Trade> trades = new ArrayList<>();
+        Map<String, String> statuses = new HashMap<>();
+        int reachable = 0;
+        RemoteException failure = null;
+        for (String node : map.getUrlsByNode().keySet()) {
+            SystemState state;
+            try {
+                state = stub(node).getState();
+            } catch (RemoteException e) {
+                stubs.remove(node);
+                failure = e;
+                continue;
+            }
+            reachable++;
+            trades.addAll(state.getRecentTrades());
+            state.getAgentStatuses().forEach((agent, status) -> statuses.merge(agent, status,
+                    (a, b) -> "ACTIVE".equals(a) || "ACTIVE".equals(b) ? "ACTIVE" : a));
+        }
+        if (reachable == 0 && failure != null) throw failure;
+
+        trades.sort(Comparator.comparingLong(Trade::getSystemTimeMillis));
+        List<Trade> newest = new ArrayList<>(trades.subList(Math.max(0, trades.size() - MAX_TRADES_IN_STATE), trades.size()));
+        return new SystemState(newest, statuses, reachable == map.size() ? "UP" : "DEGRADED");
+    }
+
+    // trade cursors are per node, so a merged delta is always a full reset built from getState
+    @Override
+    public StateDelta getStateDelta(long fromTradeSequence, long fromStatusVersion) throws RemoteException {
+        SystemState state = getState();
+        return new StateDelta(state.getRecentTrades(), StateDelta.LATEST, true,
+                state.getAgentStatuses(), StateDelta.LATEST, true, state.getMarketNodeStatus());
+    }
+
+    // a symbol's trades are all on its owner; other queries run on every node and are merged,
+    // failing if a node is down rather than answering with part of the history
+    @Override
+    public TradeQueryResult queryTrades(TradeQuery query) throws RemoteException {
+        refreshIfStale();
+        if (query.getStockSymbol() != null) {
+            String node = map.ownerOf(query.getStockSymbol());
+            try {
+                return stub(node).queryTrades(query);
+            } catch (RemoteException e) {
+                stubs.remove(node);
+                throw e;
+            }
+        }
+        List<TradeQueryResult> results = new ArrayList<>();
+        for (String node : map.getUrlsByNode().keySet()) {
+            try {
+                results.add(stub(node).queryTrades(query));
+            } catch (RemoteException e) {
+                stubs.remove(node);
+                throw e;
+            }
+        }
+        return TradeQueryResult.merge(results, query.getMaxTrades());
+    }
+
+    // sends each message to its node(s) and returns the acks in message order, after matching if execute is set
+    private List<MessageAck> route(List<TradeMessage> messages, boolean execute) throws RemoteException {
+        MessageAck[] acks = new MessageAck[messages.size()];
+        Set<Integer> pending = new LinkedHashSet<>();
+        for (int i = 0; i < messages.size(); i++) pending.add(i);
+        RemoteException failure = null;
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS && !pending.isEmpty(); attempt++) {
+            if (attempt > 0) {
+                pause();
+                refreshMap();
+            } else {
+                refreshIfStale();
+            }
+            ShardMap current = map;
+            if (current.isEmpty()) throw new RemoteException("No market nodes in " + current);
+
+            // one sub-batch per node, keeping each sender's messages in order
+            Map<String, List<Integer>> byNode = new LinkedHashMap<>();
+            for (int i : pending) {
+                TradeMessage message = messages.get(i);
+                if (message.getType() == MessageType.HEARTBEAT) {
+                    for (String node : current.getUrlsByNode().keySet()) byNode.computeIfAbsent(node, n -> new ArrayList<>()).add(i);
+                } else {
+                    byNode.computeIfAbsent(ownerOf(current, message), n -> new ArrayList<>()).add(i);
+                }
+            }
+
+            Set<Integer> retry = new LinkedHashSet<>();
+            for (Map.Entry<String, List<Integer>> entry : byNode.entrySet()) {
+                List<Integer> indexes = entry.getValue();
+                List<TradeMessage> subBatch = new ArrayList<>(indexes.size());
+                for (int i : indexes) subBatch.add(messages.get(i));
+                try {
+                    MarketNodeRemote node = stub(entry.getKey());
+                    List<MessageAck> subAcks = execute ? node.executeBatch(subBatch) : node.submitBatch(subBatch);
+                    for (int j = 0; j < indexes.size(); j++) acks[indexes.get(j)] = subAcks.get(j);
+                } catch (RemoteException e) {
+                    failure = e;
+                    if (WrongShardException.find(e) == null) stubs.remove(entry.getKey()); // look the node up again
+                    for (int i : indexes) {
+                        // heartbeats are periodic, so they are not retried
+                        if (messages.get(i).getType() != MessageType.HEARTBEAT) retry.add(i);
+                    }
+                }
+            }
+            pending = retry;
+        }
+        if (!pending.isEmpty()) throw failure;
+
+        // heartbeats no node accepted
+        for (int i = 0; i < acks.length; i++) {
+            if (acks[i] == null) acks[i] = MessageAck.rejected(messages.get(i).getLamportTimestamp(), "unreachable");
+        }
+        return Arrays.asList(acks);
+    }
+
+    // orders without a symbol go to any node, which rejects them as invalid
+    private static String ownerOf(ShardMap map, TradeMessage message) {
+        if (message.getOrder() == null || message.getOrder().getStockSymbol() == null) {
+            return map.getUrlsByNode().keySet().iterator().next();
+        }
+        return map.ownerOf(message.getOrder().getStockSymbol());
+    }
+
+    private void refreshIfStale() throws RemoteException {
+        if (System.currentTimeMillis() - refreshedAtMillis >= MAP_REFRESH_MS) refreshMap();
+    }
+
+    private void refreshMap() throws RemoteException {
+        ShardMap latest = directory.getShardMap();
+        ShardMap previous = map;
+        if (previous == null || latest.getVersion() != previous.getVersion()) {
+            System.out.println("ShardRoutingClient: Routing by " + latest);
+            map = latest;
+        }
+        refreshedAtMillis = System.currentTimeMillis();
+    }
+
+    private MarketNodeRemote stub(String node) throws RemoteException {
+        MarketNodeRemote stub = stubs.get(node);
+        if (stub != null) return stub;
+        String url = map.urlOf(node);
+        if (url == null) throw new RemoteException("Node " + node + " is not in " + map);
+        stub = lookup(url, MarketNodeRemote.class);
+        stubs.put(node, stub);
+        return stub;
+    }
+
+    private static <T> T lookup(String url, Class<T> type) throws RemoteException {
+        try {
+            return type.cast(Naming.lookup(url));
+        } catch (RemoteException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RemoteException("Nothing reachable at " + url, e);
+        }
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(RETRY_DELAY_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.stocksim.sharding;
+
+import java.rmi.RemoteException;
+
+// thrown by a market node for orders whose symbol another node owns; the client should refresh its shard map
+public class WrongShardException extends RemoteException {
+    private static final long serialVersionUID = 1L;
+
+    private final String symbol;
+    private final String ownerId;
+    private final long mapVersion;
+
+    public WrongShardException(String symbol, String ownerId, long mapVersion) {
+        super("Symbol " + symbol + " is owned by " + ownerId + " (shard map v" + mapVersion + ")");
+        this.symbol = symbol;
+        this.ownerId = ownerId;
+        this.mapVersion = mapVersion;
+    }
+
+    public String getSymbol() { return symbol; }
+    public String getOwnerId() { return ownerId; }
+    public long getMapVersion() { return mapVersion; }
+
+    // finds a WrongShardException in a remote failure (rmi wraps server-side RemoteExceptions), or null
+    public static WrongShardException find(Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof WrongShardException) return (WrongShardException) t;
+        }
+        return null;
+    }
+}
@@ -1,7 +1,7 @@
 package com.stocksim.ui;
 
 import com.stocksim.core.MarketNode;
-import com.stocksim.data.SystemState;
+import com.stocksim.data.StateDelta;
 import com.stocksim.data.Trade;
 import com.stocksim.net.MarketNodeRemote;
 import javafx.application.Application;
@@ -23,20 +23,30 @@ import javafx.stage.Stage;
 import java.rmi.Naming;
 import java.rmi.RemoteException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 public class MainUI extends Application {
 
+    private static final int MAX_TRADE_ROWS = 50;
+
     private MarketNodeRemote marketNode;
     private ScheduledExecutorService scheduler;
     private final ObservableList<Trade> tradeData = FXCollections.observableArrayList();
     private final ObservableList<String> agentStatusData = FXCollections.observableArrayList();
+    private final List<String> agentIds = new ArrayList<>(); // sorted, parallel to agentStatusData
     private Label marketStatusLabel;
 
+    // delta cursors, only touched on the update thread
+    private long tradeSequence = StateDelta.LATEST;
+    private long statusVersion = StateDelta.LATEST;
+
     // entry point
     public static void main(String[] args) {
         launch(args);
@@ -149,30 +159,47 @@ public class MainUI extends Application {
             try {
                 if (marketNode == null) throw new RemoteException("MarketNode not connected.");
 
-                SystemState state = marketNode.getState();
+                // only what changed since the last poll crosses the wire
+                StateDelta delta = marketNode.getStateDelta(tradeSequence, statusVersion);
+                tradeSequence = delta.getNextTradeSequence();
+                statusVersion = delta.getStatusVersion();
 
-                Platform.runLater(() -> updateUiComponents(state));
+                Platform.runLater(() -> applyDelta(delta));
 
             } catch (RemoteException e) {
+                // resync from scratch once the node is back
+                tradeSequence = StateDelta.LATEST;
+                statusVersion = StateDelta.LATEST;
                 Platform.runLater(this::setMarketNodeDownStatus);
             }
 
         }, 0, 1, TimeUnit.SECONDS);
     }
 
-    // updates ui data
-    private void updateUiComponents(SystemState state) {
-        tradeData.setAll(state.getRecentTrades());
-        agentStatusData.setAll(
-                state.getAgentStatuses().entrySet().stream()
-                        .map(e -> e.getKey() + ": " + e.getValue())
-                        .sorted()
-                        .collect(Collectors.toList())
-        );
+    // applies one delta to the ui data, touching only changed rows
+    private void applyDelta(StateDelta delta) {
+        if (delta.isTradesReset()) tradeData.clear();
+        tradeData.addAll(delta.getTrades());
+        if (tradeData.size() > MAX_TRADE_ROWS) tradeData.remove(0, tradeData.size() - MAX_TRADE_ROWS);
+
+        if (delta.isStatusesReset()) {
+            agentIds.clear();
+            agentStatusData.clear();
+        }
+        for (Map.Entry<String, String> change : delta.getStatusChanges().entrySet()) {
+            String row = change.getKey() + ": " + change.getValue();
+            int index = Collections.binarySearch(agentIds, change.getKey());
+            if (index >= 0) {
+                agentStatusData.set(index, row);
+            } else {
+                agentIds.add(-index - 1, change.getKey());
+                agentStatusData.add(-index - 1, row);
+            }
+        }
 
-        marketStatusLabel.setText(state.getMarketNodeStatus());
+        marketStatusLabel.setText(delta.getMarketNodeStatus());
         marketStatusLabel.setTextFill(
-                "UP".equalsIgnoreCase(state.getMarketNodeStatus()) ? Color.GREEN : Color.RED
+                "UP".equalsIgnoreCase(delta.getMarketNodeStatus()) ? Color.GREEN : Color.RED
         );
     }
 
@@ -180,6 +207,7 @@ public class MainUI extends Application {
     private void setMarketNodeDownStatus() {
         marketStatusLabel.setText("DOWN");
         marketStatusLabel.setTextFill(Color.RED);
+        agentIds.clear();
         agentStatusData.clear();
     }
 